@@ -0,0 +1,142 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.benchmark.binding;
+
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seasar.dbflute.unit.benchmark.bean.SampleAction;
+import org.seasar.dbflute.unit.benchmark.bean.SampleActionTest;
+import org.seasar.dbflute.unit.benchmark.bean.SampleBhv;
+import org.seasar.dbflute.unit.benchmark.bean.SampleLogic;
+import org.seasar.dbflute.unit.benchmark.bean.SampleService;
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.binding.BindingAnnotationRule;
+import org.seasar.dbflute.unit.core.binding.BindingRuleProvider;
+import org.seasar.dbflute.unit.core.binding.BoundResult;
+import org.seasar.dbflute.unit.core.binding.ComponentBinder;
+import org.seasar.dbflute.unit.core.binding.ComponentProvider;
+
+/**
+ * The benchmark of component binding, which is executed for every test method. <br />
+ * The components are provided from the map so that it measures the binder, not DI container.
+ * @author jflute
+ * @since 0.4.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ComponentBinderBenchmark {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Map<String, Object> _componentMap = new HashMap<String, Object>();
+    protected ComponentBinder _testCaseBinder; // same settings as test case binder
+    protected ComponentBinder _outerBinder; // same settings as inject()
+
+    // ===================================================================================
+    //                                                                               Setup
+    //                                                                               =====
+    @Setup
+    public void setup() {
+        _componentMap.put("sampleBhv", new SampleBhv());
+        _componentMap.put("sampleService", new SampleService());
+        _componentMap.put("sampleLogic", new SampleLogic());
+        _testCaseBinder = createBinder();
+        _testCaseBinder.stopBindingAtSuper(PlainTestCase.class);
+        _testCaseBinder.looseBinding();
+        _outerBinder = createBinder();
+    }
+
+    protected ComponentBinder createBinder() {
+        return new ComponentBinder(createComponentProvider(), createBindingRuleProvider());
+    }
+
+    protected ComponentProvider createComponentProvider() {
+        return new ComponentProvider() {
+            @SuppressWarnings("unchecked")
+            public <COMPONENT> COMPONENT provideComponent(Class<COMPONENT> type) {
+                for (Object component : _componentMap.values()) {
+                    if (type.isInstance(component)) {
+                        return (COMPONENT) component;
+                    }
+                }
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            public <COMPONENT> COMPONENT provideComponent(String name) {
+                return (COMPONENT) _componentMap.get(name);
+            }
+
+            public boolean existsComponent(Class<?> type) {
+                return provideComponent(type) != null;
+            }
+
+            public boolean existsComponent(String name) {
+                return _componentMap.containsKey(name);
+            }
+        };
+    }
+
+    protected BindingRuleProvider createBindingRuleProvider() {
+        return new BindingRuleProvider() {
+            public Map<Class<? extends Annotation>, BindingAnnotationRule> provideBindingAnnotationRuleMap() {
+                final Map<Class<? extends Annotation>, BindingAnnotationRule> ruleMap = new HashMap<Class<? extends Annotation>, BindingAnnotationRule>();
+                ruleMap.put(Resource.class, new BindingAnnotationRule());
+                return ruleMap;
+            }
+
+            public String filterByBindingNamingRule(String propertyName, Class<?> propertyType) {
+                return null;
+            }
+        };
+    }
+
+    // ===================================================================================
+    //                                                                           Benchmark
+    //                                                                           =========
+    @Benchmark
+    public BoundResult bindTestCase() {
+        final SampleActionTest testCase = new SampleActionTest();
+        final BoundResult boundResult = _testCaseBinder.bindComponent(testCase);
+        _testCaseBinder.releaseBoundComponent(testCase, boundResult);
+        return boundResult;
+    }
+
+    @Benchmark
+    public BoundResult bindAction() {
+        return _outerBinder.bindComponent(new SampleAction());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.benchmark.cannonball;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seasar.dbflute.unit.core.cannonball.CannonballCar;
+import org.seasar.dbflute.unit.core.cannonball.CannonballDirector;
+import org.seasar.dbflute.unit.core.cannonball.CannonballOption;
+import org.seasar.dbflute.unit.core.cannonball.CannonballResult;
+import org.seasar.dbflute.unit.core.cannonball.CannonballRun;
+import org.seasar.dbflute.unit.core.cannonball.CannonballStaff;
+import org.seasar.dbflute.unit.core.transaction.TransactionResource;
+
+/**
+ * The benchmark of cannon-ball latch, awaiting and completing under contention. <br />
+ * One invocation is one race: all cars restart (await) many times and complete.
+ * JMH threads are not used as cars because the latch needs all cars to arrive.
+ * @author jflute
+ * @since 0.4.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CannonballLatchBenchmark {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    @Param({ "4", "32" })
+    public int carCount;
+
+    @Param({ "100" })
+    public int restartCount;
+
+    protected CannonballDirector _director;
+    protected CannonballRun _run;
+
+    // ===================================================================================
+    //                                                                               Setup
+    //                                                                               =====
+    @Setup
+    public void setup() {
+        _director = new CannonballDirector(createQuietStaff());
+        _run = new CannonballRun() {
+            public void drive(CannonballCar car) {
+                for (int i = 0; i < restartCount; i++) {
+                    car.restart(); // await all cars
+                }
+            }
+        };
+    }
+
+    protected CannonballStaff createQuietStaff() {
+        return new CannonballStaff() {
+            public TransactionResource help_beginTransaction() {
+                return null; // suppressed anyway
+            }
+
+            public void help_prepareAccessContext() {
+            }
+
+            public void help_clearAccessContext() {
+            }
+
+            public void help_assertEquals(Object expected, Object actual) {
+            }
+
+            public void help_fail(String msg) {
+                throw new IllegalStateException(msg);
+            }
+
+            public void help_log(Object... msges) { // quiet not to measure logging
+            }
+
+            public String help_ln() {
+                return "\n";
+            }
+        };
+    }
+
+    // ===================================================================================
+    //                                                                           Benchmark
+    //                                                                           =========
+    @Benchmark
+    public CannonballResult restartAndComplete() {
+        return _director.readyGo(_run, new CannonballOption().threadCount(carCount).suppressTx());
+    }
+}
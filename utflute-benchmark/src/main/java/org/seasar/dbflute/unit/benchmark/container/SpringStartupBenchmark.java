@@ -0,0 +1,96 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.benchmark.container;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seasar.dbflute.unit.benchmark.bean.SampleBhv;
+import org.seasar.dbflute.unit.benchmark.bean.SampleLogic;
+import org.seasar.dbflute.unit.benchmark.bean.SampleService;
+import org.seasar.dbflute.unit.core.InjectionTestCase;
+import org.seasar.dbflute.unit.spring.ContainerTestCase;
+
+/**
+ * The benchmark of setUp() and tearDown() of Spring test case. <br />
+ * The one-time container is initialized per test method, and the recycled one is cached.
+ * @author jflute
+ * @since 0.4.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpringStartupBenchmark {
+
+    // ===================================================================================
+    //                                                                           Benchmark
+    //                                                                           =========
+    @Benchmark
+    public InjectionTestCase oneTimeContainer() throws Exception {
+        return runTestCase(new OneTimeTestCase());
+    }
+
+    @Benchmark
+    public InjectionTestCase recycledContainer() throws Exception {
+        return runTestCase(new RecycledTestCase());
+    }
+
+    protected InjectionTestCase runTestCase(InjectionTestCase testCase) throws Exception {
+        testCase.setName("test_benchmark");
+        testCase.setUp();
+        testCase.tearDown();
+        return testCase;
+    }
+
+    // ===================================================================================
+    //                                                                           Test Case
+    //                                                                           =========
+    public static class RecycledTestCase extends ContainerTestCase {
+
+        protected SampleBhv sampleBhv;
+        protected SampleLogic sampleLogic;
+        protected SampleService sampleService;
+
+        @Override
+        protected String[] prepareConfigFiles() {
+            return new String[] { "benchmarkBeans.xml" };
+        }
+
+        @Override
+        protected boolean isSuppressTestCaseTransaction() {
+            return true; // measures container only
+        }
+    }
+
+    public static class OneTimeTestCase extends RecycledTestCase {
+
+        @Override
+        protected boolean isUseOneTimeContainer() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.benchmark.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seasar.dbflute.unit.core.markhere.MarkHereManager;
+
+/**
+ * The benchmark of markHere() and assertMarked(), which is the life of one test method.
+ * @author jflute
+ * @since 0.4.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MarkHereBenchmark {
+
+    @Benchmark
+    public MarkHereManager markAndAssert() {
+        final MarkHereManager manager = new MarkHereManager();
+        manager.mark("foo");
+        manager.mark("bar");
+        manager.mark("foo"); // same phase
+        manager.assertMarked("foo");
+        manager.assertMarked("bar");
+        manager.checkNonAssertedMark(); // at tearDown()
+        manager.clearMarkMap();
+        return manager;
+    }
+
+    @Benchmark
+    public MarkHereManager markInLoop() {
+        final MarkHereManager manager = new MarkHereManager();
+        for (int i = 0; i < 100; i++) { // e.g. callback in loop
+            manager.mark("callback");
+        }
+        manager.assertMarked("callback");
+        manager.checkNonAssertedMark();
+        manager.clearMarkMap();
+        return manager;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.benchmark.core;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.varia.NullAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * The benchmark of log() in test case, which formats messages. <br />
+ * The level INFO means that the formatting is wasted, and DEBUG means that it is written (to null appender).
+ * @author jflute
+ * @since 0.4.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PlainTestCaseLogBenchmark {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    @Param({ "INFO", "DEBUG" })
+    public String level;
+
+    protected LoggingTestCase _testCase;
+    protected Timestamp _timestamp;
+    protected RuntimeException _cause;
+
+    // ===================================================================================
+    //                                                                               Setup
+    //                                                                               =====
+    @Setup
+    public void setup() {
+        final Logger logger = Logger.getLogger(LoggingTestCase.class);
+        logger.setAdditivity(false);
+        logger.removeAllAppenders();
+        logger.addAppender(new NullAppender());
+        logger.setLevel(Level.toLevel(level));
+        _testCase = new LoggingTestCase();
+        _timestamp = new Timestamp(System.currentTimeMillis());
+        _cause = new RuntimeException("sea");
+    }
+
+    // ===================================================================================
+    //                                                                           Benchmark
+    //                                                                           =========
+    @Benchmark
+    public void logString() {
+        _testCase.callLog("foo");
+    }
+
+    @Benchmark
+    public void logManyObjects() {
+        _testCase.callLog("foo", 3, "bar", _timestamp);
+    }
+
+    @Benchmark
+    public void logWithCause() {
+        _testCase.callLog("foo", "bar", _cause);
+    }
+
+    // ===================================================================================
+    //                                                                           Test Case
+    //                                                                           =========
+    public static class LoggingTestCase extends PlainTestCase {
+
+        public void callLog(Object... msgs) {
+            log(msgs);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.benchmark.mocklet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seasar.dbflute.unit.mocklet.MockletHttpServletRequestImpl;
+import org.seasar.dbflute.unit.mocklet.MockletHttpServletResponseImpl;
+import org.seasar.dbflute.unit.mocklet.MockletServletContextImpl;
+
+/**
+ * The benchmark of writing to the mock response, e.g. rendering HTML or JSON.
+ * @author jflute
+ * @since 0.4.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MockletResponseBenchmark {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The count of lines written per response. */
+    @Param({ "10", "1000" })
+    public int lineCount;
+
+    protected MockletHttpServletRequestImpl _request;
+    protected String _line;
+    protected byte[] _lineBytes;
+
+    // ===================================================================================
+    //                                                                               Setup
+    //                                                                               =====
+    @Setup
+    public void setup() throws IOException {
+        _request = new MockletHttpServletRequestImpl(new MockletServletContextImpl("/utflute"), "/benchmark");
+        _line = "<tr><td>sea</td><td>land</td><td>piari</td><td>bonvo</td><td>dstore</td></tr>";
+        _lineBytes = _line.getBytes("UTF-8");
+    }
+
+    // ===================================================================================
+    //                                                                           Benchmark
+    //                                                                           =========
+    @Benchmark
+    public String writeByWriter() throws IOException {
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(_request);
+        final PrintWriter writer = response.getWriter();
+        for (int i = 0; i < lineCount; i++) {
+            writer.println(_line);
+        }
+        writer.flush();
+        return response.getResponseString();
+    }
+
+    @Benchmark
+    public byte[] writeByOutputStream() throws IOException {
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(_request);
+        final ServletOutputStream out = response.getOutputStream();
+        for (int i = 0; i < lineCount; i++) {
+            out.write(_lineBytes);
+        }
+        out.flush();
+        return response.getResponseBytes();
+    }
+}
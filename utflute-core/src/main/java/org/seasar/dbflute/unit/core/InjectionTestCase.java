@@ -15,16 +15,27 @@
  */
 package org.seasar.dbflute.unit.core;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
 
 import org.seasar.dbflute.unit.core.binding.BindingAnnotationRule;
 import org.seasar.dbflute.unit.core.binding.BindingRuleProvider;
 import org.seasar.dbflute.unit.core.binding.BoundResult;
 import org.seasar.dbflute.unit.core.binding.ComponentBinder;
 import org.seasar.dbflute.unit.core.binding.ComponentProvider;
+import org.seasar.dbflute.unit.core.container.ContainerCache;
+import org.seasar.dbflute.unit.core.container.ContainerPrewarmHint;
+import org.seasar.dbflute.unit.core.container.ContainerSlotManager;
+import org.seasar.dbflute.unit.core.fixture.FixtureSnapshotEngine;
+import org.seasar.dbflute.unit.core.profile.LifecycleProfiler;
+import org.seasar.dbflute.unit.core.transaction.SavepointTransactionResource;
 import org.seasar.dbflute.unit.core.transaction.TransactionFailureException;
 import org.seasar.dbflute.unit.core.transaction.TransactionResource;
 
@@ -37,12 +48,33 @@ public abstract class InjectionTestCase extends PlainTestCase {
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
+    // -----------------------------------------------------
+    //                                          Static Cache
+    //                                          ------------
+    /** The hint of upcoming configuration sets to pre-warm containers. (NotNull) */
+    protected static final ContainerPrewarmHint _xcontainerPrewarmHint = new ContainerPrewarmHint();
+
+    /** The profiler of lifecycle phases in the run, used if enabled. (NotNull) */
+    protected static final LifecycleProfiler _xlifecycleProfiler = new LifecycleProfiler();
+
+    /** The map of fixture snapshot engine keyed by database name, used if enabled. (NotNull) */
+    protected static final ConcurrentMap<String, FixtureSnapshotEngine> _xfixtureSnapshotEngineMap = new ConcurrentHashMap<String, FixtureSnapshotEngine>();
+
     // -----------------------------------------------------
     //                                    Transaction Object
     //                                    ------------------
     /** The object that has transaction resources for test case. */
     protected TransactionResource _xtestCaseTransactionResource;
 
+    /** The thread that begins the transaction for test case, transaction is bound to it. */
+    protected Thread _xtestCaseTransactionThread;
+
+    /** The flag that the cannon-ball car begins savepoint in its pooled transaction. (NotNull) */
+    protected final ThreadLocal<Boolean> _xcannonballSavepointLocal = new ThreadLocal<Boolean>();
+
+    /** The engine of fixture snapshot for the test case. (NullAllowed: when not used) */
+    protected FixtureSnapshotEngine _xfixtureSnapshotEngine;
+
     // -----------------------------------------------------
     //                                     Component Binding
     //                                     -----------------
@@ -64,10 +96,25 @@ public abstract class InjectionTestCase extends PlainTestCase {
     @Override
     public void setUp() throws Exception {
         super.setUp();
-        xsetupBeforeContainer();
-        xprepareTestCaseContainer();
-        xprepareTestCaseComponent();
-        xbeginTestCaseTransaction();
+        boolean success = false;
+        try {
+            long before = xbeginLifecyclePhase();
+            xsetupBeforeContainer();
+            before = xendLifecyclePhase(LifecycleProfiler.PHASE_SETUP_BEFORE_CONTAINER, before);
+            xprepareTestCaseContainer();
+            before = xendLifecyclePhase(LifecycleProfiler.PHASE_PREPARE_CONTAINER, before);
+            xprepareTestCaseComponent();
+            before = xendLifecyclePhase(LifecycleProfiler.PHASE_PREPARE_COMPONENT, before);
+            xprepareFixtureSnapshot(); // before transaction because of trigger DDL
+            xbeginTestCaseTransaction();
+            xendLifecyclePhase(LifecycleProfiler.PHASE_BEGIN_TRANSACTION, before);
+            success = true;
+        } finally {
+            if (!success) { // tear-down is not called when set-up failure
+                xendFixtureSnapshotUse();
+                xreleaseContainerSlot();
+            }
+        }
     }
 
     protected void xsetupBeforeContainer() {
@@ -83,6 +130,48 @@ public abstract class InjectionTestCase extends PlainTestCase {
         return false;
     }
 
+    /**
+     * Prepare the count of live containers cached for configuration changes. <br />
+     * If your test classes alternate several configurations, the containers are parked
+     * and switched without re-initialization. (evicted in LRU order or when memory short)
+     * @return The count of containers including the active one. (NotMinus, NotZero: 1 means no parking)
+     */
+    protected int prepareContainerCacheSize() { // customize point
+        return ContainerCache.DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * Prepare the count of container slots for test classes running in parallel. <br />
+     * Each running test holds its own slot (container) from set-up to tear-down,
+     * so you can run test classes in parallel threads of one JVM by the count of workers.
+     * @return The count of slots, the same value in your test cases. (NotMinus, NotZero: 1 means exclusive)
+     */
+    protected int prepareContainerSlotCount() { // customize point
+        return ContainerSlotManager.DEFAULT_SLOT_COUNT;
+    }
+
+    /**
+     * Does it suppress pre-warming the container of next configuration by the hint?
+     * @return The determination, true or false.
+     */
+    protected boolean isSuppressContainerPrewarm() { // customize point
+        return false;
+    }
+
+    /**
+     * Give the hint of the upcoming configuration set, called in order of test classes. <br />
+     * The container of next configuration is built in background while the current test class runs.
+     * <pre>
+     * e.g. from suite manifest or test listener (before the test classes run)
+     *  InjectionTestCase.hintUpcomingContainer("foo.xml");
+     *  InjectionTestCase.hintUpcomingContainer("bar.xml", "qux.xml");
+     * </pre>
+     * @param configSet The array of configuration names, e.g. config files of Spring. (NotNull)
+     */
+    public static void hintUpcomingContainer(String... configSet) {
+        _xcontainerPrewarmHint.addUpcoming(configSet);
+    }
+
     protected void xprepareTestCaseComponent() {
         _xtestCaseBoundResult = _xtestCaseComponentBinder.bindComponent(this);
     }
@@ -92,6 +181,7 @@ public abstract class InjectionTestCase extends PlainTestCase {
             return;
         }
         _xtestCaseTransactionResource = beginNewTransaction();
+        _xtestCaseTransactionThread = Thread.currentThread();
     }
 
     /**
@@ -102,11 +192,32 @@ public abstract class InjectionTestCase extends PlainTestCase {
         return false; // default is to use the transaction
     }
 
+    @Override
+    protected void runTest() throws Throwable {
+        final long before = xbeginLifecyclePhase();
+        try {
+            super.runTest();
+        } finally {
+            xendLifecyclePhase(LifecycleProfiler.PHASE_TEST_BODY, before);
+        }
+    }
+
     @Override
     public void tearDown() throws Exception {
-        xrollbackTestCaseTransaction();
-        xdestroyTestCaseComponent();
-        xdestroyTestCaseContainer();
+        try {
+            long before = xbeginLifecyclePhase();
+            try {
+                xrollbackTestCaseTransaction();
+            } finally { // to end use of the snapshot even if commit or roll-back fails
+                xrestoreFixtureSnapshot();
+            }
+            before = xendLifecyclePhase(LifecycleProfiler.PHASE_ROLLBACK_TRANSACTION, before);
+            xdestroyTestCaseComponent();
+            xdestroyTestCaseContainer();
+            xendLifecyclePhase(LifecycleProfiler.PHASE_DESTROY, before);
+        } finally {
+            xreleaseContainerSlot();
+        }
         _xmockInstanceList = null;
         _xnonBindingTypeList = null;
         super.tearDown();
@@ -119,12 +230,23 @@ public abstract class InjectionTestCase extends PlainTestCase {
         if (_xtestCaseTransactionResource == null) { // just in case
             return;
         }
+        xassertTestCaseTransactionThread();
         if (isCommitTestCaseTransaction()) {
             commitTransaction(_xtestCaseTransactionResource);
         } else {
             rollbackTransaction(_xtestCaseTransactionResource);
         }
         _xtestCaseTransactionResource = null;
+        _xtestCaseTransactionThread = null;
+    }
+
+    protected void xassertTestCaseTransactionThread() {
+        final Thread currentThread = Thread.currentThread();
+        if (_xtestCaseTransactionThread != null && _xtestCaseTransactionThread != currentThread) {
+            String msg = "The test case transaction should be finished in the beginning thread:";
+            msg = msg + " begin=" + _xtestCaseTransactionThread.getName() + ", current=" + currentThread.getName();
+            throw new IllegalStateException(msg);
+        }
     }
 
     /**
@@ -135,6 +257,39 @@ public abstract class InjectionTestCase extends PlainTestCase {
         return false; // default is to roll-back always
     }
 
+    /**
+     * {@inheritDoc} <br />
+     * As default, JDBC savepoint on the connection of the data source, which is bound to the transaction.
+     */
+    @Override
+    protected TransactionResource beginSavepointTransaction() { // user method
+        if (!xcanUseSavepointTransaction()) {
+            return beginNewTransaction();
+        }
+        final DataSource dataSource = getDataSource();
+        if (dataSource == null) { // no database
+            return beginNewTransaction();
+        }
+        return SavepointTransactionResource.begin(dataSource);
+    }
+
+    protected boolean xcanUseSavepointTransaction() { // in the transaction of the test case or pooled one
+        if (Boolean.TRUE.equals(_xcannonballSavepointLocal.get())) {
+            return true;
+        }
+        return _xtestCaseTransactionResource != null && _xtestCaseTransactionThread == Thread.currentThread();
+    }
+
+    @Override
+    protected TransactionResource xbeginCannonballSavepoint() { // on the car thread that has pooled transaction
+        _xcannonballSavepointLocal.set(Boolean.TRUE);
+        try {
+            return beginSavepointTransaction();
+        } finally {
+            _xcannonballSavepointLocal.remove();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -185,6 +340,141 @@ public abstract class InjectionTestCase extends PlainTestCase {
 
     protected abstract void xclearCachedContainer();
 
+    protected void xreleaseContainerSlot() { // called also when set-up failure
+        // no slot as default
+    }
+
+    // ===================================================================================
+    //                                                                   Lifecycle Profile
+    //                                                                   =================
+    /**
+     * Does it use the profiler of lifecycle phases? (default: by system property 'utflute.lifecycle.profile') <br />
+     * The elapsed time of each phase (and container component if supported) is written
+     * to the per-run report file at JVM shutdown, see prepareLifecycleProfileDir().
+     * @return The determination, true or false.
+     */
+    protected boolean isUseLifecycleProfile() { // customize point
+        return Boolean.getBoolean(LifecycleProfiler.ENABLED_PROPERTY);
+    }
+
+    /**
+     * Prepare the directory of the lifecycle profile report. (default: target/utflute-profile)
+     * @return The file object of the directory. (NotNull)
+     */
+    protected File prepareLifecycleProfileDir() { // customize point
+        return new File(getTestCaseBuildDir().getParentFile(), "utflute-profile"); // target/utflute-profile
+    }
+
+    protected long xbeginLifecyclePhase() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the phase if the profiler is used.
+     * @param phase The name of the phase, e.g. LifecycleProfiler.PHASE_TEST_BODY. (NotNull)
+     * @param before The nano time when the phase began.
+     * @return The nano time when the phase ended, as the beginning of next phase.
+     */
+    protected long xendLifecyclePhase(String phase, long before) {
+        final long after = System.nanoTime();
+        if (isUseLifecycleProfile()) {
+            _xlifecycleProfiler.registerShutdownReport(prepareLifecycleProfileDir());
+            _xlifecycleProfiler.recordPhase(getClass().getName(), getName(), phase, after - before);
+        }
+        return after;
+    }
+
+    // ===================================================================================
+    //                                                                    Fixture Snapshot
+    //                                                                    ================
+    /**
+     * Does it use the fixture snapshot instead of whole fixture re-loading for committed tests? <br />
+     * The snapshot of all tables is taken once (per database) before the first test's transaction,
+     * and only the tables touched by each test are restored from it at tear-down. (after commit)
+     * It supports in-memory H2 database only (e.g. cloned by H2TemplateDatabase), because touched tables
+     * are recorded by its triggers, and the database should not be shared by parallel container slots.
+     * <pre>
+     * e.g. your test case that commits the transaction (or cannon-ball with commitTx())
+     *  protected boolean isCommitTestCaseTransaction() { return true; }
+     *  protected boolean isUseFixtureSnapshot() { return true; }
+     * </pre>
+     * @return The determination, true or false.
+     */
+    protected boolean isUseFixtureSnapshot() { // customize point
+        return false;
+    }
+
+    protected void xprepareFixtureSnapshot() {
+        if (!isUseFixtureSnapshot()) {
+            return;
+        }
+        final DataSource dataSource = getDataSource();
+        if (dataSource == null) { // no database
+            return;
+        }
+        final String databaseName = FixtureSnapshotEngine.extractDatabaseName(dataSource);
+        FixtureSnapshotEngine engine = _xfixtureSnapshotEngineMap.get(databaseName);
+        if (engine == null) {
+            final FixtureSnapshotEngine created = new FixtureSnapshotEngine(databaseName);
+            engine = _xfixtureSnapshotEngineMap.putIfAbsent(databaseName, created);
+            if (engine == null) {
+                engine = created;
+            }
+        }
+        engine.beginUse(); // refuses parallel test classes on the same database
+        boolean success = false;
+        try {
+            if (engine.takeSnapshot(dataSource)) {
+                log("...Taking fixture snapshot: " + engine);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                engine.endUse();
+            }
+        }
+        _xfixtureSnapshotEngine = engine;
+    }
+
+    protected void xrestoreFixtureSnapshot() {
+        if (_xfixtureSnapshotEngine == null) {
+            return;
+        }
+        try {
+            restoreFixtureSnapshot();
+        } finally {
+            xendFixtureSnapshotUse();
+        }
+    }
+
+    protected void xendFixtureSnapshotUse() {
+        if (_xfixtureSnapshotEngine == null) {
+            return;
+        }
+        _xfixtureSnapshotEngine.endUse();
+        _xfixtureSnapshotEngine = null;
+    }
+
+    /**
+     * Restore the tables touched since the last restoration from the fixture snapshot. <br />
+     * It is called at tear-down automatically, so you can use it in the middle of the test,
+     * e.g. between cannon-ball races that commit. (the tables should be out of transaction)
+     */
+    protected void restoreFixtureSnapshot() { // user method
+        if (_xfixtureSnapshotEngine == null) {
+            String msg = "The fixture snapshot is not used, see isUseFixtureSnapshot(): " + getClass().getName();
+            throw new IllegalStateException(msg);
+        }
+        final DataSource dataSource = getDataSource();
+        if (dataSource == null) { // no way
+            return;
+        }
+        final List<String> restoredList = _xfixtureSnapshotEngine.restoreTouched(dataSource);
+        if (!restoredList.isEmpty()) {
+            log("...Restoring fixture tables: " + restoredList);
+        }
+    }
+
     // ===================================================================================
     //                                                                   Component Binding
     //                                                                   =================
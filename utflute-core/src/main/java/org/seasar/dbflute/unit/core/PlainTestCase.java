@@ -38,10 +38,13 @@ import org.seasar.dbflute.AccessContext;
 import org.seasar.dbflute.cbean.PagingResultBean;
 import org.seasar.dbflute.unit.core.cannonball.CannonballDirector;
 import org.seasar.dbflute.unit.core.cannonball.CannonballOption;
+import org.seasar.dbflute.unit.core.cannonball.CannonballResult;
 import org.seasar.dbflute.unit.core.cannonball.CannonballRun;
+import org.seasar.dbflute.unit.core.cannonball.CannonballSavepointStaff;
 import org.seasar.dbflute.unit.core.cannonball.CannonballStaff;
 import org.seasar.dbflute.unit.core.filesystem.FileLineHandler;
 import org.seasar.dbflute.unit.core.filesystem.FilesystemPlayer;
+import org.seasar.dbflute.unit.core.logging.TestLogBuffer;
 import org.seasar.dbflute.unit.core.markhere.MarkHereManager;
 import org.seasar.dbflute.unit.core.policestory.PoliceStory;
 import org.seasar.dbflute.unit.core.policestory.javaclass.PoliceStoryJavaClassHandler;
@@ -49,10 +52,13 @@ import org.seasar.dbflute.unit.core.policestory.jspfile.PoliceStoryJspFileHandle
 import org.seasar.dbflute.unit.core.policestory.miscfile.PoliceStoryMiscFileHandler;
 import org.seasar.dbflute.unit.core.policestory.pjresource.PoliceStoryProjectResourceHandler;
 import org.seasar.dbflute.unit.core.policestory.webresource.PoliceStoryWebResourceHandler;
+import org.seasar.dbflute.unit.core.profile.TestTimingStore;
+import org.seasar.dbflute.unit.core.profile.ThreadResourceMeter;
 import org.seasar.dbflute.unit.core.thread.ThreadFireExecution;
 import org.seasar.dbflute.unit.core.thread.ThreadFireHelper;
 import org.seasar.dbflute.unit.core.thread.ThreadFireMan;
 import org.seasar.dbflute.unit.core.thread.ThreadFireOption;
+import org.seasar.dbflute.unit.core.thread.ThreadFireResult;
 import org.seasar.dbflute.unit.core.transaction.TransactionPerformFailureException;
 import org.seasar.dbflute.unit.core.transaction.TransactionPerformer;
 import org.seasar.dbflute.unit.core.transaction.TransactionResource;
@@ -80,17 +86,27 @@ public abstract class PlainTestCase extends TestCase {
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
+    /** The store of test timing over runs, shared in the JVM. (NullAllowed: lazy-loaded, not used) */
+    protected static TestTimingStore _xtestTimingStore;
+
     /** The manager of mark here. (NullAllowed: lazy-loaded) */
     protected MarkHereManager _xmarkHereManager;
 
     /** The reserved title for logging test case beginning. (NullAllowed: before preparation or already showed) */
     protected String _xreservedTitle;
 
+    /** The buffer of log messages in the test, flushed at the end. (NullAllowed: when not batched) */
+    protected TestLogBuffer _xlogBuffer;
+
+    /** The event of container in the test for timing store, e.g. boot. (NullAllowed: no container) */
+    protected String _xtestTimingContainerEvent;
+
     // ===================================================================================
     //                                                                            Settings
     //                                                                            ========
     @Override
     protected void setUp() throws Exception {
+        xprepareLogBuffer();
         xreserveShowTitle();
         xprepareAccessContext();
         super.setUp();
@@ -138,6 +154,80 @@ public abstract class PlainTestCase extends TestCase {
         }
     }
 
+    // ===================================================================================
+    //                                                                         Test Timing
+    //                                                                         ===========
+    @Override
+    public void runBare() throws Throwable {
+        try {
+            xrunBareWithTiming();
+        } finally {
+            xflushLogBuffer(); // also when failure
+        }
+    }
+
+    protected void xrunBareWithTiming() throws Throwable {
+        if (!isUseTestTiming()) {
+            super.runBare();
+            return;
+        }
+        final long beforeWall = System.nanoTime();
+        final long beforeCpu = ThreadResourceMeter.currentThreadCpuNanos();
+        final long beforeAllocated = ThreadResourceMeter.currentThreadAllocatedBytes();
+        try {
+            super.runBare(); // contains set-up and tear-down
+        } finally {
+            final long wallNanos = System.nanoTime() - beforeWall;
+            final long cpuNanos = xmeterDifference(beforeCpu, ThreadResourceMeter.currentThreadCpuNanos());
+            final long allocated = xmeterDifference(beforeAllocated, ThreadResourceMeter.currentThreadAllocatedBytes());
+            final TestTimingStore store = xprepareTestTimingStore();
+            store.append(getClass().getName(), getName(), wallNanos, cpuNanos, allocated, _xtestTimingContainerEvent);
+            _xtestTimingContainerEvent = null;
+        }
+    }
+
+    /**
+     * Does it use the store of test timing? (default: by system property 'utflute.test.timing') <br />
+     * The wall time, CPU time and allocated bytes of each test are appended to the store file,
+     * and you can see slowest tests and regressions by TestTimingReport.
+     * @return The determination, true or false.
+     */
+    protected boolean isUseTestTiming() { // customize point
+        return Boolean.getBoolean(TestTimingStore.ENABLED_PROPERTY);
+    }
+
+    /**
+     * Prepare the file of the test timing store, which should be kept over runs. (default: .utflute/test-timing.dat)
+     * @return The file object of the store, the first test's one is used in the JVM. (NotNull)
+     */
+    protected File prepareTestTimingStoreFile() { // customize point
+        return new File(getProjectDir(), ".utflute/test-timing.dat"); // not in target for clean
+    }
+
+    protected TestTimingStore xprepareTestTimingStore() {
+        synchronized (PlainTestCase.class) {
+            if (_xtestTimingStore == null) {
+                final long runId = TestTimingStore.deriveRunId(); // by suite or one run per JVM
+                final File storeFile = prepareTestTimingStoreFile();
+                _xtestTimingStore = new TestTimingStore(storeFile, runId, TestTimingStore.DEFAULT_FLUSH_SIZE);
+                _xtestTimingStore.registerShutdownFlush();
+            }
+            return _xtestTimingStore;
+        }
+    }
+
+    protected long xmeterDifference(long before, long after) {
+        return before >= 0 && after >= 0 ? after - before : -1L; // minus if not supported
+    }
+
+    /**
+     * Mark the event of container in the test, e.g. boot, recycle.
+     * @param containerEvent The event of container, e.g. TestTimingRecord.CONTAINER_EVENT_BOOT. (NotNull)
+     */
+    protected void xmarkTestTimingContainerEvent(String containerEvent) {
+        _xtestTimingContainerEvent = containerEvent;
+    }
+
     // ===================================================================================
     //                                                                       Assert Helper
     //                                                                       =============
@@ -576,6 +666,9 @@ public abstract class PlainTestCase extends TestCase {
         if (msgs == null) {
             throw new IllegalArgumentException("The argument 'msgs' should not be null.");
         }
+        if (!_xlogger.isDebugEnabled()) { // before formatting (e.g. date) for performance
+            return;
+        }
         Throwable cause = null;
         final int arrayLength = msgs.length;
         if (arrayLength > 0) {
@@ -606,10 +699,19 @@ public abstract class PlainTestCase extends TestCase {
         }
         final String msg = sb.toString();
         if (_xreservedTitle != null) {
-            _xlogger.debug("");
-            _xlogger.debug(_xreservedTitle);
+            xwriteLog("", null);
+            xwriteLog(_xreservedTitle, null);
             _xreservedTitle = null;
         }
+        xwriteLog(msg, cause);
+    }
+
+    protected void xwriteLog(String msg, Throwable cause) {
+        final TestLogBuffer logBuffer = _xlogBuffer;
+        if (logBuffer != null) { // batched
+            logBuffer.append(msg, cause);
+            return;
+        }
         if (cause != null) {
             _xlogger.debug(msg, cause);
         } else {
@@ -619,6 +721,39 @@ public abstract class PlainTestCase extends TestCase {
         //_xlogger.log(PlainTestCase.class.getName(), Level.DEBUG, msg, cause);
     }
 
+    /**
+     * Does it use the batched log? (default: by system property 'utflute.log.batched') <br />
+     * The messages of log() are buffered without waiting for the appender (e.g. from many cannon-ball cars),
+     * and they are written in a batch at the end of the test or failure. (the order with other loggers is not kept)
+     * @return The determination, true or false.
+     */
+    protected boolean isUseBatchedLog() { // customize point
+        return Boolean.getBoolean(TestLogBuffer.ENABLED_PROPERTY);
+    }
+
+    /**
+     * Prepare the capacity of the batched log, the oldest messages are dropped when over.
+     * @return The max count of buffered messages in one test. (NotMinus, NotZero)
+     */
+    protected int prepareBatchedLogCapacity() { // customize point
+        return TestLogBuffer.DEFAULT_CAPACITY;
+    }
+
+    protected void xprepareLogBuffer() {
+        if (isUseBatchedLog() && _xlogger.isDebugEnabled()) {
+            _xlogBuffer = new TestLogBuffer(prepareBatchedLogCapacity());
+        }
+    }
+
+    protected void xflushLogBuffer() {
+        final TestLogBuffer logBuffer = _xlogBuffer;
+        if (logBuffer == null) {
+            return;
+        }
+        _xlogBuffer = null; // direct writing after here
+        logBuffer.flush(_xlogger);
+    }
+
     // ===================================================================================
     //                                                                         Show Helper
     //                                                                         ===========
@@ -780,6 +915,17 @@ public abstract class PlainTestCase extends TestCase {
         return null;
     }
 
+    /**
+     * Begin nested transaction by savepoint in the transaction of the test case. <br />
+     * It is lighter than new transaction (no suspending), and the roll-back targets only the savepoint,
+     * but the commit does not commit the outer transaction. (new transaction if no outer transaction)
+     * @return The resource of transaction, you can commit or roll-back it. (basically NotNull: if null, transaction unsupported)
+     */
+    protected TransactionResource beginSavepointTransaction() {
+        // should be overridden by DI container's test case
+        return beginNewTransaction();
+    }
+
     /**
      * Commit the specified transaction.
      * @param resource The resource of transaction provided by beginNewTransaction(). (NotNull)
@@ -810,7 +956,42 @@ public abstract class PlainTestCase extends TestCase {
      */
     protected void performNewTransaction(TransactionPerformer performer) {
         assertNotNull(performer);
-        final TransactionResource resource = beginNewTransaction();
+        if (isUseSavepointNestedTransaction()) {
+            xdoPerformTransaction(performer, beginSavepointTransaction());
+        } else {
+            xdoPerformTransaction(performer, beginNewTransaction());
+        }
+    }
+
+    /**
+     * Does it use savepoint (nested transaction) in performNewTransaction()? <br />
+     * It is enough for tests that only need scoped roll-back, and lighter than new transaction.
+     * @return The determination, true or false.
+     */
+    protected boolean isUseSavepointNestedTransaction() { // customize point
+        return false;
+    }
+
+    /**
+     * Perform the process in nested transaction by savepoint in the transaction of the test case. <br />
+     * The roll-back targets only the savepoint, see {@link #beginSavepointTransaction()}.
+     * <pre>
+     * performSavepointTransaction(new TransactionPerformer() {
+     *     public boolean perform() { <span style="color: #3F7E5E">// savepoint scope</span>
+     *         ...
+     *         return false; <span style="color: #3F7E5E">// true: release savepoint, false: roll-back to savepoint</span>
+     *     }
+     * });
+     * </pre>
+     * @param performer The callback for the transaction process. (NotNull)
+     * @throws TransactionPerformFailureException When the performance fails.
+     */
+    protected void performSavepointTransaction(TransactionPerformer performer) {
+        assertNotNull(performer);
+        xdoPerformTransaction(performer, beginSavepointTransaction());
+    }
+
+    protected void xdoPerformTransaction(TransactionPerformer performer, TransactionResource resource) {
         Exception cause = null;
         boolean commit = false;
         try {
@@ -874,11 +1055,12 @@ public abstract class PlainTestCase extends TestCase {
      * }, new CannonballOption().expect...);
      * @param run The callback for the run. (NotNull)
      * @param option The option for the run. (NotNull)
+     * @return The result that has drive time and throughput of the run. (NotNull)
      */
-    protected void cannonball(CannonballRun run, CannonballOption option) {
+    protected CannonballResult cannonball(CannonballRun run, CannonballOption option) {
         assertNotNull(run);
         assertNotNull(option);
-        createCannonballDirector().readyGo(run, option);
+        return createCannonballDirector().readyGo(run, option);
     }
 
     /**
@@ -894,11 +1076,15 @@ public abstract class PlainTestCase extends TestCase {
      * @return The new-created instance of the staff. (NotNull)
      */
     protected CannonballStaff xcreateCannonballStaff() {
-        return new CannonballStaff() {
+        return new CannonballSavepointStaff() {
             public TransactionResource help_beginTransaction() {
                 return beginNewTransaction();
             }
 
+            public TransactionResource help_beginSavepointTransaction() {
+                return xbeginCannonballSavepoint();
+            }
+
             public void help_prepareAccessContext() {
                 xprepareAccessContext();
             }
@@ -925,6 +1111,14 @@ public abstract class PlainTestCase extends TestCase {
         };
     }
 
+    /**
+     * Begin the savepoint in the pooled transaction of the cannon-ball car thread.
+     * @return The resource of transaction for the drive. (basically NotNull: if null, transaction unsupported)
+     */
+    protected TransactionResource xbeginCannonballSavepoint() {
+        return beginSavepointTransaction();
+    }
+
     // ===================================================================================
     //                                                                        Police Story
     //                                                                        ============
@@ -1072,17 +1266,19 @@ public abstract class PlainTestCase extends TestCase {
     /**
      * It's old style. You can use cannonball().
      * @param execution The execution of thread-fire
+     * @return The result that has histograms of execution time. (NotNull)
      */
-    protected <RESULT> void threadFire(ThreadFireExecution<RESULT> execution) {
-        threadFire(execution, new ThreadFireOption());
+    protected <RESULT> ThreadFireResult threadFire(ThreadFireExecution<RESULT> execution) {
+        return threadFire(execution, new ThreadFireOption());
     }
 
     /**
      * It's old style. You can use cannonball().
      * @param execution The execution of thread-fire
      * @param option The option of thread-fire
+     * @return The result that has histograms of execution time. (NotNull)
      */
-    protected <RESULT> void threadFire(ThreadFireExecution<RESULT> execution, ThreadFireOption option) {
+    protected <RESULT> ThreadFireResult threadFire(ThreadFireExecution<RESULT> execution, ThreadFireOption option) {
         final ThreadFireMan fireMan = new ThreadFireMan(new ThreadFireHelper() {
             public TransactionResource help_beginTransaction() {
                 return beginNewTransaction();
@@ -1112,7 +1308,7 @@ public abstract class PlainTestCase extends TestCase {
                 return ln();
             }
         });
-        fireMan.threadFire(execution, option);
+        return fireMan.threadFire(execution, option);
     }
 
     /**
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.binding;
+
+import java.lang.reflect.Field;
+
+/**
+ * The accessor of bindable field, made once per field in binding plan. <br />
+ * The default is method handles if the runtime supports them, otherwise reflection (cached accessible field),
+ * and you can plug in another one by overriding ComponentBinder#createFieldAccessor().
+ * @author jflute
+ * @since 0.4.8
+ */
+public interface BindingFieldAccessor {
+
+    /**
+     * Get the value of the field.
+     * @param target The instance that has the field. (NotNull)
+     * @return The value of the field. (NullAllowed)
+     */
+    Object getValue(Object target);
+
+    /**
+     * Set the value to the field.
+     * @param target The instance that has the field. (NotNull)
+     * @param value The value to be set. (NullAllowed)
+     */
+    void setValue(Object target, Object value);
+
+    /**
+     * @return The accessed field. (NotNull)
+     */
+    Field getField();
+}
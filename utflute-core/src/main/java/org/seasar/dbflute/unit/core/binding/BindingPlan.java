@@ -0,0 +1,182 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.binding;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.seasar.dbflute.helper.beans.DfPropertyDesc;
+
+/**
+ * The plan of component binding for the class, which has bindable fields and properties. <br />
+ * It is made once per class and binder settings by reflection, so binding only replays it.
+ * (immutable so shared by threads)
+ * @author jflute
+ * @since 0.4.8
+ */
+public class BindingPlan {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Class<?> _beanType;
+    protected final List<BindingFieldPlan> _fieldPlanList;
+    protected final List<BindingPropertyPlan> _propertyPlanList;
+    protected final Map<Field, BindingFieldPlan> _fieldPlanMap; // for binding hooks by field
+    protected final Map<String, BindingPropertyPlan> _propertyPlanMap; // for binding hooks by property name
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public BindingPlan(Class<?> beanType, List<BindingFieldPlan> fieldPlanList,
+            List<BindingPropertyPlan> propertyPlanList) {
+        _beanType = beanType;
+        _fieldPlanList = Collections.unmodifiableList(fieldPlanList);
+        _propertyPlanList = Collections.unmodifiableList(propertyPlanList);
+        final Map<Field, BindingFieldPlan> fieldPlanMap = new LinkedHashMap<Field, BindingFieldPlan>();
+        for (BindingFieldPlan fieldPlan : fieldPlanList) {
+            fieldPlanMap.put(fieldPlan.getField(), fieldPlan);
+        }
+        _fieldPlanMap = Collections.unmodifiableMap(fieldPlanMap);
+        final Map<String, BindingPropertyPlan> propertyPlanMap = new LinkedHashMap<String, BindingPropertyPlan>();
+        for (BindingPropertyPlan propertyPlan : propertyPlanList) {
+            propertyPlanMap.put(propertyPlan.getPropertyName(), propertyPlan);
+        }
+        _propertyPlanMap = Collections.unmodifiableMap(propertyPlanMap);
+    }
+
+    // ===================================================================================
+    //                                                                           Find Plan
+    //                                                                           =========
+    /**
+     * @param field The field to find its plan. (NotNull)
+     * @return The plan of the field. (NullAllowed: when the field is not bindable)
+     */
+    public BindingFieldPlan findFieldPlan(Field field) {
+        return _fieldPlanMap.get(field);
+    }
+
+    /**
+     * @param propertyName The name of property to find its plan. (NotNull)
+     * @return The plan of the property. (NullAllowed: when the property is not bindable)
+     */
+    public BindingPropertyPlan findPropertyPlan(String propertyName) {
+        return _propertyPlanMap.get(propertyName);
+    }
+
+    // ===================================================================================
+    //                                                                        Plan Element
+    //                                                                        ============
+    /**
+     * The plan of one injection point, which has passed the static determination.
+     */
+    public static class BindingElementPlan {
+
+        protected final String _propertyName;
+        protected final Class<?> _propertyType;
+        protected final Annotation _bindingAnnotation; // null allowed
+
+        public BindingElementPlan(String propertyName, Class<?> propertyType, Annotation bindingAnnotation) {
+            _propertyName = propertyName;
+            _propertyType = propertyType;
+            _bindingAnnotation = bindingAnnotation;
+        }
+
+        public String getPropertyName() {
+            return _propertyName;
+        }
+
+        public Class<?> getPropertyType() {
+            return _propertyType;
+        }
+
+        public Annotation getBindingAnnotation() {
+            return _bindingAnnotation;
+        }
+    }
+
+    public static class BindingFieldPlan extends BindingElementPlan {
+
+        protected final Field _field;
+        protected final BindingFieldAccessor _accessor; // field is already accessible
+
+        public BindingFieldPlan(Field field, BindingFieldAccessor accessor, Annotation bindingAnnotation) {
+            super(field.getName(), field.getType(), bindingAnnotation);
+            _field = field;
+            _accessor = accessor;
+        }
+
+        @Override
+        public String toString() {
+            return "field:{" + _field.getDeclaringClass().getSimpleName() + "." + _propertyName + "}";
+        }
+
+        public Field getField() {
+            return _field;
+        }
+
+        public BindingFieldAccessor getAccessor() {
+            return _accessor;
+        }
+    }
+
+    public static class BindingPropertyPlan extends BindingElementPlan {
+
+        protected final DfPropertyDesc _propertyDesc;
+
+        public BindingPropertyPlan(DfPropertyDesc propertyDesc, Annotation bindingAnnotation) {
+            super(propertyDesc.getPropertyName(), propertyDesc.getPropertyType(), bindingAnnotation);
+            _propertyDesc = propertyDesc;
+        }
+
+        @Override
+        public String toString() {
+            return "property:{" + _propertyName + "}";
+        }
+
+        public DfPropertyDesc getPropertyDesc() {
+            return _propertyDesc;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "plan:{" + _beanType.getName() + ", fields=" + _fieldPlanList + ", properties=" + _propertyPlanList
+                + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public Class<?> getBeanType() {
+        return _beanType;
+    }
+
+    public List<BindingFieldPlan> getFieldPlanList() {
+        return _fieldPlanList;
+    }
+
+    public List<BindingPropertyPlan> getPropertyPlanList() {
+        return _propertyPlanList;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.binding;
+
+/**
+ * The key of binding plan cache, the class plus binder type and settings that change the plan.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class BindingPlanKey {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Class<?> _beanType;
+    protected final Class<?> _binderType; // sub-class can override planning
+    protected final Class<?> _terminalSuperClass; // null allowed
+    protected final boolean _annotationOnlyBinding;
+    protected final boolean _byTypeInterfaceOnly;
+    protected final boolean _looseBinding;
+    protected final String _bindingRuleExp; // annotation types and their rules with determiner types
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public BindingPlanKey(Class<?> beanType, Class<?> binderType, Class<?> terminalSuperClass,
+            boolean annotationOnlyBinding, boolean byTypeInterfaceOnly, boolean looseBinding, String bindingRuleExp) {
+        _beanType = beanType;
+        _binderType = binderType;
+        _terminalSuperClass = terminalSuperClass;
+        _annotationOnlyBinding = annotationOnlyBinding;
+        _byTypeInterfaceOnly = byTypeInterfaceOnly;
+        _looseBinding = looseBinding;
+        _bindingRuleExp = bindingRuleExp;
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public int hashCode() {
+        int hash = _beanType.hashCode();
+        hash = 31 * hash + _binderType.hashCode();
+        hash = 31 * hash + (_terminalSuperClass != null ? _terminalSuperClass.hashCode() : 0);
+        hash = 31 * hash + (_annotationOnlyBinding ? 1 : 0);
+        hash = 31 * hash + (_byTypeInterfaceOnly ? 1 : 0);
+        hash = 31 * hash + (_looseBinding ? 1 : 0);
+        hash = 31 * hash + _bindingRuleExp.hashCode();
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof BindingPlanKey)) {
+            return false;
+        }
+        final BindingPlanKey other = (BindingPlanKey) obj;
+        return _beanType.equals(other._beanType) && _binderType == other._binderType
+                && _terminalSuperClass == other._terminalSuperClass
+                && _annotationOnlyBinding == other._annotationOnlyBinding
+                && _byTypeInterfaceOnly == other._byTypeInterfaceOnly && _looseBinding == other._looseBinding
+                && _bindingRuleExp.equals(other._bindingRuleExp);
+    }
+
+    @Override
+    public String toString() {
+        return "key:{" + _beanType.getName() + ", binder=" + _binderType.getName() + ", terminal="
+                + _terminalSuperClass + ", annotationOnly=" + _annotationOnlyBinding + ", interfaceOnly="
+                + _byTypeInterfaceOnly + ", loose=" + _looseBinding + ", rules=" + _bindingRuleExp + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public Class<?> getBeanType() {
+        return _beanType;
+    }
+}
@@ -31,6 +31,7 @@ public class BoundResult {
     //                                                                           Attribute
     //                                                                           =========
     protected final List<Field> _boundFieldList = new ArrayList<Field>();
+    protected final List<BindingFieldAccessor> _boundFieldAccessorList = new ArrayList<BindingFieldAccessor>();
     protected final List<DfPropertyDesc> _boundPropertyList = new ArrayList<DfPropertyDesc>();
 
     // ===================================================================================
@@ -41,7 +42,16 @@ public class BoundResult {
     }
 
     public void addBoundField(Field boundField) {
-        _boundFieldList.add(boundField);
+        addBoundField(new ReflectionFieldAccessor(boundField));
+    }
+
+    public void addBoundField(BindingFieldAccessor boundAccessor) {
+        _boundFieldList.add(boundAccessor.getField());
+        _boundFieldAccessorList.add(boundAccessor);
+    }
+
+    public List<BindingFieldAccessor> getBoundFieldAccessorList() {
+        return _boundFieldAccessorList;
     }
 
     public List<DfPropertyDesc> getBoundPropertyList() {
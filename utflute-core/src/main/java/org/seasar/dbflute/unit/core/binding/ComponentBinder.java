@@ -16,18 +16,24 @@
 package org.seasar.dbflute.unit.core.binding;
 
 import java.lang.annotation.Annotation;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
 
 import javax.annotation.Resource;
 
-import org.seasar.dbflute.exception.factory.ExceptionMessageBuilder;
 import org.seasar.dbflute.helper.beans.DfBeanDesc;
 import org.seasar.dbflute.helper.beans.DfPropertyDesc;
 import org.seasar.dbflute.helper.beans.factory.DfBeanDescFactory;
+import org.seasar.dbflute.unit.core.binding.BindingPlan.BindingFieldPlan;
+import org.seasar.dbflute.unit.core.binding.BindingPlan.BindingPropertyPlan;
 import org.seasar.dbflute.util.DfCollectionUtil;
 import org.seasar.dbflute.util.Srl;
 
@@ -37,6 +43,15 @@ import org.seasar.dbflute.util.Srl;
  */
 public class ComponentBinder {
 
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /**
+     * The cache of binding plan, weakly keyed by bean type, and the plans keyed by binder type and settings
+     * are softly held because they refer to the bean type. (shared by all binders, synchronized by itself)
+     */
+    protected static final Map<Class<?>, SoftReference<Map<BindingPlanKey, BindingPlan>>> _bindingPlanCache = new WeakHashMap<Class<?>, SoftReference<Map<BindingPlanKey, BindingPlan>>>();
+
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
@@ -49,6 +64,9 @@ public class ComponentBinder {
     protected boolean _looseBinding; // for test-case class
     protected final List<Object> _mockInstanceList = DfCollectionUtil.newArrayList();
     protected final List<Class<?>> _nonBindingTypeList = DfCollectionUtil.newArrayList();
+    protected final String _bindingRuleExp; // part of plan key, made from rule map once (with determiner types)
+    protected boolean _suppressBindingPlanCache; // for e.g. class re-definition
+    protected final boolean _fieldHelperOverridden; // true: field helper methods are called instead of accessor
 
     // ===================================================================================
     //                                                                         Constructor
@@ -57,6 +75,49 @@ public class ComponentBinder {
         _componentProvider = componentProvider;
         _bindingAnnotationProvider = bindingAnnotationProvider;
         _bindingAnnotationRuleMap = _bindingAnnotationProvider.provideBindingAnnotationRuleMap(); // cached
+        _bindingRuleExp = buildBindingRuleExp(_bindingAnnotationRuleMap);
+        _fieldHelperOverridden = isFieldHelperOverridden();
+    }
+
+    protected String buildBindingRuleExp(Map<Class<? extends Annotation>, BindingAnnotationRule> ruleMap) {
+        if (ruleMap == null) {
+            return "";
+        }
+        final Map<String, String> sortedMap = new TreeMap<String, String>();
+        for (Map.Entry<Class<? extends Annotation>, BindingAnnotationRule> entry : ruleMap.entrySet()) {
+            final BindingAnnotationRule rule = entry.getValue();
+            final String ruleExp;
+            if (rule != null) {
+                final NonBindingDeterminer determiner = rule.getNonBindingDeterminer();
+                final String typeExp = rule.isByNameOnly() ? "byName" : rule.isByTypeOnly() ? "byType" : "both";
+                ruleExp = typeExp + (determiner != null ? "/" + determiner.getClass().getName() : "");
+            } else {
+                ruleExp = "null";
+            }
+            sortedMap.put(entry.getKey().getName(), ruleExp);
+        }
+        return sortedMap.toString();
+    }
+
+    /**
+     * Is any field helper method (e.g. getFieldValue()) overridden by sub-class?
+     * If it is, binding calls the methods to keep the customization, otherwise the accessor in plan.
+     * @return The determination, true or false.
+     */
+    protected boolean isFieldHelperOverridden() {
+        for (Class<?> clazz = getClass(); !ComponentBinder.class.equals(clazz); clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                final String methodName = method.getName();
+                if (!methodName.endsWith("FieldValue") && !methodName.startsWith("throwIllegal")) {
+                    continue;
+                }
+                final Class<?>[] parameterTypes = method.getParameterTypes();
+                if (parameterTypes.length > 0 && Field.class.equals(parameterTypes[0])) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     // ===================================================================================
@@ -106,6 +167,13 @@ public class ComponentBinder {
         _nonBindingTypeList.add(nonBindingType);
     }
 
+    /**
+     * Suppress the cache of binding plan, analyzing the class by reflection every time.
+     */
+    public void suppressBindingPlanCache() {
+        _suppressBindingPlanCache = true;
+    }
+
     // ===================================================================================
     //                                                                   Component Binding
     //                                                                   =================
@@ -120,42 +188,158 @@ public class ComponentBinder {
     }
 
     // -----------------------------------------------------
-    //                                         Field Binding
-    //                                         -------------
-    protected void doBindFieldComponent(Object bean, BoundResult boundResult) {
-        for (Class<?> clazz = bean.getClass(); isBindTargetClass(clazz); clazz = clazz.getSuperclass()) {
+    //                                          Binding Plan
+    //                                          ------------
+    /**
+     * Prepare the binding plan of the class, cached by the class, binder type and binder settings. <br />
+     * The plan has only static determination (modifiers, annotations, non-binding annotations),
+     * so dynamic one (current value, mock instances, non-binding types, finding component) is at binding
+     * by the binding methods called for the planned fields and properties.
+     * @param beanType The type of bean to be bound. (NotNull)
+     * @return The plan of binding. (NotNull)
+     */
+    protected BindingPlan prepareBindingPlan(Class<?> beanType) {
+        if (_suppressBindingPlanCache) {
+            return createBindingPlan(beanType);
+        }
+        final BindingPlanKey key = createBindingPlanKey(beanType);
+        final BindingPlan cached = findCachedBindingPlan(beanType, key);
+        if (cached != null) {
+            return cached;
+        }
+        return cacheBindingPlan(beanType, key, createBindingPlan(beanType)); // outside lock, first one wins
+    }
+
+    /**
+     * Create the key of binding plan in the bean type. <br />
+     * The binder type is contained because sub-class can override planning methods,
+     * and non-binding determiners are identified by their types (not instances) in the rule expression
+     * so that binders of other test case instances share the plan.
+     * @param beanType The type of bean to be bound. (NotNull)
+     * @return The new-created key of binding plan. (NotNull)
+     */
+    protected BindingPlanKey createBindingPlanKey(Class<?> beanType) {
+        return new BindingPlanKey(beanType, getClass(), _terminalSuperClass, _annotationOnlyBinding,
+                _byTypeInterfaceOnly, _looseBinding, _bindingRuleExp);
+    }
+
+    protected BindingPlan findCachedBindingPlan(Class<?> beanType, BindingPlanKey key) {
+        synchronized (_bindingPlanCache) {
+            final SoftReference<Map<BindingPlanKey, BindingPlan>> planRef = _bindingPlanCache.get(beanType);
+            final Map<BindingPlanKey, BindingPlan> planMap = planRef != null ? planRef.get() : null;
+            return planMap != null ? planMap.get(key) : null;
+        }
+    }
+
+    protected BindingPlan cacheBindingPlan(Class<?> beanType, BindingPlanKey key, BindingPlan plan) {
+        synchronized (_bindingPlanCache) {
+            final SoftReference<Map<BindingPlanKey, BindingPlan>> planRef = _bindingPlanCache.get(beanType);
+            Map<BindingPlanKey, BindingPlan> planMap = planRef != null ? planRef.get() : null;
+            if (planMap == null) {
+                planMap = new HashMap<BindingPlanKey, BindingPlan>();
+                _bindingPlanCache.put(beanType, new SoftReference<Map<BindingPlanKey, BindingPlan>>(planMap));
+            }
+            final BindingPlan existing = planMap.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            planMap.put(key, plan);
+            return plan;
+        }
+    }
+
+    protected BindingPlan createBindingPlan(Class<?> beanType) {
+        final List<BindingFieldPlan> fieldPlanList = new ArrayList<BindingFieldPlan>();
+        for (Class<?> clazz = beanType; isBindTargetClass(clazz); clazz = clazz.getSuperclass()) {
             if (clazz == null) {
                 break;
             }
             final Field[] fields = clazz.getDeclaredFields();
             for (Field field : fields) {
-                fireFieldBinding(bean, field, boundResult);
+                final BindingFieldPlan fieldPlan = planFieldBinding(field);
+                if (fieldPlan != null) {
+                    fieldPlanList.add(fieldPlan);
+                }
             }
         }
+        final List<BindingPropertyPlan> propertyPlanList = new ArrayList<BindingPropertyPlan>();
+        final DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(beanType);
+        final List<String> proppertyNameList = beanDesc.getProppertyNameList();
+        for (String propertyName : proppertyNameList) {
+            final BindingPropertyPlan propertyPlan = planPropertyBinding(beanDesc, propertyName);
+            if (propertyPlan != null) {
+                propertyPlanList.add(propertyPlan);
+            }
+        }
+        return new BindingPlan(beanType, fieldPlanList, propertyPlanList);
     }
 
-    protected void fireFieldBinding(Object bean, Field field, BoundResult boundResult) {
+    // -----------------------------------------------------
+    //                                         Field Binding
+    //                                         -------------
+    protected void doBindFieldComponent(Object bean, BoundResult boundResult) {
+        final BindingPlan plan = prepareBindingPlan(bean.getClass());
+        for (BindingFieldPlan fieldPlan : plan.getFieldPlanList()) {
+            fireFieldBinding(bean, fieldPlan.getField(), boundResult);
+        }
+    }
+
+    protected BindingFieldPlan planFieldBinding(Field field) {
         if (!isModifiersAutoBindable(field)) {
-            return;
+            return null;
         }
         final Annotation bindingAnno = findBindingAnnotation(field); // might be null
-        if (bindingAnno != null || _looseBinding) {
-            field.setAccessible(true);
-            final Class<?> fieldType = field.getType();
-            if (isNonBindingType(fieldType)) {
-                return;
-            }
-            if (isNonBindingAnnotation(bindingAnno)) {
-                return;
-            }
-            if (getFieldValue(field, bean) != null) {
-                return;
-            }
-            final Object component = findInjectedComponent(field.getName(), fieldType, bindingAnno);
-            if (component != null) {
-                setFieldValue(field, bean, component);
-                boundResult.addBoundField(field);
-            }
+        if (bindingAnno == null && !_looseBinding) {
+            return null;
+        }
+        if (isNonBindingAnnotation(bindingAnno)) {
+            return null;
+        }
+        return new BindingFieldPlan(field, createFieldAccessor(field), bindingAnno);
+    }
+
+    /**
+     * Create the accessor of the bindable field, called once per field when planning. <br />
+     * It uses method handles if the runtime supports them, otherwise reflection.
+     * @param field The bindable field. (NotNull)
+     * @return The new-created accessor that makes the field accessible. (NotNull)
+     */
+    protected BindingFieldAccessor createFieldAccessor(Field field) {
+        final BindingFieldAccessor handleAccessor = MethodHandleFieldAccessor.createIfSupported(field);
+        return handleAccessor != null ? handleAccessor : new ReflectionFieldAccessor(field);
+    }
+
+    protected void fireFieldBinding(Object bean, Field field, BoundResult boundResult) {
+        final BindingFieldPlan fieldPlan = prepareBindingPlan(bean.getClass()).findFieldPlan(field);
+        if (fieldPlan == null) { // not bindable by static determination
+            return;
+        }
+        final Class<?> fieldType = field.getType();
+        if (isNonBindingType(fieldType)) {
+            return;
+        }
+        if (getPlannedFieldValue(fieldPlan, bean) != null) {
+            return;
+        }
+        final Object component = findInjectedComponent(field.getName(), fieldType, fieldPlan.getBindingAnnotation());
+        if (component != null) {
+            setPlannedFieldValue(fieldPlan, bean, component);
+            boundResult.addBoundField(fieldPlan.getAccessor());
+        }
+    }
+
+    protected Object getPlannedFieldValue(BindingFieldPlan fieldPlan, Object bean) {
+        if (_fieldHelperOverridden) {
+            return getFieldValue(fieldPlan.getField(), bean);
+        }
+        return fieldPlan.getAccessor().getValue(bean);
+    }
+
+    protected void setPlannedFieldValue(BindingFieldPlan fieldPlan, Object bean, Object value) {
+        if (_fieldHelperOverridden) {
+            setFieldValue(fieldPlan.getField(), bean, value);
+        } else {
+            fieldPlan.getAccessor().setValue(bean, value);
         }
     }
 
@@ -168,40 +352,53 @@ public class ComponentBinder {
     //                                      Property Binding
     //                                      ----------------
     protected void doBindPropertyComponent(Object bean, BoundResult boundResult) {
+        final BindingPlan plan = prepareBindingPlan(bean.getClass());
+        final List<BindingPropertyPlan> propertyPlanList = plan.getPropertyPlanList();
+        if (propertyPlanList.isEmpty()) {
+            return;
+        }
         final DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(bean.getClass());
-        final List<String> proppertyNameList = beanDesc.getProppertyNameList();
-        for (String propertyName : proppertyNameList) {
-            firePropertyBinding(bean, beanDesc, propertyName, boundResult);
+        for (BindingPropertyPlan propertyPlan : propertyPlanList) {
+            firePropertyBinding(bean, beanDesc, propertyPlan.getPropertyName(), boundResult);
         }
     }
 
-    protected void firePropertyBinding(Object bean, DfBeanDesc beanDesc, String propertyName, BoundResult boundResult) {
+    protected BindingPropertyPlan planPropertyBinding(DfBeanDesc beanDesc, String propertyName) {
         final DfPropertyDesc propertyDesc = beanDesc.getPropertyDesc(propertyName);
         if (!propertyDesc.isWritable()) {
-            return;
-        }
-        final Class<?> propertyType = propertyDesc.getPropertyType();
-        if (isNonBindingType(propertyType)) {
-            return;
+            return null;
         }
         final Method writeMethod = propertyDesc.getWriteMethod();
         if (writeMethod == null) { // public field
-            return; // unsupported fixedly
+            return null; // unsupported fixedly
         }
         final Annotation bindingAnno = findBindingAnnotation(writeMethod); // might be null
         if (_annotationOnlyBinding && bindingAnno == null) {
-            return; // e.g. Guice needs annotation to setter
+            return null; // e.g. Guice needs annotation to setter
         }
         if (isNonBindingAnnotation(bindingAnno)) {
-            return;
+            return null;
         }
         if (!isBindTargetClass(writeMethod.getDeclaringClass())) {
+            return null;
+        }
+        return new BindingPropertyPlan(propertyDesc, bindingAnno);
+    }
+
+    protected void firePropertyBinding(Object bean, DfBeanDesc beanDesc, String propertyName, BoundResult boundResult) {
+        final BindingPropertyPlan propertyPlan = prepareBindingPlan(bean.getClass()).findPropertyPlan(propertyName);
+        if (propertyPlan == null) { // not bindable by static determination
+            return;
+        }
+        final DfPropertyDesc propertyDesc = beanDesc.getPropertyDesc(propertyName);
+        final Class<?> propertyType = propertyDesc.getPropertyType();
+        if (isNonBindingType(propertyType)) {
             return;
         }
         if (propertyDesc.isReadable() && propertyDesc.getValue(bean) != null) {
             return;
         }
-        final Object component = findInjectedComponent(propertyName, propertyType, bindingAnno);
+        final Object component = findInjectedComponent(propertyName, propertyType, propertyPlan.getBindingAnnotation());
         if (component == null) {
             return;
         }
@@ -357,18 +554,45 @@ public class ComponentBinder {
         return Srl.is_NotNull_and_NotTrimmedEmpty(specifiedName) ? specifiedName : null;
     }
 
+    // -----------------------------------------------------
+    //                                            Plan Cache
+    //                                            ----------
+    /**
+     * Clear the cache of binding plan, e.g. when classes are re-defined by hot deploy.
+     */
+    public static void clearBindingPlanCache() {
+        synchronized (_bindingPlanCache) {
+            _bindingPlanCache.clear();
+        }
+    }
+
+    /**
+     * @return The count of cached binding plans, not counting plans collected by GC.
+     */
+    public static int getBindingPlanCacheSize() {
+        synchronized (_bindingPlanCache) {
+            int size = 0;
+            for (SoftReference<Map<BindingPlanKey, BindingPlan>> planRef : _bindingPlanCache.values()) {
+                final Map<BindingPlanKey, BindingPlan> planMap = planRef.get();
+                size += planMap != null ? planMap.size() : 0;
+            }
+            return size;
+        }
+    }
+
     // -----------------------------------------------------
     //                                       Release Binding
     //                                       ---------------
     public void releaseBoundComponent(Object bean, BoundResult boundResult) {
-        final List<Field> boundFieldList = boundResult.getBoundFieldList();
-        for (Field field : boundFieldList) {
+        final List<BindingFieldAccessor> boundAccessorList = boundResult.getBoundFieldAccessorList();
+        for (BindingFieldAccessor accessor : boundAccessorList) {
             try {
-                field.set(bean, null);
+                accessor.setValue(bean, null);
             } catch (Exception ignored) {
             }
         }
-        boundFieldList.clear();
+        boundAccessorList.clear();
+        boundResult.getBoundFieldList().clear();
         final List<DfPropertyDesc> boundPropertyList = boundResult.getBoundPropertyList();
         for (DfPropertyDesc propertyDesc : boundPropertyList) {
             try {
@@ -382,6 +606,8 @@ public class ComponentBinder {
     // ===================================================================================
     //                                                                        Field Helper
     //                                                                        ============
+    // methods here are called in binding only when some of them are overridden
+    // (otherwise the accessor in binding plan is used, which throws the same exceptions)
     protected Object getFieldValue(Field field, Object target) {
         try {
             return field.get(target);
@@ -395,25 +621,11 @@ public class ComponentBinder {
     }
 
     protected void throwIllegalArgumentFieldGet(Field field, Object target, IllegalArgumentException e) {
-        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
-        br.addNotice("Illegal argument to get the field.");
-        br.addItem("Field");
-        br.addElement(field);
-        br.addItem("Target");
-        br.addElement(target);
-        final String msg = br.buildExceptionMessage();
-        throw new IllegalArgumentException(msg, e);
+        new ReflectionFieldAccessor(field).throwIllegalArgumentFieldGet(target, e);
     }
 
     protected void throwIllegalAccessFieldGet(Field field, Object target, IllegalAccessException e) {
-        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
-        br.addNotice("Illegal access to get the field.");
-        br.addItem("Field");
-        br.addElement(field);
-        br.addItem("Target");
-        br.addElement(target);
-        final String msg = br.buildExceptionMessage();
-        throw new IllegalStateException(msg, e);
+        new ReflectionFieldAccessor(field).throwIllegalAccessFieldGet(target, e);
     }
 
     protected void setFieldValue(Field field, Object target, Object value) {
@@ -427,31 +639,11 @@ public class ComponentBinder {
     }
 
     protected void throwIllegalArgumentFieldSet(Field field, Object target, Object value, IllegalArgumentException e) {
-        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
-        br.addNotice("Illegal argument to set the field.");
-        br.addItem("Field");
-        br.addElement(field);
-        br.addItem("Target");
-        br.addElement(target);
-        br.addItem("Value");
-        br.addElement(value != null ? value.getClass() : null);
-        br.addElement(value);
-        final String msg = br.buildExceptionMessage();
-        throw new IllegalArgumentException(msg, e);
+        new ReflectionFieldAccessor(field).throwIllegalArgumentFieldSet(target, value, e);
     }
 
     protected void throwIllegalAccessFieldSet(Field field, Object target, Object value, IllegalAccessException e) {
-        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
-        br.addNotice("Illegal access to set the field.");
-        br.addItem("Field");
-        br.addElement(field);
-        br.addItem("Target");
-        br.addElement(target);
-        br.addItem("Value");
-        br.addElement(value != null ? value.getClass() : null);
-        br.addElement(value);
-        final String msg = br.buildExceptionMessage();
-        throw new IllegalStateException(msg, e);
+        new ReflectionFieldAccessor(field).throwIllegalAccessFieldSet(target, value, e);
     }
 
     // ===================================================================================
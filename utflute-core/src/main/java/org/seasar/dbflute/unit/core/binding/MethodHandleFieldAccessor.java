@@ -0,0 +1,192 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.binding;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * The field accessor by method handles, bound once per field as interface instances. <br />
+ * The API is called by reflection because UTFlute is compiled for old Java,
+ * so the factory returns null on the runtime that does not support method handles.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MethodHandleFieldAccessor extends ReflectionFieldAccessor {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /** The method of method handles to get public lookup. (NullAllowed: not supported) */
+    protected static final Method _publicLookupMethod;
+
+    /** The method of lookup to make getter handle. (NullAllowed: not supported) */
+    protected static final Method _unreflectGetterMethod;
+
+    /** The method of lookup to make setter handle. (NullAllowed: not supported) */
+    protected static final Method _unreflectSetterMethod;
+
+    /** The method of method type to create the type. (NullAllowed: not supported) */
+    protected static final Method _methodTypeMethod;
+
+    /** The method of method handle to adapt the type. (NullAllowed: not supported) */
+    protected static final Method _asTypeMethod;
+
+    /** The method of method handle proxies to make interface instance. (NullAllowed: not supported) */
+    protected static final Method _asInterfaceInstanceMethod;
+    static {
+        Method publicLookupMethod = null;
+        Method unreflectGetterMethod = null;
+        Method unreflectSetterMethod = null;
+        Method methodTypeMethod = null;
+        Method asTypeMethod = null;
+        Method asInterfaceInstanceMethod = null;
+        try {
+            final Class<?> handlesType = Class.forName("java.lang.invoke.MethodHandles");
+            final Class<?> lookupType = Class.forName("java.lang.invoke.MethodHandles$Lookup");
+            final Class<?> handleType = Class.forName("java.lang.invoke.MethodHandle");
+            final Class<?> methodType = Class.forName("java.lang.invoke.MethodType");
+            final Class<?> proxiesType = Class.forName("java.lang.invoke.MethodHandleProxies");
+            publicLookupMethod = handlesType.getMethod("publicLookup", (Class<?>[]) null);
+            unreflectGetterMethod = lookupType.getMethod("unreflectGetter", Field.class);
+            unreflectSetterMethod = lookupType.getMethod("unreflectSetter", Field.class);
+            methodTypeMethod = methodType.getMethod("methodType", Class.class, Class[].class);
+            asTypeMethod = handleType.getMethod("asType", methodType);
+            asInterfaceInstanceMethod = proxiesType.getMethod("asInterfaceInstance", Class.class, handleType);
+        } catch (ClassNotFoundException ignored) { // old runtime
+        } catch (NoSuchMethodException ignored) {
+        } catch (SecurityException ignored) {
+        }
+        final boolean supported = asInterfaceInstanceMethod != null; // the last one
+        _publicLookupMethod = supported ? publicLookupMethod : null;
+        _unreflectGetterMethod = supported ? unreflectGetterMethod : null;
+        _unreflectSetterMethod = supported ? unreflectSetterMethod : null;
+        _methodTypeMethod = supported ? methodTypeMethod : null;
+        _asTypeMethod = supported ? asTypeMethod : null;
+        _asInterfaceInstanceMethod = asInterfaceInstanceMethod;
+    }
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final FieldGetter _getter;
+    protected final FieldSetter _setter;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    protected MethodHandleFieldAccessor(Field field, FieldGetter getter, FieldSetter setter) {
+        super(field);
+        _getter = getter;
+        _setter = setter;
+    }
+
+    // ===================================================================================
+    //                                                                             Factory
+    //                                                                             =======
+    /**
+     * Does the runtime support method handles?
+     * @return The determination, true or false.
+     */
+    public static boolean isSupported() {
+        return _asInterfaceInstanceMethod != null;
+    }
+
+    /**
+     * Create the accessor of the field by method handles.
+     * @param field The field to be accessed, made accessible here. (NotNull)
+     * @return The new-created accessor. (NullAllowed: when not supported or the field cannot be handled)
+     */
+    public static MethodHandleFieldAccessor createIfSupported(Field field) {
+        if (field == null) {
+            String msg = "The argument 'field' should not be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (!isSupported()) {
+            return null;
+        }
+        if (!field.isAccessible()) {
+            field.setAccessible(true); // unreflect without access check
+        }
+        try {
+            final Object lookup = _publicLookupMethod.invoke(null, (Object[]) null);
+            final Object getterType = _methodTypeMethod.invoke(null, Object.class, new Class<?>[] { Object.class });
+            final Object setterType = _methodTypeMethod.invoke(null, void.class, new Class<?>[] { Object.class,
+                    Object.class });
+            final Object getterHandle = _asTypeMethod.invoke(_unreflectGetterMethod.invoke(lookup, field), getterType);
+            final Object setterHandle = _asTypeMethod.invoke(_unreflectSetterMethod.invoke(lookup, field), setterType);
+            final FieldGetter getter = (FieldGetter) _asInterfaceInstanceMethod.invoke(null, FieldGetter.class,
+                    getterHandle);
+            final FieldSetter setter = (FieldSetter) _asInterfaceInstanceMethod.invoke(null, FieldSetter.class,
+                    setterHandle);
+            return new MethodHandleFieldAccessor(field, getter, setter);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) { // e.g. final field
+            return null;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Access
+    //                                                                              ======
+    @Override
+    public Object getValue(Object target) {
+        try {
+            return _getter.get(target);
+        } catch (ClassCastException e) { // not instance of declaring class
+            throwIllegalArgumentFieldGet(target, new IllegalArgumentException(e));
+            return null; // unreachable
+        }
+    }
+
+    @Override
+    public void setValue(Object target, Object value) {
+        try {
+            _setter.set(target, value);
+        } catch (ClassCastException e) { // not instance of declaring class or field type
+            throwIllegalArgumentFieldSet(target, value, new IllegalArgumentException(e));
+        }
+    }
+
+    // ===================================================================================
+    //                                                                     Handle Function
+    //                                                                     ===============
+    /**
+     * The getter bound to the method handle of the field. (public for method handle proxies)
+     */
+    public static interface FieldGetter {
+
+        Object get(Object target);
+    }
+
+    /**
+     * The setter bound to the method handle of the field. (public for method handle proxies)
+     */
+    public static interface FieldSetter {
+
+        void set(Object target, Object value);
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "methodHandle:{" + _field + "}";
+    }
+}
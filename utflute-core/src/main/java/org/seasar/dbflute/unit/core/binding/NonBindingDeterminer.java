@@ -24,7 +24,8 @@ import java.lang.annotation.Annotation;
 public interface NonBindingDeterminer {
 
     /**
-     * Should be the annotation treated as non-binding?
+     * Should be the annotation treated as non-binding? <br />
+     * The result is cached in binding plan by the class of determiner, so it should depend only on the annotation.
      * @param bindingAnno The annotation instance for binding to determine. (NotNull)
      * @return The determination, true or false.
      */
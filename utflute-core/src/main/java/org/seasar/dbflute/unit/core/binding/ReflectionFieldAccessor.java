@@ -0,0 +1,141 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.binding;
+
+import java.lang.reflect.Field;
+
+import org.seasar.dbflute.exception.factory.ExceptionMessageBuilder;
+
+/**
+ * The field accessor by reflection, which can be used on all platforms. <br />
+ * The field is made accessible only once when the accessor is created.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ReflectionFieldAccessor implements BindingFieldAccessor {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Field _field;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public ReflectionFieldAccessor(Field field) {
+        if (field == null) {
+            String msg = "The argument 'field' should not be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        _field = field;
+        if (!field.isAccessible()) {
+            field.setAccessible(true);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Access
+    //                                                                              ======
+    public Object getValue(Object target) {
+        try {
+            return _field.get(target);
+        } catch (IllegalArgumentException e) {
+            throwIllegalArgumentFieldGet(target, e);
+            return null; // unreachable
+        } catch (IllegalAccessException e) {
+            throwIllegalAccessFieldGet(target, e);
+            return null; // unreachable
+        }
+    }
+
+    public void setValue(Object target, Object value) {
+        try {
+            _field.set(target, value);
+        } catch (IllegalArgumentException e) {
+            throwIllegalArgumentFieldSet(target, value, e);
+        } catch (IllegalAccessException e) {
+            throwIllegalAccessFieldSet(target, value, e);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                    Exception Helper
+    //                                                                    ================
+    protected void throwIllegalArgumentFieldGet(Object target, IllegalArgumentException e) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Illegal argument to get the field.");
+        br.addItem("Field");
+        br.addElement(_field);
+        br.addItem("Target");
+        br.addElement(target);
+        final String msg = br.buildExceptionMessage();
+        throw new IllegalArgumentException(msg, e);
+    }
+
+    protected void throwIllegalAccessFieldGet(Object target, IllegalAccessException e) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Illegal access to get the field.");
+        br.addItem("Field");
+        br.addElement(_field);
+        br.addItem("Target");
+        br.addElement(target);
+        final String msg = br.buildExceptionMessage();
+        throw new IllegalStateException(msg, e);
+    }
+
+    protected void throwIllegalArgumentFieldSet(Object target, Object value, IllegalArgumentException e) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Illegal argument to set the field.");
+        br.addItem("Field");
+        br.addElement(_field);
+        br.addItem("Target");
+        br.addElement(target);
+        br.addItem("Value");
+        br.addElement(value != null ? value.getClass() : null);
+        br.addElement(value);
+        final String msg = br.buildExceptionMessage();
+        throw new IllegalArgumentException(msg, e);
+    }
+
+    protected void throwIllegalAccessFieldSet(Object target, Object value, IllegalAccessException e) {
+        final ExceptionMessageBuilder br = new ExceptionMessageBuilder();
+        br.addNotice("Illegal access to set the field.");
+        br.addItem("Field");
+        br.addElement(_field);
+        br.addItem("Target");
+        br.addElement(target);
+        br.addItem("Value");
+        br.addElement(value != null ? value.getClass() : null);
+        br.addElement(value);
+        final String msg = br.buildExceptionMessage();
+        throw new IllegalStateException(msg, e);
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "reflection:{" + _field + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public Field getField() {
+        return _field;
+    }
+}
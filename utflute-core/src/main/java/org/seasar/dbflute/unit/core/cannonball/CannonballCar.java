@@ -114,11 +114,16 @@ public class CannonballCar {
             dragon = createDragon(watchingStatus);
             dragon.releaseIfOvertime(getFallbackOvertimeLimit()); // fall-back watch
             executeProjectA(projectA, dragon); // watching thread release waiting cars when exception
-            synchronized (watchingStatus) { // with watching thread
+            watchingStatus.lock(); // with watching thread
+            try {
                 watchingStatus.markDone(); // to suppress unnecessary forcedly count down
+            } finally {
+                watchingStatus.unlock();
             }
+            dragon.closeWatcher(); // cancel the deadlines
         }
-        synchronized (watchingStatus) { // with watching thread
+        watchingStatus.lock(); // with watching thread
+        try {
             final boolean forcedly = watchingStatus.containsForcedly();
             if (!forcedly) { // except forcedly car
                 _ourLatch.waitForProjectA(projectAKey, entryNumber, getEntryNumber());
@@ -139,6 +144,8 @@ public class CannonballCar {
                     }
                 }
             }
+        } finally {
+            watchingStatus.unlock();
         }
         teaBreak(100); // wait for broken car handling when assertion failure (for safety but inexact)
     }
@@ -16,17 +16,28 @@
 package org.seasar.dbflute.unit.core.cannonball;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.AssertionFailedError;
 
 import org.seasar.dbflute.exception.factory.ExceptionMessageBuilder;
+import org.seasar.dbflute.unit.core.cannonball.CannonballLoadProfile.CannonballLoadStage;
+import org.seasar.dbflute.unit.core.thread.VirtualThreadExecutorFactory;
 import org.seasar.dbflute.unit.core.transaction.TransactionResource;
 import org.seasar.dbflute.util.Srl;
 
@@ -41,6 +52,9 @@ public class CannonballDirector {
     //                                                                           =========
     protected final CannonballStaff _cannonballHelper;
 
+    /** The map of pooled transaction per car thread. (NullAllowed: when not pooled, or out of race) */
+    protected volatile ConcurrentMap<Thread, TransactionResource> _pooledTransactionMap;
+
     // ===================================================================================
     //                                                                         Constructor
     //                                                                         ===========
@@ -51,7 +65,13 @@ public class CannonballDirector {
     // ===================================================================================
     //                                                                         Thread Fire
     //                                                                         ===========
-    public void readyGo(CannonballRun execution, CannonballOption option) {
+    /**
+     * Ready go the cars and wait for all cars reaching the goal.
+     * @param execution The callback for the run. (NotNull)
+     * @param option The option of cannon-ball. (NotNull)
+     * @return The result that has drive time and throughput of the race. (NotNull)
+     */
+    public CannonballResult readyGo(CannonballRun execution, CannonballOption option) {
         if (execution == null) {
             String msg = "The argument 'execution' should be not null.";
             throw new IllegalArgumentException(msg);
@@ -61,17 +81,26 @@ public class CannonballDirector {
             throw new IllegalArgumentException(msg);
         }
         final List<CannonballRetireException> retireExList = new ArrayList<CannonballRetireException>();
+        final CannonballResult cannonballResult = createCannonballResult();
+        final ExecutorService service = createExecutorService(option); // shared by all repeats
+        preparePooledTransaction(option, service);
         try {
             try {
-                for (int i = 0; i < option.getRepeatCount(); i++) {
-                    final List<Object> resultList = doThreadFire(execution, option);
-                    for (Object result : resultList) {
-                        if (result instanceof CannonballRetireException) {
-                            retireExList.add((CannonballRetireException) result);
+                if (option.hasLoadProfile()) {
+                    retireExList.addAll(doLoadFire(execution, option, service, cannonballResult));
+                } else {
+                    for (int i = 0; i < option.getRepeatCount(); i++) {
+                        final List<Object> resultList = doThreadFire(execution, option, service, cannonballResult);
+                        for (Object result : resultList) {
+                            if (result instanceof CannonballRetireException) {
+                                retireExList.add((CannonballRetireException) result);
+                            }
                         }
                     }
                 }
             } finally {
+                closePooledTransaction(option, service);
+                shutdownExecutorService(service);
                 final CannonballFinalizer finalizer = option.getFinalizer();
                 if (finalizer != null) {
                     try {
@@ -85,16 +114,22 @@ public class CannonballDirector {
         } catch (CannonballRetireException e) {
             retireExList.add(e);
         }
+        log(cannonballResult.buildSummary(ln()));
         if (option.isCheckExpectedExceptionAny()) {
             handleExpectedExceptionAny(option, retireExList);
         } else {
             handleNormalException(retireExList);
         }
+        return cannonballResult;
     }
 
-    protected List<Object> doThreadFire(CannonballRun execution, CannonballOption option) {
+    protected CannonballResult createCannonballResult() {
+        return new CannonballResult();
+    }
+
+    protected List<Object> doThreadFire(CannonballRun execution, CannonballOption option, ExecutorService service,
+            CannonballResult cannonballResult) {
         // ## Arrange ##
-        final ExecutorService service = Executors.newCachedThreadPool();
         final int threadCount = option.getThreadCount();
         final CountDownLatch ready = new CountDownLatch(threadCount);
         final CountDownLatch start = new CountDownLatch(1);
@@ -106,7 +141,7 @@ public class CannonballDirector {
         for (int i = 0; i < threadCount; i++) { // basically synchronized with parameter size
             final int entryNumber = i + 1;
             final Callable<Object> callable = createCallable(execution, option, ready, start, goal, ourLatch,
-                    entryNumber, lockObj, logger);
+                    entryNumber, lockObj, logger, cannonballResult);
             final Future<Object> future = service.submit(callable);
             futureList.add(future);
         }
@@ -115,6 +150,7 @@ public class CannonballDirector {
         log("/- - - - - - - - - - - - - - - - - - - - - -");
         log("                                 Cannon-ball");
         log("                                 - - - - - -");
+        final long beginNanos = System.nanoTime();
         start.countDown();
         try {
             // wait until all threads are finished
@@ -123,6 +159,7 @@ public class CannonballDirector {
             String msg = "goal.await() was interrupted!";
             throw new IllegalStateException(msg, e);
         }
+        cannonballResult.recordLap(threadCount, System.nanoTime() - beginNanos);
         log("- - - - - - - - -/ *All threads were fired");
 
         // ## Assert ##
@@ -131,6 +168,272 @@ public class CannonballDirector {
         return resultList;
     }
 
+    // -----------------------------------------------------
+    //                                          Load Profile
+    //                                          ------------
+    /**
+     * Drive the cars by the load profile until all stages are over. <br />
+     * Concurrency stages are driven by slot threads, each slot drives cars repeatedly while
+     * its slot number is within the concurrency at the time. Rate stages are driven by this thread,
+     * which starts cars at the fixed interval without waiting for completion (open loop).
+     * @param execution The callback for the run. (NotNull)
+     * @param option The option of cannon-ball that has load profile. (NotNull)
+     * @param service The executor service for the cars. (NotNull)
+     * @param cannonballResult The result to record drive time per time bucket. (NotNull)
+     * @return The list of retire exception from the cars. (NotNull, EmptyAllowed)
+     */
+    protected List<CannonballRetireException> doLoadFire(CannonballRun execution, CannonballOption option,
+            ExecutorService service, CannonballResult cannonballResult) {
+        // ## Arrange ##
+        final CannonballLoadProfile profile = option.getLoadProfile();
+        final CannonballLogger logger = createLogger();
+        final Object lockObj = new Object();
+        final List<CannonballRetireException> retireExList = Collections
+                .synchronizedList(new ArrayList<CannonballRetireException>());
+        final List<Future<?>> futureList = new ArrayList<Future<?>>();
+        final int slotCount = profile.getMaxConcurrency();
+
+        // ## Act ##
+        log("/- - - - - - - - - - - - - - - - - - - - - -");
+        log("                                 Cannon-ball");
+        log("                                 - - - - - -");
+        log("...Driving cars by the load profile: " + profile.getStageList());
+        final long beginNanos = System.nanoTime();
+        for (int i = 0; i < slotCount; i++) {
+            final int slotNumber = i + 1;
+            final Runnable slot = createLoadSlot(execution, option, slotNumber, beginNanos, lockObj, logger,
+                    cannonballResult, retireExList);
+            futureList.add(service.submit(slot));
+        }
+        if (profile.hasRateStage()) {
+            fireRateStage(execution, option, service, beginNanos, slotCount, lockObj, logger, cannonballResult,
+                    retireExList, futureList);
+        }
+        for (Future<?> future : futureList) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                String msg = "future.get() was interrupted!";
+                throw new IllegalStateException(msg, e);
+            } catch (ExecutionException continued) {
+                String msg = "Failed to fire the thread: " + future;
+                retireExList.add(new CannonballRetireException(msg, continued.getCause()));
+            }
+        }
+        cannonballResult.recordLap((int) cannonballResult.getRunCount(), System.nanoTime() - beginNanos);
+        log("- - - - - - - - -/ *All load stages were over");
+        return retireExList;
+    }
+
+    protected void fireRateStage(final CannonballRun execution, final CannonballOption option,
+            ExecutorService service, final long beginNanos, int slotCount, final Object lockObj,
+            final CannonballLogger logger, final CannonballResult cannonballResult,
+            final List<CannonballRetireException> retireExList, List<Future<?>> futureList) {
+        final CannonballLoadProfile profile = option.getLoadProfile();
+        int arrivalNumber = slotCount; // rate cars are numbered after slots
+        CannonballLoadStage currentStage = null;
+        long nextArrivalNanos = 0L;
+        while (true) {
+            final long now = System.nanoTime();
+            final long elapsedMillis = toElapsedMillis(beginNanos, now);
+            final CannonballLoadStage stage = profile.findStage(elapsedMillis);
+            if (stage == null) { // all stages are over
+                return;
+            }
+            if (!stage.isRateStage()) { // slots are driving
+                if (!sleepLoadIdle(Math.min(stage.getEndMillis() - elapsedMillis, getLoadIdleMillis()))) {
+                    return;
+                }
+                continue;
+            }
+            if (stage != currentStage) { // first arrival of the stage
+                currentStage = stage;
+                nextArrivalNanos = now;
+            }
+            final long waitNanos = nextArrivalNanos - now;
+            if (waitNanos > 0) {
+                if (!sleepLoadIdle(Math.min(TimeUnit.NANOSECONDS.toMillis(waitNanos), getLoadIdleMillis()))) {
+                    return;
+                }
+                continue;
+            }
+            final int entryNumber = ++arrivalNumber;
+            futureList.add(service.submit(new Runnable() {
+                public void run() {
+                    driveLoadCar(execution, option, entryNumber, beginNanos, lockObj, logger, cannonballResult,
+                            retireExList);
+                }
+            }));
+            nextArrivalNanos += (long) (1000000000.0 / stage.getCarsPerSecond()); // fixed schedule, no drift
+        }
+    }
+
+    protected Runnable createLoadSlot(final CannonballRun execution, final CannonballOption option,
+            final int slotNumber, final long beginNanos, final Object lockObj, final CannonballLogger logger,
+            final CannonballResult cannonballResult, final List<CannonballRetireException> retireExList) {
+        final CannonballLoadProfile profile = option.getLoadProfile();
+        return new Runnable() {
+            public void run() { // each slot thread here
+                while (true) {
+                    final long elapsedMillis = toElapsedMillis(beginNanos, System.nanoTime());
+                    final CannonballLoadStage stage = profile.findStage(elapsedMillis);
+                    if (stage == null) { // all stages are over
+                        return;
+                    }
+                    if (stage.isRateStage() || slotNumber > stage.getConcurrency(elapsedMillis)) {
+                        if (!sleepLoadIdle(getLoadIdleMillis())) {
+                            return;
+                        }
+                        continue;
+                    }
+                    driveLoadCar(execution, option, slotNumber, beginNanos, lockObj, logger, cannonballResult,
+                            retireExList);
+                }
+            }
+        };
+    }
+
+    protected void driveLoadCar(CannonballRun execution, CannonballOption option, int entryNumber, long beginNanos,
+            Object lockObj, CannonballLogger logger, CannonballResult cannonballResult,
+            List<CannonballRetireException> retireExList) {
+        final long threadId = Thread.currentThread().getId();
+        final CannonballLatch ownLatch = new CannonballLatch(1, logger); // cars do not wait for each other
+        final CannonballCar car = new CannonballCar(threadId, ownLatch, entryNumber, lockObj, Integer.MAX_VALUE, logger);
+        prepareAccessContext();
+        TransactionResource txRes = null;
+        boolean failure = false;
+        final long driveNanos = System.nanoTime();
+        try {
+            if (!option.isSuppressTransaction()) {
+                txRes = beginTransaction();
+            }
+            execution.drive(car);
+        } catch (RuntimeException e) {
+            failure = true;
+            addLoadRetireException(retireExList, entryNumber, e);
+        } catch (Error e) {
+            failure = true;
+            addLoadRetireException(retireExList, entryNumber, e);
+        } finally {
+            final long finishedNanos = System.nanoTime();
+            final long bucketMillis = option.getLoadProfile().getBucketMillis();
+            final long finishedMillis = toElapsedMillis(beginNanos, finishedNanos);
+            cannonballResult.recordLoadDrive(finishedMillis, bucketMillis, finishedNanos - driveNanos, failure);
+            if (txRes != null) {
+                try {
+                    if (!failure && option.isCommitTransaction()) {
+                        txRes.commit();
+                    } else {
+                        txRes.rollback();
+                    }
+                } catch (Exception continued) {
+                    log("*Failed to commit or roll-back: " + continued.getMessage());
+                }
+            }
+            clearAccessContext();
+        }
+    }
+
+    protected void addLoadRetireException(List<CannonballRetireException> retireExList, int entryNumber,
+            Throwable cause) {
+        if (retireExList.size() >= getLoadRetireExceptionLimit()) { // failures are counted in result anyway
+            return;
+        }
+        String msg = "Failed to drive the car in load profile: entryNumber=" + entryNumber;
+        retireExList.add(new CannonballRetireException(msg, cause));
+    }
+
+    protected int getLoadRetireExceptionLimit() {
+        return 100;
+    }
+
+    protected long getLoadIdleMillis() {
+        return 10L;
+    }
+
+    protected long toElapsedMillis(long beginNanos, long currentNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(currentNanos - beginNanos);
+    }
+
+    protected boolean sleepLoadIdle(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) { // e.g. shutdown now
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                      Executor Service
+    //                                      ----------------
+    /**
+     * Create the executor service for the cars, which is reused through all repeats. <br />
+     * The threads are started here so that thread creation is outside the race.
+     * (except virtual threads, which are created per car but cheap)
+     * @param option The option of cannon-ball. (NotNull)
+     * @return The new-created executor service that has already-started threads. (NotNull)
+     */
+    protected ExecutorService createExecutorService(CannonballOption option) {
+        if (option.isVirtualThreads()) {
+            final ExecutorService virtualService = VirtualThreadExecutorFactory.createIfSupported();
+            if (virtualService != null) {
+                return virtualService;
+            }
+            log("*Virtual threads are not supported in the runtime so use platform threads: " + getJavaVersion());
+        }
+        final ThreadPoolExecutor executor;
+        if (option.hasLoadProfile()) { // slots of concurrency stages are kept, rate stages may add threads
+            final int slotCount = option.getLoadProfile().getMaxConcurrency();
+            executor = new ThreadPoolExecutor(slotCount, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), createThreadFactory());
+        } else {
+            final int threadCount = option.getThreadCount();
+            executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), createThreadFactory());
+        }
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+
+    protected ThreadFactory createThreadFactory() {
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        final AtomicInteger carNumber = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = defaultFactory.newThread(runnable);
+                thread.setName("cannonball-car-" + carNumber.incrementAndGet());
+                thread.setDaemon(true); // not to block JVM exit even if a car is left alone
+                return thread;
+            }
+        };
+    }
+
+    protected void shutdownExecutorService(ExecutorService service) {
+        service.shutdown(); // all cars have already reached the goal here
+        try {
+            if (!service.awaitTermination(getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                log("*The cannonball threads were not terminated in time so interrupt them: " + service);
+                service.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            service.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected long getShutdownTimeoutMillis() {
+        return 3000L;
+    }
+
+    protected String getJavaVersion() {
+        return System.getProperty("java.version");
+    }
+
     protected CannonballLogger createLogger() {
         return new CannonballLogger() {
             public void log(Object... msgs) {
@@ -186,7 +489,8 @@ public class CannonballDirector {
     //                                                                            ========
     protected Callable<Object> createCallable(final CannonballRun run, final CannonballOption option,
             final CountDownLatch ready, final CountDownLatch start, final CountDownLatch goal,
-            final CannonballLatch ourLatch, final int entryNumber, final Object lockObj, final CannonballLogger logger) {
+            final CannonballLatch ourLatch, final int entryNumber, final Object lockObj, final CannonballLogger logger,
+            final CannonballResult cannonballResult) {
         return new Callable<Object>() {
             public Object call() { // each thread here
                 final long threadId = Thread.currentThread().getId();
@@ -203,9 +507,10 @@ public class CannonballDirector {
                     prepareAccessContext();
                     TransactionResource txRes = null;
                     if (!option.isSuppressTransaction()) {
-                        txRes = beginTransaction();
+                        txRes = beginCarTransaction();
                     }
                     Object result = null;
+                    final long beginNanos = System.nanoTime();
                     try {
                         run.drive(car);
                         result = car.getRunResult();
@@ -216,6 +521,7 @@ public class CannonballDirector {
                         failure = true;
                         throw e;
                     } finally {
+                        cannonballResult.recordDrive(entryNumber, System.nanoTime() - beginNanos, failure);
                         if (txRes != null) {
                             try {
                                 if (!failure && option.isCommitTransaction()) {
@@ -251,6 +557,105 @@ public class CannonballDirector {
         return new CannonballCar(threadId, ourLatch, entryNumber, lockObj, countOfEntry, logger);
     }
 
+    // -----------------------------------------------------
+    //                                    Pooled Transaction
+    //                                    ------------------
+    protected void preparePooledTransaction(CannonballOption option, ExecutorService service) {
+        if (!option.isPooledTransaction() || option.isSuppressTransaction()) {
+            return;
+        }
+        if (option.hasLoadProfile() || !(service instanceof ThreadPoolExecutor)) { // no fixed car threads
+            log("*The pooled transaction is ignored because no fixed car threads (load profile or virtual threads)");
+            return;
+        }
+        if (!(_cannonballHelper instanceof CannonballSavepointStaff)) {
+            log("*The pooled transaction is ignored because the staff cannot begin savepoint transaction");
+            return;
+        }
+        _pooledTransactionMap = new ConcurrentHashMap<Thread, TransactionResource>();
+    }
+
+    /**
+     * Begin the transaction for the drive of the car, on the car thread. <br />
+     * If pooled, the savepoint in the pooled transaction of the thread. (the pool begins at the first drive)
+     * @return The resource of transaction for the drive. (NullAllowed: if transaction unsupported)
+     */
+    protected TransactionResource beginCarTransaction() {
+        final ConcurrentMap<Thread, TransactionResource> pooledMap = _pooledTransactionMap;
+        if (pooledMap == null) {
+            return beginTransaction();
+        }
+        final Thread currentThread = Thread.currentThread();
+        if (!pooledMap.containsKey(currentThread)) {
+            final TransactionResource pooled = beginTransaction();
+            if (pooled == null) { // transaction unsupported
+                return null;
+            }
+            pooledMap.put(currentThread, pooled); // only this thread puts its own key
+        }
+        return beginSavepointTransaction();
+    }
+
+    /**
+     * Close the pooled transactions on each car thread, because the transaction is bound to the thread. <br />
+     * The closing tasks wait for each other so that every thread of the pool runs exactly one task.
+     * @param option The option of cannon-ball. (NotNull)
+     * @param service The executor service that has the car threads. (NotNull)
+     */
+    protected void closePooledTransaction(final CannonballOption option, ExecutorService service) {
+        final ConcurrentMap<Thread, TransactionResource> pooledMap = _pooledTransactionMap;
+        if (pooledMap == null) {
+            return;
+        }
+        _pooledTransactionMap = null;
+        if (pooledMap.isEmpty()) {
+            return;
+        }
+        final int threadCount = option.getThreadCount();
+        final CountDownLatch arrived = new CountDownLatch(threadCount);
+        final long timeoutMillis = getShutdownTimeoutMillis();
+        final List<Future<?>> futureList = new ArrayList<Future<?>>();
+        for (int i = 0; i < threadCount; i++) {
+            futureList.add(service.submit(new Runnable() {
+                public void run() { // each car thread here
+                    arrived.countDown();
+                    try {
+                        arrived.await(timeoutMillis, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    final TransactionResource pooled = pooledMap.remove(Thread.currentThread());
+                    if (pooled == null) {
+                        return;
+                    }
+                    try {
+                        if (option.isCommitTransaction()) {
+                            pooled.commit();
+                        } else {
+                            pooled.rollback();
+                        }
+                    } catch (Exception continued) {
+                        log("*Failed to commit or roll-back the pooled transaction: " + continued.getMessage());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futureList) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                String msg = "future.get() was interrupted!";
+                throw new IllegalStateException(msg, e);
+            } catch (ExecutionException continued) {
+                log("*Failed to close the pooled transaction: " + continued.getCause());
+            }
+        }
+        if (!pooledMap.isEmpty()) { // basically no way
+            log("*The pooled transactions were left alone: " + pooledMap.keySet());
+        }
+    }
+
     // ===================================================================================
     //                                                                  Exception Handling
     //                                                                  ==================
@@ -380,6 +785,13 @@ public class CannonballDirector {
         return _cannonballHelper.help_beginTransaction();
     }
 
+    protected TransactionResource beginSavepointTransaction() {
+        if (!(_cannonballHelper instanceof CannonballSavepointStaff)) { // basically no way, checked when pooling
+            return beginTransaction();
+        }
+        return ((CannonballSavepointStaff) _cannonballHelper).help_beginSavepointTransaction();
+    }
+
     protected void prepareAccessContext() {
         _cannonballHelper.help_prepareAccessContext();
     }
@@ -17,6 +17,7 @@ package org.seasar.dbflute.unit.core.cannonball;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * @author jflute
@@ -28,7 +29,7 @@ public class CannonballDragon {
     //                                                                           Attribute
     //                                                                           =========
     protected final CannonballCar _car; // for the project A
-    protected final CannonballWatchingStatus _watchingStatus; // should be used in synchronized scope
+    protected final CannonballWatchingStatus _watchingStatus; // should be used in locked scope
     protected final List<CannonballWatcher> _watcherList = new ArrayList<CannonballWatcher>();
     protected final long _planBeginTime; // to calculate time-span
     protected boolean _expectedNormallyDone;
@@ -74,16 +75,20 @@ public class CannonballDragon {
      * @param millis The milliseconds until overtime. (NotMinus)
      */
     public void releaseIfOvertime(final long millis) {
-        // create and start new watching thread and close old threads
-        synchronized (_watchingStatus) {
+        // schedule new deadline and cancel old deadlines
+        _watchingStatus.lock();
+        try {
             if (isWaiting()) {
                 for (CannonballWatcher watcher : _watcherList) {
                     watcher.close();
                 }
+                _watcherList.clear();
                 final CannonballWatcher watcher = createWatcher(millis);
                 _watcherList.add(watcher);
                 watcher.watch();
             }
+        } finally {
+            _watchingStatus.unlock();
         }
     }
 
@@ -98,26 +103,24 @@ public class CannonballDragon {
 
         protected final long _millis;
         protected volatile boolean _closed;
+        protected volatile ScheduledFuture<?> _deadline;
 
         public CannonballWatcher(long millis) {
             _millis = millis;
         }
 
         public void watch() {
-            final Thread watchingThread = new Thread(new Runnable() {
-                public void run() {
-                    final long alreadyPastTime = System.currentTimeMillis() - _planBeginTime;
-                    final int splitCount = 10;
-                    final long tokenMillis = (_millis - alreadyPastTime) / splitCount;
-                    if (tokenMillis > 0) { // just in case
-                        for (int i = 0; i < splitCount; i++) {
-                            sleep(tokenMillis);
-                            if (_closed) {
-                                return;
-                            }
-                        }
+            final long alreadyPastTime = System.currentTimeMillis() - _planBeginTime;
+            _deadline = getWatchScheduler().schedule(new Runnable() {
+                public void run() { // in scheduler thread so should not block
+                    if (_closed) {
+                        return;
+                    }
+                    if (!_watchingStatus.tryLock()) {
+                        // the car is in the status scope after the plan so the plan is done
+                        return;
                     }
-                    synchronized (_watchingStatus) {
+                    try {
                         if (_closed) {
                             return;
                         }
@@ -127,27 +130,42 @@ public class CannonballDragon {
                             ourLatch.leaveProjectAAlone(_watchingStatus.getProjectAKey(), entryNumber); // release waiting cars
                             _watchingStatus.markForecdly(); // to suppress unnecessary restart of forcedly car
                         }
+                    } finally {
+                        _watchingStatus.unlock();
                     }
                 }
-
-                protected void sleep(long millis) {
-                    try {
-                        Thread.sleep(millis);
-                    } catch (InterruptedException e) {
-                        String msg = "Failed to have a tea break but I want to...";
-                        throw new IllegalStateException(msg, e);
-                    }
-                }
-            });
-            watchingThread.start();
+            }, _millis - alreadyPastTime);
         }
 
         public void close() {
             _closed = true;
+            final ScheduledFuture<?> deadline = _deadline;
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+        }
+    }
+
+    protected CannonballWatchScheduler getWatchScheduler() {
+        return CannonballWatchScheduler.getInstance();
+    }
+
+    /**
+     * Close the watchers because the plan is normally done. (internal)
+     */
+    public void closeWatcher() {
+        _watchingStatus.lock();
+        try {
+            for (CannonballWatcher watcher : _watcherList) {
+                watcher.close();
+            }
+            _watcherList.clear();
+        } finally {
+            _watchingStatus.unlock();
         }
     }
 
-    protected boolean isWaiting() { // should be used in synchronized scope
+    protected boolean isWaiting() { // should be used in locked scope
         return _watchingStatus.isWaiting();
     }
 
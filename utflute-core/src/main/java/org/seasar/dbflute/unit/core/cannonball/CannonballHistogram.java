@@ -0,0 +1,167 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.cannonball;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The lock-free histogram of nanoseconds for cannon-ball cars. <br />
+ * Values are recorded in log-linear buckets (16 sub-buckets per power of two),
+ * so percentiles are approximate within about 6 percent, and memory is fixed.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class CannonballHistogram {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final int SUB_BUCKET_BITS = 4;
+    protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    protected static final int BUCKET_COUNT = 64 * SUB_BUCKET_COUNT;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final AtomicLongArray _bucketArray = new AtomicLongArray(BUCKET_COUNT);
+    protected final AtomicLong _totalCount = new AtomicLong();
+    protected final AtomicLong _totalNanos = new AtomicLong();
+    protected final AtomicLong _minNanos = new AtomicLong(Long.MAX_VALUE);
+    protected final AtomicLong _maxNanos = new AtomicLong(Long.MIN_VALUE);
+
+    // ===================================================================================
+    //                                                                              Record
+    //                                                                              ======
+    /**
+     * Record the elapsed time. (thread-safe, no lock)
+     * @param nanos The elapsed time as nanoseconds. (minus is treated as zero)
+     */
+    public void record(long nanos) {
+        final long value = nanos < 0 ? 0 : nanos;
+        _bucketArray.incrementAndGet(toBucketIndex(value));
+        _totalCount.incrementAndGet();
+        _totalNanos.addAndGet(value);
+        long current;
+        while ((current = _minNanos.get()) > value && !_minNanos.compareAndSet(current, value)) {
+        }
+        while ((current = _maxNanos.get()) < value && !_maxNanos.compareAndSet(current, value)) {
+        }
+    }
+
+    protected int toBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        final int magnitude = highestBit - SUB_BUCKET_BITS + 1;
+        final int subIndex = (int) (value >>> (magnitude - 1)) - SUB_BUCKET_COUNT;
+        return magnitude * SUB_BUCKET_COUNT + subIndex;
+    }
+
+    protected long toBucketUpperValue(int index) {
+        final int magnitude = index / SUB_BUCKET_COUNT;
+        final int subIndex = index % SUB_BUCKET_COUNT;
+        if (magnitude == 0) {
+            return subIndex;
+        }
+        final long lower = ((long) (SUB_BUCKET_COUNT + subIndex)) << (magnitude - 1);
+        return lower + (1L << (magnitude - 1)) - 1;
+    }
+
+    // ===================================================================================
+    //                                                                          Percentile
+    //                                                                          ==========
+    /**
+     * Get the value at the percentile.
+     * @param percentile The percentile, e.g. 50.0, 99.0. (0 to 100)
+     * @return The (approximate) nanoseconds at the percentile. (zero if no record)
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            String msg = "The argument 'percentile' should be between 0 and 100: " + percentile;
+            throw new IllegalArgumentException(msg);
+        }
+        final long count = getCount();
+        if (count == 0) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += _bucketArray.get(i);
+            if (accumulated >= rank) {
+                return Math.min(toBucketUpperValue(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos(); // basically no way, recording concurrently
+    }
+
+    public long getP50Nanos() {
+        return getPercentileNanos(50.0);
+    }
+
+    public long getP90Nanos() {
+        return getPercentileNanos(90.0);
+    }
+
+    public long getP99Nanos() {
+        return getPercentileNanos(99.0);
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{count=").append(getCount());
+        sb.append(", p50=").append(toMillisExp(getP50Nanos()));
+        sb.append(", p90=").append(toMillisExp(getP90Nanos()));
+        sb.append(", p99=").append(toMillisExp(getP99Nanos()));
+        sb.append(", max=").append(toMillisExp(getMaxNanos()));
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public static String toMillisExp(long nanos) {
+        return String.format("%.3fms", nanos / 1000000.0);
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public long getCount() {
+        return _totalCount.get();
+    }
+
+    public long getTotalNanos() {
+        return _totalNanos.get();
+    }
+
+    public long getMinNanos() {
+        return getCount() > 0 ? _minNanos.get() : 0L;
+    }
+
+    public long getMaxNanos() {
+        return getCount() > 0 ? _maxNanos.get() : 0L;
+    }
+
+    public long getMeanNanos() {
+        final long count = getCount();
+        return count > 0 ? getTotalNanos() / count : 0L;
+    }
+}
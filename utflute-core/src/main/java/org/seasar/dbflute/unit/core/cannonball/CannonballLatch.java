@@ -15,10 +15,14 @@
  */
 package org.seasar.dbflute.unit.core.cannonball;
 
-import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * The latch of cannon-ball cars, which has the active thread count and named latches. <br />
+ * The bookkeeping is lock-free: atomic counts and the concurrent registry of latches.
  * @author jflute
  * @since 0.3.8 (2014/02/25 Tuesday)
  */
@@ -32,19 +36,18 @@ public class CannonballLatch {
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
-    protected int _activeCount; // might be decremented e.g. when breakaway
+    protected final AtomicInteger _activeCount; // might be decremented e.g. when breakaway
     protected final int _initialCount; // to check too many increment
     protected final CannonballLogger _logger;
 
     /** The map of latch related to latch name. (NotNull) */
-    // basically synchronized so plain HashMap is allowed but just in case
-    protected final Map<String, CannonballVaryingLatch> _ourLatchMap = new ConcurrentHashMap<String, CannonballVaryingLatch>();
+    protected final ConcurrentMap<String, CannonballVaryingLatch> _ourLatchMap = new ConcurrentHashMap<String, CannonballVaryingLatch>();
 
     // ===================================================================================
     //                                                                         Constructor
     //                                                                         ===========
     public CannonballLatch(int threadCount, CannonballLogger logger) {
-        _activeCount = threadCount;
+        _activeCount = new AtomicInteger(threadCount);
         _initialCount = threadCount;
         _logger = logger;
     }
@@ -61,43 +64,55 @@ public class CannonballLatch {
     }
 
     protected void doAwait(String latchName, int entryNumber, boolean silently) {
-        final CannonballVaryingLatch latch;
-        final boolean last;
-        synchronized (this) {
+        CannonballVaryingLatch latch;
+        long remaining;
+        while (true) {
             latch = prepareLatch(latchName);
-            if (latch.isReleasedLatch()) { // already released
-                return;
+            remaining = latch.countDown(); // ready go if last
+            if (remaining >= 0) {
+                break;
             }
-            last = latch.isLastCountLatch();
-            if (last) {
-                destroyLatchIfNeeds(latchName);
-                if (!silently) {
-                    _logger.log("Ready...Go! (restart): entryNumber=" + entryNumber);
-                }
+            // already released here
+            if (!isDefaultLatch(latchName)) {
+                return;
             }
-            latch.countDown(); // ready go if last
+            // the released default latch is the previous restart's one that the last car
+            // has not destroyed yet (the gate is opened before destroyed) so retry with new one
+            destroyLatchIfNeeds(latchName, latch);
         }
-        if (!last) {
-            if (isWaitingLatch(latchName)) {
-                // to be exact, possible that threads after restart come here but no problem
-                if (!silently) {
-                    _logger.log("...Awaiting arrivals: entryNumber=" + entryNumber + ", count=" + latch.getCount());
-                }
-                latch.await();
+        if (remaining == 0) { // last
+            destroyLatchIfNeeds(latchName, latch);
+            if (!silently) {
+                _logger.log("Ready...Go! (restart): entryNumber=" + entryNumber);
             }
+            return;
+        }
+        // the gate of the latch is opened by last car even if the latch is destroyed
+        if (!silently) {
+            _logger.log("...Awaiting arrivals: entryNumber=" + entryNumber + ", count=" + latch.getCount());
         }
+        latch.await();
     }
 
-    protected synchronized CannonballVaryingLatch prepareLatch(String latchName) {
-        CannonballVaryingLatch latch = _ourLatchMap.get(latchName);
-        if (latch == null) {
-            latch = new CannonballVaryingLatch(_activeCount);
-            _ourLatchMap.put(latchName, latch);
+    protected CannonballVaryingLatch prepareLatch(String latchName) {
+        final CannonballVaryingLatch existing = _ourLatchMap.get(latchName);
+        if (existing != null) {
+            return existing;
+        }
+        final CannonballVaryingLatch created = createVaryingLatch(_activeCount.get());
+        final CannonballVaryingLatch registered = _ourLatchMap.putIfAbsent(latchName, created);
+        if (registered != null) { // other car registered it first
+            return registered;
         }
-        return latch;
+        created.shrinkTo(_activeCount.get()); // for cars leaving between creation and registration
+        return created;
     }
 
-    protected synchronized boolean isWaitingLatch(String latchName) {
+    protected CannonballVaryingLatch createVaryingLatch(int activeCount) {
+        return new CannonballVaryingLatch(activeCount);
+    }
+
+    protected boolean isWaitingLatch(String latchName) {
         final CannonballVaryingLatch latch = _ourLatchMap.get(latchName);
         return latch != null && latch.getCount() > 0;
     }
@@ -106,20 +121,20 @@ public class CannonballLatch {
         return DEFAULT_LATCH_NAME.equals(latchName);
     }
 
-    protected synchronized CannonballVaryingLatch getDefaultLatch() {
+    protected CannonballVaryingLatch getDefaultLatch() {
         return _ourLatchMap.get(DEFAULT_LATCH_NAME);
     }
 
-    protected synchronized void destroyLatchIfNeeds(String latchName) {
+    protected void destroyLatchIfNeeds(String latchName, CannonballVaryingLatch latch) {
         if (isDefaultLatch(latchName)) {
-            _ourLatchMap.remove(latchName);
+            _ourLatchMap.remove(latchName, latch); // only the latch, not new-created one by next restart
         }
     }
 
     // ===================================================================================
     //                                                                            ProjectA
     //                                                                            ========
-    public void lineUpProjectA(String projectAKey, int executionNumber, int currenNumber) { // no synchronized here
+    public void lineUpProjectA(String projectAKey, int executionNumber, int currenNumber) {
         awaitSilently(generateProjectALineUpLatchName(projectAKey), currenNumber);
     }
 
@@ -127,7 +142,7 @@ public class CannonballLatch {
         return projectAKey + "::lineUp";
     }
 
-    public void waitForProjectA(String projectAKey, int executionNumber, int currenNumber) { // no synchronized here
+    public void waitForProjectA(String projectAKey, int executionNumber, int currenNumber) {
         awaitSilently(generateProjectAWaitForLatchName(projectAKey), currenNumber);
     }
 
@@ -135,87 +150,101 @@ public class CannonballLatch {
         return projectAKey + "::waitFor";
     }
 
-    public synchronized void leaveProjectAAlone(String projectAKey, int entryNumber) { // e.g. when projectA overtime
+    public void leaveProjectAAlone(String projectAKey, int entryNumber) { // e.g. when projectA overtime
         _logger.log("*Leaving the projectA car alone as overtime: entryNumber=" + entryNumber);
         decrementThreadCount();
         reset(generateProjectALineUpLatchName(projectAKey));
         reset(generateProjectAWaitForLatchName(projectAKey));
     }
 
-    public synchronized void comeBackFromOvertimeProjectA(String projectAKey, int entryNumber) { // e.g. when projectA end with overtime
+    public void comeBackFromOvertimeProjectA(String projectAKey, int entryNumber) { // e.g. when projectA end with overtime
         _logger.log("*Coming back from overtime projectA finally: entryNumber=" + entryNumber);
         incrementThreadCount();
-        if (isWaitingLatch(DEFAULT_LATCH_NAME)) {
-            final CannonballVaryingLatch defaultLatch = getDefaultLatch();
-            if (defaultLatch != null) {
-                defaultLatch.incrementBufferCount();
-            }
+        final CannonballVaryingLatch defaultLatch = getDefaultLatch();
+        if (defaultLatch != null) {
+            defaultLatch.incrementBufferCount(); // only when waiting
         }
     }
 
     // ===================================================================================
     //                                                              Break Away or Complete
     //                                                              ======================
-    public synchronized void breakAway(int entryNumber, boolean suppressDecrement) {
+    public void breakAway(int entryNumber, boolean suppressDecrement) {
         final String decrementExp = !suppressDecrement ? "(decrement)" : "";
         _logger.log("*Breaking away from cannonball race " + decrementExp + ": entryNumber=" + entryNumber);
         if (!suppressDecrement) {
             decrementThreadCount();
+            shrinkWaitingLatch();
         }
         reset(DEFAULT_LATCH_NAME);
     }
 
-    public synchronized void complete(int entryNumber, boolean suppressDecrement) {
+    public void complete(int entryNumber, boolean suppressDecrement) {
         if (!suppressDecrement) {
             decrementThreadCountSilently();
+            shrinkWaitingLatch();
         }
         reset(DEFAULT_LATCH_NAME); // may be enough to count down only... but just in case 
     }
 
-    public synchronized void reset(String latchName) {
+    protected void shrinkWaitingLatch() { // the left car never arrives at the waiting latches
+        final int activeCount = _activeCount.get();
+        for (Entry<String, CannonballVaryingLatch> entry : _ourLatchMap.entrySet()) {
+            entry.getValue().shrinkTo(activeCount);
+        }
+    }
+
+    public void reset(String latchName) {
         final CannonballVaryingLatch latch = _ourLatchMap.get(latchName);
         if (latch == null) {
             return;
         }
-        final long count = latch.getCount();
+        final long count = latch.releaseAll();
         if (count > 0) {
             _logger.log("...Resetting your latch: count=" + count);
-            for (int i = 0; i < count; i++) {
-                latch.countDown(); // is thread safe and allowed over count down
-            }
-            destroyLatchIfNeeds(latchName);
+            destroyLatchIfNeeds(latchName, latch);
         }
     }
 
     // ===================================================================================
     //                                                                  Adjust ThreadCount
     //                                                                  ==================
-    protected synchronized void incrementThreadCount() {
-        if (_initialCount > _activeCount) {
-            _logger.log("...Incrementing active thread count: " + _activeCount + " to " + (_activeCount + 1));
-            ++_activeCount;
-        } else {
-            _logger.log("*Too many increment of thread count: first=" + _initialCount + ", current=" + _activeCount);
+    protected void incrementThreadCount() {
+        while (true) {
+            final int current = _activeCount.get();
+            if (_initialCount <= current) {
+                _logger.log("*Too many increment of thread count: first=" + _initialCount + ", current=" + current);
+                return;
+            }
+            if (_activeCount.compareAndSet(current, current + 1)) {
+                _logger.log("...Incrementing active thread count: " + current + " to " + (current + 1));
+                return;
+            }
         }
     }
 
-    protected synchronized void decrementThreadCount() {
+    protected void decrementThreadCount() {
         doDecrementThreadCount(false);
     }
 
-    protected synchronized void decrementThreadCountSilently() {
+    protected void decrementThreadCountSilently() {
         doDecrementThreadCount(true);
     }
 
-    protected synchronized void doDecrementThreadCount(boolean silently) {
-        if (_activeCount > 0) {
-            if (!silently) {
-                _logger.log("...Decrementing active thread count: " + _activeCount + " to " + (_activeCount - 1));
+    protected void doDecrementThreadCount(boolean silently) {
+        while (true) {
+            final int current = _activeCount.get();
+            if (current <= 0) {
+                // output if silently because of warning
+                _logger.log("*Too many decrement of thread count: current=" + current);
+                return;
+            }
+            if (_activeCount.compareAndSet(current, current - 1)) {
+                if (!silently) {
+                    _logger.log("...Decrementing active thread count: " + current + " to " + (current - 1));
+                }
+                return;
             }
-            --_activeCount;
-        } else {
-            // output if silently because of warning
-            _logger.log("*Too many decrement of thread count: current=" + _activeCount);
         }
     }
 
@@ -223,7 +252,7 @@ public class CannonballLatch {
     //                                                                            Accessor
     //                                                                            ========
     public int getActiveCount() {
-        return _activeCount;
+        return _activeCount.get();
     }
 
     public int getInitialCount() {
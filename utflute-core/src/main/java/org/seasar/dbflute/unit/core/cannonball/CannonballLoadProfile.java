@@ -0,0 +1,275 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.cannonball;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The load profile of cannon-ball, which is a sequence of stages driven by time. <br />
+ * A stage holds concurrency (cars running at the same time, changing linearly for ramp)
+ * or arrival rate (cars started per second regardless of completion).
+ * <pre>
+ * cannonball(new CannonballRun() {
+ *     public void drive(CannonballCar car) {
+ *         ...
+ *     }
+ * }, new CannonballOption().loadProfile(new CannonballLoadProfile()
+ *         .rampUp(1, 50, 10000).hold(50, 30000).constantRate(200.0, 30000)));
+ * </pre>
+ * Cars in the load profile do not wait for each other, so restart() and projectA() are not for it.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class CannonballLoadProfile {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final long DEFAULT_BUCKET_MILLIS = 1000L;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final List<CannonballLoadStage> _stageList = new ArrayList<CannonballLoadStage>();
+    protected long _totalMillis;
+    protected long _bucketMillis = DEFAULT_BUCKET_MILLIS;
+
+    // ===================================================================================
+    //                                                                               Stage
+    //                                                                               =====
+    /**
+     * Add the stage that increases (or decreases) running cars linearly.
+     * @param beginCars The count of running cars at the beginning of the stage. (NotMinus)
+     * @param endCars The count of running cars at the end of the stage. (NotMinus)
+     * @param durationMillis The milliseconds of the stage. (NotZero, NotMinus)
+     * @return this. (NotNull)
+     */
+    public CannonballLoadProfile rampUp(int beginCars, int endCars, long durationMillis) {
+        assertCarCount(beginCars);
+        assertCarCount(endCars);
+        addStage(new CannonballLoadStage(_totalMillis, durationMillis, beginCars, endCars, 0.0));
+        return this;
+    }
+
+    /**
+     * Add the stage that keeps the count of running cars. (steady state)
+     * @param cars The count of running cars. (NotMinus)
+     * @param durationMillis The milliseconds of the stage. (NotZero, NotMinus)
+     * @return this. (NotNull)
+     */
+    public CannonballLoadProfile hold(int cars, long durationMillis) {
+        return rampUp(cars, cars, durationMillis);
+    }
+
+    /**
+     * Add the stages that increase running cars step by step.
+     * @param beginCars The count of running cars at the first step. (NotMinus)
+     * @param stepCars The count of cars added per step. (NotMinus)
+     * @param stepCount The count of steps. (NotZero, NotMinus)
+     * @param stepMillis The milliseconds of each step. (NotZero, NotMinus)
+     * @return this. (NotNull)
+     */
+    public CannonballLoadProfile step(int beginCars, int stepCars, int stepCount, long stepMillis) {
+        if (stepCount <= 0) {
+            String msg = "The argument 'stepCount' should be positive: " + stepCount;
+            throw new IllegalArgumentException(msg);
+        }
+        for (int i = 0; i < stepCount; i++) {
+            hold(beginCars + (stepCars * i), stepMillis);
+        }
+        return this;
+    }
+
+    /**
+     * Add the stage that starts cars at the fixed rate, independent of completion.
+     * @param carsPerSecond The count of cars started per second. (NotZero, NotMinus)
+     * @param durationMillis The milliseconds of the stage. (NotZero, NotMinus)
+     * @return this. (NotNull)
+     */
+    public CannonballLoadProfile constantRate(double carsPerSecond, long durationMillis) {
+        if (carsPerSecond <= 0.0) {
+            String msg = "The argument 'carsPerSecond' should be positive: " + carsPerSecond;
+            throw new IllegalArgumentException(msg);
+        }
+        addStage(new CannonballLoadStage(_totalMillis, durationMillis, 0, 0, carsPerSecond));
+        return this;
+    }
+
+    /**
+     * Set the milliseconds of time bucket to record throughput and error rate. (default: 1000)
+     * @param bucketMillis The milliseconds of one bucket. (NotZero, NotMinus)
+     * @return this. (NotNull)
+     */
+    public CannonballLoadProfile bucketMillis(long bucketMillis) {
+        if (bucketMillis <= 0) {
+            String msg = "The argument 'bucketMillis' should be positive: " + bucketMillis;
+            throw new IllegalArgumentException(msg);
+        }
+        _bucketMillis = bucketMillis;
+        return this;
+    }
+
+    protected void assertCarCount(int cars) {
+        if (cars < 0) {
+            String msg = "The count of cars should not be minus: " + cars;
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    protected void addStage(CannonballLoadStage stage) {
+        if (stage.getDurationMillis() <= 0) {
+            String msg = "The duration of stage should be positive: " + stage;
+            throw new IllegalArgumentException(msg);
+        }
+        _stageList.add(stage);
+        _totalMillis += stage.getDurationMillis();
+    }
+
+    // ===================================================================================
+    //                                                                         Find Stage
+    //                                                                         ==========
+    /**
+     * Find the stage at the elapsed time.
+     * @param elapsedMillis The milliseconds from the beginning of the race.
+     * @return The stage at the time. (NullAllowed: when all stages are over)
+     */
+    public CannonballLoadStage findStage(long elapsedMillis) {
+        for (CannonballLoadStage stage : _stageList) {
+            if (stage.contains(elapsedMillis)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the max count of running cars through all concurrency stages.
+     * @return The count of cars. (zero if rate stages only)
+     */
+    public int getMaxConcurrency() {
+        int max = 0;
+        for (CannonballLoadStage stage : _stageList) {
+            if (!stage.isRateStage()) {
+                max = Math.max(max, Math.max(stage.getBeginCars(), stage.getEndCars()));
+            }
+        }
+        return max;
+    }
+
+    public boolean hasRateStage() {
+        for (CannonballLoadStage stage : _stageList) {
+            if (stage.isRateStage()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ===================================================================================
+    //                                                                       Stage Element
+    //                                                                       =============
+    public static class CannonballLoadStage {
+
+        protected final long _beginMillis; // offset from the beginning of the race
+        protected final long _durationMillis;
+        protected final int _beginCars;
+        protected final int _endCars;
+        protected final double _carsPerSecond; // zero if concurrency stage
+
+        public CannonballLoadStage(long beginMillis, long durationMillis, int beginCars, int endCars,
+                double carsPerSecond) {
+            _beginMillis = beginMillis;
+            _durationMillis = durationMillis;
+            _beginCars = beginCars;
+            _endCars = endCars;
+            _carsPerSecond = carsPerSecond;
+        }
+
+        public boolean contains(long elapsedMillis) {
+            return _beginMillis <= elapsedMillis && elapsedMillis < getEndMillis();
+        }
+
+        public boolean isRateStage() {
+            return _carsPerSecond > 0.0;
+        }
+
+        /**
+         * Get the count of running cars at the time. (for concurrency stage)
+         * @param elapsedMillis The milliseconds from the beginning of the race.
+         * @return The count of cars, linearly changed in the stage.
+         */
+        public int getConcurrency(long elapsedMillis) {
+            if (_durationMillis <= 0 || _beginCars == _endCars) {
+                return _beginCars;
+            }
+            final long inStage = Math.min(Math.max(elapsedMillis - _beginMillis, 0L), _durationMillis);
+            final double ratio = (double) inStage / _durationMillis;
+            return (int) Math.round(_beginCars + (_endCars - _beginCars) * ratio);
+        }
+
+        public long getEndMillis() {
+            return _beginMillis + _durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            final String load;
+            if (isRateStage()) {
+                load = "rate=" + _carsPerSecond + "/s";
+            } else {
+                load = "cars=" + _beginCars + (_beginCars != _endCars ? " to " + _endCars : "");
+            }
+            return "stage:{" + _beginMillis + "ms, " + _durationMillis + "ms, " + load + "}";
+        }
+
+        public long getBeginMillis() {
+            return _beginMillis;
+        }
+
+        public long getDurationMillis() {
+            return _durationMillis;
+        }
+
+        public int getBeginCars() {
+            return _beginCars;
+        }
+
+        public int getEndCars() {
+            return _endCars;
+        }
+
+        public double getCarsPerSecond() {
+            return _carsPerSecond;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public List<CannonballLoadStage> getStageList() {
+        return Collections.unmodifiableList(_stageList);
+    }
+
+    public long getTotalMillis() {
+        return _totalMillis;
+    }
+
+    public long getBucketMillis() {
+        return _bucketMillis;
+    }
+}
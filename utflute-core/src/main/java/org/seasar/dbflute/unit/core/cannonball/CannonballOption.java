@@ -43,6 +43,9 @@ public class CannonballOption {
     protected boolean _expectedSameResult;
     protected boolean _commitTransaction;
     protected boolean _suppressTransaction;
+    protected boolean _pooledTransaction;
+    protected boolean _virtualThreads;
+    protected CannonballLoadProfile _loadProfile;
     protected String _expectedExceptionMessageAny;
     protected Class<? extends Throwable> _expectedExceptionTypeAny;
     protected CannonballFinalizer _finalizer;
@@ -88,6 +91,51 @@ public class CannonballOption {
         return this;
     }
 
+    /**
+     * Keep one transaction per car thread through all repeats, with savepoint per drive. (default: per drive) <br />
+     * Each drive is rolled back to its savepoint (or released if commitTx()), so transaction begin/end
+     * is not measured in many repeats. The pooled transactions are committed (if commitTx()) or rolled back
+     * at the end of the race. It is ignored with virtual threads or load profile (no fixed car threads).
+     * @return this. (NotNull)
+     */
+    public CannonballOption pooledTx() {
+        _pooledTransaction = true;
+        return this;
+    }
+
+    /**
+     * Drive the cars on virtual threads if the runtime supports it. (default: platform threads) <br />
+     * You can fire thousands of cars with this, e.g. to reproduce connection-pool starvation.
+     * It falls back to platform threads on the runtime that does not support virtual threads.
+     * @return this. (NotNull)
+     */
+    public CannonballOption virtualThreads() {
+        _virtualThreads = true;
+        return this;
+    }
+
+    /**
+     * Drive the cars by the load profile (ramp-up, steady state, constant rate) instead of the fixed cars. <br />
+     * The thread count and repeat count are ignored, and the result has throughput and error rate per time bucket.
+     * <pre>
+     * new CannonballOption().loadProfile(new CannonballLoadProfile().rampUp(1, 20, 5000).hold(20, 10000))
+     * </pre>
+     * @param loadProfile The load profile of the race. (NotNull)
+     * @return this. (NotNull)
+     */
+    public CannonballOption loadProfile(CannonballLoadProfile loadProfile) {
+        if (loadProfile == null) {
+            String msg = "The argument 'loadProfile' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (loadProfile.getStageList().isEmpty()) {
+            String msg = "The load profile should have at least one stage: " + loadProfile;
+            throw new IllegalArgumentException(msg);
+        }
+        _loadProfile = loadProfile;
+        return this;
+    }
+
     /**
      * Expect the goal results of all cars are same. <br />
      * You can set goal result like this:
@@ -199,6 +247,34 @@ public class CannonballOption {
         this._suppressTransaction = suppressTransaction;
     }
 
+    public boolean isPooledTransaction() {
+        return _pooledTransaction;
+    }
+
+    public void setPooledTransaction(boolean pooledTransaction) {
+        this._pooledTransaction = pooledTransaction;
+    }
+
+    public boolean isVirtualThreads() {
+        return _virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this._virtualThreads = virtualThreads;
+    }
+
+    public boolean hasLoadProfile() {
+        return _loadProfile != null;
+    }
+
+    public CannonballLoadProfile getLoadProfile() {
+        return _loadProfile;
+    }
+
+    public void setLoadProfile(CannonballLoadProfile loadProfile) {
+        this._loadProfile = loadProfile;
+    }
+
     public String getExpectedExceptionMessageAny() {
         return _expectedExceptionMessageAny;
     }
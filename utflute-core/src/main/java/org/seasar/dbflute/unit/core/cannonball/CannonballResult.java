@@ -0,0 +1,331 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.cannonball;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The result of cannon-ball run, which has latency histograms and throughput.
+ * <pre>
+ * CannonballResult result = cannonball(new CannonballRun() {
+ *     public void drive(CannonballCar car) {
+ *         ...
+ *     }
+ * }, new CannonballOption().repeatCount(5));
+ * assertTrue(result.getLatency().getP99Nanos() &lt; 100000000L);
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class CannonballResult {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The histogram of all cars' drive time. (NotNull) */
+    protected final CannonballHistogram _latency = new CannonballHistogram();
+
+    /** The map of histogram per entry number. (NotNull) */
+    protected final ConcurrentMap<Integer, CannonballHistogram> _entryLatencyMap = new ConcurrentHashMap<Integer, CannonballHistogram>();
+
+    /** The list of lap (one repeat) in order of repeat. (NotNull) */
+    protected final List<CannonballLap> _lapList = Collections.synchronizedList(new ArrayList<CannonballLap>());
+
+    /** The map of time bucket for load profile, keyed by bucket index. (NotNull, EmptyAllowed) */
+    protected final ConcurrentMap<Long, CannonballLoadBucket> _loadBucketMap = new ConcurrentHashMap<Long, CannonballLoadBucket>();
+
+    /** The count of failure (retired) car. */
+    protected final AtomicLong _failureCount = new AtomicLong();
+
+    // ===================================================================================
+    //                                                                              Record
+    //                                                                              ======
+    /**
+     * Record the drive time of the car. (thread-safe)
+     * @param entryNumber The entry number of the car.
+     * @param nanos The elapsed time of the drive as nanoseconds.
+     * @param failure Is the drive failure?
+     */
+    public void recordDrive(int entryNumber, long nanos, boolean failure) {
+        _latency.record(nanos);
+        findEntryHistogram(entryNumber).record(nanos);
+        if (failure) {
+            _failureCount.incrementAndGet();
+        }
+    }
+
+    protected CannonballHistogram findEntryHistogram(int entryNumber) {
+        final Integer key = entryNumber;
+        CannonballHistogram histogram = _entryLatencyMap.get(key);
+        if (histogram == null) {
+            final CannonballHistogram created = new CannonballHistogram();
+            histogram = _entryLatencyMap.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Record the drive time of the car in load profile. (thread-safe) <br />
+     * The drive is counted in the time bucket that it finished in.
+     * @param finishedMillis The milliseconds from the beginning of the race to the finish of the drive.
+     * @param bucketMillis The milliseconds of one bucket. (NotZero, NotMinus)
+     * @param nanos The elapsed time of the drive as nanoseconds.
+     * @param failure Is the drive failure?
+     */
+    public void recordLoadDrive(long finishedMillis, long bucketMillis, long nanos, boolean failure) {
+        _latency.record(nanos);
+        findLoadBucket(finishedMillis / bucketMillis, bucketMillis).record(nanos, failure);
+        if (failure) {
+            _failureCount.incrementAndGet();
+        }
+    }
+
+    protected CannonballLoadBucket findLoadBucket(long bucketIndex, long bucketMillis) {
+        final Long key = bucketIndex;
+        CannonballLoadBucket bucket = _loadBucketMap.get(key);
+        if (bucket == null) {
+            final CannonballLoadBucket created = new CannonballLoadBucket(bucketIndex * bucketMillis, bucketMillis);
+            bucket = _loadBucketMap.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Record the lap (one repeat) of all cars.
+     * @param carCount The count of cars in the lap.
+     * @param elapsedNanos The elapsed time from start to goal of all cars as nanoseconds.
+     */
+    public void recordLap(int carCount, long elapsedNanos) {
+        _lapList.add(new CannonballLap(_lapList.size() + 1, carCount, elapsedNanos));
+    }
+
+    // ===================================================================================
+    //                                                                             Summary
+    //                                                                             =======
+    /**
+     * Build the summary of the result, logged at the end of cannonball. <br />
+     * The latency per entry is not contained, use buildEntryLatencySummary() if you need it.
+     * @param ln The line separator. (NotNull)
+     * @return The display string of summary. (NotNull)
+     */
+    public String buildSummary(String ln) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("[Cannonball Result]");
+        sb.append(ln).append(" drive: ").append(_latency);
+        sb.append(ln).append(" failure: ").append(getFailureCount());
+        for (CannonballLap lap : getLapList()) {
+            sb.append(ln).append(" ").append(lap);
+        }
+        for (CannonballLoadBucket bucket : getLoadBucketList()) {
+            sb.append(ln).append(" ").append(bucket);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Build the breakdown of latency per entry number, one line per entry.
+     * <pre>
+     * log(result.buildEntryLatencySummary(ln())); <span style="color: #3F7E5E">// e.g. find the slow car</span>
+     * </pre>
+     * @param ln The line separator. (NotNull)
+     * @return The display string of entry latencies. (NotNull)
+     */
+    public String buildEntryLatencySummary(String ln) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("[Cannonball Entry Latency]");
+        for (Map.Entry<Integer, CannonballHistogram> entry : getEntryLatencyMap().entrySet()) {
+            sb.append(ln).append(" entry ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    // ===================================================================================
+    //                                                                         Lap Element
+    //                                                                         ===========
+    public static class CannonballLap {
+
+        protected final int _lapNumber;
+        protected final int _carCount;
+        protected final long _elapsedNanos;
+
+        public CannonballLap(int lapNumber, int carCount, long elapsedNanos) {
+            _lapNumber = lapNumber;
+            _carCount = carCount;
+            _elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Get the throughput of the lap.
+         * @return The count of cars per second. (zero if no time)
+         */
+        public double getThroughputPerSecond() {
+            return _elapsedNanos > 0 ? _carCount * 1000000000.0 / _elapsedNanos : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            final String throughput = String.format("%.1f", getThroughputPerSecond());
+            final String elapsed = CannonballHistogram.toMillisExp(_elapsedNanos);
+            return "lap " + _lapNumber + ": cars=" + _carCount + ", elapsed=" + elapsed + ", throughput=" + throughput
+                    + "/s";
+        }
+
+        public int getLapNumber() {
+            return _lapNumber;
+        }
+
+        public int getCarCount() {
+            return _carCount;
+        }
+
+        public long getElapsedNanos() {
+            return _elapsedNanos;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Bucket Element
+    //                                                                      ==============
+    public static class CannonballLoadBucket {
+
+        protected final long _beginMillis; // offset from the beginning of the race
+        protected final long _bucketMillis;
+        protected final CannonballHistogram _latency = new CannonballHistogram();
+        protected final AtomicLong _failureCount = new AtomicLong();
+
+        public CannonballLoadBucket(long beginMillis, long bucketMillis) {
+            _beginMillis = beginMillis;
+            _bucketMillis = bucketMillis;
+        }
+
+        public void record(long nanos, boolean failure) {
+            _latency.record(nanos);
+            if (failure) {
+                _failureCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Get the throughput in the bucket.
+         * @return The count of finished cars per second.
+         */
+        public double getThroughputPerSecond() {
+            return _latency.getCount() * 1000.0 / _bucketMillis;
+        }
+
+        /**
+         * Get the error rate in the bucket.
+         * @return The ratio of failure cars, 0.0 to 1.0. (zero if no car)
+         */
+        public double getErrorRate() {
+            final long count = _latency.getCount();
+            return count > 0 ? (double) _failureCount.get() / count : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            final String throughput = String.format("%.1f", getThroughputPerSecond());
+            final String errorRate = String.format("%.2f", getErrorRate() * 100.0);
+            return "bucket " + _beginMillis + "ms: throughput=" + throughput + "/s, error=" + errorRate + "%, drive="
+                    + _latency;
+        }
+
+        public long getBeginMillis() {
+            return _beginMillis;
+        }
+
+        public long getBucketMillis() {
+            return _bucketMillis;
+        }
+
+        public CannonballHistogram getLatency() {
+            return _latency;
+        }
+
+        public long getCarCount() {
+            return _latency.getCount();
+        }
+
+        public long getFailureCount() {
+            return _failureCount.get();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    /**
+     * Get the histogram of all cars' drive time.
+     * @return The histogram of nanoseconds. (NotNull)
+     */
+    public CannonballHistogram getLatency() {
+        return _latency;
+    }
+
+    /**
+     * Get the histogram of the entry number.
+     * @param entryNumber The entry number of the car.
+     * @return The histogram of nanoseconds. (NullAllowed: when the entry did not run)
+     */
+    public CannonballHistogram getEntryLatency(int entryNumber) {
+        return _entryLatencyMap.get(entryNumber);
+    }
+
+    /**
+     * @return The read-only map of histogram, ordered by entry number. (NotNull)
+     */
+    public Map<Integer, CannonballHistogram> getEntryLatencyMap() {
+        return Collections.unmodifiableMap(new TreeMap<Integer, CannonballHistogram>(_entryLatencyMap));
+    }
+
+    /**
+     * @return The read-only list of lap in order of repeat. (NotNull)
+     */
+    public List<CannonballLap> getLapList() {
+        synchronized (_lapList) {
+            return Collections.unmodifiableList(new ArrayList<CannonballLap>(_lapList));
+        }
+    }
+
+    /**
+     * @return The read-only list of time bucket in order of time. (NotNull, EmptyAllowed: when no load profile)
+     */
+    public List<CannonballLoadBucket> getLoadBucketList() {
+        return Collections.unmodifiableList(new ArrayList<CannonballLoadBucket>(new TreeMap<Long, CannonballLoadBucket>(
+                _loadBucketMap).values()));
+    }
+
+    public long getRunCount() {
+        return _latency.getCount();
+    }
+
+    public long getFailureCount() {
+        return _failureCount.get();
+    }
+}
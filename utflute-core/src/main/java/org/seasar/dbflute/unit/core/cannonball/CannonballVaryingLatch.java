@@ -16,8 +16,12 @@
 package org.seasar.dbflute.unit.core.cannonball;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * The count-down latch whose count can be incremented (as buffer) or shrunk while waiting. <br />
+ * The count is one atomic number and the waiting cars are released by the gate when it becomes zero,
+ * so no lock is needed for the count handling.
  * @author jflute
  * @since 0.4.2 (2014/03/30 Sunday)
  */
@@ -27,15 +31,20 @@ public class CannonballVaryingLatch {
     //                                                                           Attribute
     //                                                                           =========
     protected final int _initialCount;
-    protected final CountDownLatch _latch;
-    protected int _bufferCount;
+    protected final AtomicInteger _count; // includes buffer count
+    protected final AtomicInteger _expectedActiveCount; // active thread count that the count is based on
+    protected final CountDownLatch _gate = new CountDownLatch(1); // opened when the count becomes zero
 
     // ===================================================================================
     //                                                                         Constructor
     //                                                                         ===========
     public CannonballVaryingLatch(int initialCount) {
         _initialCount = initialCount;
-        _latch = new CountDownLatch(initialCount);
+        _count = new AtomicInteger(Math.max(initialCount, 0));
+        _expectedActiveCount = new AtomicInteger(initialCount);
+        if (initialCount <= 0) {
+            _gate.countDown();
+        }
     }
 
     // ===================================================================================
@@ -43,37 +52,89 @@ public class CannonballVaryingLatch {
     //                                                                      ==============
     public void await() {
         try {
-            _latch.await();
+            _gate.await();
         } catch (InterruptedException e) {
-            String msg = "Failed to await by your latch: latch=" + _latch;
+            String msg = "Failed to await by your latch: latch=" + _gate;
             throw new CannonballRetireException(msg, e);
         }
     }
 
-    public void countDown() {
-        if (countDownBufferCount()) {
-            return;
+    /**
+     * Count down the latch, and open the gate if the count becomes zero.
+     * @return The count after the count down. (minus one: already released so not counted)
+     */
+    public long countDown() {
+        while (true) {
+            final int current = _count.get();
+            if (current <= 0) {
+                return -1;
+            }
+            final int next = current - 1;
+            if (_count.compareAndSet(current, next)) {
+                if (next == 0) {
+                    _gate.countDown(); // ready go
+                }
+                return next;
+            }
         }
-        _latch.countDown();
     }
 
-    public synchronized long getCount() {
-        return _latch.getCount() + _bufferCount;
+    public long getCount() {
+        return _count.get();
+    }
+
+    /**
+     * Release the latch forcedly.
+     * @return The count before the release. (zero if already released)
+     */
+    public long releaseAll() {
+        final int previous = _count.getAndSet(0);
+        if (previous > 0) {
+            _gate.countDown();
+        }
+        return previous;
     }
 
     // ===================================================================================
     //                                                                        Buffer Count
     //                                                                        ============
-    public synchronized void incrementBufferCount() {
-        ++_bufferCount;
+    /**
+     * Increment the count for the car coming back, only when the latch is still waiting.
+     * @return Is it incremented? (false: already released)
+     */
+    public boolean incrementBufferCount() {
+        while (true) {
+            final int current = _count.get();
+            if (current <= 0) {
+                return false; // cannot close the opened gate
+            }
+            if (_count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
     }
 
-    protected synchronized boolean countDownBufferCount() {
-        if (_bufferCount > 0) {
-            --_bufferCount;
-            return true;
+    // ===================================================================================
+    //                                                                              Shrink
+    //                                                                              ======
+    /**
+     * Shrink the count for the cars that left the race after the latch was prepared. <br />
+     * Each left car is counted down only once even if called concurrently.
+     * @param activeCount The current count of active thread.
+     */
+    public void shrinkTo(int activeCount) {
+        while (true) {
+            final int expected = _expectedActiveCount.get();
+            if (activeCount >= expected) {
+                return;
+            }
+            if (_expectedActiveCount.compareAndSet(expected, activeCount)) {
+                for (int i = 0; i < expected - activeCount; i++) {
+                    countDown();
+                }
+                return;
+            }
         }
-        return false;
     }
 
     // ===================================================================================
@@ -87,6 +148,14 @@ public class CannonballVaryingLatch {
         return getCount() == 1;
     }
 
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "varyingLatch:{count=" + _count.get() + ", initial=" + _initialCount + "}";
+    }
+
     // ===================================================================================
     //                                                                            Accessor
     //                                                                            ========
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.cannonball;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared scheduler of overtime watching for project A. <br />
+ * One daemon thread handles all deadlines instead of a sleeping thread per watch,
+ * and a cancelled deadline is removed from the queue if the runtime supports it.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class CannonballWatchScheduler {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final CannonballWatchScheduler _instance = new CannonballWatchScheduler();
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final ScheduledThreadPoolExecutor _executor;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    protected CannonballWatchScheduler() {
+        _executor = new ScheduledThreadPoolExecutor(1, createThreadFactory());
+        enableRemoveOnCancel(_executor);
+    }
+
+    protected ThreadFactory createThreadFactory() {
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = defaultFactory.newThread(runnable);
+                thread.setName("cannonball-watcher");
+                thread.setDaemon(true); // lives with JVM
+                return thread;
+            }
+        };
+    }
+
+    protected void enableRemoveOnCancel(ScheduledThreadPoolExecutor executor) {
+        try { // since Java7, by reflection to keep old Java compatible
+            final Method method = executor.getClass().getMethod("setRemoveOnCancelPolicy", boolean.class);
+            method.invoke(executor, true);
+        } catch (Exception ignored) { // cancelled ones are removed when they expire
+        }
+    }
+
+    /**
+     * Get the shared instance of the scheduler.
+     * @return The singleton instance. (NotNull)
+     */
+    public static CannonballWatchScheduler getInstance() {
+        return _instance;
+    }
+
+    // ===================================================================================
+    //                                                                            Schedule
+    //                                                                            ========
+    /**
+     * Schedule the task at the deadline.
+     * @param task The task executed at the deadline, which should not block long. (NotNull)
+     * @param delayMillis The milliseconds until the deadline. (executed soon if minus)
+     * @return The future to cancel the deadline. (NotNull)
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        if (task == null) {
+            String msg = "The argument 'task' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        return _executor.schedule(task, Math.max(delayMillis, 0L), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the count of deadlines waiting in the queue.
+     * @return The count of scheduled tasks. (NotMinus)
+     */
+    public int getScheduledCount() {
+        return _executor.getQueue().size();
+    }
+}
@@ -17,10 +17,11 @@ package org.seasar.dbflute.unit.core.cannonball;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The status of watching project A plan. <br />
- * This methods should be called in synchronized scope.
+ * This methods should be called in locked scope by {@link #lock()}.
  * @author jflute
  * @since 0.3.8 (2014/03/03 Monday)
  */
@@ -37,6 +38,7 @@ public class CannonballWatchingStatus {
     //                                                                           =========
     protected final Set<String> _watchingMarkSet = new HashSet<String>();
     protected final String _projectAKey;
+    protected final ReentrantLock _statusLock = new ReentrantLock(); // not monitor, the car may await in the scope
 
     // ===================================================================================
     //                                                                         Constructor
@@ -45,6 +47,28 @@ public class CannonballWatchingStatus {
         _projectAKey = projectAKey;
     }
 
+    // ===================================================================================
+    //                                                                                Lock
+    //                                                                                ====
+    /**
+     * Lock the status with watching thread. (call unlock() in finally)
+     */
+    public void lock() {
+        _statusLock.lock();
+    }
+
+    /**
+     * Lock the status if not locked by others.
+     * @return Is it locked? (false: others have the lock)
+     */
+    public boolean tryLock() {
+        return _statusLock.tryLock();
+    }
+
+    public void unlock() {
+        _statusLock.unlock();
+    }
+
     // ===================================================================================
     //                                                                         Mark Status
     //                                                                         ===========
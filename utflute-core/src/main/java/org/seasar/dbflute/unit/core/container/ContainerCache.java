@@ -0,0 +1,249 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The LRU cache of parked (inactive) DI containers, keyed by configuration identity. <br />
+ * The active container is held by the test case, and it is parked here when the next test class
+ * uses other configuration, so alternate configurations can be switched without re-initialization.
+ * <pre>
+ * max size: the count of live containers <span style="color: #3F7E5E">including the active one</span>
+ *  1 : no parking, destroyed when configuration changes (default)
+ *  3 : the active one and two parked ones
+ * memory: parked containers are evicted (eldest first) while free memory ratio is short
+ * </pre>
+ * @param <CONTAINER> The type of container.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerCache<CONTAINER> {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final int DEFAULT_MAX_SIZE = 1;
+    public static final double DEFAULT_MIN_FREE_MEMORY_RATIO = 0.2;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The map of parked container, ordered by parking (eldest first). (NotNull) */
+    protected final Map<Object, CONTAINER> _parkedMap = new LinkedHashMap<Object, CONTAINER>();
+
+    protected int _maxSize = DEFAULT_MAX_SIZE;
+    protected double _minFreeMemoryRatio = DEFAULT_MIN_FREE_MEMORY_RATIO;
+    protected long _hitCount; // recycled or restored
+    protected long _missCount; // initialized
+    protected long _evictionCount;
+    protected long _memoryEvictionCount; // also counted in eviction count
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * @param maxSize The count of live containers including the active one. (NotMinus, NotZero)
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            String msg = "The argument 'maxSize' should be positive: " + maxSize;
+            throw new IllegalArgumentException(msg);
+        }
+        _maxSize = maxSize;
+    }
+
+    /**
+     * @param minFreeMemoryRatio The ratio of free memory to max memory to keep parked containers. (0.0 to 1.0)
+     */
+    public synchronized void setMinFreeMemoryRatio(double minFreeMemoryRatio) {
+        if (minFreeMemoryRatio < 0.0 || minFreeMemoryRatio > 1.0) {
+            String msg = "The argument 'minFreeMemoryRatio' should be between 0.0 and 1.0: " + minFreeMemoryRatio;
+            throw new IllegalArgumentException(msg);
+        }
+        _minFreeMemoryRatio = minFreeMemoryRatio;
+    }
+
+    // ===================================================================================
+    //                                                                        Park/Restore
+    //                                                                        ============
+    /**
+     * Park the (previous) active container, evicting old parked ones if over size or memory short.
+     * @param key The key of configuration identity. (NotNull)
+     * @param container The container to be parked. (NotNull)
+     * @param destroyer The destroyer of evicted containers. (NotNull)
+     */
+    public void park(Object key, CONTAINER container, ContainerDestroyer<CONTAINER> destroyer) {
+        assertObjectNotNull("key", key);
+        assertObjectNotNull("container", container);
+        assertObjectNotNull("destroyer", destroyer);
+        final List<CONTAINER> evictedList = new ArrayList<CONTAINER>();
+        synchronized (this) {
+            final CONTAINER existing = _parkedMap.remove(key);
+            if (existing != null && existing != container) { // basically no way
+                evictedList.add(existing);
+            }
+            _parkedMap.put(key, container);
+            evictedList.addAll(evictIfNeeds());
+        }
+        for (CONTAINER evicted : evictedList) { // out of lock because destroying may be heavy
+            destroyer.destroy(evicted);
+        }
+    }
+
+    protected List<CONTAINER> evictIfNeeds() {
+        final List<CONTAINER> evictedList = new ArrayList<CONTAINER>();
+        final Iterator<Entry<Object, CONTAINER>> ite = _parkedMap.entrySet().iterator();
+        while (ite.hasNext()) {
+            final Entry<Object, CONTAINER> entry = ite.next();
+            final boolean overSize = _parkedMap.size() > _maxSize - 1; // minus active one
+            final boolean memoryShort = !overSize && isMemoryShort();
+            if (!overSize && !memoryShort) {
+                break;
+            }
+            ite.remove();
+            evictedList.add(entry.getValue());
+            ++_evictionCount;
+            if (memoryShort) {
+                ++_memoryEvictionCount;
+            }
+        }
+        return evictedList;
+    }
+
+    protected boolean isMemoryShort() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long maxMemory = runtime.maxMemory();
+        if (maxMemory == Long.MAX_VALUE) { // no limit
+            return false;
+        }
+        final long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+        return (double) (maxMemory - usedMemory) / maxMemory < _minFreeMemoryRatio;
+    }
+
+    /**
+     * Restore the parked container for the key, which is removed from parking.
+     * @param key The key of configuration identity. (NotNull)
+     * @return The parked container. (NullAllowed: when not parked, counted as miss)
+     */
+    public synchronized CONTAINER restore(Object key) {
+        assertObjectNotNull("key", key);
+        final CONTAINER container = _parkedMap.remove(key);
+        if (container != null) {
+            ++_hitCount;
+        } else {
+            ++_missCount;
+        }
+        return container;
+    }
+
+    /**
+     * Is the container for the key parked? (not counted as hit or miss)
+     * @param key The key of configuration identity. (NotNull)
+     * @return The determination, true or false.
+     */
+    public synchronized boolean isParked(Object key) {
+        assertObjectNotNull("key", key);
+        return _parkedMap.containsKey(key);
+    }
+
+    /**
+     * Record the hit when the active container is recycled as it is.
+     */
+    public synchronized void recordRecycle() {
+        ++_hitCount;
+    }
+
+    /**
+     * Destroy all parked containers. (the active one is not here)
+     * @param destroyer The destroyer of parked containers. (NotNull)
+     */
+    public void destroyAll(ContainerDestroyer<CONTAINER> destroyer) {
+        assertObjectNotNull("destroyer", destroyer);
+        final List<CONTAINER> parkedList;
+        synchronized (this) {
+            parkedList = new ArrayList<CONTAINER>(_parkedMap.values());
+            _parkedMap.clear();
+        }
+        for (CONTAINER parked : parkedList) {
+            destroyer.destroy(parked);
+        }
+    }
+
+    /**
+     * The destroyer of container evicted from the cache.
+     * @param <CONTAINER> The type of container.
+     */
+    public static interface ContainerDestroyer<CONTAINER> {
+
+        /**
+         * Destroy the container that is not active.
+         * @param container The evicted container. (NotNull)
+         */
+        void destroy(CONTAINER container);
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public synchronized String toString() {
+        return "containerCache:{max=" + _maxSize + ", parked=" + _parkedMap.keySet() + ", hit=" + _hitCount
+                + ", miss=" + _missCount + ", eviction=" + _evictionCount + "(memory:" + _memoryEvictionCount + ")}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public synchronized int getMaxSize() {
+        return _maxSize;
+    }
+
+    public synchronized int getParkedCount() {
+        return _parkedMap.size();
+    }
+
+    public synchronized long getHitCount() {
+        return _hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return _missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return _evictionCount;
+    }
+
+    public synchronized long getMemoryEvictionCount() {
+        return _memoryEvictionCount;
+    }
+}
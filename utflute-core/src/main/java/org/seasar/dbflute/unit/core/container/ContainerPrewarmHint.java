@@ -0,0 +1,99 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The hint of upcoming configuration sets, in order of test classes to be executed. <br />
+ * It is registered by e.g. suite manifest or test listener, and the next configuration
+ * different from the current one is peeked to pre-warm its container in background.
+ * <pre>
+ * upcoming: [foo.xml], [bar.xml], [foo.xml, qux.xml]
+ * current [foo.xml]: peeks [bar.xml] (nothing consumed, same result for every test method)
+ * current [bar.xml]: peeks [foo.xml, qux.xml] (the hints before bar.xml are consumed)
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerPrewarmHint {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The list of upcoming configuration set, in order of execution. (NotNull) */
+    protected final List<List<String>> _upcomingList = new ArrayList<List<String>>();
+
+    // ===================================================================================
+    //                                                                            Upcoming
+    //                                                                            ========
+    /**
+     * Add the upcoming configuration set at the tail.
+     * @param configSet The array of configuration names, e.g. config files. (NotNull)
+     */
+    public synchronized void addUpcoming(String... configSet) {
+        if (configSet == null) {
+            String msg = "The argument 'configSet' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        _upcomingList.add(Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(configSet))));
+    }
+
+    /**
+     * Peek the next configuration set different from the current one. <br />
+     * The hints before the current one (if found) are consumed as past ones,
+     * but the current one and the returned one remain for other test classes of the same configuration.
+     * @param currentConfigSet The configuration set of the current container. (NotNull)
+     * @return The next configuration set. (NullAllowed: when no more hint)
+     */
+    public synchronized List<String> peekNext(List<String> currentConfigSet) {
+        final int currentIndex = _upcomingList.indexOf(currentConfigSet);
+        if (currentIndex > 0) {
+            _upcomingList.subList(0, currentIndex).clear();
+        }
+        for (List<String> next : _upcomingList) {
+            if (!next.equals(currentConfigSet)) { // e.g. continuous same configurations
+                return next;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void clear() {
+        _upcomingList.clear();
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public synchronized String toString() {
+        return "prewarmHint:{upcoming=" + _upcomingList + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    /**
+     * @return The read-only snapshot list of upcoming configuration set. (NotNull)
+     */
+    public synchronized List<List<String>> getUpcomingList() {
+        return Collections.unmodifiableList(new ArrayList<List<String>>(_upcomingList));
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+
+/**
+ * The pre-warmer of DI container, which builds the container of next test class in background. <br />
+ * The test case takes the pre-warmed container by its key instead of initializing it inline,
+ * and it waits for the building if not finished yet.
+ * <pre>
+ * max pending: the count of pre-warmed containers not taken yet
+ *  1 : only the next one (default), older one is discarded (destroyed after built)
+ * failure: the taken result is null so the test case initializes it inline (then the error is thrown there)
+ * </pre>
+ * @param <CONTAINER> The type of container.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerPrewarmer<CONTAINER> {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final int DEFAULT_MAX_PENDING_SIZE = 1;
+    protected static final String THREAD_NAME = "utflute-container-prewarmer";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The map of pending (building or built) container, ordered by pre-warming. (NotNull) */
+    protected final Map<Object, PendingContainer<CONTAINER>> _pendingMap = new LinkedHashMap<Object, PendingContainer<CONTAINER>>();
+
+    /** The executor of single background thread. (NullAllowed: lazy-loaded) */
+    protected ExecutorService _executorService;
+
+    protected int _maxPendingSize = DEFAULT_MAX_PENDING_SIZE;
+    protected long _prewarmCount;
+    protected long _takenCount; // used by test case
+    protected long _failureCount;
+    protected long _discardCount;
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * @param maxPendingSize The count of pre-warmed containers not taken yet. (NotMinus, NotZero)
+     */
+    public synchronized void setMaxPendingSize(int maxPendingSize) {
+        if (maxPendingSize < 1) {
+            String msg = "The argument 'maxPendingSize' should be positive: " + maxPendingSize;
+            throw new IllegalArgumentException(msg);
+        }
+        _maxPendingSize = maxPendingSize;
+    }
+
+    // ===================================================================================
+    //                                                                             Prewarm
+    //                                                                             =======
+    /**
+     * Start building the container for the key in background. (returns immediately) <br />
+     * The context class loader of the current thread is also used in the building.
+     * @param key The key of configuration identity. (NotNull)
+     * @param builder The builder of the container, called in background thread. (NotNull)
+     * @param destroyer The destroyer of discarded containers. (NotNull)
+     * @return Is it started? (false if already pending)
+     */
+    public boolean prewarm(Object key, final ContainerBuilder<CONTAINER> builder, ContainerDestroyer<CONTAINER> destroyer) {
+        assertObjectNotNull("key", key);
+        assertObjectNotNull("builder", builder);
+        assertObjectNotNull("destroyer", destroyer);
+        final List<PendingContainer<CONTAINER>> discardedList;
+        synchronized (this) {
+            if (_pendingMap.containsKey(key)) {
+                return false;
+            }
+            final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+            final Future<CONTAINER> future = prepareExecutorService().submit(new Callable<CONTAINER>() {
+                public CONTAINER call() throws Exception {
+                    final Thread currentThread = Thread.currentThread();
+                    final ClassLoader originalLoader = currentThread.getContextClassLoader();
+                    currentThread.setContextClassLoader(contextLoader);
+                    try {
+                        return builder.build();
+                    } finally {
+                        currentThread.setContextClassLoader(originalLoader);
+                    }
+                }
+            });
+            _pendingMap.put(key, new PendingContainer<CONTAINER>(future, destroyer));
+            ++_prewarmCount;
+            discardedList = discardIfNeeds();
+        }
+        for (PendingContainer<CONTAINER> discarded : discardedList) {
+            xdestroyAfterBuilt(discarded);
+        }
+        return true;
+    }
+
+    protected synchronized ExecutorService prepareExecutorService() {
+        if (_executorService == null) {
+            _executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setDaemon(true); // not to block JVM exit
+                    return thread;
+                }
+            });
+        }
+        return _executorService;
+    }
+
+    protected List<PendingContainer<CONTAINER>> discardIfNeeds() {
+        final List<PendingContainer<CONTAINER>> discardedList = new ArrayList<PendingContainer<CONTAINER>>();
+        final Iterator<Entry<Object, PendingContainer<CONTAINER>>> ite = _pendingMap.entrySet().iterator();
+        while (ite.hasNext() && _pendingMap.size() > _maxPendingSize) {
+            discardedList.add(ite.next().getValue());
+            ite.remove();
+            ++_discardCount;
+        }
+        return discardedList;
+    }
+
+    protected void xdestroyAfterBuilt(final PendingContainer<CONTAINER> pending) {
+        prepareExecutorService().submit(new Runnable() { // after the building in the single thread
+            public void run() {
+                final CONTAINER container = pending.getQuietly();
+                if (container != null) {
+                    pending.getDestroyer().destroy(container);
+                }
+            }
+        });
+    }
+
+    // ===================================================================================
+    //                                                                                Take
+    //                                                                                ====
+    /**
+     * Take the pre-warmed container for the key, waiting for the building if not finished yet.
+     * @param key The key of configuration identity. (NotNull)
+     * @return The built container removed from pending. (NullAllowed: when not pre-warmed or failure)
+     */
+    public CONTAINER take(Object key) {
+        assertObjectNotNull("key", key);
+        final PendingContainer<CONTAINER> pending;
+        synchronized (this) {
+            pending = _pendingMap.remove(key);
+        }
+        if (pending == null) {
+            return null;
+        }
+        final CONTAINER container = pending.getQuietly(); // out of lock because of waiting
+        synchronized (this) {
+            if (container != null) {
+                ++_takenCount;
+            } else {
+                ++_failureCount;
+            }
+        }
+        return container;
+    }
+
+    /**
+     * Is the container for the key pre-warmed (or pre-warming) and not taken yet?
+     * @param key The key of configuration identity. (NotNull)
+     * @return The determination, true or false.
+     */
+    public synchronized boolean isPending(Object key) {
+        assertObjectNotNull("key", key);
+        return _pendingMap.containsKey(key);
+    }
+
+    /**
+     * Discard all pending containers, which are destroyed after built.
+     */
+    public void discardAll() {
+        final List<PendingContainer<CONTAINER>> discardedList;
+        synchronized (this) {
+            discardedList = new ArrayList<PendingContainer<CONTAINER>>(_pendingMap.values());
+            _discardCount += _pendingMap.size();
+            _pendingMap.clear();
+        }
+        for (PendingContainer<CONTAINER> discarded : discardedList) {
+            xdestroyAfterBuilt(discarded);
+        }
+    }
+
+    /**
+     * The builder of container called in background thread.
+     * @param <CONTAINER> The type of container.
+     */
+    public static interface ContainerBuilder<CONTAINER> {
+
+        /**
+         * Build the container, e.g. initialize application context by the configuration.
+         * @return The new-created container. (NotNull)
+         */
+        CONTAINER build();
+    }
+
+    protected static class PendingContainer<CONTAINER> {
+
+        protected final Future<CONTAINER> _future;
+        protected final ContainerDestroyer<CONTAINER> _destroyer;
+
+        public PendingContainer(Future<CONTAINER> future, ContainerDestroyer<CONTAINER> destroyer) {
+            _future = future;
+            _destroyer = destroyer;
+        }
+
+        public CONTAINER getQuietly() {
+            try {
+                return _future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) { // initialized inline again so the error is thrown there
+                return null;
+            }
+        }
+
+        public ContainerDestroyer<CONTAINER> getDestroyer() {
+            return _destroyer;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public synchronized String toString() {
+        return "containerPrewarmer:{pending=" + _pendingMap.keySet() + ", prewarm=" + _prewarmCount + ", taken="
+                + _takenCount + ", failure=" + _failureCount + ", discard=" + _discardCount + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public synchronized int getPendingCount() {
+        return _pendingMap.size();
+    }
+
+    public synchronized long getPrewarmCount() {
+        return _prewarmCount;
+    }
+
+    public synchronized long getTakenCount() {
+        return _takenCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return _failureCount;
+    }
+
+    public synchronized long getDiscardCount() {
+        return _discardCount;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.List;
+
+/**
+ * The slot of DI container, which has the active container and parked ones for one worker at a time. <br />
+ * A test case holds the slot from set-up to tear-down, so test classes running in parallel
+ * use their own containers (and their own transactions on the thread).
+ * @param <CONTAINER> The type of container.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerSlot<CONTAINER> {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final int _slotNumber;
+    protected final ContainerCache<CONTAINER> _containerCache = new ContainerCache<CONTAINER>();
+
+    /** The active container in the slot. (NullAllowed: not initialized yet or destroyed) */
+    protected CONTAINER _container;
+
+    /** The cache key of the active container. (NullAllowed: not initialized yet) */
+    protected List<Object> _containerKey;
+
+    /** The cached determination of suppressing web mock. (NullAllowed: not initialized yet) */
+    protected Boolean _suppressWebMock;
+
+    // these are guarded by the slot manager
+    protected Thread _ownerThread; // null allowed: when free
+    protected int _holdCount; // for re-entrance
+    protected long _releasedSequence; // to find least recently used slot
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public ContainerSlot(int slotNumber) {
+        _slotNumber = slotNumber;
+    }
+
+    // ===================================================================================
+    //                                                                           Ownership
+    //                                                                           =========
+    protected boolean isFree() {
+        return _ownerThread == null;
+    }
+
+    protected boolean isOwnedBy(Thread thread) {
+        return _ownerThread == thread;
+    }
+
+    protected void hold(Thread thread) {
+        _ownerThread = thread;
+        ++_holdCount;
+    }
+
+    protected boolean unhold(Thread thread, long releasedSequence) { // true if free
+        if (!isOwnedBy(thread)) {
+            String msg = "The slot is not owned by the thread: slot=" + this + ", thread=" + thread;
+            throw new IllegalStateException(msg);
+        }
+        if (--_holdCount > 0) {
+            return false;
+        }
+        _ownerThread = null;
+        _releasedSequence = releasedSequence;
+        return true;
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "slot" + _slotNumber + ":{" + _containerKey + ", owner=" + (_ownerThread != null ? _ownerThread.getName()
+                : null) + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public int getSlotNumber() {
+        return _slotNumber;
+    }
+
+    public ContainerCache<CONTAINER> getContainerCache() {
+        return _containerCache;
+    }
+
+    public CONTAINER getContainer() {
+        return _container;
+    }
+
+    public void setContainer(CONTAINER container) {
+        _container = container;
+    }
+
+    public List<Object> getContainerKey() {
+        return _containerKey;
+    }
+
+    public void setContainerKey(List<Object> containerKey) {
+        _containerKey = containerKey;
+    }
+
+    public Boolean getSuppressWebMock() {
+        return _suppressWebMock;
+    }
+
+    public void setSuppressWebMock(Boolean suppressWebMock) {
+        _suppressWebMock = suppressWebMock;
+    }
+}
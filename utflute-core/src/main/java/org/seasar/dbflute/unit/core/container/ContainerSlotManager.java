@@ -0,0 +1,154 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The manager of container slots for test classes running in parallel. <br />
+ * A thread acquires a free slot at set-up and releases it at tear-down,
+ * waiting if all slots are used by other threads.
+ * <pre>
+ * slot count: 1 (default) means one shared container, so test cases run exclusively
+ * acquire: the free slot whose active container has the same key is preferred (no initialization),
+ *          or new slot while under the count, or least recently used one
+ * </pre>
+ * @param <SLOT> The type of slot.
+ * @author jflute
+ * @since 0.4.8
+ */
+public abstract class ContainerSlotManager<SLOT extends ContainerSlot<?>> {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final int DEFAULT_SLOT_COUNT = 1;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The list of created slot, in order of slot number. (NotNull) */
+    protected final List<SLOT> _slotList = new ArrayList<SLOT>();
+
+    protected int _slotCount = DEFAULT_SLOT_COUNT;
+    protected long _releasedSequence;
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * Set the max count of slots. It can be only increased because containers live in slots.
+     * @param slotCount The count of slots, e.g. the count of parallel workers. (NotMinus, NotZero)
+     */
+    public synchronized void setSlotCount(int slotCount) {
+        if (slotCount < 1) {
+            String msg = "The argument 'slotCount' should be positive: " + slotCount;
+            throw new IllegalArgumentException(msg);
+        }
+        if (_slotCount < slotCount) {
+            _slotCount = slotCount;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                     Acquire/Release
+    //                                                                     ===============
+    /**
+     * Acquire the slot for the current thread, waiting for free slot. (re-entrant in the thread)
+     * @param containerKey The cache key of the container that the thread wants. (NullAllowed: no preference)
+     * @return The slot held by the current thread. (NotNull)
+     */
+    public synchronized SLOT acquire(List<Object> containerKey) {
+        final Thread currentThread = Thread.currentThread();
+        for (SLOT slot : _slotList) {
+            if (slot.isOwnedBy(currentThread)) {
+                slot.hold(currentThread);
+                return slot;
+            }
+        }
+        while (true) {
+            final SLOT slot = findFreeSlot(containerKey);
+            if (slot != null) {
+                slot.hold(currentThread);
+                return slot;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                String msg = "Interrupted while waiting for container slot: " + _slotList;
+                throw new IllegalStateException(msg, e);
+            }
+        }
+    }
+
+    protected SLOT findFreeSlot(List<Object> containerKey) {
+        SLOT leastRecentlyUsed = null;
+        for (SLOT slot : _slotList) {
+            if (!slot.isFree()) {
+                continue;
+            }
+            if (containerKey != null && containerKey.equals(slot.getContainerKey())) {
+                return slot; // can recycle the container
+            }
+            if (leastRecentlyUsed == null || slot._releasedSequence < leastRecentlyUsed._releasedSequence) {
+                leastRecentlyUsed = slot;
+            }
+        }
+        if (_slotList.size() < _slotCount) {
+            final SLOT created = createSlot(_slotList.size() + 1);
+            _slotList.add(created);
+            return created;
+        }
+        return leastRecentlyUsed; // null if all used
+    }
+
+    /**
+     * Create new slot.
+     * @param slotNumber The number of slot, from 1. (NotMinus, NotZero)
+     * @return The new-created slot. (NotNull)
+     */
+    protected abstract SLOT createSlot(int slotNumber);
+
+    /**
+     * Release the slot held by the current thread.
+     * @param slot The slot acquired by the current thread. (NotNull)
+     */
+    public synchronized void release(SLOT slot) {
+        if (slot == null) {
+            String msg = "The argument 'slot' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (slot.unhold(Thread.currentThread(), ++_releasedSequence)) {
+            notifyAll();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public synchronized int getSlotCount() {
+        return _slotCount;
+    }
+
+    /**
+     * @return The snapshot list of created slots. (NotNull)
+     */
+    public synchronized List<SLOT> getSlotList() {
+        return new ArrayList<SLOT>(_slotList);
+    }
+}
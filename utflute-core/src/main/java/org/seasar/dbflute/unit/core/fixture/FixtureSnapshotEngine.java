@@ -0,0 +1,546 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.fixture;
+
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * The engine of fixture snapshot for in-memory H2 database, restoring only touched tables. <br />
+ * It takes the in-memory snapshot of all tables in the current schema once, and installs statement-level
+ * triggers that record touched tables. After a committed test, only the touched tables are restored
+ * from the snapshot, instead of re-loading the whole fixture.
+ * <pre>
+ * takeSnapshot()   : once per database, reads all tables and installs touch triggers (DDL, so before transaction)
+ * (test commits)   : triggers record the touched tables in {@link FixtureTouchRegistry}
+ * restoreTouched() : deletes and re-inserts the touched tables with their referential integrity disabled
+ * discardSnapshot(): drops the touch triggers
+ * </pre>
+ * The database should be in-memory (e.g. cloned by {@link H2TemplateDatabase}), because the triggers refer to
+ * this class, so they should not remain in persistent databases used without UTFlute.
+ * And the database should not be shared by parallel test classes (container slots),
+ * because restoring tables is not isolated from other sessions, so use cloned database per slot.
+ * Sequences and identity counters are not restored, so tests should not depend on generated values.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class FixtureSnapshotEngine {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final String TRIGGER_PREFIX = "UTFLUTE_TOUCH_";
+    public static final String IN_MEMORY_URL_PREFIX = "jdbc:h2:mem:";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final String _databaseName;
+
+    /** The map of table snapshot keyed by table key (SCHEMA.TABLE). (NotNull, EmptyAllowed: before snapshot) */
+    protected final Map<String, FixtureTableSnapshot> _snapshotMap = new LinkedHashMap<String, FixtureTableSnapshot>();
+
+    /** The list of installed trigger names, quoted with schema. (NotNull, EmptyAllowed: before snapshot) */
+    protected final List<String> _triggerNameList = new ArrayList<String>();
+
+    /** The thread using the engine (from set-up to tear-down). (NullAllowed: when not used) */
+    protected Thread _usingThread;
+    protected int _usingCount; // for re-entrance
+
+    protected boolean _snapshotTaken;
+    protected long _restoreCount; // restorations that restored at least one table
+    protected long _restoredTableCount;
+    protected long _restoredRowCount;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param databaseName The name of the database, which is also the key of touched tables. (NotNull)
+     */
+    public FixtureSnapshotEngine(String databaseName) {
+        if (databaseName == null) {
+            String msg = "The argument 'databaseName' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        _databaseName = databaseName;
+    }
+
+    /**
+     * Extract the name of the database from the connection of the data source.
+     * @param dataSource The data source of the database. (NotNull)
+     * @return The name of the database, e.g. 'UNITTEST'. (NotNull)
+     * @throws FixtureSnapshotFailureException When it fails to get the connection.
+     */
+    public static String extractDatabaseName(DataSource dataSource) {
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            return selectDatabaseName(conn);
+        } catch (SQLException e) {
+            throw new FixtureSnapshotFailureException("Failed to get the database name: " + dataSource, e);
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Select the name of the database, which is the same in sessions and triggers. (not URL)
+     * @param conn The connection of the database. (NotNull)
+     * @return The name of the database. (NotNull)
+     * @throws SQLException When it fails to select.
+     */
+    public static String selectDatabaseName(Connection conn) throws SQLException {
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            st = conn.createStatement();
+            rs = st.executeQuery("call database()");
+            rs.next();
+            return rs.getString(1);
+        } finally {
+            closeQuietly(st, rs);
+        }
+    }
+
+    public static String buildTableKey(String schemaName, String tableName) {
+        return schemaName + "." + tableName;
+    }
+
+    // ===================================================================================
+    //                                                                            Snapshot
+    //                                                                            ========
+    /**
+     * Take the snapshot of all tables in the current schema, and install the touch triggers. <br />
+     * It does nothing if already taken, so call it before the first test changes the database.
+     * The trigger creation is DDL (auto-commit), so it should not be called in transaction.
+     * @param dataSource The data source of the database. (NotNull)
+     * @return Is the snapshot taken now? (false if already taken)
+     * @throws FixtureSnapshotFailureException When it fails to read tables or to create triggers, or not in-memory.
+     */
+    public synchronized boolean takeSnapshot(DataSource dataSource) {
+        assertObjectNotNull("dataSource", dataSource);
+        if (_snapshotTaken) {
+            return false;
+        }
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            assertInMemoryDatabase(conn);
+            final String schemaName = selectCurrentSchema(conn);
+            for (String tableName : findTableNameList(conn, schemaName)) {
+                final FixtureTableSnapshot snapshot = readTable(conn, schemaName, tableName);
+                _snapshotMap.put(snapshot.getTableKey(), snapshot);
+            }
+            for (FixtureTableSnapshot snapshot : _snapshotMap.values()) {
+                installTouchTrigger(conn, snapshot);
+            }
+            _snapshotTaken = true;
+            return true;
+        } catch (SQLException e) {
+            _snapshotMap.clear();
+            dropTouchTriggerQuietly(conn);
+            throw new FixtureSnapshotFailureException("Failed to take the fixture snapshot: " + _databaseName, e);
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    protected void assertInMemoryDatabase(Connection conn) throws SQLException {
+        final String url = conn.getMetaData().getURL();
+        if (url == null || !url.startsWith(IN_MEMORY_URL_PREFIX)) {
+            String msg = "The fixture snapshot needs in-memory H2 database (e.g. cloned by H2TemplateDatabase),";
+            msg = msg + " not to leave the touch triggers in persistent database: url=" + url;
+            throw new FixtureSnapshotFailureException(msg, null);
+        }
+    }
+
+    protected String selectCurrentSchema(Connection conn) throws SQLException {
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            st = conn.createStatement();
+            rs = st.executeQuery("call schema()");
+            rs.next();
+            return rs.getString(1);
+        } finally {
+            closeQuietly(st, rs);
+        }
+    }
+
+    protected List<String> findTableNameList(Connection conn, String schemaName) throws SQLException {
+        final DatabaseMetaData metaData = conn.getMetaData();
+        final List<String> tableNameList = new ArrayList<String>();
+        ResultSet rs = null;
+        try {
+            rs = metaData.getTables(null, schemaName, "%", new String[] { "TABLE" });
+            while (rs.next()) {
+                tableNameList.add(rs.getString("TABLE_NAME"));
+            }
+        } finally {
+            closeQuietly(null, rs);
+        }
+        return tableNameList;
+    }
+
+    protected FixtureTableSnapshot readTable(Connection conn, String schemaName, String tableName)
+            throws SQLException {
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            st = conn.createStatement();
+            rs = st.executeQuery("select * from " + quoteTable(schemaName, tableName));
+            final ResultSetMetaData rsmd = rs.getMetaData();
+            final int columnCount = rsmd.getColumnCount();
+            final List<String> columnNameList = new ArrayList<String>(columnCount);
+            final int[] columnTypes = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnNameList.add(rsmd.getColumnName(i + 1));
+                columnTypes[i] = rsmd.getColumnType(i + 1);
+            }
+            final FixtureTableSnapshot snapshot = new FixtureTableSnapshot(schemaName, tableName, columnNameList,
+                    columnTypes);
+            while (rs.next()) {
+                final Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = toDetachedValue(rs.getObject(i + 1));
+                }
+                snapshot.addRow(row);
+            }
+            return snapshot;
+        } finally {
+            closeQuietly(st, rs);
+        }
+    }
+
+    protected Object toDetachedValue(Object value) throws SQLException { // independent of the connection
+        if (value instanceof Clob) {
+            final Clob clob = (Clob) value;
+            return clob.getSubString(1, (int) clob.length());
+        }
+        if (value instanceof Blob) {
+            final Blob blob = (Blob) value;
+            return blob.getBytes(1, (int) blob.length());
+        }
+        return value;
+    }
+
+    protected void installTouchTrigger(Connection conn, FixtureTableSnapshot snapshot) throws SQLException {
+        final String triggerName = quoteTable(snapshot.getSchemaName(), TRIGGER_PREFIX + snapshot.getTableName());
+        final String table = quoteTable(snapshot.getSchemaName(), snapshot.getTableName());
+        final String sql = "create trigger if not exists " + triggerName + " after insert, update, delete on " + table
+                + " call \"" + H2FixtureTouchTrigger.class.getName() + "\"";
+        executeUpdate(conn, sql);
+        _triggerNameList.add(triggerName);
+    }
+
+    protected void dropTouchTriggerQuietly(Connection conn) {
+        if (conn != null) {
+            for (String triggerName : _triggerNameList) {
+                try {
+                    executeUpdate(conn, "drop trigger if exists " + triggerName);
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+        _triggerNameList.clear();
+    }
+
+    // ===================================================================================
+    //                                                                                 Use
+    //                                                                                 ===
+    /**
+     * Begin using the engine on the current thread, e.g. at set-up of test case. <br />
+     * The database cannot be shared by parallel test classes because restoring tables affects them.
+     * @throws FixtureSnapshotFailureException When the engine is used by other thread.
+     */
+    public synchronized void beginUse() {
+        final Thread currentThread = Thread.currentThread();
+        if (_usingThread != null && _usingThread != currentThread) {
+            String msg = "The fixture snapshot of the database cannot be shared by parallel test classes,";
+            msg = msg + " use cloned database per container slot: " + _databaseName + " used by " + _usingThread;
+            throw new FixtureSnapshotFailureException(msg, null);
+        }
+        _usingThread = currentThread;
+        ++_usingCount;
+    }
+
+    /**
+     * End using the engine on the current thread, e.g. at tear-down of test case.
+     */
+    public synchronized void endUse() {
+        if (_usingThread != Thread.currentThread()) { // not begun or already ended
+            return;
+        }
+        if (--_usingCount <= 0) {
+            _usingThread = null;
+            _usingCount = 0;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Restore
+    //                                                                             =======
+    /**
+     * Restore the tables touched since the last restoration from the snapshot. <br />
+     * The touched tables are deleted and re-inserted in one transaction with their referential integrity disabled.
+     * @param dataSource The data source of the database, providing a connection out of test transaction. (NotNull)
+     * @return The list of restored table keys. (NotNull, EmptyAllowed: when no touched table or no snapshot)
+     * @throws FixtureSnapshotFailureException When it fails to restore. (the tables remain touched)
+     */
+    public synchronized List<String> restoreTouched(DataSource dataSource) {
+        assertObjectNotNull("dataSource", dataSource);
+        if (!_snapshotTaken) {
+            return Collections.emptyList();
+        }
+        final List<String> touchedList = FixtureTouchRegistry.pollTouched(_databaseName);
+        final List<FixtureTableSnapshot> targetList = new ArrayList<FixtureTableSnapshot>();
+        for (String tableKey : touchedList) {
+            final FixtureTableSnapshot snapshot = _snapshotMap.get(tableKey);
+            if (snapshot != null) { // e.g. table created after the snapshot is not target
+                targetList.add(snapshot);
+            }
+        }
+        if (targetList.isEmpty()) {
+            return Collections.emptyList();
+        }
+        boolean success = false;
+        Connection conn = null;
+        FixtureTouchRegistry.suppressOnThread(true); // restoring itself is not touch
+        try {
+            conn = dataSource.getConnection();
+            final boolean autoCommit = conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            final List<String> restoredList = new ArrayList<String>(targetList.size());
+            long rowCount = 0;
+            switchReferentialIntegrity(conn, targetList, false); // DDL commits, so before restoring
+            try {
+                for (FixtureTableSnapshot snapshot : targetList) {
+                    rowCount += restoreTable(conn, snapshot);
+                    restoredList.add(snapshot.getTableKey());
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                rollbackQuietly(conn); // before enabling it (DDL commits)
+                throw e;
+            } finally {
+                switchReferentialIntegrity(conn, targetList, true);
+                if (autoCommit) {
+                    conn.setAutoCommit(true);
+                }
+            }
+            ++_restoreCount;
+            _restoredTableCount += restoredList.size();
+            _restoredRowCount += rowCount;
+            success = true;
+            return restoredList;
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            throw new FixtureSnapshotFailureException("Failed to restore the touched tables: " + touchedList, e);
+        } finally {
+            closeQuietly(conn);
+            FixtureTouchRegistry.suppressOnThread(false);
+            if (!success) { // to retry at the next restoration
+                for (String tableKey : touchedList) {
+                    FixtureTouchRegistry.touch(_databaseName, tableKey);
+                }
+            }
+        }
+    }
+
+    protected void switchReferentialIntegrity(Connection conn, List<FixtureTableSnapshot> targetList, boolean enabled)
+            throws SQLException {
+        for (FixtureTableSnapshot snapshot : targetList) { // per table, not whole database
+            final String table = quoteTable(snapshot.getSchemaName(), snapshot.getTableName());
+            final String option = enabled ? "true nocheck" : "false"; // without check, same data as snapshot
+            executeUpdate(conn, "alter table " + table + " set referential_integrity " + option);
+        }
+    }
+
+    protected int restoreTable(Connection conn, FixtureTableSnapshot snapshot) throws SQLException {
+        final String table = quoteTable(snapshot.getSchemaName(), snapshot.getTableName());
+        executeUpdate(conn, "delete from " + table);
+        if (snapshot.getRowCount() == 0) {
+            return 0;
+        }
+        final List<String> columnNameList = snapshot.getColumnNameList();
+        final StringBuilder columnSb = new StringBuilder();
+        final StringBuilder valueSb = new StringBuilder();
+        for (String columnName : columnNameList) {
+            if (columnSb.length() > 0) {
+                columnSb.append(", ");
+                valueSb.append(", ");
+            }
+            columnSb.append(quote(columnName));
+            valueSb.append("?");
+        }
+        final String sql = "insert into " + table + " (" + columnSb + ") values (" + valueSb + ")";
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(sql);
+            for (Object[] row : snapshot.getRowList()) {
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] != null) {
+                        ps.setObject(i + 1, row[i]);
+                    } else {
+                        ps.setNull(i + 1, snapshot.getColumnType(i));
+                    }
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            closeQuietly(ps, null);
+        }
+        return snapshot.getRowCount();
+    }
+
+    /**
+     * Discard the snapshot to take it again, e.g. when the fixture data is reloaded. <br />
+     * The installed triggers are dropped, and the next snapshot installs them again.
+     * @param dataSource The data source of the database, providing a connection out of test transaction. (NotNull)
+     */
+    public synchronized void discardSnapshot(DataSource dataSource) {
+        assertObjectNotNull("dataSource", dataSource);
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            dropTouchTriggerQuietly(conn);
+        } catch (SQLException e) {
+            throw new FixtureSnapshotFailureException("Failed to drop the touch triggers: " + _triggerNameList, e);
+        } finally {
+            closeQuietly(conn);
+            _snapshotMap.clear();
+            _snapshotTaken = false;
+            FixtureTouchRegistry.pollTouched(_databaseName); // touches before the next snapshot are meaningless
+        }
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected static String quote(String name) {
+        return "\"" + name + "\"";
+    }
+
+    protected static String quoteTable(String schemaName, String tableName) {
+        return quote(schemaName) + "." + quote(tableName);
+    }
+
+    protected void executeUpdate(Connection conn, String sql) throws SQLException {
+        Statement st = null;
+        try {
+            st = conn.createStatement();
+            st.executeUpdate(sql);
+        } finally {
+            closeQuietly(st, null);
+        }
+    }
+
+    protected static void rollbackQuietly(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.rollback();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    protected static void closeQuietly(Statement st, ResultSet rs) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        if (st != null) {
+            try {
+                st.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    protected static void closeQuietly(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public synchronized String toString() {
+        return "fixtureSnapshot:{" + _databaseName + ", tables=" + _snapshotMap.size() + ", restore=" + _restoreCount
+                + ", restoredTables=" + _restoredTableCount + ", restoredRows=" + _restoredRowCount + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public String getDatabaseName() {
+        return _databaseName;
+    }
+
+    public synchronized boolean isSnapshotTaken() {
+        return _snapshotTaken;
+    }
+
+    public synchronized FixtureTableSnapshot getTableSnapshot(String tableKey) {
+        return _snapshotMap.get(tableKey);
+    }
+
+    public synchronized long getRestoreCount() {
+        return _restoreCount;
+    }
+
+    public synchronized long getRestoredTableCount() {
+        return _restoredTableCount;
+    }
+
+    public synchronized long getRestoredRowCount() {
+        return _restoredRowCount;
+    }
+}
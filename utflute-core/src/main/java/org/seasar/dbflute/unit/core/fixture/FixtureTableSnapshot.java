@@ -0,0 +1,97 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.fixture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The in-memory snapshot of one table, which has column names and rows. <br />
+ * LOB values are held as String (CLOB) or byte array (BLOB) to be independent of the connection.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class FixtureTableSnapshot {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final String _tableKey; // SCHEMA.TABLE
+    protected final String _schemaName;
+    protected final String _tableName;
+    protected final List<String> _columnNameList;
+    protected final int[] _columnTypes; // java.sql.Types for null binding
+    protected final List<Object[]> _rowList = new ArrayList<Object[]>();
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public FixtureTableSnapshot(String schemaName, String tableName, List<String> columnNameList, int[] columnTypes) {
+        _tableKey = FixtureSnapshotEngine.buildTableKey(schemaName, tableName);
+        _schemaName = schemaName;
+        _tableName = tableName;
+        _columnNameList = columnNameList;
+        _columnTypes = columnTypes;
+    }
+
+    // ===================================================================================
+    //                                                                                 Row
+    //                                                                                 ===
+    public void addRow(Object[] row) {
+        _rowList.add(row);
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "tableSnapshot:{" + _tableKey + ", columns=" + _columnNameList.size() + ", rows=" + _rowList.size()
+                + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public String getTableKey() {
+        return _tableKey;
+    }
+
+    public String getSchemaName() {
+        return _schemaName;
+    }
+
+    public String getTableName() {
+        return _tableName;
+    }
+
+    public List<String> getColumnNameList() {
+        return Collections.unmodifiableList(_columnNameList);
+    }
+
+    public int getColumnType(int index) {
+        return _columnTypes[index];
+    }
+
+    public List<Object[]> getRowList() {
+        return Collections.unmodifiableList(_rowList);
+    }
+
+    public int getRowCount() {
+        return _rowList.size();
+    }
+}
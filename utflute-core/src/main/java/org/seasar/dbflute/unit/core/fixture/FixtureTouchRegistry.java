@@ -0,0 +1,114 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.fixture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of tables touched (inserted, updated, deleted) since the last restoration. <br />
+ * It is recorded by database triggers in the same JVM (in-memory database), keyed by database name.
+ * The database is used by only one test class at the same time (see {@link FixtureSnapshotEngine#beginUse()}),
+ * so parallel container slots have their own keys by their own (e.g. cloned) databases.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class FixtureTouchRegistry {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The map of touched table keys (SCHEMA.TABLE) keyed by database name, table keys as concurrent set. (NotNull) */
+    protected static final ConcurrentMap<String, ConcurrentMap<String, Boolean>> _touchedTableMap = new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>();
+
+    /** Is the recording suppressed on the thread? e.g. while restoring. (NotNull) */
+    protected static final ThreadLocal<Boolean> _suppressedLocal = new ThreadLocal<Boolean>();
+
+    // ===================================================================================
+    //                                                                               Touch
+    //                                                                               =====
+    /**
+     * Record the touched table. (thread-safe)
+     * @param databaseName The name of the database. (NotNull)
+     * @param tableKey The key of the table, 'SCHEMA.TABLE'. (NotNull)
+     */
+    public static void touch(String databaseName, String tableKey) {
+        if (Boolean.TRUE.equals(_suppressedLocal.get())) {
+            return;
+        }
+        prepareTableMap(databaseName).put(tableKey, Boolean.TRUE);
+    }
+
+    protected static ConcurrentMap<String, Boolean> prepareTableMap(String databaseName) {
+        ConcurrentMap<String, Boolean> tableMap = _touchedTableMap.get(databaseName);
+        if (tableMap == null) {
+            final ConcurrentMap<String, Boolean> created = new ConcurrentHashMap<String, Boolean>();
+            tableMap = _touchedTableMap.putIfAbsent(databaseName, created);
+            if (tableMap == null) {
+                tableMap = created;
+            }
+        }
+        return tableMap;
+    }
+
+    /**
+     * Poll the touched tables of the database, which are removed from the registry.
+     * @param databaseName The name of the database. (NotNull)
+     * @return The list of touched table keys. (NotNull, EmptyAllowed: when no touch)
+     */
+    public static List<String> pollTouched(String databaseName) {
+        final List<String> polledList = new ArrayList<String>();
+        final ConcurrentMap<String, Boolean> tableMap = _touchedTableMap.get(databaseName);
+        if (tableMap == null) {
+            return polledList;
+        }
+        for (String tableKey : tableMap.keySet()) {
+            if (tableMap.remove(tableKey) != null) { // only removed one (for concurrent polling)
+                polledList.add(tableKey);
+            }
+        }
+        return polledList;
+    }
+
+    /**
+     * Suppress (or resume) the recording on the current thread, e.g. while restoring.
+     * @param suppressed Does it suppress the recording?
+     */
+    public static void suppressOnThread(boolean suppressed) {
+        if (suppressed) {
+            _suppressedLocal.set(Boolean.TRUE);
+        } else {
+            _suppressedLocal.remove();
+        }
+    }
+
+    /**
+     * @param databaseName The name of the database. (NotNull)
+     * @return The read-only set of touched table keys, not removed. (NotNull, EmptyAllowed: when no touch)
+     */
+    public static Set<String> findTouched(String databaseName) {
+        final ConcurrentMap<String, Boolean> tableMap = _touchedTableMap.get(databaseName);
+        if (tableMap == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new TreeSet<String>(tableMap.keySet()));
+    }
+}
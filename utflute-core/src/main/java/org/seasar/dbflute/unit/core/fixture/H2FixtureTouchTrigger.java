@@ -0,0 +1,55 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.fixture;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.h2.api.Trigger;
+
+/**
+ * The statement-level trigger of H2 database to record touched tables in the registry. <br />
+ * It is installed by the fixture snapshot engine, and called in the same JVM (embedded H2).
+ * @author jflute
+ * @since 0.4.8
+ */
+public class H2FixtureTouchTrigger implements Trigger {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected String _databaseName;
+    protected String _tableKey;
+
+    // ===================================================================================
+    //                                                                             Trigger
+    //                                                                             =======
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+            int type) throws SQLException {
+        _databaseName = FixtureSnapshotEngine.selectDatabaseName(conn); // not URL, internal connection here
+        _tableKey = FixtureSnapshotEngine.buildTableKey(schemaName, tableName);
+    }
+
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        FixtureTouchRegistry.touch(_databaseName, _tableKey);
+    }
+
+    public void close() throws SQLException {
+    }
+
+    public void remove() throws SQLException {
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.fixture;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The template database of H2 to clone fully loaded databases for test classes or parallel workers. <br />
+ * The template (e.g. embedded file database loaded by ReplaceSchema) is scripted once by H2 SCRIPT,
+ * and the cached statements are run into a new in-memory database for each clone.
+ * <pre>
+ * H2TemplateDatabase template = H2TemplateDatabase.of(templateUrl, "sa", "");
+ * String url = template.cloneDatabase("worker1"); <span style="color: #3F7E5E">// jdbc:h2:mem:worker1;DB_CLOSE_DELAY=-1</span>
+ * ...
+ * template.recloneDatabase("worker1"); <span style="color: #3F7E5E">// back to the template data</span>
+ * </pre>
+ * The clones live until dropped (or JVM exit), because they are kept with DB_CLOSE_DELAY=-1.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class H2TemplateDatabase {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final String CLONE_URL_PREFIX = "jdbc:h2:mem:";
+    public static final String CLONE_URL_OPTION = ";DB_CLOSE_DELAY=-1";
+    public static final String GENERATED_CLONE_PREFIX = "utflute_clone_";
+
+    /** The map of template database keyed by template URL, shared in the JVM. (NotNull) */
+    protected static final ConcurrentMap<String, H2TemplateDatabase> _templateMap = new ConcurrentHashMap<String, H2TemplateDatabase>();
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final String _templateUrl;
+    protected final String _user;
+    protected final String _password;
+
+    /** The cached statements of the template script. (NullAllowed: before scripting) */
+    protected List<String> _scriptList;
+
+    /** The set of clone names created by the template, in order of creation. (NotNull) */
+    protected final Set<String> _cloneNameSet = new LinkedHashSet<String>();
+
+    protected int _generatedSequence;
+    protected long _scriptNanos;
+    protected long _cloneCount;
+    protected long _cloneNanos;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public H2TemplateDatabase(String templateUrl, String user, String password) {
+        if (templateUrl == null) {
+            String msg = "The argument 'templateUrl' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        _templateUrl = templateUrl;
+        _user = user;
+        _password = password;
+    }
+
+    /**
+     * Get the template database shared in the JVM, created if it does not exist.
+     * @param templateUrl The JDBC URL of the template database. (NotNull)
+     * @param user The user of the database, also used for clones. (NotNull)
+     * @param password The password of the user, also used for clones. (NotNull, EmptyAllowed)
+     * @return The shared template database for the URL. (NotNull)
+     */
+    public static H2TemplateDatabase of(String templateUrl, String user, String password) {
+        H2TemplateDatabase template = _templateMap.get(templateUrl);
+        if (template == null) {
+            final H2TemplateDatabase created = new H2TemplateDatabase(templateUrl, user, password);
+            template = _templateMap.putIfAbsent(templateUrl, created);
+            if (template == null) {
+                template = created;
+            }
+        }
+        return template;
+    }
+
+    public static String buildCloneUrl(String cloneName) {
+        return CLONE_URL_PREFIX + cloneName + CLONE_URL_OPTION;
+    }
+
+    // ===================================================================================
+    //                                                                              Script
+    //                                                                              ======
+    /**
+     * Prepare the script of the template database, scripted only once and cached. <br />
+     * Call {@link #discardScript()} if the template is reloaded.
+     * @return The read-only list of SQL statements to build the template. (NotNull)
+     * @throws FixtureSnapshotFailureException When it fails to script the template.
+     */
+    public synchronized List<String> prepareScript() {
+        if (_scriptList != null) {
+            return _scriptList;
+        }
+        final long before = System.nanoTime();
+        final List<String> scriptList = new ArrayList<String>();
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = getConnection(_templateUrl);
+            st = conn.createStatement();
+            final ResultSet rs = st.executeQuery("script nopasswords");
+            while (rs.next()) {
+                scriptList.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new FixtureSnapshotFailureException("Failed to script the template database: " + _templateUrl, e);
+        } finally {
+            closeQuietly(conn, st);
+        }
+        _scriptNanos = System.nanoTime() - before;
+        _scriptList = Collections.unmodifiableList(scriptList);
+        return _scriptList;
+    }
+
+    /**
+     * Discard the cached script, e.g. when the template database is reloaded. <br />
+     * Existing clones are not changed, use {@link #recloneDatabase(String)} for them.
+     */
+    public synchronized void discardScript() {
+        _scriptList = null;
+    }
+
+    // ===================================================================================
+    //                                                                               Clone
+    //                                                                               =====
+    /**
+     * Clone the template into the in-memory database of the name, or reuse it if already cloned.
+     * @param cloneName The name of the clone database, e.g. test class or worker name. (NotNull)
+     * @return The JDBC URL of the clone database. (NotNull)
+     * @throws FixtureSnapshotFailureException When it fails to script or to run the script.
+     */
+    public String cloneDatabase(String cloneName) {
+        assertObjectNotNull("cloneName", cloneName);
+        final List<String> scriptList = prepareScript();
+        synchronized (this) {
+            if (_cloneNameSet.contains(cloneName)) {
+                return buildCloneUrl(cloneName);
+            }
+            doCloneDatabase(cloneName, scriptList);
+            _cloneNameSet.add(cloneName);
+        }
+        return buildCloneUrl(cloneName);
+    }
+
+    /**
+     * Clone the template into the in-memory database of a generated name.
+     * @return The JDBC URL of the new clone database. (NotNull)
+     * @throws FixtureSnapshotFailureException When it fails to script or to run the script.
+     */
+    public String cloneNewDatabase() {
+        final String cloneName;
+        synchronized (this) {
+            cloneName = GENERATED_CLONE_PREFIX + (++_generatedSequence);
+        }
+        return cloneDatabase(cloneName);
+    }
+
+    /**
+     * Clone again the existing clone database, that is, its data is back to the template.
+     * @param cloneName The name of the clone database. (NotNull)
+     * @return The JDBC URL of the clone database. (NotNull)
+     * @throws FixtureSnapshotFailureException When it fails to run the script.
+     */
+    public String recloneDatabase(String cloneName) {
+        assertObjectNotNull("cloneName", cloneName);
+        final List<String> scriptList = prepareScript();
+        synchronized (this) {
+            executeOnClone(cloneName, "drop all objects");
+            doCloneDatabase(cloneName, scriptList);
+            _cloneNameSet.add(cloneName);
+        }
+        return buildCloneUrl(cloneName);
+    }
+
+    protected void doCloneDatabase(String cloneName, List<String> scriptList) {
+        final long before = System.nanoTime();
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = getConnection(buildCloneUrl(cloneName));
+            st = conn.createStatement();
+            for (String sql : scriptList) {
+                st.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new FixtureSnapshotFailureException("Failed to clone the template database: " + cloneName, e);
+        } finally {
+            closeQuietly(conn, st);
+        }
+        ++_cloneCount;
+        _cloneNanos += System.nanoTime() - before;
+    }
+
+    // ===================================================================================
+    //                                                                                Drop
+    //                                                                                ====
+    /**
+     * Drop the clone database, which is removed from memory.
+     * @param cloneName The name of the clone database. (NotNull)
+     */
+    public synchronized void dropDatabase(String cloneName) {
+        assertObjectNotNull("cloneName", cloneName);
+        if (_cloneNameSet.remove(cloneName)) {
+            executeOnClone(cloneName, "shutdown");
+        }
+    }
+
+    /**
+     * Drop all clone databases created by the template.
+     */
+    public synchronized void dropAll() {
+        for (String cloneName : new ArrayList<String>(_cloneNameSet)) {
+            dropDatabase(cloneName);
+        }
+    }
+
+    protected void executeOnClone(String cloneName, String sql) {
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = getConnection(buildCloneUrl(cloneName));
+            st = conn.createStatement();
+            st.execute(sql);
+        } catch (SQLException e) {
+            throw new FixtureSnapshotFailureException("Failed to execute on the clone: " + cloneName + ", " + sql, e);
+        } finally {
+            closeQuietly(conn, st);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected Connection getConnection(String url) throws SQLException {
+        try {
+            Class.forName("org.h2.Driver"); // for old environment without driver service
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Not found the H2 driver in the classpath.", e);
+        }
+        return DriverManager.getConnection(url, _user, _password);
+    }
+
+    protected void closeQuietly(Connection conn, Statement st) {
+        if (st != null) {
+            try {
+                st.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public synchronized String toString() {
+        final int scriptSize = _scriptList != null ? _scriptList.size() : 0;
+        final long scriptMillis = _scriptNanos / 1000000L;
+        final long cloneMillis = _cloneCount > 0 ? _cloneNanos / _cloneCount / 1000000L : 0L;
+        return "templateDatabase:{" + _templateUrl + ", script=" + scriptSize + "(" + scriptMillis + "ms), clones="
+                + _cloneNameSet + ", cloneCount=" + _cloneCount + ", avgClone=" + cloneMillis + "ms}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public String getTemplateUrl() {
+        return _templateUrl;
+    }
+
+    public synchronized Set<String> getCloneNameSet() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(_cloneNameSet));
+    }
+
+    public synchronized long getCloneCount() {
+        return _cloneCount;
+    }
+}
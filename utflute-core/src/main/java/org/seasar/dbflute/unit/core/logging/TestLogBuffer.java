@@ -0,0 +1,168 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.logging;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * The buffer of log messages in one test, flushed to the logger in a batch. <br />
+ * Test threads (e.g. cannon-ball cars) append messages without waiting for the appender,
+ * and the messages are written at the end of the test (or failure) by the test thread.
+ * <pre>
+ * capacity: the oldest messages are dropped when over (ring), and the count is logged at flush
+ * thread: messages from other than the flushing thread have the thread name as prefix
+ * order: kept in the buffer, but not with other loggers (e.g. SQL log) in the test
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class TestLogBuffer {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final String ENABLED_PROPERTY = "utflute.log.batched";
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The queue of buffered entries, the eldest first. (NotNull) */
+    protected final ConcurrentLinkedQueue<TestLogEntry> _entryQueue = new ConcurrentLinkedQueue<TestLogEntry>();
+
+    protected final AtomicInteger _size = new AtomicInteger(); // queue size is not constant time
+    protected final AtomicLong _droppedCount = new AtomicLong();
+    protected final int _capacity;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param capacity The max count of buffered messages. (NotMinus, NotZero)
+     */
+    public TestLogBuffer(int capacity) {
+        if (capacity < 1) {
+            String msg = "The argument 'capacity' should be positive: " + capacity;
+            throw new IllegalArgumentException(msg);
+        }
+        _capacity = capacity;
+    }
+
+    // ===================================================================================
+    //                                                                              Append
+    //                                                                              ======
+    /**
+     * Append the log message. (thread-safe, no waiting for the appender)
+     * @param msg The formatted message. (NullAllowed)
+     * @param cause The cause exception of the message. (NullAllowed)
+     */
+    public void append(String msg, Throwable cause) {
+        _entryQueue.add(new TestLogEntry(Thread.currentThread(), msg, cause));
+        if (_size.incrementAndGet() > _capacity) {
+            if (_entryQueue.poll() != null) { // the oldest one
+                _size.decrementAndGet();
+                _droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    // ===================================================================================
+    //                                                                               Flush
+    //                                                                               =====
+    /**
+     * Flush the buffered messages to the logger as debug level, in order of appending.
+     * @param logger The logger of the test case. (NotNull)
+     * @return The count of flushed messages.
+     */
+    public int flush(Log logger) {
+        if (logger == null) {
+            String msg = "The argument 'logger' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        final long dropped = _droppedCount.getAndSet(0L);
+        if (dropped > 0) {
+            logger.debug("*The oldest " + dropped + " log messages were dropped (over capacity " + _capacity + ")");
+        }
+        final Thread currentThread = Thread.currentThread();
+        int count = 0;
+        TestLogEntry entry;
+        while ((entry = _entryQueue.poll()) != null) {
+            _size.decrementAndGet();
+            final String msg = entry.buildMessage(currentThread);
+            if (entry.getCause() != null) {
+                logger.debug(msg, entry.getCause());
+            } else {
+                logger.debug(msg);
+            }
+            ++count;
+        }
+        return count;
+    }
+
+    // ===================================================================================
+    //                                                                       Entry Element
+    //                                                                       =============
+    public static class TestLogEntry {
+
+        protected final Thread _thread;
+        protected final String _message;
+        protected final Throwable _cause;
+
+        public TestLogEntry(Thread thread, String message, Throwable cause) {
+            _thread = thread;
+            _message = message;
+            _cause = cause;
+        }
+
+        public String buildMessage(Thread flushingThread) {
+            if (_thread == flushingThread) {
+                return _message;
+            }
+            return "[" + _thread.getName() + "] " + _message; // caller output of logger is the flushing thread
+        }
+
+        public Thread getThread() {
+            return _thread;
+        }
+
+        public String getMessage() {
+            return _message;
+        }
+
+        public Throwable getCause() {
+            return _cause;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public int getSize() {
+        return _size.get();
+    }
+
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    public long getDroppedCount() {
+        return _droppedCount.get();
+    }
+}
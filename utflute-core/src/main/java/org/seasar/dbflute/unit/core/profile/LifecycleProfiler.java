@@ -0,0 +1,378 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The profiler of test case lifecycle, which records elapsed time of each phase and container component. <br />
+ * The records are written to the per-run JSON file with slowest-first summaries.
+ * <pre>
+ * phase: setupBeforeContainer, prepareContainer (initializeContainer, registerWebMock),
+ *        prepareComponent, beginTransaction, testBody, rollbackTransaction, destroy
+ * component: creation time in the container (inclusive of its dependencies), e.g. Spring beans
+ * report: {"phaseSummary": [...], "testClassSummary": [...], "componentSummary": [...], "records": [...]}
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class LifecycleProfiler {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /** The system property to enable the profiler, e.g. -Dutflute.lifecycle.profile=true */
+    public static final String ENABLED_PROPERTY = "utflute.lifecycle.profile";
+
+    public static final String PHASE_SETUP_BEFORE_CONTAINER = "setupBeforeContainer";
+    public static final String PHASE_PREPARE_CONTAINER = "prepareContainer";
+    public static final String PHASE_INITIALIZE_CONTAINER = "initializeContainer"; // in prepareContainer
+    public static final String PHASE_REGISTER_WEB_MOCK = "registerWebMock"; // in prepareContainer
+    public static final String PHASE_PREPARE_COMPONENT = "prepareComponent";
+    public static final String PHASE_BEGIN_TRANSACTION = "beginTransaction";
+    public static final String PHASE_TEST_BODY = "testBody";
+    public static final String PHASE_ROLLBACK_TRANSACTION = "rollbackTransaction";
+    public static final String PHASE_DESTROY = "destroy";
+
+    protected static final String REPORT_FILE_PREFIX = "lifecycle-profile-";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The list of phase record, in order of recording. (NotNull) */
+    protected final List<PhaseRecord> _phaseRecordList = new ArrayList<PhaseRecord>();
+
+    /** The list of component record, in order of recording. (NotNull) */
+    protected final List<ComponentRecord> _componentRecordList = new ArrayList<ComponentRecord>();
+
+    /** The directory of report written at shutdown. (NullAllowed: not registered yet) */
+    protected File _shutdownReportDir;
+
+    // ===================================================================================
+    //                                                                              Record
+    //                                                                              ======
+    /**
+     * Record the elapsed time of the lifecycle phase. (thread-safe)
+     * @param testClassName The FQCN of the test class. (NotNull)
+     * @param testMethodName The name of the test method. (NullAllowed: e.g. unknown)
+     * @param phase The name of the phase, e.g. PHASE_TEST_BODY. (NotNull)
+     * @param elapsedNanos The elapsed time of the phase as nanoseconds.
+     */
+    public synchronized void recordPhase(String testClassName, String testMethodName, String phase, long elapsedNanos) {
+        _phaseRecordList.add(new PhaseRecord(testClassName, testMethodName, phase, elapsedNanos));
+    }
+
+    /**
+     * Record the creation time of the component in the container. (thread-safe)
+     * @param containerName The name of the container, e.g. spring. (NotNull)
+     * @param componentName The name of the component in the container. (NotNull)
+     * @param elapsedNanos The elapsed time of the creation as nanoseconds.
+     */
+    public synchronized void recordComponent(String containerName, String componentName, long elapsedNanos) {
+        _componentRecordList.add(new ComponentRecord(containerName, componentName, elapsedNanos));
+    }
+
+    public synchronized void clear() {
+        _phaseRecordList.clear();
+        _componentRecordList.clear();
+    }
+
+    protected static class PhaseRecord {
+
+        protected final String _testClassName;
+        protected final String _testMethodName;
+        protected final String _phase;
+        protected final long _elapsedNanos;
+
+        public PhaseRecord(String testClassName, String testMethodName, String phase, long elapsedNanos) {
+            _testClassName = testClassName;
+            _testMethodName = testMethodName;
+            _phase = phase;
+            _elapsedNanos = elapsedNanos;
+        }
+    }
+
+    protected static class ComponentRecord {
+
+        protected final String _containerName;
+        protected final String _componentName;
+        protected final long _elapsedNanos;
+
+        public ComponentRecord(String containerName, String componentName, long elapsedNanos) {
+            _containerName = containerName;
+            _componentName = componentName;
+            _elapsedNanos = elapsedNanos;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Summary
+    //                                                                             =======
+    /**
+     * Summarize the phases, slowest (total time) first.
+     * @return The list of summary keyed by phase name. (NotNull)
+     */
+    public synchronized List<ProfileSummary> summarizePhase() {
+        final Map<String, ProfileSummary> summaryMap = new LinkedHashMap<String, ProfileSummary>();
+        for (PhaseRecord record : _phaseRecordList) {
+            prepareSummary(summaryMap, record._phase).add(record._elapsedNanos);
+        }
+        return sortSlowestFirst(summaryMap);
+    }
+
+    /**
+     * Summarize the test classes (all phases), slowest (total time) first.
+     * @return The list of summary keyed by test class name. (NotNull)
+     */
+    public synchronized List<ProfileSummary> summarizeTestClass() {
+        final Map<String, ProfileSummary> summaryMap = new LinkedHashMap<String, ProfileSummary>();
+        for (PhaseRecord record : _phaseRecordList) {
+            if (PHASE_INITIALIZE_CONTAINER.equals(record._phase) || PHASE_REGISTER_WEB_MOCK.equals(record._phase)) {
+                continue; // already counted in prepareContainer
+            }
+            prepareSummary(summaryMap, record._testClassName).add(record._elapsedNanos);
+        }
+        return sortSlowestFirst(summaryMap);
+    }
+
+    /**
+     * Summarize the components, slowest (total time) first.
+     * @return The list of summary keyed by 'container:component'. (NotNull)
+     */
+    public synchronized List<ProfileSummary> summarizeComponent() {
+        final Map<String, ProfileSummary> summaryMap = new LinkedHashMap<String, ProfileSummary>();
+        for (ComponentRecord record : _componentRecordList) {
+            prepareSummary(summaryMap, record._containerName + ":" + record._componentName).add(record._elapsedNanos);
+        }
+        return sortSlowestFirst(summaryMap);
+    }
+
+    protected ProfileSummary prepareSummary(Map<String, ProfileSummary> summaryMap, String key) {
+        ProfileSummary summary = summaryMap.get(key);
+        if (summary == null) {
+            summary = new ProfileSummary(key);
+            summaryMap.put(key, summary);
+        }
+        return summary;
+    }
+
+    protected List<ProfileSummary> sortSlowestFirst(Map<String, ProfileSummary> summaryMap) {
+        final List<ProfileSummary> summaryList = new ArrayList<ProfileSummary>(summaryMap.values());
+        Collections.sort(summaryList, new Comparator<ProfileSummary>() {
+            public int compare(ProfileSummary o1, ProfileSummary o2) {
+                final long diff = o2.getTotalNanos() - o1.getTotalNanos();
+                return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+            }
+        });
+        return summaryList;
+    }
+
+    public static class ProfileSummary {
+
+        protected final String _key;
+        protected int _count;
+        protected long _totalNanos;
+        protected long _maxNanos;
+
+        public ProfileSummary(String key) {
+            _key = key;
+        }
+
+        public void add(long elapsedNanos) {
+            ++_count;
+            _totalNanos += elapsedNanos;
+            if (_maxNanos < elapsedNanos) {
+                _maxNanos = elapsedNanos;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return _key + ":{count=" + _count + ", total=" + toMillisExp(_totalNanos) + ", max="
+                    + toMillisExp(_maxNanos) + "}";
+        }
+
+        public String getKey() {
+            return _key;
+        }
+
+        public int getCount() {
+            return _count;
+        }
+
+        public long getTotalNanos() {
+            return _totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return _maxNanos;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Report
+    //                                                                              ======
+    /**
+     * Register the report writing at JVM shutdown, only first call is effective.
+     * @param reportDir The directory of the report file, e.g. target/utflute-profile. (NotNull)
+     */
+    public synchronized void registerShutdownReport(File reportDir) {
+        assertObjectNotNull("reportDir", reportDir);
+        if (_shutdownReportDir != null) { // already registered
+            return;
+        }
+        _shutdownReportDir = reportDir;
+        final String fileName = REPORT_FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        final File reportFile = new File(reportDir, fileName + ".json"); // per run
+        Runtime.getRuntime().addShutdownHook(new Thread("utflute-lifecycle-profiler") {
+            @Override
+            public void run() {
+                try {
+                    writeReport(reportFile);
+                } catch (RuntimeException ignored) { // no way to tell at shutdown
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the report of the records as JSON.
+     * @param reportFile The file of the report, its directory is created if needed. (NotNull)
+     * @throws IllegalStateException When it fails to write the file.
+     */
+    public void writeReport(File reportFile) {
+        assertObjectNotNull("reportFile", reportFile);
+        final File reportDir = reportFile.getParentFile();
+        if (reportDir != null && !reportDir.exists()) {
+            reportDir.mkdirs();
+        }
+        final String json = buildReportJson();
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+            writer.write(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write the profile report: " + reportFile, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    public synchronized String buildReportJson() {
+        final String ln = "\n";
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append(ln).append("  \"phaseSummary\": [");
+        appendSummaryJson(sb, summarizePhase(), "phase", ln);
+        sb.append("],");
+        sb.append(ln).append("  \"testClassSummary\": [");
+        appendSummaryJson(sb, summarizeTestClass(), "testClass", ln);
+        sb.append("],");
+        sb.append(ln).append("  \"componentSummary\": [");
+        appendSummaryJson(sb, summarizeComponent(), "component", ln);
+        sb.append("],");
+        sb.append(ln).append("  \"records\": [");
+        int index = 0;
+        for (PhaseRecord record : _phaseRecordList) {
+            sb.append(index > 0 ? "," : "").append(ln).append("    {");
+            sb.append("\"testClass\": ").append(quote(record._testClassName));
+            sb.append(", \"testMethod\": ").append(quote(record._testMethodName));
+            sb.append(", \"phase\": ").append(quote(record._phase));
+            sb.append(", \"nanos\": ").append(record._elapsedNanos).append("}");
+            ++index;
+        }
+        sb.append(ln).append("  ]");
+        sb.append(ln).append("}").append(ln);
+        return sb.toString();
+    }
+
+    protected void appendSummaryJson(StringBuilder sb, List<ProfileSummary> summaryList, String keyName, String ln) {
+        int index = 0;
+        for (ProfileSummary summary : summaryList) {
+            sb.append(index > 0 ? "," : "").append(ln).append("    {");
+            sb.append("\"").append(keyName).append("\": ").append(quote(summary.getKey()));
+            sb.append(", \"count\": ").append(summary.getCount());
+            sb.append(", \"totalNanos\": ").append(summary.getTotalNanos());
+            sb.append(", \"maxNanos\": ").append(summary.getMaxNanos()).append("}");
+            ++index;
+        }
+        if (index > 0) {
+            sb.append(ln).append("  ");
+        }
+    }
+
+    protected String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                sb.append(String.format("\\u%04x", (int) ch));
+            } else {
+                sb.append(ch);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected static String toMillisExp(long nanos) {
+        return String.format("%.3fms", nanos / 1000000.0);
+    }
+
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public synchronized int getPhaseRecordCount() {
+        return _phaseRecordList.size();
+    }
+
+    public synchronized int getComponentRecordCount() {
+        return _componentRecordList.size();
+    }
+}
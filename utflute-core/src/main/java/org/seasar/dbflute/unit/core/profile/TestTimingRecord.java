@@ -0,0 +1,104 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+/**
+ * The timing record of one test (method) in the run, stored in the test timing store.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class TestTimingRecord {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final String CONTAINER_EVENT_BOOT = "boot";
+    public static final String CONTAINER_EVENT_RECYCLE = "recycle";
+    public static final String CONTAINER_EVENT_RESTORE = "restore"; // from parked containers
+    public static final String CONTAINER_EVENT_NONE = ""; // e.g. plain test case
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final long _runId; // e.g. beginning time of the run
+    protected final String _testClassName;
+    protected final String _testMethodName;
+    protected final long _wallNanos;
+    protected final long _cpuNanos; // minus if not supported
+    protected final long _allocatedBytes; // minus if not supported
+    protected final String _containerEvent; // empty if no container
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public TestTimingRecord(long runId, String testClassName, String testMethodName, long wallNanos, long cpuNanos,
+            long allocatedBytes, String containerEvent) {
+        _runId = runId;
+        _testClassName = testClassName;
+        _testMethodName = testMethodName;
+        _wallNanos = wallNanos;
+        _cpuNanos = cpuNanos;
+        _allocatedBytes = allocatedBytes;
+        _containerEvent = containerEvent != null ? containerEvent : CONTAINER_EVENT_NONE;
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    /**
+     * @return The key of the test, 'FQCN#methodName'. (NotNull)
+     */
+    public String getTestKey() {
+        return _testClassName + "#" + _testMethodName;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + getTestKey() + ", run=" + _runId + ", wall=" + _wallNanos + ", cpu=" + _cpuNanos + ", alloc="
+                + _allocatedBytes + ", container=" + _containerEvent + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public long getRunId() {
+        return _runId;
+    }
+
+    public String getTestClassName() {
+        return _testClassName;
+    }
+
+    public String getTestMethodName() {
+        return _testMethodName;
+    }
+
+    public long getWallNanos() {
+        return _wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return _cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return _allocatedBytes;
+    }
+
+    public String getContainerEvent() {
+        return _containerEvent;
+    }
+}
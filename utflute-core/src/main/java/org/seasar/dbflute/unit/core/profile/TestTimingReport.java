@@ -0,0 +1,408 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The report of test timing records over runs: slowest tests, slowest classes and regressions. <br />
+ * The latest run in the records is the target, and the regression is determined by the median
+ * of the test's wall time in the previous runs (baseline).
+ * <pre>
+ * TestTimingReport report = new TestTimingReport(store.readAll());
+ * report.baselineRunCount(5).regressionRatio(1.5);
+ * System.out.println(report.buildReport("\n"));
+ *
+ * or from command line:
+ *  java ... TestTimingReport target/../.utflute/test-timing.dat [baselineRunCount]
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class TestTimingReport {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final int DEFAULT_BASELINE_RUN_COUNT = 5;
+    public static final double DEFAULT_REGRESSION_RATIO = 1.5;
+    public static final long DEFAULT_REGRESSION_MIN_NANOS = 20000000L; // 20ms, ignore tiny tests
+    public static final int DEFAULT_TOP_COUNT = 20;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The list of run ID in order of appending, the last is the latest. (NotNull) */
+    protected final List<Long> _runIdList;
+
+    /** The map of records per run ID, values are in order of appending. (NotNull) */
+    protected final Map<Long, List<TestTimingRecord>> _runRecordMap;
+
+    protected int _baselineRunCount = DEFAULT_BASELINE_RUN_COUNT;
+    protected double _regressionRatio = DEFAULT_REGRESSION_RATIO;
+    protected long _regressionMinNanos = DEFAULT_REGRESSION_MIN_NANOS;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param recordList The list of all records in the store, in order of appending. (NotNull)
+     */
+    public TestTimingReport(List<TestTimingRecord> recordList) {
+        if (recordList == null) {
+            String msg = "The argument 'recordList' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        final Set<Long> runIdSet = new LinkedHashSet<Long>();
+        _runRecordMap = new LinkedHashMap<Long, List<TestTimingRecord>>();
+        for (TestTimingRecord record : recordList) {
+            final Long runId = record.getRunId();
+            runIdSet.add(runId);
+            List<TestTimingRecord> runList = _runRecordMap.get(runId);
+            if (runList == null) {
+                runList = new ArrayList<TestTimingRecord>();
+                _runRecordMap.put(runId, runList);
+            }
+            runList.add(record);
+        }
+        _runIdList = new ArrayList<Long>(runIdSet);
+    }
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * @param baselineRunCount The count of previous runs for baseline of regression. (NotMinus, NotZero)
+     * @return this. (NotNull)
+     */
+    public TestTimingReport baselineRunCount(int baselineRunCount) {
+        _baselineRunCount = baselineRunCount;
+        return this;
+    }
+
+    /**
+     * @param regressionRatio The ratio of wall time to baseline to be regression, e.g. 1.5 means 50% slower.
+     * @return this. (NotNull)
+     */
+    public TestTimingReport regressionRatio(double regressionRatio) {
+        _regressionRatio = regressionRatio;
+        return this;
+    }
+
+    /**
+     * @param regressionMinNanos The minimum difference from baseline to be regression as nanoseconds.
+     * @return this. (NotNull)
+     */
+    public TestTimingReport regressionMinNanos(long regressionMinNanos) {
+        _regressionMinNanos = regressionMinNanos;
+        return this;
+    }
+
+    // ===================================================================================
+    //                                                                       Slowest Tests
+    //                                                                       =============
+    /**
+     * Find the slowest tests in the latest run.
+     * @param limit The max count of returned tests.
+     * @return The list of record, slowest (wall time) first. (NotNull, EmptyAllowed: when no run)
+     */
+    public List<TestTimingRecord> findSlowestTests(int limit) {
+        final List<TestTimingRecord> recordList = new ArrayList<TestTimingRecord>(getLatestRecordList());
+        Collections.sort(recordList, new Comparator<TestTimingRecord>() {
+            public int compare(TestTimingRecord o1, TestTimingRecord o2) {
+                return compareNanosDesc(o1.getWallNanos(), o2.getWallNanos());
+            }
+        });
+        return recordList.size() > limit ? recordList.subList(0, limit) : recordList;
+    }
+
+    /**
+     * Find the slowest test classes in the latest run.
+     * @param limit The max count of returned classes.
+     * @return The list of class timing, slowest (total wall time) first. (NotNull, EmptyAllowed: when no run)
+     */
+    public List<ClassTiming> findSlowestClasses(int limit) {
+        final Map<String, ClassTiming> classMap = new LinkedHashMap<String, ClassTiming>();
+        for (TestTimingRecord record : getLatestRecordList()) {
+            ClassTiming timing = classMap.get(record.getTestClassName());
+            if (timing == null) {
+                timing = new ClassTiming(record.getTestClassName());
+                classMap.put(record.getTestClassName(), timing);
+            }
+            timing.add(record);
+        }
+        final List<ClassTiming> timingList = new ArrayList<ClassTiming>(classMap.values());
+        Collections.sort(timingList, new Comparator<ClassTiming>() {
+            public int compare(ClassTiming o1, ClassTiming o2) {
+                return compareNanosDesc(o1.getWallNanos(), o2.getWallNanos());
+            }
+        });
+        return timingList.size() > limit ? timingList.subList(0, limit) : timingList;
+    }
+
+    public static class ClassTiming {
+
+        protected final String _testClassName;
+        protected int _testCount;
+        protected long _wallNanos;
+        protected long _cpuNanos; // sum of supported only
+        protected long _allocatedBytes; // sum of supported only
+        protected int _bootCount;
+
+        public ClassTiming(String testClassName) {
+            _testClassName = testClassName;
+        }
+
+        public void add(TestTimingRecord record) {
+            ++_testCount;
+            _wallNanos += record.getWallNanos();
+            _cpuNanos += Math.max(record.getCpuNanos(), 0L);
+            _allocatedBytes += Math.max(record.getAllocatedBytes(), 0L);
+            if (TestTimingRecord.CONTAINER_EVENT_BOOT.equals(record.getContainerEvent())) {
+                ++_bootCount;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return _testClassName + ": tests=" + _testCount + ", wall=" + toMillisExp(_wallNanos) + ", cpu="
+                    + toMillisExp(_cpuNanos) + ", alloc=" + toKiloBytesExp(_allocatedBytes) + ", boot=" + _bootCount;
+        }
+
+        public String getTestClassName() {
+            return _testClassName;
+        }
+
+        public int getTestCount() {
+            return _testCount;
+        }
+
+        public long getWallNanos() {
+            return _wallNanos;
+        }
+
+        public long getCpuNanos() {
+            return _cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return _allocatedBytes;
+        }
+
+        public int getBootCount() {
+            return _bootCount;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                          Regression
+    //                                                                          ==========
+    /**
+     * Find the tests whose wall time in the latest run regressed versus the previous runs.
+     * @return The list of regression, largest difference first. (NotNull, EmptyAllowed: when no baseline)
+     */
+    public List<TestRegression> findRegressions() {
+        final Map<String, List<Long>> baselineMap = prepareBaselineMap();
+        final List<TestRegression> regressionList = new ArrayList<TestRegression>();
+        for (TestTimingRecord record : getLatestRecordList()) {
+            final List<Long> previousList = baselineMap.get(record.getTestKey());
+            if (previousList == null || previousList.isEmpty()) { // new test
+                continue;
+            }
+            final long baselineNanos = median(previousList);
+            final long wallNanos = record.getWallNanos();
+            if (wallNanos > baselineNanos * _regressionRatio && wallNanos - baselineNanos >= _regressionMinNanos) {
+                regressionList.add(new TestRegression(record, baselineNanos, previousList.size()));
+            }
+        }
+        Collections.sort(regressionList, new Comparator<TestRegression>() {
+            public int compare(TestRegression o1, TestRegression o2) {
+                return compareNanosDesc(o1.getDifferenceNanos(), o2.getDifferenceNanos());
+            }
+        });
+        return regressionList;
+    }
+
+    protected Map<String, List<Long>> prepareBaselineMap() { // key is test key, value is wall time per run
+        final Map<String, List<Long>> baselineMap = new LinkedHashMap<String, List<Long>>();
+        final int latestIndex = _runIdList.size() - 1;
+        final int fromIndex = Math.max(latestIndex - _baselineRunCount, 0);
+        for (Long runId : _runIdList.subList(fromIndex, Math.max(latestIndex, 0))) {
+            for (TestTimingRecord record : _runRecordMap.get(runId)) {
+                List<Long> wallList = baselineMap.get(record.getTestKey());
+                if (wallList == null) {
+                    wallList = new ArrayList<Long>();
+                    baselineMap.put(record.getTestKey(), wallList);
+                }
+                wallList.add(record.getWallNanos());
+            }
+        }
+        return baselineMap;
+    }
+
+    protected long median(List<Long> nanosList) {
+        final List<Long> sortedList = new ArrayList<Long>(nanosList);
+        Collections.sort(sortedList);
+        final int size = sortedList.size();
+        if (size % 2 == 1) {
+            return sortedList.get(size / 2);
+        }
+        return (sortedList.get(size / 2 - 1) + sortedList.get(size / 2)) / 2;
+    }
+
+    public static class TestRegression {
+
+        protected final TestTimingRecord _record;
+        protected final long _baselineNanos;
+        protected final int _baselineRunCount;
+
+        public TestRegression(TestTimingRecord record, long baselineNanos, int baselineRunCount) {
+            _record = record;
+            _baselineNanos = baselineNanos;
+            _baselineRunCount = baselineRunCount;
+        }
+
+        public long getDifferenceNanos() {
+            return _record.getWallNanos() - _baselineNanos;
+        }
+
+        @Override
+        public String toString() {
+            final String ratio = _baselineNanos > 0 ? String.format("x%.2f", (double) _record.getWallNanos()
+                    / _baselineNanos) : "-";
+            return _record.getTestKey() + ": wall=" + toMillisExp(_record.getWallNanos()) + ", baseline="
+                    + toMillisExp(_baselineNanos) + " (" + ratio + " of " + _baselineRunCount + " runs)";
+        }
+
+        public TestTimingRecord getRecord() {
+            return _record;
+        }
+
+        public long getBaselineNanos() {
+            return _baselineNanos;
+        }
+
+        public int getBaselineRunCount() {
+            return _baselineRunCount;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Report
+    //                                                                              ======
+    public String buildReport(String ln) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("[Test Timing Report]");
+        final List<TestTimingRecord> latestList = getLatestRecordList();
+        long totalWall = 0L;
+        int bootCount = 0;
+        int recycleCount = 0;
+        for (TestTimingRecord record : latestList) {
+            totalWall += record.getWallNanos();
+            if (TestTimingRecord.CONTAINER_EVENT_BOOT.equals(record.getContainerEvent())) {
+                ++bootCount;
+            } else if (TestTimingRecord.CONTAINER_EVENT_RECYCLE.equals(record.getContainerEvent())) {
+                ++recycleCount;
+            }
+        }
+        sb.append(ln).append(" runs=").append(_runIdList.size()).append(", latest=").append(getLatestRunId());
+        sb.append(", tests=").append(latestList.size()).append(", wall=").append(toMillisExp(totalWall));
+        sb.append(", boot=").append(bootCount).append(", recycle=").append(recycleCount);
+        sb.append(ln).append("(slowest tests)");
+        for (TestTimingRecord record : findSlowestTests(DEFAULT_TOP_COUNT)) {
+            sb.append(ln).append(" ").append(record.getTestKey()).append(": wall=");
+            sb.append(toMillisExp(record.getWallNanos())).append(", cpu=").append(toMillisExp(record.getCpuNanos()));
+            sb.append(", alloc=").append(toKiloBytesExp(record.getAllocatedBytes()));
+            if (record.getContainerEvent().length() > 0) {
+                sb.append(", container=").append(record.getContainerEvent());
+            }
+        }
+        sb.append(ln).append("(slowest classes)");
+        for (ClassTiming timing : findSlowestClasses(DEFAULT_TOP_COUNT)) {
+            sb.append(ln).append(" ").append(timing);
+        }
+        sb.append(ln).append("(regressions versus previous ").append(_baselineRunCount).append(" runs)");
+        for (TestRegression regression : findRegressions()) {
+            sb.append(ln).append(" ").append(regression);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Print the report of the store file to standard output.
+     * @param args The arguments: store file path and (optional) baseline run count. (NotNull)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: TestTimingReport <storeFile> [baselineRunCount]");
+            return;
+        }
+        final TestTimingStore store = new TestTimingStore(new File(args[0]), 0L, TestTimingStore.DEFAULT_FLUSH_SIZE);
+        final TestTimingReport report = new TestTimingReport(store.readAll());
+        if (args.length >= 2) {
+            report.baselineRunCount(Integer.parseInt(args[1]));
+        }
+        System.out.println(report.buildReport(System.getProperty("line.separator")));
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected static int compareNanosDesc(long nanos1, long nanos2) {
+        return nanos1 < nanos2 ? 1 : (nanos1 > nanos2 ? -1 : 0);
+    }
+
+    protected static String toMillisExp(long nanos) {
+        return nanos >= 0 ? String.format("%.3fms", nanos / 1000000.0) : "-";
+    }
+
+    protected static String toKiloBytesExp(long bytes) {
+        return bytes >= 0 ? String.format("%.1fKB", bytes / 1024.0) : "-";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    /**
+     * @return The ID of the latest run. (NullAllowed: when no record)
+     */
+    public Long getLatestRunId() {
+        return !_runIdList.isEmpty() ? _runIdList.get(_runIdList.size() - 1) : null;
+    }
+
+    /**
+     * @return The list of record in the latest run. (NotNull, EmptyAllowed: when no record)
+     */
+    public List<TestTimingRecord> getLatestRecordList() {
+        final Long latestRunId = getLatestRunId();
+        if (latestRunId == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(_runRecordMap.get(latestRunId));
+    }
+
+    public List<Long> getRunIdList() {
+        return Collections.unmodifiableList(_runIdList);
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The store of test timing records, which is the append-only binary file over runs. <br />
+ * The records are buffered in memory and appended to the file at flush (per some records and at JVM shutdown).
+ * <pre>
+ * file: header (magic, version) + records (runId, class, method, wall, cpu, allocated, container event)
+ * run: identified by the system property 'utflute.test.timing.runId' set by suite (e.g. build start time),
+ *      or the beginning time of the JVM if not specified (then one run per JVM)
+ * lock: the file is locked while reading or writing, for e.g. parallel forked JVMs of one suite
+ * compact: the file can be rewritten with only recent runs to keep it small
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class TestTimingStore {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    /** The system property to enable the store, e.g. -Dutflute.test.timing=true */
+    public static final String ENABLED_PROPERTY = "utflute.test.timing";
+
+    /** The system property of run ID shared by forked JVMs of one suite, e.g. -Dutflute.test.timing.runId=20141017 */
+    public static final String RUN_ID_PROPERTY = "utflute.test.timing.runId";
+
+    public static final int DEFAULT_FLUSH_SIZE = 256;
+    protected static final int FILE_MAGIC = 0x55544654; // UTFT
+    protected static final short FILE_VERSION = 1;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final File _storeFile;
+    protected final long _runId;
+    protected final int _flushSize;
+
+    /** The list of record not flushed yet. (NotNull) */
+    protected final List<TestTimingRecord> _bufferList = new ArrayList<TestTimingRecord>();
+
+    protected boolean _shutdownFlushRegistered;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param storeFile The file of the store, created if not exists. (NotNull)
+     * @param runId The identity of the run, e.g. by {@link #deriveRunId()}.
+     * @param flushSize The count of buffered records to flush.
+     */
+    public TestTimingStore(File storeFile, long runId, int flushSize) {
+        assertObjectNotNull("storeFile", storeFile);
+        _storeFile = storeFile;
+        _runId = runId;
+        _flushSize = flushSize;
+    }
+
+    /**
+     * Derive the identity of the run from the system property for the suite,
+     * or the beginning time of the JVM if not specified.
+     * @return The identity of the run.
+     * @throws IllegalStateException When the specified run ID is not number.
+     */
+    public static long deriveRunId() {
+        final String specified = System.getProperty(RUN_ID_PROPERTY);
+        if (specified == null || specified.trim().length() == 0) {
+            return ManagementFactory.getRuntimeMXBean().getStartTime(); // one run per JVM
+        }
+        try {
+            return Long.parseLong(specified.trim());
+        } catch (NumberFormatException e) {
+            String msg = "The run ID of test timing should be number: " + RUN_ID_PROPERTY + "=" + specified;
+            throw new IllegalStateException(msg, e);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Append
+    //                                                                              ======
+    /**
+     * Append the timing of the test in the run. (thread-safe, flushed when buffer is full)
+     * @param testClassName The FQCN of the test class. (NotNull)
+     * @param testMethodName The name of the test method. (NotNull)
+     * @param wallNanos The wall time of the test as nanoseconds.
+     * @param cpuNanos The CPU time of the test as nanoseconds. (minus if not supported)
+     * @param allocatedBytes The allocated bytes in the test. (minus if not supported)
+     * @param containerEvent The event of container, e.g. TestTimingRecord.CONTAINER_EVENT_BOOT. (NullAllowed)
+     */
+    public void append(String testClassName, String testMethodName, long wallNanos, long cpuNanos,
+            long allocatedBytes, String containerEvent) {
+        final TestTimingRecord record = new TestTimingRecord(_runId, testClassName, testMethodName, wallNanos,
+                cpuNanos, allocatedBytes, containerEvent);
+        final boolean full;
+        synchronized (this) {
+            _bufferList.add(record);
+            full = _bufferList.size() >= _flushSize;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Flush the buffered records to the store file.
+     * @throws IllegalStateException When it fails to write the file.
+     */
+    public synchronized void flush() {
+        if (_bufferList.isEmpty()) {
+            return;
+        }
+        writeRecord(_bufferList, true);
+        _bufferList.clear();
+    }
+
+    /**
+     * Register the flush at JVM shutdown, only first call is effective.
+     */
+    public synchronized void registerShutdownFlush() {
+        if (_shutdownFlushRegistered) {
+            return;
+        }
+        _shutdownFlushRegistered = true;
+        Runtime.getRuntime().addShutdownHook(new Thread("utflute-test-timing-store") {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException ignored) { // no way to tell at shutdown
+                }
+            }
+        });
+    }
+
+    // ===================================================================================
+    //                                                                                Read
+    //                                                                                ====
+    /**
+     * Read all records in the store file (not containing buffered records).
+     * @return The list of record in order of appending. (NotNull, EmptyAllowed: when no file)
+     * @throws IllegalStateException When it fails to read the file or the file is not the store.
+     */
+    public synchronized List<TestTimingRecord> readAll() {
+        if (!_storeFile.exists()) {
+            return new ArrayList<TestTimingRecord>();
+        }
+        synchronized (TestTimingStore.class) { // file lock is per JVM, overlapping in JVM is error
+            FileInputStream fis = null;
+            try {
+                fis = new FileInputStream(_storeFile);
+                fis.getChannel().lock(0L, Long.MAX_VALUE, true); // shared, released by close
+                return readRecord(fis);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read the test timing store: " + _storeFile, e);
+            } finally {
+                if (fis != null) {
+                    try {
+                        fis.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Compact
+    //                                                                             =======
+    /**
+     * Rewrite the store file with only recent runs.
+     * @param keepRunCount The count of recent runs to keep. (NotMinus, NotZero)
+     * @return The count of removed records.
+     */
+    public synchronized int compact(int keepRunCount) {
+        if (keepRunCount < 1) {
+            String msg = "The argument 'keepRunCount' should be positive: " + keepRunCount;
+            throw new IllegalArgumentException(msg);
+        }
+        flush();
+        if (!_storeFile.exists()) {
+            return 0;
+        }
+        synchronized (TestTimingStore.class) { // file lock is per JVM, overlapping in JVM is error
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(_storeFile, "rw");
+                final FileChannel channel = raf.getChannel();
+                channel.lock(); // exclusive from reading to rewriting, released by close
+                return doCompact(channel, keepRunCount);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to compact the test timing store: " + _storeFile, e);
+            } finally {
+                closeQuietly(raf);
+            }
+        }
+    }
+
+    protected int doCompact(FileChannel channel, int keepRunCount) throws IOException {
+        final List<TestTimingRecord> recordList = readRecord(Channels.newInputStream(channel));
+        final Set<Long> runIdSet = new LinkedHashSet<Long>(); // in order of appending
+        for (TestTimingRecord record : recordList) {
+            runIdSet.add(record.getRunId());
+        }
+        final List<Long> runIdList = new ArrayList<Long>(runIdSet);
+        if (runIdList.size() <= keepRunCount) {
+            return 0;
+        }
+        final Set<Long> keptRunIdSet = new LinkedHashSet<Long>(runIdList.subList(runIdList.size() - keepRunCount,
+                runIdList.size()));
+        final List<TestTimingRecord> keptList = new ArrayList<TestTimingRecord>();
+        for (TestTimingRecord record : recordList) {
+            if (keptRunIdSet.contains(record.getRunId())) {
+                keptList.add(record);
+            }
+        }
+        doWriteRecord(channel, keptList, false);
+        return recordList.size() - keptList.size();
+    }
+
+    // ===================================================================================
+    //                                                                         Read Helper
+    //                                                                         ===========
+    /**
+     * @param ins The input stream of the store file from the beginning, not closed here. (NotNull)
+     * @return The list of record in order of appending. (NotNull)
+     * @throws IOException When it fails to read.
+     */
+    protected List<TestTimingRecord> readRecord(InputStream ins) throws IOException {
+        final List<TestTimingRecord> recordList = new ArrayList<TestTimingRecord>();
+        final DataInputStream dis = new DataInputStream(new BufferedInputStream(ins));
+        try {
+            final int magic = dis.readInt();
+            final short version = dis.readShort();
+            if (magic != FILE_MAGIC || version != FILE_VERSION) {
+                String msg = "Unknown format of the test timing store: magic=" + magic + ", version=" + version;
+                throw new IllegalStateException(msg + " file=" + _storeFile);
+            }
+            while (true) {
+                final long runId;
+                try {
+                    runId = dis.readLong();
+                } catch (EOFException e) { // end of records
+                    break;
+                }
+                final String testClassName = dis.readUTF();
+                final String testMethodName = dis.readUTF();
+                final long wallNanos = dis.readLong();
+                final long cpuNanos = dis.readLong();
+                final long allocatedBytes = dis.readLong();
+                final String containerEvent = dis.readUTF();
+                recordList.add(new TestTimingRecord(runId, testClassName, testMethodName, wallNanos, cpuNanos,
+                        allocatedBytes, containerEvent));
+            }
+        } catch (EOFException e) { // e.g. empty file or the last record is broken by killed JVM
+            return recordList;
+        }
+        return recordList;
+    }
+
+    // ===================================================================================
+    //                                                                        Write Helper
+    //                                                                        ============
+    /**
+     * Write the records to the store file under exclusive file lock, for e.g. parallel forked JVMs.
+     * @param recordList The list of record to be written. (NotNull)
+     * @param append Does it append the records? (false: rewrite the file)
+     */
+    protected void writeRecord(List<TestTimingRecord> recordList, boolean append) {
+        final File storeDir = _storeFile.getParentFile();
+        if (storeDir != null && !storeDir.exists()) {
+            storeDir.mkdirs();
+        }
+        synchronized (TestTimingStore.class) { // file lock is per JVM, overlapping in JVM is error
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(_storeFile, "rw");
+                final FileChannel channel = raf.getChannel();
+                channel.lock(); // exclusive, released by close
+                doWriteRecord(channel, recordList, append);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to write the test timing store: " + _storeFile, e);
+            } finally {
+                closeQuietly(raf);
+            }
+        }
+    }
+
+    protected void doWriteRecord(FileChannel channel, List<TestTimingRecord> recordList, boolean append)
+            throws IOException {
+        if (!append) {
+            channel.truncate(0L);
+        }
+        final boolean needsHeader = channel.size() == 0L; // determined under the lock
+        channel.position(channel.size());
+        final DataOutputStream ous = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        if (needsHeader) {
+            ous.writeInt(FILE_MAGIC);
+            ous.writeShort(FILE_VERSION);
+        }
+        for (TestTimingRecord record : recordList) {
+            ous.writeLong(record.getRunId());
+            ous.writeUTF(record.getTestClassName());
+            ous.writeUTF(record.getTestMethodName());
+            ous.writeLong(record.getWallNanos());
+            ous.writeLong(record.getCpuNanos());
+            ous.writeLong(record.getAllocatedBytes());
+            ous.writeUTF(record.getContainerEvent());
+        }
+        ous.flush(); // not closed here, the channel is closed by caller
+    }
+
+    protected void closeQuietly(RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public File getStoreFile() {
+        return _storeFile;
+    }
+
+    public long getRunId() {
+        return _runId;
+    }
+
+    public synchronized int getBufferedCount() {
+        return _bufferList.size();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * The meter of current thread's resources: CPU time and allocated bytes. <br />
+ * The allocated bytes is read by reflection because it is not standard API
+ * (com.sun.management.ThreadMXBean), so it returns minus on the runtime that does not support it.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ThreadResourceMeter {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String EXTENDED_MXBEAN_NAME = "com.sun.management.ThreadMXBean";
+
+    /** The method to get allocated bytes of the thread. (NullAllowed: not supported) */
+    protected static final Method _allocatedBytesMethod;
+    static {
+        Method method = null;
+        try {
+            final Class<?> extendedType = Class.forName(EXTENDED_MXBEAN_NAME);
+            if (extendedType.isInstance(ManagementFactory.getThreadMXBean())) {
+                method = extendedType.getMethod("getThreadAllocatedBytes", new Class<?>[] { long.class });
+            }
+        } catch (ClassNotFoundException ignored) { // other vendor's runtime
+        } catch (NoSuchMethodException ignored) { // old runtime
+        } catch (SecurityException ignored) {
+        }
+        _allocatedBytesMethod = method;
+    }
+
+    // ===================================================================================
+    //                                                                               Meter
+    //                                                                               =====
+    /**
+     * Get the CPU time of the current thread.
+     * @return The nanoseconds of CPU time. (minus if not supported or disabled)
+     */
+    public static long currentThreadCpuNanos() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!bean.isCurrentThreadCpuTimeSupported()) {
+            return -1L;
+        }
+        try {
+            return bean.getCurrentThreadCpuTime(); // -1 if disabled
+        } catch (UnsupportedOperationException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Get the allocated bytes of the current thread (accumulated since the thread started).
+     * @return The bytes of allocated memory. (minus if not supported or disabled)
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (_allocatedBytesMethod == null) {
+            return -1L;
+        }
+        try {
+            final Object bytes = _allocatedBytesMethod.invoke(ManagementFactory.getThreadMXBean(),
+                    new Object[] { Thread.currentThread().getId() });
+            return ((Long) bytes).longValue(); // -1 if disabled
+        } catch (IllegalAccessException e) {
+            return -1L;
+        } catch (InvocationTargetException e) { // e.g. unsupported operation
+            return -1L;
+        }
+    }
+}
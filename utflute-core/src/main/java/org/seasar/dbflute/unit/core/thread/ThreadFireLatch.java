@@ -16,6 +16,7 @@
 package org.seasar.dbflute.unit.core.thread;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author jflute
@@ -28,7 +29,8 @@ public class ThreadFireLatch {
     //                                                                           =========
     protected final int _threadCount;
     protected final ThreadFireLogger _logger;
-    protected CountDownLatch _ourLatch;
+    protected final ReentrantLock _latchLock = new ReentrantLock(); // not monitor for virtual threads
+    protected CountDownLatch _ourLatch; // guarded by the latch lock
 
     // ===================================================================================
     //                                                                         Constructor
@@ -44,7 +46,9 @@ public class ThreadFireLatch {
     public void await() {
         final CountDownLatch latch;
         final boolean last;
-        synchronized (this) {
+        final boolean waiting;
+        _latchLock.lock();
+        try {
             latch = prepareLatch();
             last = (actuallyGetCount(latch) == 1);
             if (last) {
@@ -52,9 +56,12 @@ public class ThreadFireLatch {
                 clearLatch();
             }
             actuallyCountDown(latch); // ready go if last
+            waiting = isWaitingLatch();
+        } finally {
+            _latchLock.unlock();
         }
         if (!last) {
-            if (isWaitingLatch()) {
+            if (waiting) {
                 // to be exact, possible that threads after restart come here but no problem
                 _logger.log("...Awaiting other threads: count=" + actuallyGetCount(latch));
                 actuallyAwait(latch);
@@ -94,17 +101,22 @@ public class ThreadFireLatch {
         }
     }
 
-    public synchronized void reset() {
-        if (_ourLatch == null) {
-            return;
-        }
-        final long count = _ourLatch.getCount();
-        if (count > 0) {
-            _logger.log("...Resetting your latch: count=" + count);
-            for (int i = 0; i < count; i++) {
-                _ourLatch.countDown(); // is thread safe and allowed over count down
+    public void reset() {
+        _latchLock.lock();
+        try {
+            if (_ourLatch == null) {
+                return;
+            }
+            final long count = _ourLatch.getCount();
+            if (count > 0) {
+                _logger.log("...Resetting your latch: count=" + count);
+                for (int i = 0; i < count; i++) {
+                    _ourLatch.countDown(); // is thread safe and allowed over count down
+                }
             }
+            _ourLatch = null;
+        } finally {
+            _latchLock.unlock();
         }
-        _ourLatch = null;
     }
 }
@@ -23,6 +23,12 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.seasar.dbflute.unit.core.transaction.TransactionResource;
 
@@ -47,7 +53,13 @@ public class ThreadFireMan {
     // ===================================================================================
     //                                                                         Thread Fire
     //                                                                         ===========
-    public <RESULT> void threadFire(ThreadFireExecution<RESULT> execution, ThreadFireOption option) {
+    /**
+     * Fire the threads and wait for all executions.
+     * @param execution The callback for the execution. (NotNull)
+     * @param option The option of thread-fire. (NotNull)
+     * @return The result that has histograms of execution time. (NotNull)
+     */
+    public <RESULT> ThreadFireResult threadFire(ThreadFireExecution<RESULT> execution, ThreadFireOption option) {
         if (execution == null) {
             String msg = "The argument 'execution' should be not null.";
             throw new IllegalArgumentException(msg);
@@ -57,12 +69,19 @@ public class ThreadFireMan {
             throw new IllegalArgumentException(msg);
         }
         Throwable thrownAny = null;
+        final ThreadFireResult fireResult = createThreadFireResult();
+        final ExecutorService service = createExecutorService(option); // shared by all repeats
         try {
             try {
-                for (int i = 0; i < option.getRepeatCount(); i++) {
-                    doThreadFire(execution, option);
+                if (option.isOpenLoop()) {
+                    doArrivalFire(execution, option, service, fireResult);
+                } else {
+                    for (int i = 0; i < option.getRepeatCount(); i++) {
+                        doThreadFire(execution, option, service, fireResult);
+                    }
                 }
             } finally {
+                shutdownExecutorService(service);
                 final ThreadFireFinallyRunner finallyRunner = option.getFinallyRunner();
                 if (finallyRunner != null) {
                     try {
@@ -91,11 +110,17 @@ public class ThreadFireMan {
                 fail("The excutions should throw the exception: " + option.getExpectedExpceptionAnyExp());
             }
         }
+        log(fireResult.buildSummary(ln()));
+        return fireResult;
+    }
+
+    protected ThreadFireResult createThreadFireResult() {
+        return new ThreadFireResult();
     }
 
-    protected <RESULT> List<RESULT> doThreadFire(ThreadFireExecution<RESULT> execution, ThreadFireOption option) {
+    protected <RESULT> List<RESULT> doThreadFire(ThreadFireExecution<RESULT> execution, ThreadFireOption option,
+            ExecutorService service, ThreadFireResult fireResult) {
         // ## Arrange ##
-        final ExecutorService service = Executors.newCachedThreadPool();
         final int threadCount = option.getThreadCount();
         final CountDownLatch ready = new CountDownLatch(threadCount);
         final CountDownLatch start = new CountDownLatch(1);
@@ -106,7 +131,7 @@ public class ThreadFireMan {
         for (int i = 0; i < threadCount; i++) { // basically synchronized with parameter size
             final Object parameter = parameterList.size() > i ? parameterList.get(i) : null; // just in case
             final Callable<RESULT> callable = createCallable(execution, option, ready, start, goal, parameter,
-                    yourLatch);
+                    yourLatch, fireResult);
             final Future<RESULT> future = service.submit(callable);
             futureList.add(future);
         }
@@ -131,6 +156,116 @@ public class ThreadFireMan {
         return resultList;
     }
 
+    // -----------------------------------------------------
+    //                                             Open Loop
+    //                                             ---------
+    /**
+     * Start the executions at the fixed rate until the duration is over. <br />
+     * The intended start of each execution is fixed by the schedule (not by this thread's wake-up),
+     * so queueing delay is measured even if this thread or the threads are late.
+     * @param execution The callback for the execution. (NotNull)
+     * @param option The option of thread-fire that has arrival rate. (NotNull)
+     * @param service The executor service for the executions. (NotNull)
+     * @param fireResult The result to record queueing delay and service time. (NotNull)
+     * @return The list of result from the executions in order of arrival. (NotNull)
+     */
+    protected <RESULT> List<RESULT> doArrivalFire(ThreadFireExecution<RESULT> execution, ThreadFireOption option,
+            ExecutorService service, ThreadFireResult fireResult) {
+        // ## Arrange ##
+        final long intervalNanos = (long) (1000000000.0 / option.getArrivalRate());
+        final long durationNanos = TimeUnit.MILLISECONDS.toNanos(option.getArrivalDurationMillis());
+        final List<Object> parameterList = option.getParameterList();
+        final ThreadFireLogger logger = createLogger();
+        final List<Future<RESULT>> futureList = new ArrayList<Future<RESULT>>();
+
+        // ## Act ##
+        log("/- - - - - - - - - - - - - - - - - - - - - -");
+        log("                                 Thread Fire");
+        log("                                 - - - - - -");
+        log("...Starting executions at the rate: " + option.getArrivalRate() + "/s, " + durationNanos / 1000000 + "ms");
+        final long beginNanos = System.nanoTime();
+        int arrivalIndex = 0;
+        while (true) {
+            final long intendedNanos = beginNanos + (intervalNanos * arrivalIndex);
+            if (intendedNanos - beginNanos >= durationNanos) {
+                break;
+            }
+            parkUntil(intendedNanos);
+            final int parameterSize = parameterList.size();
+            final Object parameter = parameterSize > 0 ? parameterList.get(arrivalIndex % parameterSize) : null;
+            final ThreadFireLatch ownLatch = new ThreadFireLatch(1, logger); // executions do not wait for each other
+            final Callable<RESULT> callable = createArrivalCallable(execution, option, parameter, ownLatch,
+                    intendedNanos, fireResult);
+            futureList.add(service.submit(callable));
+            ++arrivalIndex;
+        }
+        log("- - - - - - - - -/ *All executions were started: count=" + arrivalIndex);
+
+        // ## Assert ##
+        final List<RESULT> resultList = handleFuture(option, futureList);
+        assertSameResultIfExpected(option, resultList);
+        return resultList;
+    }
+
+    protected void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                String msg = "The arrival schedule was interrupted!";
+                throw new IllegalStateException(msg);
+            }
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                      Executor Service
+    //                                      ----------------
+    protected ExecutorService createExecutorService(ThreadFireOption option) {
+        if (option.isVirtualThreads()) {
+            final ExecutorService virtualService = VirtualThreadExecutorFactory.createIfSupported();
+            if (virtualService != null) {
+                return virtualService;
+            }
+            log("*Virtual threads are not supported in the runtime so use platform threads");
+        }
+        final int threadCount = option.getThreadCount();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), createThreadFactory());
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+
+    protected ThreadFactory createThreadFactory() {
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        final AtomicInteger fireNumber = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = defaultFactory.newThread(runnable);
+                thread.setName("thread-fire-" + fireNumber.incrementAndGet());
+                thread.setDaemon(true); // not to block JVM exit even if an execution is left alone
+                return thread;
+            }
+        };
+    }
+
+    protected void shutdownExecutorService(ExecutorService service) {
+        service.shutdown(); // all threads have already finished here
+        try {
+            if (!service.awaitTermination(getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                log("*The fired threads were not terminated in time so interrupt them: " + service);
+                service.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            service.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected long getShutdownTimeoutMillis() {
+        return 3000L;
+    }
+
     protected ThreadFireLogger createLogger() {
         return new ThreadFireLogger() {
             public void log(Object... msgs) {
@@ -144,7 +279,6 @@ public class ThreadFireMan {
         for (Future<RESULT> future : futureList) {
             try {
                 final RESULT result = future.get();
-                System.out.println("result: " + result);
                 resultList.add(result);
             } catch (InterruptedException e) {
                 String msg = "future.get() was interrupted!";
@@ -176,10 +310,10 @@ public class ThreadFireMan {
     //                                                                            ========
     protected <RESULT> Callable<RESULT> createCallable(final ThreadFireExecution<RESULT> execution,
             final ThreadFireOption option, final CountDownLatch ready, final CountDownLatch start,
-            final CountDownLatch goal, final Object parameter, final ThreadFireLatch yourLatch) {
+            final CountDownLatch goal, final Object parameter, final ThreadFireLatch yourLatch,
+            final ThreadFireResult fireResult) {
         return new Callable<RESULT>() {
             public RESULT call() { // each thread here
-                final long threadId = Thread.currentThread().getId();
                 try {
                     ready.countDown();
                     try {
@@ -188,35 +322,16 @@ public class ThreadFireMan {
                         String msg = "start.await() was interrupted: start=" + start;
                         throw new IllegalStateException(msg, e);
                     }
-                    prepareAccessContext();
-                    TransactionResource txRes = null;
-                    if (!option.isSuppressTransaction()) {
-                        txRes = beginTransaction();
-                    }
-                    RESULT result = null;
-                    RuntimeException cause = null;
+                    final long beginNanos = System.nanoTime();
+                    boolean failure = false;
                     try {
-                        result = execution.execute(new ThreadFireResource(threadId, parameter, yourLatch));
+                        return doExecute(execution, option, parameter, yourLatch);
                     } catch (RuntimeException e) {
-                        cause = e;
+                        failure = true;
+                        throw e;
                     } finally {
-                        if (txRes != null) {
-                            try {
-                                if (cause == null && option.isCommitTransaction()) {
-                                    txRes.commit();
-                                } else {
-                                    txRes.rollback();
-                                }
-                            } catch (Exception continued) {
-                                log("*Failed to commit or roll-back: " + continued.getMessage());
-                            }
-                        }
-                        clearAccessContext();
-                    }
-                    if (cause != null) {
-                        throw cause;
+                        fireResult.recordExecution(System.nanoTime() - beginNanos, failure);
                     }
-                    return result;
                 } finally {
                     goal.countDown();
                     yourLatch.reset(); // to release waiting threads
@@ -225,6 +340,59 @@ public class ThreadFireMan {
         };
     }
 
+    protected <RESULT> Callable<RESULT> createArrivalCallable(final ThreadFireExecution<RESULT> execution,
+            final ThreadFireOption option, final Object parameter, final ThreadFireLatch ownLatch,
+            final long intendedNanos, final ThreadFireResult fireResult) {
+        return new Callable<RESULT>() {
+            public RESULT call() { // each thread here
+                final long beginNanos = System.nanoTime();
+                boolean failure = false;
+                try {
+                    return doExecute(execution, option, parameter, ownLatch);
+                } catch (RuntimeException e) {
+                    failure = true;
+                    throw e;
+                } finally {
+                    fireResult.recordArrival(beginNanos - intendedNanos, System.nanoTime() - beginNanos, failure);
+                }
+            }
+        };
+    }
+
+    protected <RESULT> RESULT doExecute(ThreadFireExecution<RESULT> execution, ThreadFireOption option,
+            Object parameter, ThreadFireLatch yourLatch) {
+        final long threadId = Thread.currentThread().getId();
+        prepareAccessContext();
+        TransactionResource txRes = null;
+        if (!option.isSuppressTransaction()) {
+            txRes = beginTransaction();
+        }
+        RESULT result = null;
+        RuntimeException cause = null;
+        try {
+            result = execution.execute(new ThreadFireResource(threadId, parameter, yourLatch));
+        } catch (RuntimeException e) {
+            cause = e;
+        } finally {
+            if (txRes != null) {
+                try {
+                    if (cause == null && option.isCommitTransaction()) {
+                        txRes.commit();
+                    } else {
+                        txRes.rollback();
+                    }
+                } catch (Exception continued) {
+                    log("*Failed to commit or roll-back: " + continued.getMessage());
+                }
+            }
+            clearAccessContext();
+        }
+        if (cause != null) {
+            throw cause;
+        }
+        return result;
+    }
+
     // ===================================================================================
     //                                                                         Fire Helper
     //                                                                         ===========
@@ -40,6 +40,9 @@ public class ThreadFireOption {
     protected boolean _expectedSameResult;
     protected boolean _commitTransaction;
     protected boolean _suppressTransaction;
+    protected boolean _virtualThreads;
+    protected double _arrivalRate; // zero means closed-loop
+    protected long _arrivalDurationMillis;
     protected String _expectedExceptionMessageAny;
     protected Class<? extends Exception> _expectedExceptionTypeAny;
     protected ThreadFireFinallyRunner _finallyRunner;
@@ -78,6 +81,38 @@ public class ThreadFireOption {
         return this;
     }
 
+    /**
+     * Execute on virtual threads if the runtime supports it. (default: platform threads)
+     * @return this. (NotNull)
+     */
+    public ThreadFireOption virtualThreads() {
+        _virtualThreads = true;
+        return this;
+    }
+
+    /**
+     * Start executions at the fixed rate, independent of completion. (open loop, default: closed loop) <br />
+     * The executions are queued to the threads (thread count) if all threads are busy,
+     * and the queueing delay is included in the response time of the result.
+     * The repeat count is ignored and the parameters are used in turn.
+     * @param executionsPerSecond The count of executions started per second. (NotZero, NotMinus)
+     * @param durationMillis The milliseconds to keep starting executions. (NotZero, NotMinus)
+     * @return this. (NotNull)
+     */
+    public ThreadFireOption arrivalRate(double executionsPerSecond, long durationMillis) {
+        if (executionsPerSecond <= 0.0) {
+            String msg = "The argument 'executionsPerSecond' should be positive: " + executionsPerSecond;
+            throw new IllegalArgumentException(msg);
+        }
+        if (durationMillis <= 0) {
+            String msg = "The argument 'durationMillis' should be positive: " + durationMillis;
+            throw new IllegalArgumentException(msg);
+        }
+        _arrivalRate = executionsPerSecond;
+        _arrivalDurationMillis = durationMillis;
+        return this;
+    }
+
     public ThreadFireOption expectSameResult() {
         _expectedSameResult = true;
         return this;
@@ -164,6 +199,26 @@ public class ThreadFireOption {
         this._suppressTransaction = suppressTransaction;
     }
 
+    public boolean isVirtualThreads() {
+        return _virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this._virtualThreads = virtualThreads;
+    }
+
+    public boolean isOpenLoop() {
+        return _arrivalRate > 0.0;
+    }
+
+    public double getArrivalRate() {
+        return _arrivalRate;
+    }
+
+    public long getArrivalDurationMillis() {
+        return _arrivalDurationMillis;
+    }
+
     public String getExpectedExceptionMessageAny() {
         return _expectedExceptionMessageAny;
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.thread;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.seasar.dbflute.unit.core.cannonball.CannonballHistogram;
+
+/**
+ * The result of thread-fire, which has histograms of execution time. <br />
+ * In open-loop (arrival rate) mode, the response time is measured from the intended start
+ * (not the actual start) so that queueing delay is not hidden. (coordinated omission)
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ThreadFireResult {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The histogram of delay from the intended start to the actual start. (NotNull, empty if closed-loop) */
+    protected final CannonballHistogram _queueDelay = new CannonballHistogram();
+
+    /** The histogram of time from the actual start to the end. (NotNull) */
+    protected final CannonballHistogram _serviceTime = new CannonballHistogram();
+
+    /** The histogram of time from the intended start to the end, that is corrected latency. (NotNull) */
+    protected final CannonballHistogram _responseTime = new CannonballHistogram();
+
+    /** The count of failure execution. */
+    protected final AtomicLong _failureCount = new AtomicLong();
+
+    // ===================================================================================
+    //                                                                              Record
+    //                                                                              ======
+    /**
+     * Record the execution in closed-loop mode, whose intended start is the actual start. (thread-safe)
+     * @param serviceNanos The elapsed time of the execution as nanoseconds.
+     * @param failure Is the execution failure?
+     */
+    public void recordExecution(long serviceNanos, boolean failure) {
+        _serviceTime.record(serviceNanos);
+        _responseTime.record(serviceNanos);
+        if (failure) {
+            _failureCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record the execution in open-loop mode. (thread-safe)
+     * @param queueNanos The delay from the intended start to the actual start as nanoseconds.
+     * @param serviceNanos The elapsed time of the execution as nanoseconds.
+     * @param failure Is the execution failure?
+     */
+    public void recordArrival(long queueNanos, long serviceNanos, boolean failure) {
+        _queueDelay.record(queueNanos);
+        _serviceTime.record(serviceNanos);
+        _responseTime.record(queueNanos + serviceNanos);
+        if (failure) {
+            _failureCount.incrementAndGet();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Summary
+    //                                                                             =======
+    public String buildSummary(String ln) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("[Thread Fire Result]");
+        sb.append(ln).append(" response: ").append(_responseTime);
+        sb.append(ln).append(" service: ").append(_serviceTime);
+        if (_queueDelay.getCount() > 0) {
+            sb.append(ln).append(" queue: ").append(_queueDelay);
+        }
+        sb.append(ln).append(" failure: ").append(getFailureCount());
+        return sb.toString();
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    /**
+     * @return The histogram of queueing delay as nanoseconds. (NotNull, empty if closed-loop)
+     */
+    public CannonballHistogram getQueueDelay() {
+        return _queueDelay;
+    }
+
+    /**
+     * @return The histogram of service time as nanoseconds. (NotNull)
+     */
+    public CannonballHistogram getServiceTime() {
+        return _serviceTime;
+    }
+
+    /**
+     * @return The histogram of corrected response time (queueing delay + service time) as nanoseconds. (NotNull)
+     */
+    public CannonballHistogram getResponseTime() {
+        return _responseTime;
+    }
+
+    public long getExecutionCount() {
+        return _serviceTime.getCount();
+    }
+
+    public long getFailureCount() {
+        return _failureCount.get();
+    }
+}
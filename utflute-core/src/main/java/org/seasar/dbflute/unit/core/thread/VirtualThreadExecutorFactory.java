@@ -0,0 +1,76 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.thread;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The factory of executor service that runs each task on a virtual thread. <br />
+ * The API is called by reflection because UTFlute is compiled for old Java,
+ * so it returns null on the runtime that does not support virtual threads.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class VirtualThreadExecutorFactory {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String FACTORY_METHOD_NAME = "newVirtualThreadPerTaskExecutor";
+
+    /** The method of executors to create virtual thread executor. (NullAllowed: not supported) */
+    protected static final Method _factoryMethod;
+    static {
+        Method method = null;
+        try {
+            method = Executors.class.getMethod(FACTORY_METHOD_NAME, (Class<?>[]) null);
+        } catch (NoSuchMethodException ignored) { // old runtime
+        } catch (SecurityException ignored) {
+        }
+        _factoryMethod = method;
+    }
+
+    // ===================================================================================
+    //                                                                             Factory
+    //                                                                             =======
+    /**
+     * Does the runtime support virtual threads?
+     * @return The determination, true or false.
+     */
+    public static boolean isSupported() {
+        return _factoryMethod != null;
+    }
+
+    /**
+     * Create the executor service that starts a new virtual thread for each task.
+     * @return The new-created executor service. (NullAllowed: when not supported)
+     */
+    public static ExecutorService createIfSupported() {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            return (ExecutorService) _factoryMethod.invoke(null, (Object[]) null);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) { // e.g. preview feature disabled
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import javax.sql.DataSource;
+
+/**
+ * The resource of nested transaction by JDBC savepoint in the current transaction. <br />
+ * The roll-back targets only the savepoint, and the commit releases it (the outer transaction decides).
+ * The data source should provide the connection bound to the current transaction, e.g. JTA's one.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class SavepointTransactionResource implements TransactionResource {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final Connection _connection; // bound to the current transaction
+    protected final Savepoint _savepoint;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public SavepointTransactionResource(Connection connection, Savepoint savepoint) {
+        _connection = connection;
+        _savepoint = savepoint;
+    }
+
+    /**
+     * Begin the nested transaction by setting savepoint on the connection of the current transaction.
+     * @param dataSource The data source that provides the connection of the current transaction. (NotNull)
+     * @return The resource of the savepoint. (NotNull)
+     * @throws TransactionFailureException When it fails to set the savepoint.
+     */
+    public static SavepointTransactionResource begin(DataSource dataSource) {
+        if (dataSource == null) {
+            String msg = "The argument 'dataSource' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            final Savepoint savepoint = connection.setSavepoint();
+            return new SavepointTransactionResource(connection, savepoint);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw new TransactionFailureException("Failed to set the savepoint.", e);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                         Transaction
+    //                                                                         ===========
+    public void commit() {
+        try {
+            _connection.releaseSavepoint(_savepoint);
+        } catch (SQLException ignored) { // e.g. unsupported, released at the end of transaction anyway
+        } finally {
+            closeQuietly(_connection);
+        }
+    }
+
+    public void rollback() {
+        try {
+            _connection.rollback(_savepoint);
+        } catch (SQLException e) {
+            throw new TransactionFailureException("Failed to roll-back to the savepoint.", e);
+        } finally {
+            closeQuietly(_connection);
+        }
+    }
+
+    protected static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close(); // returned to the transaction, not closed physically
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public Connection getConnection() {
+        return _connection;
+    }
+
+    public Savepoint getSavepoint() {
+        return _savepoint;
+    }
+}
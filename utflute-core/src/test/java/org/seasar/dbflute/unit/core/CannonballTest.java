@@ -21,6 +21,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import junit.framework.AssertionFailedError;
 
@@ -28,16 +32,29 @@ import org.seasar.dbflute.exception.IllegalConditionBeanOperationException;
 import org.seasar.dbflute.exception.factory.ExceptionMessageBuilder;
 import org.seasar.dbflute.unit.core.cannonball.CannonballCar;
 import org.seasar.dbflute.unit.core.cannonball.CannonballDragon;
+import org.seasar.dbflute.unit.core.cannonball.CannonballHistogram;
+import org.seasar.dbflute.unit.core.cannonball.CannonballLatch;
+import org.seasar.dbflute.unit.core.cannonball.CannonballLoadProfile;
 import org.seasar.dbflute.unit.core.cannonball.CannonballOption;
 import org.seasar.dbflute.unit.core.cannonball.CannonballProjectA;
+import org.seasar.dbflute.unit.core.cannonball.CannonballResult;
+import org.seasar.dbflute.unit.core.cannonball.CannonballResult.CannonballLap;
+import org.seasar.dbflute.unit.core.cannonball.CannonballResult.CannonballLoadBucket;
 import org.seasar.dbflute.unit.core.cannonball.CannonballRetireException;
 import org.seasar.dbflute.unit.core.cannonball.CannonballRun;
+import org.seasar.dbflute.unit.core.cannonball.CannonballStaff;
+import org.seasar.dbflute.unit.core.cannonball.CannonballWatchScheduler;
+import org.seasar.dbflute.unit.core.transaction.TransactionResource;
 
 /**
  * @author jflute
  */
 public class CannonballTest extends PlainTestCase {
 
+    /** The recorder of transactions begun by cars. (NullAllowed: transaction unsupported as default) */
+    protected TransactionRecorder _txRecorder;
+    protected boolean _basicStaffOnly; // without savepoint
+
     // ===================================================================================
     //                                                                               Basic
     //                                                                               =====
@@ -81,6 +98,304 @@ public class CannonballTest extends PlainTestCase {
         }
     }
 
+    // ===================================================================================
+    //                                                                              Repeat
+    //                                                                              ======
+    public void test_cannonball_repeat_reuseThread() throws Exception {
+        final Set<Thread> threadSet = Collections.synchronizedSet(new HashSet<Thread>());
+        final List<Integer> callNoList = Collections.synchronizedList(new ArrayList<Integer>());
+        cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                threadSet.add(Thread.currentThread());
+                callNoList.add(car.getEntryNumber());
+            }
+        }, new CannonballOption().threadCount(4).repeatCount(5));
+        assertEquals(20, callNoList.size());
+        assertEquals(4, threadSet.size()); // reused through repeats
+        for (Thread thread : threadSet) {
+            thread.join(3000L);
+            assertFalse(thread.isAlive()); // already shutdown
+        }
+    }
+
+    public void test_cannonball_virtualThreads_basic() throws Exception {
+        final Set<Integer> callNoList = Collections.synchronizedSet(new HashSet<Integer>());
+        final Set<Integer> restartNoList = Collections.synchronizedSet(new HashSet<Integer>());
+        cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                callNoList.add(car.getEntryNumber());
+                car.restart();
+                restartNoList.add(car.getEntryNumber());
+            }
+        }, new CannonballOption().threadCount(300).virtualThreads()); // platform threads if not supported
+        assertEquals(300, callNoList.size());
+        assertEquals(300, restartNoList.size());
+    }
+
+    // ===================================================================================
+    //                                                                              Result
+    //                                                                              ======
+    public void test_cannonball_result_basic() throws Exception {
+        CannonballResult result = cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                car.teaBreak(car.isEntryNumber(1) ? 50 : 5);
+            }
+        }, new CannonballOption().threadCount(3).repeatCount(4));
+        log(result.buildSummary(ln()));
+        log(result.buildEntryLatencySummary(ln()));
+        CannonballHistogram latency = result.getLatency();
+        assertEquals(12, result.getRunCount());
+        assertEquals(0, result.getFailureCount());
+        assertEquals(4, result.getLapList().size());
+        assertTrue(latency.getP50Nanos() <= latency.getP90Nanos());
+        assertTrue(latency.getP90Nanos() <= latency.getP99Nanos());
+        assertTrue(latency.getP99Nanos() <= latency.getMaxNanos());
+        assertTrue(latency.getMaxNanos() >= 50000000L);
+        assertEquals(3, result.getEntryLatencyMap().size());
+        assertEquals(4, result.getEntryLatency(1).getCount());
+        assertTrue(result.getEntryLatency(1).getMinNanos() >= 50000000L);
+        assertTrue(result.getEntryLatency(2).getMinNanos() < 50000000L);
+        assertFalse(result.buildSummary(ln()).contains("entry 1"));
+        assertTrue(result.buildEntryLatencySummary(ln()).contains("entry 3: "));
+        for (CannonballLap lap : result.getLapList()) {
+            assertEquals(3, lap.getCarCount());
+            assertTrue(lap.getThroughputPerSecond() > 0);
+        }
+    }
+
+    public void test_cannonball_result_failure() throws Exception {
+        try {
+            cannonball(new CannonballRun() {
+                public void drive(CannonballCar car) {
+                    if (car.isEntryNumber(2)) {
+                        throw new IllegalStateException("retire");
+                    }
+                }
+            }, new CannonballOption().threadCount(3));
+            failAsIllegalState();
+        } catch (CannonballRetireException e) {
+            log(e.getMessage());
+        }
+        CannonballResult result = cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                if (car.isEntryNumber(2)) {
+                    throw new IllegalStateException("retire");
+                }
+            }
+        }, new CannonballOption().threadCount(3).expectExceptionAny(IllegalStateException.class));
+        assertEquals(3, result.getRunCount());
+        assertEquals(1, result.getFailureCount());
+    }
+
+    // ===================================================================================
+    //                                                                        Load Profile
+    //                                                                        ============
+    public void test_cannonball_loadProfile_rampUp_hold() throws Exception {
+        final Set<Integer> slotSet = Collections.synchronizedSet(new HashSet<Integer>());
+        final CountDownLatch allSlotLatch = new CountDownLatch(4); // opened when all slots are driving
+        CannonballResult result = cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                if (slotSet.add(car.getEntryNumber())) {
+                    allSlotLatch.countDown();
+                }
+                awaitLatch(allSlotLatch);
+                if (car.getEntryNumber() == 2) {
+                    throw new IllegalStateException("retire");
+                }
+            }
+        }, new CannonballOption().loadProfile(new CannonballLoadProfile().rampUp(1, 4, 400).hold(4, 400)
+                .bucketMillis(200)).expectExceptionAny(IllegalStateException.class));
+        log(result.buildSummary(ln()));
+        assertEquals(0, allSlotLatch.getCount());
+        assertEquals(4, slotSet.size());
+        assertTrue(result.getRunCount() >= 4);
+        assertTrue(result.getFailureCount() > 0);
+        assertFalse(result.getLoadBucketList().isEmpty());
+        long bucketCount = 0;
+        for (CannonballLoadBucket bucket : result.getLoadBucketList()) {
+            bucketCount += bucket.getCarCount();
+            assertTrue(bucket.getErrorRate() <= 1.0);
+        }
+        assertEquals(result.getRunCount(), bucketCount);
+    }
+
+    public void test_cannonball_loadProfile_constantRate() throws Exception {
+        // arrivals do not wait for completion so blocked cars are overlapped (open loop)
+        final CountDownLatch overlapLatch = new CountDownLatch(3);
+        CannonballResult result = cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                overlapLatch.countDown();
+                awaitLatch(overlapLatch);
+            }
+        }, new CannonballOption().loadProfile(new CannonballLoadProfile().constantRate(100.0, 1000)));
+        log(result.buildSummary(ln()));
+        assertEquals(0, overlapLatch.getCount());
+        assertEquals(0, result.getFailureCount());
+        assertTrue(result.getRunCount() >= 3);
+    }
+
+    protected void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS); // not to hang even if broken, asserted by the count
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void test_cannonball_loadProfile_invalid() throws Exception {
+        try {
+            new CannonballOption().loadProfile(new CannonballLoadProfile());
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+        try {
+            new CannonballLoadProfile().hold(3, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                         Transaction
+    //                                                                         ===========
+    public void test_cannonball_pooledTx_savepointPerDrive() throws Exception {
+        // ## Arrange ##
+        _txRecorder = new TransactionRecorder();
+
+        // ## Act ##
+        cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                if (car.isEntryNumber(2)) {
+                    throw new IllegalStateException("retired");
+                }
+            }
+        }, new CannonballOption().threadCount(4).repeatCount(5).pooledTx().commitTx()
+                .expectExceptionAny(IllegalStateException.class));
+
+        // ## Assert ##
+        final int beginCount = _txRecorder.beginCount.get();
+        assertTrue(beginCount >= 1 && beginCount <= 4); // per thread (a fast thread may drive two cars)
+        assertEquals(20, _txRecorder.savepointCount.get()); // per drive
+        assertEquals(15, _txRecorder.savepointCommitCount.get());
+        assertEquals(5, _txRecorder.savepointRollbackCount.get());
+        assertEquals(beginCount, _txRecorder.commitCount.get()); // at the end of the race
+        assertEquals(0, _txRecorder.otherThreadCount.get());
+    }
+
+    public void test_cannonball_pooledTx_default_perDrive() throws Exception {
+        // ## Arrange ##
+        _txRecorder = new TransactionRecorder();
+
+        // ## Act ##
+        cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+            }
+        }, new CannonballOption().threadCount(4).repeatCount(5));
+
+        // ## Assert ##
+        assertEquals(20, _txRecorder.beginCount.get());
+        assertEquals(0, _txRecorder.savepointCount.get());
+        assertEquals(20, _txRecorder.rollbackCount.get());
+    }
+
+    public void test_cannonball_pooledTx_basicStaff_perDrive() throws Exception {
+        // ## Arrange ##
+        _txRecorder = new TransactionRecorder();
+        _basicStaffOnly = true;
+
+        // ## Act ##
+        cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+            }
+        }, new CannonballOption().threadCount(4).repeatCount(5).pooledTx());
+
+        // ## Assert ##
+        assertEquals(20, _txRecorder.beginCount.get()); // pooled transaction is ignored
+        assertEquals(0, _txRecorder.savepointCount.get());
+    }
+
+    @Override
+    protected CannonballStaff xcreateCannonballStaff() {
+        final CannonballStaff staff = super.xcreateCannonballStaff();
+        if (!_basicStaffOnly) {
+            return staff;
+        }
+        return new CannonballStaff() { // e.g. implemented before savepoint staff
+            public TransactionResource help_beginTransaction() {
+                return staff.help_beginTransaction();
+            }
+
+            public void help_prepareAccessContext() {
+                staff.help_prepareAccessContext();
+            }
+
+            public void help_clearAccessContext() {
+                staff.help_clearAccessContext();
+            }
+
+            public void help_assertEquals(Object expected, Object actual) {
+                staff.help_assertEquals(expected, actual);
+            }
+
+            public void help_fail(String msg) {
+                staff.help_fail(msg);
+            }
+
+            public void help_log(Object... msges) {
+                staff.help_log(msges);
+            }
+
+            public String help_ln() {
+                return staff.help_ln();
+            }
+        };
+    }
+
+    @Override
+    protected TransactionResource beginNewTransaction() {
+        return _txRecorder != null ? _txRecorder.begin(false) : super.beginNewTransaction();
+    }
+
+    @Override
+    protected TransactionResource beginSavepointTransaction() {
+        return _txRecorder != null ? _txRecorder.begin(true) : super.beginSavepointTransaction();
+    }
+
+    protected static class TransactionRecorder {
+
+        protected final AtomicInteger beginCount = new AtomicInteger();
+        protected final AtomicInteger commitCount = new AtomicInteger();
+        protected final AtomicInteger rollbackCount = new AtomicInteger();
+        protected final AtomicInteger savepointCount = new AtomicInteger();
+        protected final AtomicInteger savepointCommitCount = new AtomicInteger();
+        protected final AtomicInteger savepointRollbackCount = new AtomicInteger();
+        protected final AtomicInteger otherThreadCount = new AtomicInteger();
+
+        public TransactionResource begin(final boolean savepoint) {
+            (savepoint ? savepointCount : beginCount).incrementAndGet();
+            final Thread beginThread = Thread.currentThread();
+            return new TransactionResource() {
+                public void commit() {
+                    assertThread();
+                    (savepoint ? savepointCommitCount : commitCount).incrementAndGet();
+                }
+
+                public void rollback() {
+                    assertThread();
+                    (savepoint ? savepointRollbackCount : rollbackCount).incrementAndGet();
+                }
+
+                protected void assertThread() { // transaction is bound to the thread
+                    if (Thread.currentThread() != beginThread) {
+                        otherThreadCount.incrementAndGet();
+                    }
+                }
+            };
+        }
+    }
+
     // ===================================================================================
     //                                                                             Restart
     //                                                                             =======
@@ -234,6 +549,33 @@ public class CannonballTest extends PlainTestCase {
         assertEquals(Arrays.asList(1), callNoList);
     }
 
+    public void test_cannonball_projectA_overtime_sharedWatcher() throws Exception {
+        final List<Integer> callNoList = Collections.synchronizedList(new ArrayList<Integer>());
+        cannonball(new CannonballRun() {
+            public void drive(final CannonballCar car) {
+                for (int i = 1; i <= 5; i++) {
+                    car.projectA(new CannonballProjectA() {
+                        public void plan(CannonballDragon dragon) {
+                            for (int j = 0; j < 20; j++) {
+                                dragon.releaseIfOvertime(1000 + j); // re-schedule
+                            }
+                            callNoList.add(dragon.getEntryNumber());
+                        }
+                    }, i);
+                }
+            }
+        }, new CannonballOption().threadCount(5));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), callNoList);
+        int watcherCount = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("cannonball-watcher")) {
+                ++watcherCount;
+            }
+        }
+        assertEquals(1, watcherCount); // shared
+        assertEquals(0, CannonballWatchScheduler.getInstance().getScheduledCount()); // all cancelled
+    }
+
     public void test_cannonball_projectA_overtime_expectedBut() throws Exception {
         final Set<Integer> beforeNoSet = Collections.synchronizedSet(new HashSet<Integer>());
         final List<Integer> callNoList = Collections.synchronizedList(new ArrayList<Integer>());
@@ -542,6 +884,57 @@ public class CannonballTest extends PlainTestCase {
         }
     }
 
+    // ===================================================================================
+    //                                                                              Stress
+    //                                                                              ======
+    public void test_cannonball_stress_manyCars_manyLatches() throws Exception {
+        final int carCount = 1000;
+        final int latchCount = 20;
+        final int leavingCount = carCount / 100; // leave after the first half
+        final AtomicIntegerArray arrivalArray = new AtomicIntegerArray(latchCount);
+        final AtomicInteger goalCount = new AtomicInteger();
+        cannonball(new CannonballRun() {
+            public void drive(CannonballCar car) {
+                final int entryNumber = car.getEntryNumber();
+                final CannonballLatch ourLatch = car.getOurLatch();
+                car.restart();
+                for (int i = 0; i < latchCount / 2; i++) {
+                    arrivalArray.incrementAndGet(i);
+                    ourLatch.awaitSilently("stress::" + i, entryNumber);
+                    assertEquals(carCount, arrivalArray.get(i));
+                }
+                car.restart();
+                if (entryNumber % 100 == 0) {
+                    return; // waiting latches are shrunk
+                }
+                for (int i = latchCount / 2; i < latchCount; i++) {
+                    arrivalArray.incrementAndGet(i);
+                    ourLatch.awaitSilently("stress::" + i, entryNumber);
+                    assertEquals(carCount - leavingCount, arrivalArray.get(i));
+                }
+                goalCount.incrementAndGet();
+            }
+        }, new CannonballOption().threadCount(carCount));
+        assertEquals(carCount - leavingCount, goalCount.get());
+    }
+
+    public void test_cannonball_stress_breakAway_whileLineUp() throws Exception {
+        for (int i = 0; i < 20; i++) { // to hit the timing that lineUp latch is prepared before break-away
+            cannonball(new CannonballRun() {
+                public void drive(final CannonballCar car) {
+                    if (car.isEntryNumber(1)) {
+                        throw new IllegalStateException("breakaway");
+                    }
+                    car.projectA(new CannonballProjectA() {
+                        public void plan(CannonballDragon dragon) {
+                            log("Plan B");
+                        }
+                    }, 2);
+                }
+            }, new CannonballOption().threadCount(3).expectExceptionAny(IllegalStateException.class));
+        }
+    }
+
     // ===================================================================================
     //                                                                       Assist Helper
     //                                                                       =============
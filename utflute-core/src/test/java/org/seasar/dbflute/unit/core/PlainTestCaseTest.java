@@ -17,6 +17,11 @@ package org.seasar.dbflute.unit.core;
 
 import junit.framework.AssertionFailedError;
 
+import org.seasar.dbflute.unit.core.thread.ThreadFireExecution;
+import org.seasar.dbflute.unit.core.thread.ThreadFireOption;
+import org.seasar.dbflute.unit.core.thread.ThreadFireResource;
+import org.seasar.dbflute.unit.core.thread.ThreadFireResult;
+
 /**
  * @author jflute
  */
@@ -211,6 +216,39 @@ public class PlainTestCaseTest extends PlainTestCase {
         log("foo", currentDate(), currentTimestamp());
     }
 
+    // ===================================================================================
+    //                                                                         Thread Fire
+    //                                                                         ===========
+    public void test_threadFire_result_closedLoop() throws Exception {
+        ThreadFireResult result = threadFire(new ThreadFireExecution<String>() {
+            public String execute(ThreadFireResource resource) {
+                return "foo";
+            }
+        }, new ThreadFireOption().threadCount(3).repeatCount(2));
+        assertEquals(6, result.getExecutionCount());
+        assertEquals(0, result.getQueueDelay().getCount());
+        assertEquals(0, result.getFailureCount());
+    }
+
+    public void test_threadFire_arrivalRate_queueing() throws Exception {
+        // capacity is 2 threads * 20/s = 40/s so arrivals at 100/s are queued
+        ThreadFireResult result = threadFire(new ThreadFireExecution<String>() {
+            public String execute(ThreadFireResource resource) {
+                resource.sleep(50);
+                return "foo";
+            }
+        }, new ThreadFireOption().threadCount(2).arrivalRate(100.0, 300));
+        log(result.buildSummary(ln()));
+        assertEquals(30, result.getExecutionCount());
+        assertEquals(30, result.getQueueDelay().getCount());
+        // lower bounds only (slow machine makes them larger), with margin of timer precision:
+        // the third arrival (at 20ms) waits for a thread busy until about 50ms at least
+        long millis = 1000000L;
+        assertTrue(result.getServiceTime().getMinNanos() >= 45 * millis);
+        assertTrue(result.getQueueDelay().getMaxNanos() >= 25 * millis);
+        assertTrue(result.getResponseTime().getMaxNanos() >= 70 * millis); // corrected latency shows queueing
+    }
+
     // ===================================================================================
     //                                                                         Cannon-ball
     //                                                                         ===========
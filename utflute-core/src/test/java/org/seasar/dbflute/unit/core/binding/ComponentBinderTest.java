@@ -0,0 +1,442 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.binding;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.binding.BindingPlan.BindingFieldPlan;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ComponentBinderTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                        Binding Plan
+    //                                                                        ============
+    public void test_bindComponent_plan_cached() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        final FooLogic fooLogic = new FooLogic();
+        componentMap.put("fooLogic", fooLogic);
+        componentMap.put("barName", "bar");
+        final ComponentBinder binder = createBinder(componentMap);
+
+        // ## Act ##
+        final FooAction first = new FooAction();
+        final BoundResult firstResult = binder.bindComponent(first);
+        final BindingPlan firstPlan = binder.prepareBindingPlan(FooAction.class);
+        final FooAction second = new FooAction();
+        binder.bindComponent(second);
+
+        // ## Assert ##
+        assertSame(fooLogic, first.fooLogic);
+        assertSame(fooLogic, second.fooLogic);
+        assertEquals("bar", first.barName);
+        assertNull(first.notAnnotated);
+        assertEquals(2, firstResult.getBoundFieldList().size());
+        assertSame(firstPlan, binder.prepareBindingPlan(FooAction.class));
+        log(firstPlan);
+    }
+
+    public void test_bindComponent_plan_settings() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        componentMap.put("notAnnotated", "loose");
+        final ComponentBinder binder = createBinder(componentMap);
+        final BindingPlan strictPlan = binder.prepareBindingPlan(FooAction.class);
+
+        // ## Act ##
+        binder.looseBinding();
+        final BindingPlan loosePlan = binder.prepareBindingPlan(FooAction.class);
+        final FooAction action = new FooAction();
+        binder.bindComponent(action);
+
+        // ## Assert ##
+        assertNotSame(strictPlan, loosePlan);
+        assertEquals(2, strictPlan.getFieldPlanList().size());
+        assertEquals(3, loosePlan.getFieldPlanList().size());
+        assertEquals("loose", action.notAnnotated);
+        binder.cancelLooseBinding();
+        assertSame(strictPlan, binder.prepareBindingPlan(FooAction.class));
+    }
+
+    public void test_bindComponent_plan_dynamicDetermination() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        componentMap.put("fooLogic", new FooLogic());
+        componentMap.put("barName", "bar");
+        final ComponentBinder binder = createBinder(componentMap);
+        binder.bindComponent(new FooAction()); // plan cached here
+        final FooLogic mockLogic = new FooLogic();
+        binder.addMockInstance(mockLogic);
+        binder.addNonBindingType(String.class);
+
+        // ## Act ##
+        final FooAction action = new FooAction();
+        final BoundResult result = binder.bindComponent(action);
+
+        // ## Assert ##
+        assertSame(mockLogic, action.fooLogic);
+        assertNull(action.barName);
+        assertEquals(1, result.getBoundFieldList().size());
+    }
+
+    public void test_bindComponent_plan_bindingHook() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        componentMap.put("fooLogic", new FooLogic());
+        componentMap.put("barName", "bar");
+        final List<String> firedList = new ArrayList<String>();
+        final List<String> foundList = new ArrayList<String>();
+        final ComponentBinder binder = new ComponentBinder(createComponentProvider(componentMap),
+                createBindingRuleProvider()) {
+            @Override
+            protected void fireFieldBinding(Object bean, Field field, BoundResult boundResult) {
+                firedList.add(field.getName());
+                if (!field.getName().equals("barName")) {
+                    super.fireFieldBinding(bean, field, boundResult);
+                }
+            }
+
+            @Override
+            protected Object findInjectedComponent(String propertyName, Class<?> propertyType, Annotation bindingAnno) {
+                foundList.add(propertyName);
+                return super.findInjectedComponent(propertyName, propertyType, bindingAnno);
+            }
+        };
+        binder.bindComponent(new FooAction()); // plan cached here
+
+        // ## Act ##
+        firedList.clear();
+        foundList.clear();
+        final FooAction action = new FooAction();
+        binder.bindComponent(action);
+
+        // ## Assert ##
+        assertEquals(2, firedList.size()); // planned fields only
+        assertTrue(firedList.contains("fooLogic"));
+        assertTrue(firedList.contains("barName"));
+        assertEquals(1, foundList.size());
+        assertEquals("fooLogic", foundList.get(0));
+        assertNotNull(action.fooLogic);
+        assertNull(action.barName);
+    }
+
+    public void test_bindComponent_plan_suppressed() throws Exception {
+        // ## Arrange ##
+        final ComponentBinder binder = createBinder(new HashMap<String, Object>());
+        binder.suppressBindingPlanCache();
+
+        // ## Act ##
+        final BindingPlan first = binder.prepareBindingPlan(FooAction.class);
+        final BindingPlan second = binder.prepareBindingPlan(FooAction.class);
+
+        // ## Assert ##
+        assertNotSame(first, second);
+        assertEquals(first.getFieldPlanList().size(), second.getFieldPlanList().size());
+    }
+
+    public void test_bindComponent_plan_separatedByBinderType() throws Exception {
+        // ## Arrange ##
+        final ComponentBinder binder = createBinder(new HashMap<String, Object>());
+        final ComponentBinder subBinder = new ComponentBinder(createComponentProvider(new HashMap<String, Object>()),
+                createBindingRuleProvider()) {
+            @Override
+            protected boolean isModifiersAutoBindable(Field field) {
+                return false;
+            }
+        };
+
+        // ## Act ##
+        final BindingPlan plan = binder.prepareBindingPlan(FooAction.class);
+        final BindingPlan subPlan = subBinder.prepareBindingPlan(FooAction.class);
+
+        // ## Assert ##
+        assertFalse(plan.getFieldPlanList().isEmpty());
+        assertTrue(subPlan.getFieldPlanList().isEmpty());
+        assertSame(plan, binder.prepareBindingPlan(FooAction.class));
+        assertSame(subPlan, subBinder.prepareBindingPlan(FooAction.class));
+    }
+
+    public void test_bindComponent_plan_sharedAcrossBinderInstance() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        componentMap.put("fooLogic", new FooLogic());
+        componentMap.put("barName", "bar");
+        ComponentBinder.clearBindingPlanCache();
+        // binder per test method, with determiner instance per binder (like test case instances)
+        final ComponentBinder firstBinder = new ComponentBinder(createComponentProvider(componentMap),
+                createDeterminingRuleProvider());
+        final ComponentBinder secondBinder = new ComponentBinder(createComponentProvider(componentMap),
+                createDeterminingRuleProvider());
+
+        // ## Act ##
+        final FooAction first = new FooAction();
+        firstBinder.bindComponent(first);
+        final int cacheSize = ComponentBinder.getBindingPlanCacheSize();
+        final FooAction second = new FooAction();
+        secondBinder.bindComponent(second);
+
+        // ## Assert ##
+        assertNotNull(second.fooLogic);
+        assertNull(second.barName); // non-binding by determiner
+        assertEquals(cacheSize, ComponentBinder.getBindingPlanCacheSize());
+        assertSame(firstBinder.prepareBindingPlan(FooAction.class), secondBinder.prepareBindingPlan(FooAction.class));
+    }
+
+    public void test_clearBindingPlanCache() throws Exception {
+        // ## Arrange ##
+        final ComponentBinder binder = createBinder(new HashMap<String, Object>());
+        final BindingPlan first = binder.prepareBindingPlan(FooAction.class);
+        assertTrue(ComponentBinder.getBindingPlanCacheSize() > 0);
+
+        // ## Act ##
+        ComponentBinder.clearBindingPlanCache();
+
+        // ## Assert ##
+        assertEquals(0, ComponentBinder.getBindingPlanCacheSize());
+        assertNotSame(first, binder.prepareBindingPlan(FooAction.class));
+    }
+
+    // ===================================================================================
+    //                                                                      Field Accessor
+    //                                                                      ==============
+    public void test_bindComponent_fieldAccessor_createdOnce() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        componentMap.put("fooLogic", new FooLogic());
+        componentMap.put("barName", "bar");
+        final List<Field> createdList = new ArrayList<Field>();
+        final ComponentBinder binder = new ComponentBinder(createComponentProvider(componentMap),
+                createBindingRuleProvider()) {
+            @Override
+            protected BindingFieldAccessor createFieldAccessor(Field field) {
+                createdList.add(field);
+                return super.createFieldAccessor(field);
+            }
+        };
+        ComponentBinder.clearBindingPlanCache();
+
+        // ## Act ##
+        final FooAction first = new FooAction();
+        binder.bindComponent(first);
+        final FooAction second = new FooAction();
+        binder.bindComponent(second);
+
+        // ## Assert ##
+        assertEquals(2, createdList.size()); // only when planning
+        assertNotNull(first.fooLogic);
+        assertSame(first.fooLogic, second.fooLogic);
+        final BindingFieldPlan fieldPlan = binder.prepareBindingPlan(FooAction.class).getFieldPlanList().get(0);
+        assertSame(first.fooLogic, fieldPlan.getAccessor().getValue(first));
+    }
+
+    public void test_bindComponent_fieldAccessor_illegalValue() throws Exception {
+        // ## Arrange ##
+        final Field field = FooAction.class.getDeclaredField("fooLogic");
+        final ReflectionFieldAccessor accessor = new ReflectionFieldAccessor(field);
+
+        // ## Act ##
+        try {
+            accessor.setValue(new FooAction(), "notLogic");
+            // ## Assert ##
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    public void test_bindComponent_fieldAccessor_methodHandle() throws Exception {
+        // ## Arrange ##
+        final Field field = FooAction.class.getDeclaredField("fooLogic");
+        final MethodHandleFieldAccessor accessor = MethodHandleFieldAccessor.createIfSupported(field);
+        if (accessor == null) { // old runtime
+            assertFalse(MethodHandleFieldAccessor.isSupported());
+            return;
+        }
+        final FooAction action = new FooAction();
+        final FooLogic fooLogic = new FooLogic();
+
+        // ## Act ##
+        accessor.setValue(action, fooLogic);
+
+        // ## Assert ##
+        assertSame(fooLogic, action.fooLogic);
+        assertSame(fooLogic, accessor.getValue(action));
+        try {
+            accessor.setValue(action, "notLogic");
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+        try {
+            accessor.getValue("notAction");
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    public void test_bindComponent_fieldHelper_overridden() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        componentMap.put("fooLogic", new FooLogic());
+        final List<String> setList = new ArrayList<String>();
+        final ComponentBinder binder = new ComponentBinder(createComponentProvider(componentMap),
+                createBindingRuleProvider()) {
+            @Override
+            protected void setFieldValue(Field field, Object target, Object value) {
+                setList.add(field.getName());
+                super.setFieldValue(field, target, value);
+            }
+        };
+        final FooAction action = new FooAction();
+
+        // ## Act ##
+        final BoundResult result = binder.bindComponent(action);
+
+        // ## Assert ##
+        assertEquals(1, setList.size());
+        assertEquals("fooLogic", setList.get(0));
+        assertNotNull(action.fooLogic);
+        binder.releaseBoundComponent(action, result);
+        assertNull(action.fooLogic);
+    }
+
+    public void test_releaseBoundComponent_fieldAccessor() throws Exception {
+        // ## Arrange ##
+        final Map<String, Object> componentMap = new HashMap<String, Object>();
+        componentMap.put("fooLogic", new FooLogic());
+        final List<Object> releasedList = new ArrayList<Object>();
+        final ComponentBinder binder = new ComponentBinder(createComponentProvider(componentMap),
+                createBindingRuleProvider()) {
+            @Override
+            protected BindingFieldAccessor createFieldAccessor(final Field field) {
+                return new ReflectionFieldAccessor(field) {
+                    @Override
+                    public void setValue(Object target, Object value) {
+                        if (value == null) {
+                            releasedList.add(target);
+                        }
+                        super.setValue(target, value);
+                    }
+                };
+            }
+        };
+        final FooAction action = new FooAction();
+        final BoundResult result = binder.bindComponent(action);
+        assertNotNull(action.fooLogic);
+
+        // ## Act ##
+        binder.releaseBoundComponent(action, result);
+
+        // ## Assert ##
+        assertNull(action.fooLogic);
+        assertEquals(1, releasedList.size());
+        assertTrue(result.getBoundFieldList().isEmpty());
+        assertTrue(result.getBoundFieldAccessorList().isEmpty());
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected ComponentBinder createBinder(Map<String, Object> componentMap) {
+        return new ComponentBinder(createComponentProvider(componentMap), createBindingRuleProvider());
+    }
+
+    protected ComponentProvider createComponentProvider(final Map<String, Object> componentMap) {
+        return new ComponentProvider() {
+            @SuppressWarnings("unchecked")
+            public <COMPONENT> COMPONENT provideComponent(Class<COMPONENT> type) {
+                for (Object component : componentMap.values()) {
+                    if (type.isInstance(component)) {
+                        return (COMPONENT) component;
+                    }
+                }
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            public <COMPONENT> COMPONENT provideComponent(String name) {
+                return (COMPONENT) componentMap.get(name);
+            }
+
+            public boolean existsComponent(Class<?> type) {
+                return provideComponent(type) != null;
+            }
+
+            public boolean existsComponent(String name) {
+                return componentMap.containsKey(name);
+            }
+        };
+    }
+
+    protected BindingRuleProvider createBindingRuleProvider() {
+        return new BindingRuleProvider() {
+            public Map<Class<? extends Annotation>, BindingAnnotationRule> provideBindingAnnotationRuleMap() {
+                final Map<Class<? extends Annotation>, BindingAnnotationRule> ruleMap = new HashMap<Class<? extends Annotation>, BindingAnnotationRule>();
+                ruleMap.put(Resource.class, new BindingAnnotationRule());
+                return ruleMap;
+            }
+
+            public String filterByBindingNamingRule(String propertyName, Class<?> propertyType) {
+                return null;
+            }
+        };
+    }
+
+    protected BindingRuleProvider createDeterminingRuleProvider() {
+        return new BindingRuleProvider() {
+            public Map<Class<? extends Annotation>, BindingAnnotationRule> provideBindingAnnotationRuleMap() {
+                final Map<Class<? extends Annotation>, BindingAnnotationRule> ruleMap = new HashMap<Class<? extends Annotation>, BindingAnnotationRule>();
+                ruleMap.put(Resource.class, new BindingAnnotationRule().determineNonBinding(new NonBindingDeterminer() {
+                    public boolean isNonBinding(Annotation bindingAnno) {
+                        return "none".equals(((Resource) bindingAnno).description());
+                    }
+                }));
+                return ruleMap;
+            }
+
+            public String filterByBindingNamingRule(String propertyName, Class<?> propertyType) {
+                return null;
+            }
+        };
+    }
+
+    protected static class FooAction {
+
+        @Resource
+        protected FooLogic fooLogic;
+
+        @Resource(description = "none")
+        protected String barName;
+
+        protected String notAnnotated;
+    }
+
+    protected static class FooLogic {
+    }
+}
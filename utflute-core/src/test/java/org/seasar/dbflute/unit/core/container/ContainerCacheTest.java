@@ -0,0 +1,146 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.List;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerCacheTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                        Park/Restore
+    //                                                                        ============
+    public void test_park_restore_basic() throws Exception {
+        // ## Arrange ##
+        final ContainerCache<String> cache = new ContainerCache<String>();
+        cache.setMaxSize(3);
+        cache.setMinFreeMemoryRatio(0.0);
+        final List<String> destroyedList = newArrayList();
+        final ContainerDestroyer<String> destroyer = createDestroyer(destroyedList);
+
+        // ## Act ##
+        assertNull(cache.restore("foo.xml")); // first initialization
+        cache.park("foo.xml", "fooContainer", destroyer);
+        assertNull(cache.restore("bar.xml"));
+        cache.park("bar.xml", "barContainer", destroyer);
+        final String restored = cache.restore("foo.xml");
+        cache.recordRecycle();
+
+        // ## Assert ##
+        log(cache);
+        assertEquals("fooContainer", restored);
+        assertEquals(1, cache.getParkedCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertTrue(destroyedList.isEmpty());
+    }
+
+    public void test_park_evict_eldest() throws Exception {
+        // ## Arrange ##
+        final ContainerCache<String> cache = new ContainerCache<String>();
+        cache.setMaxSize(3); // active one and two parked ones
+        cache.setMinFreeMemoryRatio(0.0);
+        final List<String> destroyedList = newArrayList();
+        final ContainerDestroyer<String> destroyer = createDestroyer(destroyedList);
+
+        // ## Act ##
+        cache.park("foo.xml", "fooContainer", destroyer);
+        cache.park("bar.xml", "barContainer", destroyer);
+        cache.park("qux.xml", "quxContainer", destroyer);
+
+        // ## Assert ##
+        assertEquals(2, cache.getParkedCount());
+        assertEquals(newArrayList("fooContainer"), destroyedList);
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.restore("foo.xml"));
+        assertEquals("barContainer", cache.restore("bar.xml"));
+    }
+
+    public void test_park_noRoom() throws Exception {
+        // ## Arrange ##
+        final ContainerCache<String> cache = new ContainerCache<String>(); // default size
+        final List<String> destroyedList = newArrayList();
+
+        // ## Act ##
+        cache.park("foo.xml", "fooContainer", createDestroyer(destroyedList));
+
+        // ## Assert ##
+        assertEquals(0, cache.getParkedCount());
+        assertEquals(newArrayList("fooContainer"), destroyedList);
+    }
+
+    public void test_park_memoryShort() throws Exception {
+        // ## Arrange ##
+        final ContainerCache<String> cache = new ContainerCache<String>() {
+            @Override
+            protected boolean isMemoryShort() {
+                return true;
+            }
+        };
+        cache.setMaxSize(5);
+        final List<String> destroyedList = newArrayList();
+
+        // ## Act ##
+        cache.park("foo.xml", "fooContainer", createDestroyer(destroyedList));
+
+        // ## Assert ##
+        assertEquals(0, cache.getParkedCount());
+        assertEquals(1, cache.getMemoryEvictionCount());
+        assertEquals(newArrayList("fooContainer"), destroyedList);
+    }
+
+    public void test_destroyAll() throws Exception {
+        // ## Arrange ##
+        final ContainerCache<String> cache = new ContainerCache<String>();
+        cache.setMaxSize(3);
+        cache.setMinFreeMemoryRatio(0.0);
+        final List<String> destroyedList = newArrayList();
+        final ContainerDestroyer<String> destroyer = createDestroyer(destroyedList);
+        cache.park("foo.xml", "fooContainer", destroyer);
+        cache.park("bar.xml", "barContainer", destroyer);
+
+        // ## Act ##
+        cache.destroyAll(destroyer);
+
+        // ## Assert ##
+        assertEquals(0, cache.getParkedCount());
+        assertEquals(newArrayList("fooContainer", "barContainer"), destroyedList);
+    }
+
+    public void test_setMaxSize_invalid() throws Exception {
+        try {
+            new ContainerCache<String>().setMaxSize(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    protected ContainerDestroyer<String> createDestroyer(final List<String> destroyedList) {
+        return new ContainerDestroyer<String>() {
+            public void destroy(String container) {
+                destroyedList.add(container);
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerPrewarmHintTest extends PlainTestCase {
+
+    public void test_peekNext_basic() throws Exception {
+        // ## Arrange ##
+        final ContainerPrewarmHint hint = new ContainerPrewarmHint();
+        hint.addUpcoming("foo.xml");
+        hint.addUpcoming("foo.xml");
+        hint.addUpcoming("bar.xml");
+        hint.addUpcoming("foo.xml", "qux.xml");
+
+        // ## Act & Assert ##
+        assertEquals(Arrays.asList("bar.xml"), hint.peekNext(Arrays.asList("foo.xml")));
+        assertEquals(Arrays.asList("bar.xml"), hint.peekNext(Arrays.asList("foo.xml"))); // not consumed
+        assertEquals(4, hint.getUpcomingList().size());
+        assertEquals(Arrays.asList("foo.xml", "qux.xml"), hint.peekNext(Arrays.asList("bar.xml")));
+        assertEquals(2, hint.getUpcomingList().size());
+        assertNull(hint.peekNext(Arrays.asList("foo.xml", "qux.xml")));
+        assertEquals(1, hint.getUpcomingList().size());
+    }
+
+    public void test_peekNext_currentNotHinted() throws Exception {
+        // ## Arrange ##
+        final ContainerPrewarmHint hint = new ContainerPrewarmHint();
+        hint.addUpcoming("foo.xml");
+        hint.addUpcoming("bar.xml");
+
+        // ## Act ##
+        final List<String> next = hint.peekNext(Arrays.asList("qux.xml"));
+
+        // ## Assert ##
+        assertEquals(Arrays.asList("foo.xml"), next);
+        assertEquals(2, hint.getUpcomingList().size());
+    }
+}
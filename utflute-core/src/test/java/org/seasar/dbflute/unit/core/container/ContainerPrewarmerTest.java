@@ -0,0 +1,142 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+import org.seasar.dbflute.unit.core.container.ContainerPrewarmer.ContainerBuilder;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerPrewarmerTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                        Prewarm/Take
+    //                                                                        ============
+    public void test_prewarm_take_basic() throws Exception {
+        // ## Arrange ##
+        final ContainerPrewarmer<String> prewarmer = new ContainerPrewarmer<String>();
+        final List<String> destroyedList = Collections.synchronizedList(new ArrayList<String>());
+        final String[] builtThreadName = new String[1];
+
+        // ## Act ##
+        final boolean started = prewarmer.prewarm("foo.xml", new ContainerBuilder<String>() {
+            public String build() {
+                builtThreadName[0] = Thread.currentThread().getName();
+                return "fooContainer";
+            }
+        }, createDestroyer(destroyedList));
+
+        // ## Assert ##
+        assertTrue(started);
+        assertTrue(prewarmer.isPending("foo.xml"));
+        assertNull(prewarmer.take("bar.xml"));
+        assertEquals("fooContainer", prewarmer.take("foo.xml"));
+        assertNull(prewarmer.take("foo.xml")); // already taken
+        log(prewarmer);
+        assertEquals(ContainerPrewarmer.THREAD_NAME, builtThreadName[0]);
+        assertEquals(0, prewarmer.getPendingCount());
+        assertEquals(1, prewarmer.getTakenCount());
+        assertTrue(destroyedList.isEmpty());
+    }
+
+    public void test_prewarm_alreadyPending() throws Exception {
+        // ## Arrange ##
+        final ContainerPrewarmer<String> prewarmer = new ContainerPrewarmer<String>();
+        final List<String> destroyedList = Collections.synchronizedList(new ArrayList<String>());
+        final ContainerDestroyer<String> destroyer = createDestroyer(destroyedList);
+
+        // ## Act ##
+        assertTrue(prewarmer.prewarm("foo.xml", createBuilder("fooContainer"), destroyer));
+        assertFalse(prewarmer.prewarm("foo.xml", createBuilder("fooSecond"), destroyer));
+
+        // ## Assert ##
+        assertEquals("fooContainer", prewarmer.take("foo.xml"));
+        assertEquals(1, prewarmer.getPrewarmCount());
+        assertTrue(destroyedList.isEmpty()); // the second one is not built
+    }
+
+    public void test_prewarm_discardOld() throws Exception {
+        // ## Arrange ##
+        final ContainerPrewarmer<String> prewarmer = new ContainerPrewarmer<String>();
+        final List<String> destroyedList = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch destroyedLatch = new CountDownLatch(1);
+        final ContainerDestroyer<String> destroyer = new ContainerDestroyer<String>() {
+            public void destroy(String container) {
+                destroyedList.add(container);
+                destroyedLatch.countDown();
+            }
+        };
+
+        // ## Act ##
+        prewarmer.prewarm("foo.xml", createBuilder("fooContainer"), destroyer);
+        prewarmer.prewarm("bar.xml", createBuilder("barContainer"), destroyer); // over max pending
+
+        // ## Assert ##
+        destroyedLatch.await();
+        assertEquals(newArrayList("fooContainer"), destroyedList);
+        assertNull(prewarmer.take("foo.xml"));
+        assertEquals("barContainer", prewarmer.take("bar.xml"));
+        assertEquals(1, prewarmer.getDiscardCount());
+    }
+
+    public void test_take_failure() throws Exception {
+        // ## Arrange ##
+        final ContainerPrewarmer<String> prewarmer = new ContainerPrewarmer<String>();
+        final List<String> destroyedList = Collections.synchronizedList(new ArrayList<String>());
+        final ContainerDestroyer<String> destroyer = createDestroyer(destroyedList);
+        prewarmer.prewarm("foo.xml", new ContainerBuilder<String>() {
+            public String build() {
+                throw new IllegalStateException("broken configuration");
+            }
+        }, destroyer);
+
+        // ## Act ##
+        final String container = prewarmer.take("foo.xml");
+
+        // ## Assert ##
+        assertNull(container); // initialized inline by test case
+        assertEquals(1, prewarmer.getFailureCount());
+        assertEquals(0, prewarmer.getTakenCount());
+        assertTrue(destroyedList.isEmpty()); // nothing built
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected ContainerBuilder<String> createBuilder(final String container) {
+        return new ContainerBuilder<String>() {
+            public String build() {
+                return container;
+            }
+        };
+    }
+
+    protected ContainerDestroyer<String> createDestroyer(final List<String> destroyedList) {
+        return new ContainerDestroyer<String>() {
+            public void destroy(String container) {
+                destroyedList.add(container);
+            }
+        };
+    }
+}
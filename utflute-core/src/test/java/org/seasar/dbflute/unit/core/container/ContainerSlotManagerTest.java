@@ -0,0 +1,144 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.container;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerSlotManagerTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                     Acquire/Release
+    //                                                                     ===============
+    public void test_acquire_sameKeyPreferred() throws Exception {
+        // ## Arrange ##
+        final ContainerSlotManager<ContainerSlot<String>> manager = createManager();
+        manager.setSlotCount(2);
+        final List<Object> fooKey = newArrayList((Object) "foo.xml");
+        final List<Object> barKey = newArrayList((Object) "bar.xml");
+        final ContainerSlot<String> fooSlot = acquireAndRelease(manager, fooKey);
+        final ContainerSlot<String> barSlot = acquireAndRelease(manager, barKey); // new slot preferred
+
+        // ## Act ##
+        final ContainerSlot<String> fooAgain = acquireAndRelease(manager, fooKey);
+        final ContainerSlot<String> barAgain = acquireAndRelease(manager, barKey);
+        final ContainerSlot<String> qux = acquireAndRelease(manager, newArrayList((Object) "qux.xml"));
+
+        // ## Assert ##
+        assertNotSame(fooSlot, barSlot);
+        assertSame(fooSlot, fooAgain);
+        assertSame(barSlot, barAgain);
+        assertSame(fooSlot, qux); // least recently used
+        assertEquals(2, manager.getSlotList().size());
+    }
+
+    public void test_acquire_reentrant() throws Exception {
+        // ## Arrange ##
+        final ContainerSlotManager<ContainerSlot<String>> manager = createManager();
+
+        // ## Act ##
+        final ContainerSlot<String> first = manager.acquire(null);
+        final ContainerSlot<String> second = manager.acquire(null);
+
+        // ## Assert ##
+        assertSame(first, second);
+        manager.release(second);
+        assertFalse(first.isFree());
+        manager.release(first);
+        assertTrue(first.isFree());
+    }
+
+    public void test_acquire_waitForFreeSlot() throws Exception {
+        // ## Arrange ##
+        final ContainerSlotManager<ContainerSlot<String>> manager = createManager(); // one slot
+        final ContainerSlot<String> held = manager.acquire(null);
+        final AtomicReference<ContainerSlot<String>> waitedRef = new AtomicReference<ContainerSlot<String>>();
+        final CountDownLatch acquiredLatch = new CountDownLatch(1);
+        final Thread waiter = new Thread(new Runnable() {
+            public void run() {
+                final ContainerSlot<String> slot = manager.acquire(null);
+                waitedRef.set(slot);
+                acquiredLatch.countDown();
+                manager.release(slot);
+            }
+        });
+        waiter.start();
+
+        // ## Act ##
+        assertFalse(acquiredLatch.await(100, TimeUnit.MILLISECONDS)); // waiting
+        manager.release(held);
+
+        // ## Assert ##
+        assertTrue(acquiredLatch.await(5, TimeUnit.SECONDS));
+        assertSame(held, waitedRef.get());
+        waiter.join();
+    }
+
+    public void test_release_otherThread() throws Exception {
+        // ## Arrange ##
+        final ContainerSlotManager<ContainerSlot<String>> manager = createManager();
+        final ContainerSlot<String> slot = acquireOnOtherThread(manager, null);
+
+        // ## Act ##
+        try {
+            manager.release(slot);
+            // ## Assert ##
+            fail();
+        } catch (IllegalStateException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected ContainerSlotManager<ContainerSlot<String>> createManager() {
+        return new ContainerSlotManager<ContainerSlot<String>>() {
+            protected ContainerSlot<String> createSlot(int slotNumber) {
+                return new ContainerSlot<String>(slotNumber);
+            }
+        };
+    }
+
+    protected ContainerSlot<String> acquireAndRelease(ContainerSlotManager<ContainerSlot<String>> manager,
+            List<Object> key) {
+        final ContainerSlot<String> slot = manager.acquire(key);
+        slot.setContainerKey(key); // as initialized
+        manager.release(slot);
+        return slot;
+    }
+
+    protected ContainerSlot<String> acquireOnOtherThread(final ContainerSlotManager<ContainerSlot<String>> manager,
+            final List<Object> key) throws InterruptedException {
+        final AtomicReference<ContainerSlot<String>> slotRef = new AtomicReference<ContainerSlot<String>>();
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                slotRef.set(manager.acquire(key)); // not released
+            }
+        });
+        thread.start();
+        thread.join();
+        return slotRef.get();
+    }
+}
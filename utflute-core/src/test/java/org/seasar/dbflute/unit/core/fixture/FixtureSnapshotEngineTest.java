@@ -0,0 +1,270 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.fixture;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class FixtureSnapshotEngineTest extends PlainTestCase {
+
+    protected static final String URL = "jdbc:h2:mem:fixturesnapshottest;DB_CLOSE_DELAY=-1";
+
+    protected Connection _connection; // auto-commit, as committed test
+    protected DataSource _dataSource;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Class.forName("org.h2.Driver");
+        _connection = DriverManager.getConnection(URL, "sa", "");
+        executeUpdate("create table FOO (FOO_ID integer primary key, FOO_NAME varchar(20))");
+        executeUpdate("create table BAR (BAR_ID integer primary key, FOO_ID integer references FOO(FOO_ID))");
+        executeUpdate("insert into FOO values (1, 'sea')");
+        executeUpdate("insert into FOO values (2, null)");
+        executeUpdate("insert into BAR values (1, 1)");
+        _dataSource = createDataSource();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executeUpdate("drop all objects");
+        _connection.close();
+        super.tearDown();
+    }
+
+    // ===================================================================================
+    //                                                                             Restore
+    //                                                                             =======
+    public void test_restoreTouched_onlyTouched() throws Exception {
+        // ## Arrange ##
+        final FixtureSnapshotEngine engine = new FixtureSnapshotEngine(FixtureSnapshotEngine.extractDatabaseName(_dataSource));
+        assertTrue(engine.takeSnapshot(_dataSource));
+        assertFalse(engine.takeSnapshot(_dataSource)); // only once
+        executeUpdate("update FOO set FOO_NAME = 'land' where FOO_ID = 1");
+        executeUpdate("insert into FOO values (3, 'piari')");
+
+        // ## Act ##
+        final List<String> restoredList = engine.restoreTouched(_dataSource);
+
+        // ## Assert ##
+        log(restoredList, engine);
+        assertEquals(1, restoredList.size());
+        assertEquals("PUBLIC.FOO", restoredList.get(0));
+        assertEquals(2, count("FOO"));
+        assertEquals("sea", selectFooName(1));
+        assertNull(selectFooName(2));
+        assertEquals(2L, engine.getRestoredRowCount());
+        assertTrue(engine.restoreTouched(_dataSource).isEmpty()); // restoring itself is not touch
+    }
+
+    public void test_restoreTouched_foreignKey() throws Exception {
+        // ## Arrange ##
+        final FixtureSnapshotEngine engine = new FixtureSnapshotEngine(FixtureSnapshotEngine.extractDatabaseName(_dataSource));
+        engine.takeSnapshot(_dataSource);
+        executeUpdate("delete from BAR");
+        executeUpdate("delete from FOO");
+        executeUpdate("insert into FOO values (9, 'bonvo')");
+
+        // ## Act ##
+        final List<String> restoredList = engine.restoreTouched(_dataSource);
+
+        // ## Assert ##
+        assertEquals(2, restoredList.size());
+        assertEquals(2, count("FOO"));
+        assertEquals(1, count("BAR"));
+        executeUpdate("insert into BAR values (2, 2)"); // referential integrity is back
+        try {
+            executeUpdate("insert into BAR values (3, 9)");
+            fail();
+        } catch (SQLException e) {
+            log(e.getMessage());
+        }
+    }
+
+    public void test_restoreTouched_noSnapshot() throws Exception {
+        // ## Arrange ##
+        final FixtureSnapshotEngine engine = new FixtureSnapshotEngine(FixtureSnapshotEngine.extractDatabaseName(_dataSource));
+
+        // ## Act ##
+        final List<String> restoredList = engine.restoreTouched(_dataSource);
+
+        // ## Assert ##
+        assertTrue(restoredList.isEmpty());
+        assertFalse(engine.isSnapshotTaken());
+    }
+
+    // ===================================================================================
+    //                                                                    Snapshot/Discard
+    //                                                                    ================
+    public void test_discardSnapshot_dropTriggers() throws Exception {
+        // ## Arrange ##
+        final FixtureSnapshotEngine engine = new FixtureSnapshotEngine(FixtureSnapshotEngine.extractDatabaseName(_dataSource));
+        engine.takeSnapshot(_dataSource);
+        assertEquals(2, countTouchTrigger());
+
+        // ## Act ##
+        engine.discardSnapshot(_dataSource);
+
+        // ## Assert ##
+        assertEquals(0, countTouchTrigger());
+        assertFalse(engine.isSnapshotTaken());
+        assertTrue(engine.takeSnapshot(_dataSource)); // installed again
+        assertEquals(2, countTouchTrigger());
+    }
+
+    public void test_takeSnapshot_persistentDatabase() throws Exception {
+        // ## Arrange ##
+        final File dbDir = new File(getTestCaseBuildDir(), "utflute-snapshot-test");
+        final DataSource dataSource = createDataSource("jdbc:h2:" + new File(dbDir, "persistent").getAbsolutePath());
+        final FixtureSnapshotEngine engine = new FixtureSnapshotEngine("persistent");
+
+        // ## Act ##
+        try {
+            engine.takeSnapshot(dataSource);
+            // ## Assert ##
+            fail();
+        } catch (FixtureSnapshotFailureException e) {
+            log(e.getMessage());
+        } finally {
+            final Connection conn = dataSource.getConnection();
+            try {
+                conn.createStatement().execute("drop all objects delete files");
+            } finally {
+                conn.close();
+            }
+            dbDir.delete();
+        }
+        assertFalse(engine.isSnapshotTaken());
+    }
+
+    // ===================================================================================
+    //                                                                                 Use
+    //                                                                                 ===
+    public void test_beginUse_otherThread() throws Exception {
+        // ## Arrange ##
+        final FixtureSnapshotEngine engine = new FixtureSnapshotEngine("sea");
+        engine.beginUse();
+        engine.beginUse(); // re-entrance
+        final List<Throwable> errorList = new ArrayList<Throwable>();
+        final Runnable otherUse = new Runnable() {
+            public void run() {
+                try {
+                    engine.beginUse();
+                    engine.endUse();
+                } catch (Throwable e) {
+                    errorList.add(e);
+                }
+            }
+        };
+
+        // ## Act ##
+        runOnOtherThread(otherUse);
+        engine.endUse();
+        runOnOtherThread(otherUse); // still used by the first one
+        engine.endUse();
+        runOnOtherThread(otherUse);
+
+        // ## Assert ##
+        assertEquals(2, errorList.size());
+        assertTrue(errorList.get(0) instanceof FixtureSnapshotFailureException);
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected DataSource createDataSource() {
+        return createDataSource(URL);
+    }
+
+    protected DataSource createDataSource(final String url) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getConnection")) {
+                            return DriverManager.getConnection(url, "sa", "");
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    protected void executeUpdate(String sql) throws SQLException {
+        final Statement st = _connection.createStatement();
+        try {
+            st.executeUpdate(sql);
+        } finally {
+            st.close();
+        }
+    }
+
+    protected int count(String tableName) throws SQLException {
+        final Statement st = _connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("select count(*) from " + tableName);
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            st.close();
+        }
+    }
+
+    protected int countTouchTrigger() throws SQLException {
+        final Statement st = _connection.createStatement();
+        try {
+            final String prefix = FixtureSnapshotEngine.TRIGGER_PREFIX;
+            final ResultSet rs = st.executeQuery("select count(*) from INFORMATION_SCHEMA.TRIGGERS"
+                    + " where TRIGGER_NAME like '" + prefix + "%'");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            st.close();
+        }
+    }
+
+    protected void runOnOtherThread(Runnable runnable) throws InterruptedException {
+        final Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+
+    protected String selectFooName(int fooId) throws SQLException {
+        final Statement st = _connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("select FOO_NAME from FOO where FOO_ID = " + fooId);
+            rs.next();
+            return rs.getString(1);
+        } finally {
+            st.close();
+        }
+    }
+}
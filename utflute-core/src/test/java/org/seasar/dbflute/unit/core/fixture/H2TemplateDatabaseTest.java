@@ -0,0 +1,144 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.fixture;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class H2TemplateDatabaseTest extends PlainTestCase {
+
+    protected static final String TEMPLATE_URL = "jdbc:h2:mem:templatetest;DB_CLOSE_DELAY=-1";
+
+    protected Connection _templateConnection;
+    protected H2TemplateDatabase _template;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Class.forName("org.h2.Driver");
+        _templateConnection = DriverManager.getConnection(TEMPLATE_URL, "sa", "");
+        executeUpdate(TEMPLATE_URL, "create table FOO (FOO_ID integer primary key, FOO_NAME varchar(20))");
+        executeUpdate(TEMPLATE_URL, "create sequence SEQ_FOO start with 100");
+        executeUpdate(TEMPLATE_URL, "insert into FOO values (1, 'sea')");
+        executeUpdate(TEMPLATE_URL, "insert into FOO values (2, 'land')");
+        _template = new H2TemplateDatabase(TEMPLATE_URL, "sa", "");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _template.dropAll();
+        executeUpdate(TEMPLATE_URL, "drop all objects");
+        _templateConnection.close();
+        super.tearDown();
+    }
+
+    // ===================================================================================
+    //                                                                               Clone
+    //                                                                               =====
+    public void test_cloneDatabase_isolated() throws Exception {
+        // ## Arrange ##
+        final String firstUrl = _template.cloneDatabase("first");
+        final String secondUrl = _template.cloneDatabase("second");
+
+        // ## Act ##
+        executeUpdate(firstUrl, "delete from FOO where FOO_ID = 1");
+
+        // ## Assert ##
+        log(firstUrl, _template);
+        assertEquals(H2TemplateDatabase.buildCloneUrl("first"), firstUrl);
+        assertEquals(1, countFoo(firstUrl));
+        assertEquals(2, countFoo(secondUrl));
+        assertEquals(2, countFoo(TEMPLATE_URL));
+        assertEquals(2L, _template.getCloneCount());
+        assertEquals(firstUrl, _template.cloneDatabase("first")); // reused
+        assertEquals(1, countFoo(firstUrl));
+        assertEquals(2L, _template.getCloneCount());
+    }
+
+    public void test_recloneDatabase_backToTemplate() throws Exception {
+        // ## Arrange ##
+        final String url = _template.cloneNewDatabase();
+        executeUpdate(url, "delete from FOO");
+        assertEquals(0, countFoo(url));
+
+        // ## Act ##
+        final String recloned = _template.recloneDatabase(H2TemplateDatabase.GENERATED_CLONE_PREFIX + "1");
+
+        // ## Assert ##
+        assertEquals(url, recloned);
+        assertEquals(2, countFoo(url));
+        assertEquals(100L, selectLong(url, "select next value for SEQ_FOO"));
+    }
+
+    public void test_dropDatabase_removed() throws Exception {
+        // ## Arrange ##
+        final String url = _template.cloneDatabase("dropped");
+
+        // ## Act ##
+        _template.dropDatabase("dropped");
+
+        // ## Assert ##
+        assertTrue(_template.getCloneNameSet().isEmpty());
+        try {
+            countFoo(url); // new empty database
+            fail();
+        } catch (SQLException e) {
+            log(e.getMessage());
+        }
+        executeUpdate(url, "shutdown");
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected void executeUpdate(String url, String sql) throws SQLException {
+        final Connection conn = DriverManager.getConnection(url, "sa", "");
+        try {
+            final Statement st = conn.createStatement();
+            st.execute(sql);
+            st.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    protected int countFoo(String url) throws SQLException {
+        return (int) selectLong(url, "select count(*) from FOO");
+    }
+
+    protected long selectLong(String url, String sql) throws SQLException {
+        final Connection conn = DriverManager.getConnection(url, "sa", "");
+        try {
+            final Statement st = conn.createStatement();
+            final ResultSet rs = st.executeQuery(sql);
+            rs.next();
+            final long value = rs.getLong(1);
+            st.close();
+            return value;
+        } finally {
+            conn.close();
+        }
+    }
+}
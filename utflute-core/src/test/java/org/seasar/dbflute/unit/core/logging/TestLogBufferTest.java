@@ -0,0 +1,107 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.logging;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class TestLogBufferTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                               Flush
+    //                                                                               =====
+    public void test_flush_inOrder_threadPrefix() throws Exception {
+        // ## Arrange ##
+        final TestLogBuffer buffer = new TestLogBuffer(100);
+        buffer.append("sea", null);
+        final Thread other = new Thread(new Runnable() {
+            public void run() {
+                buffer.append("land", null);
+            }
+        }, "cannonball-car-1");
+        other.start();
+        other.join();
+        final IllegalStateException cause = new IllegalStateException("piari");
+        buffer.append("bonvo", cause);
+        final List<String> messageList = new ArrayList<String>();
+        final List<Object> causeList = new ArrayList<Object>();
+
+        // ## Act ##
+        final int count = buffer.flush(createRecordingLog(messageList, causeList));
+
+        // ## Assert ##
+        log(messageList);
+        assertEquals(3, count);
+        assertEquals(0, buffer.getSize());
+        assertEquals("sea", messageList.get(0));
+        assertEquals("[cannonball-car-1] land", messageList.get(1));
+        assertEquals("bonvo", messageList.get(2));
+        assertEquals(Collections.singletonList(cause), causeList);
+    }
+
+    public void test_flush_overCapacity_dropOldest() throws Exception {
+        // ## Arrange ##
+        final TestLogBuffer buffer = new TestLogBuffer(2);
+        buffer.append("sea", null);
+        buffer.append("land", null);
+        buffer.append("piari", null);
+        final List<String> messageList = new ArrayList<String>();
+
+        // ## Act ##
+        buffer.flush(createRecordingLog(messageList, new ArrayList<Object>()));
+
+        // ## Assert ##
+        log(messageList);
+        assertEquals(3, messageList.size());
+        assertTrue(messageList.get(0).contains("1 log messages were dropped"));
+        assertEquals("land", messageList.get(1));
+        assertEquals("piari", messageList.get(2));
+        assertEquals(0L, buffer.getDroppedCount());
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected Log createRecordingLog(final List<String> messageList, final List<Object> causeList) {
+        return (Log) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Log.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("debug")) {
+                            messageList.add((String) args[0]);
+                            if (args.length > 1) {
+                                causeList.add(args[1]);
+                            }
+                            return null;
+                        }
+                        if (method.getName().startsWith("is")) {
+                            return Boolean.TRUE;
+                        }
+                        return null;
+                    }
+                });
+    }
+}
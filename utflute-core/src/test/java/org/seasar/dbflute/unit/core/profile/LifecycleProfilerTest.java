@@ -0,0 +1,99 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+import java.io.File;
+import java.util.List;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.profile.LifecycleProfiler.ProfileSummary;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class LifecycleProfilerTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                             Summary
+    //                                                                             =======
+    public void test_summarizePhase_slowestFirst() throws Exception {
+        // ## Arrange ##
+        final LifecycleProfiler profiler = new LifecycleProfiler();
+        profiler.recordPhase("FooTest", "test_foo", LifecycleProfiler.PHASE_PREPARE_CONTAINER, 300L);
+        profiler.recordPhase("FooTest", "test_foo", LifecycleProfiler.PHASE_INITIALIZE_CONTAINER, 250L);
+        profiler.recordPhase("FooTest", "test_foo", LifecycleProfiler.PHASE_TEST_BODY, 100L);
+        profiler.recordPhase("BarTest", "test_bar", LifecycleProfiler.PHASE_PREPARE_CONTAINER, 10L);
+        profiler.recordPhase("BarTest", "test_bar", LifecycleProfiler.PHASE_TEST_BODY, 500L);
+
+        // ## Act ##
+        final List<ProfileSummary> phaseList = profiler.summarizePhase();
+        final List<ProfileSummary> classList = profiler.summarizeTestClass();
+
+        // ## Assert ##
+        log(phaseList);
+        assertEquals(LifecycleProfiler.PHASE_TEST_BODY, phaseList.get(0).getKey());
+        assertEquals(600L, phaseList.get(0).getTotalNanos());
+        assertEquals(500L, phaseList.get(0).getMaxNanos());
+        assertEquals(2, phaseList.get(0).getCount());
+        assertEquals(LifecycleProfiler.PHASE_PREPARE_CONTAINER, phaseList.get(1).getKey());
+        log(classList);
+        assertEquals("BarTest", classList.get(0).getKey());
+        assertEquals(510L, classList.get(0).getTotalNanos());
+        assertEquals(400L, classList.get(1).getTotalNanos()); // nested initialization is not counted twice
+    }
+
+    public void test_summarizeComponent_slowestFirst() throws Exception {
+        // ## Arrange ##
+        final LifecycleProfiler profiler = new LifecycleProfiler();
+        profiler.recordComponent("spring", "fooLogic", 30L);
+        profiler.recordComponent("spring", "barLogic", 70L);
+        profiler.recordComponent("spring", "fooLogic", 50L);
+
+        // ## Act ##
+        final List<ProfileSummary> componentList = profiler.summarizeComponent();
+
+        // ## Assert ##
+        assertEquals("spring:fooLogic", componentList.get(0).getKey());
+        assertEquals(80L, componentList.get(0).getTotalNanos());
+        assertEquals("spring:barLogic", componentList.get(1).getKey());
+    }
+
+    // ===================================================================================
+    //                                                                              Report
+    //                                                                              ======
+    public void test_writeReport_json() throws Exception {
+        // ## Arrange ##
+        final LifecycleProfiler profiler = new LifecycleProfiler();
+        profiler.recordPhase("FooTest", "test_\"quoted\"", LifecycleProfiler.PHASE_TEST_BODY, 100L);
+        profiler.recordComponent("spring", "fooLogic", 30L);
+        final File reportFile = new File(getTestCaseBuildDir(), "utflute-profile-test/report.json");
+        reportFile.delete();
+
+        // ## Act ##
+        profiler.writeReport(reportFile);
+
+        // ## Assert ##
+        assertTrue(reportFile.exists());
+        final String json = profiler.buildReportJson();
+        log(json);
+        assertContainsAll(json, "\"phaseSummary\"", "\"testClassSummary\"", "\"componentSummary\"", "\"records\"");
+        assertContains(json, "\"testMethod\": \"test_\\\"quoted\\\"\"");
+        assertContains(json, "{\"component\": \"spring:fooLogic\", \"count\": 1, \"totalNanos\": 30, \"maxNanos\": 30}");
+        reportFile.delete();
+        reportFile.getParentFile().delete();
+    }
+}
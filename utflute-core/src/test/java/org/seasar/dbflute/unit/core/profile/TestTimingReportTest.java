@@ -0,0 +1,105 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.profile.TestTimingReport.ClassTiming;
+import org.seasar.dbflute.unit.core.profile.TestTimingReport.TestRegression;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class TestTimingReportTest extends PlainTestCase {
+
+    private static final long MILLIS = 1000000L;
+
+    // ===================================================================================
+    //                                                                             Slowest
+    //                                                                             =======
+    public void test_findSlowest_latestRun() throws Exception {
+        // ## Arrange ##
+        final List<TestTimingRecord> recordList = newArrayList();
+        recordList.add(createRecord(1L, "FooTest", "test_foo", 900));
+        recordList.add(createRecord(2L, "FooTest", "test_foo", 30));
+        recordList.add(createRecord(2L, "FooTest", "test_bar", 50));
+        recordList.add(createRecord(2L, "BarTest", "test_qux", 70));
+        final TestTimingReport report = new TestTimingReport(recordList);
+
+        // ## Act ##
+        final List<TestTimingRecord> testList = report.findSlowestTests(2);
+        final List<ClassTiming> classList = report.findSlowestClasses(10);
+
+        // ## Assert ##
+        assertEquals(Long.valueOf(2L), report.getLatestRunId());
+        assertEquals(2, testList.size());
+        assertEquals("BarTest#test_qux", testList.get(0).getTestKey());
+        assertEquals("FooTest#test_bar", testList.get(1).getTestKey());
+        log(classList);
+        assertEquals("FooTest", classList.get(0).getTestClassName());
+        assertEquals(80 * MILLIS, classList.get(0).getWallNanos());
+        assertEquals(2, classList.get(0).getTestCount());
+    }
+
+    // ===================================================================================
+    //                                                                          Regression
+    //                                                                          ==========
+    public void test_findRegressions_medianBaseline() throws Exception {
+        // ## Arrange ##
+        final List<TestTimingRecord> recordList = newArrayList();
+        recordList.add(createRecord(1L, "FooTest", "test_foo", 1000)); // out of baseline
+        recordList.add(createRecord(2L, "FooTest", "test_foo", 100));
+        recordList.add(createRecord(3L, "FooTest", "test_foo", 500)); // outlier in baseline
+        recordList.add(createRecord(4L, "FooTest", "test_foo", 110));
+        recordList.add(createRecord(2L, "FooTest", "test_tiny", 1));
+        recordList.add(createRecord(5L, "FooTest", "test_foo", 300));
+        recordList.add(createRecord(5L, "FooTest", "test_tiny", 5)); // x5 but too small difference
+        recordList.add(createRecord(5L, "FooTest", "test_new", 900)); // no baseline
+        final TestTimingReport report = new TestTimingReport(recordList).baselineRunCount(3);
+
+        // ## Act ##
+        final List<TestRegression> regressionList = report.findRegressions();
+
+        // ## Assert ##
+        log(regressionList);
+        assertEquals(1, regressionList.size());
+        final TestRegression regression = regressionList.get(0);
+        assertEquals("FooTest#test_foo", regression.getRecord().getTestKey());
+        assertEquals(110 * MILLIS, regression.getBaselineNanos());
+        assertEquals(3, regression.getBaselineRunCount());
+        final String reportExp = report.buildReport(ln());
+        log(ln() + reportExp);
+        assertContainsAll(reportExp, "(slowest tests)", "(slowest classes)", "FooTest#test_foo: wall=300.000ms");
+    }
+
+    public void test_emptyRecords() throws Exception {
+        final TestTimingReport report = new TestTimingReport(new ArrayList<TestTimingRecord>());
+        assertNull(report.getLatestRunId());
+        assertTrue(report.findSlowestTests(10).isEmpty());
+        assertTrue(report.findRegressions().isEmpty());
+        assertContains(report.buildReport(ln()), "tests=0");
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected TestTimingRecord createRecord(long runId, String className, String methodName, long wallMillis) {
+        return new TestTimingRecord(runId, className, methodName, wallMillis * MILLIS, -1L, -1L, null);
+    }
+}
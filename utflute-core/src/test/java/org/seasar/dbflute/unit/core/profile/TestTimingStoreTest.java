@@ -0,0 +1,162 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.profile;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class TestTimingStoreTest extends PlainTestCase {
+
+    protected File _storeFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _storeFile = new File(getTestCaseBuildDir(), "utflute-timing-test/test-timing.dat");
+        _storeFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _storeFile.delete();
+        _storeFile.getParentFile().delete();
+        super.tearDown();
+    }
+
+    // ===================================================================================
+    //                                                                         Append/Read
+    //                                                                         ===========
+    public void test_append_flush_readAll() throws Exception {
+        // ## Arrange ##
+        final TestTimingStore firstStore = new TestTimingStore(_storeFile, 1L, 2);
+        final TestTimingStore secondStore = new TestTimingStore(_storeFile, 2L, 100);
+
+        // ## Act ##
+        firstStore.append("FooTest", "test_foo", 100L, 80L, 1024L, TestTimingRecord.CONTAINER_EVENT_BOOT);
+        assertEquals(1, firstStore.getBufferedCount());
+        firstStore.append("FooTest", "test_bar", 200L, -1L, -1L, null);
+        assertEquals(0, firstStore.getBufferedCount()); // flushed by size
+        secondStore.append("FooTest", "test_foo", 150L, 90L, 2048L, TestTimingRecord.CONTAINER_EVENT_RECYCLE);
+        assertTrue(secondStore.readAll().size() == 2); // not flushed yet
+        secondStore.flush();
+
+        // ## Assert ##
+        final List<TestTimingRecord> recordList = secondStore.readAll();
+        log(recordList);
+        assertEquals(3, recordList.size());
+        final TestTimingRecord first = recordList.get(0);
+        assertEquals(1L, first.getRunId());
+        assertEquals("FooTest#test_foo", first.getTestKey());
+        assertEquals(100L, first.getWallNanos());
+        assertEquals(80L, first.getCpuNanos());
+        assertEquals(1024L, first.getAllocatedBytes());
+        assertEquals(TestTimingRecord.CONTAINER_EVENT_BOOT, first.getContainerEvent());
+        assertEquals(TestTimingRecord.CONTAINER_EVENT_NONE, recordList.get(1).getContainerEvent());
+        assertEquals(2L, recordList.get(2).getRunId());
+    }
+
+    public void test_readAll_noFile() throws Exception {
+        assertTrue(new TestTimingStore(_storeFile, 1L, 10).readAll().isEmpty());
+    }
+
+    public void test_flush_concurrentStores() throws Exception {
+        // ## Arrange ##
+        final int storeCount = 4;
+        final int recordCount = 50;
+        final List<Thread> threadList = new ArrayList<Thread>();
+        for (int i = 0; i < storeCount; i++) {
+            final TestTimingStore store = new TestTimingStore(_storeFile, i, 1); // flushed per record
+            threadList.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < recordCount; j++) {
+                        store.append("FooTest", "test_" + j, j, -1L, -1L, null);
+                    }
+                }
+            }));
+        }
+
+        // ## Act ##
+        for (Thread thread : threadList) {
+            thread.start();
+        }
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+
+        // ## Assert ##
+        final List<TestTimingRecord> recordList = new TestTimingStore(_storeFile, 0L, 10).readAll();
+        assertEquals(storeCount * recordCount, recordList.size()); // one header, no broken record
+    }
+
+    // ===================================================================================
+    //                                                                              Run ID
+    //                                                                              ======
+    public void test_deriveRunId_property() throws Exception {
+        final String original = System.getProperty(TestTimingStore.RUN_ID_PROPERTY);
+        try {
+            System.setProperty(TestTimingStore.RUN_ID_PROPERTY, "20141017");
+            assertEquals(20141017L, TestTimingStore.deriveRunId());
+            System.setProperty(TestTimingStore.RUN_ID_PROPERTY, "foo");
+            try {
+                TestTimingStore.deriveRunId();
+                fail();
+            } catch (IllegalStateException e) {
+                log(e.getMessage());
+            }
+            System.clearProperty(TestTimingStore.RUN_ID_PROPERTY);
+            assertEquals(ManagementFactory.getRuntimeMXBean().getStartTime(), TestTimingStore.deriveRunId());
+        } finally {
+            if (original != null) {
+                System.setProperty(TestTimingStore.RUN_ID_PROPERTY, original);
+            } else {
+                System.clearProperty(TestTimingStore.RUN_ID_PROPERTY);
+            }
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Compact
+    //                                                                             =======
+    public void test_compact_keepRecentRuns() throws Exception {
+        // ## Arrange ##
+        for (long runId = 1; runId <= 4; runId++) {
+            final TestTimingStore store = new TestTimingStore(_storeFile, runId, 10);
+            store.append("FooTest", "test_foo", runId * 100L, -1L, -1L, null);
+            store.append("FooTest", "test_bar", runId * 10L, -1L, -1L, null);
+            store.flush();
+        }
+        final TestTimingStore store = new TestTimingStore(_storeFile, 5L, 10);
+
+        // ## Act ##
+        final int removed = store.compact(2);
+
+        // ## Assert ##
+        assertEquals(4, removed);
+        final List<TestTimingRecord> recordList = store.readAll();
+        assertEquals(4, recordList.size());
+        assertEquals(3L, recordList.get(0).getRunId());
+        assertEquals(4L, recordList.get(3).getRunId());
+        assertEquals(0, store.compact(2));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.core.transaction;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class SavepointTransactionResourceTest extends PlainTestCase {
+
+    protected Connection _txConnection; // as the connection bound to the outer transaction
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Class.forName("org.h2.Driver");
+        _txConnection = DriverManager.getConnection("jdbc:h2:mem:savepointtest", "sa", "");
+        _txConnection.setAutoCommit(false);
+        executeUpdate("create table FOO (FOO_ID integer primary key)");
+        executeUpdate("insert into FOO values (1)");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _txConnection.rollback();
+        executeUpdate("drop table FOO");
+        _txConnection.close();
+        super.tearDown();
+    }
+
+    // ===================================================================================
+    //                                                                         Transaction
+    //                                                                         ===========
+    public void test_rollback_onlySavepoint() throws Exception {
+        // ## Arrange ##
+        final SavepointTransactionResource resource = SavepointTransactionResource.begin(createTxDataSource());
+        executeUpdate("insert into FOO values (2)");
+        assertEquals(2, countFoo());
+
+        // ## Act ##
+        resource.rollback();
+
+        // ## Assert ##
+        assertEquals(1, countFoo()); // the outer one remains
+        assertFalse(_txConnection.isClosed());
+    }
+
+    public void test_commit_releaseSavepoint() throws Exception {
+        // ## Arrange ##
+        final SavepointTransactionResource resource = SavepointTransactionResource.begin(createTxDataSource());
+        executeUpdate("insert into FOO values (2)");
+
+        // ## Act ##
+        resource.commit();
+
+        // ## Assert ##
+        assertEquals(2, countFoo());
+        _txConnection.rollback(); // the outer transaction decides
+        assertEquals(0, countFoo());
+    }
+
+    public void test_rollback_nested() throws Exception {
+        // ## Arrange ##
+        final DataSource dataSource = createTxDataSource();
+        final SavepointTransactionResource first = SavepointTransactionResource.begin(dataSource);
+        executeUpdate("insert into FOO values (2)");
+        final SavepointTransactionResource second = SavepointTransactionResource.begin(dataSource);
+        executeUpdate("insert into FOO values (3)");
+
+        // ## Act ##
+        second.rollback();
+
+        // ## Assert ##
+        assertEquals(2, countFoo());
+        first.rollback();
+        assertEquals(1, countFoo());
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected DataSource createTxDataSource() {
+        final Connection txConnection = _txConnection;
+        final Connection notCloseConnection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("close")) { // like connection pool in transaction
+                            return null;
+                        }
+                        try {
+                            return method.invoke(txConnection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getConnection")) {
+                            return notCloseConnection;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    protected void executeUpdate(String sql) throws SQLException {
+        final Statement st = _txConnection.createStatement();
+        try {
+            st.executeUpdate(sql);
+        } finally {
+            st.close();
+        }
+    }
+
+    protected int countFoo() throws SQLException {
+        final Statement st = _txConnection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("select count(*) from FOO");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            st.close();
+        }
+    }
+}
@@ -15,17 +15,24 @@
  */
 package org.seasar.dbflute.unit.guice.web;
 
+import java.util.List;
+
 import javax.servlet.ServletContext;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
+import org.seasar.dbflute.unit.core.profile.LifecycleProfiler;
 import org.seasar.dbflute.unit.guice.ContainerTestCase;
+import org.seasar.dbflute.unit.mocklet.MockletCapturingHttpServletResponse;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletRequest;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletRequestImpl;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletResponse;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletResponseImpl;
 import org.seasar.dbflute.unit.mocklet.MockletHttpSession;
+import org.seasar.dbflute.unit.mocklet.MockletPool;
+import org.seasar.dbflute.unit.mocklet.MockletReplayEngine;
+import org.seasar.dbflute.unit.mocklet.MockletResponseAssertion;
 import org.seasar.dbflute.unit.mocklet.MockletServletConfig;
 import org.seasar.dbflute.unit.mocklet.MockletServletConfigImpl;
 import org.seasar.dbflute.unit.mocklet.MockletServletContext;
@@ -40,12 +47,6 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
     // ===================================================================================
     //                                                                           Attribute
     //                                                                           =========
-    // -----------------------------------------------------
-    //                                         Static Cached
-    //                                         -------------
-    /** The cached determination of suppressing web mock. (NullAllowed: null means beginning or ending) */
-    protected static Boolean _xcachedSuppressWebMock;
-
     // -----------------------------------------------------
     //                                              Web Mock
     //                                              --------
@@ -55,6 +56,9 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
     /** The mock response of the test case execution. (NullAllowed: when no web mock or beginning or ending) */
     protected MockletHttpServletResponse _xmockResponse;
 
+    /** The shared pool of mock request and response, used if pool is enabled. (NotNull) */
+    protected static final MockletPool _xmockletPool = new MockletPool();
+
     // ===================================================================================
     //                                                                            Settings
     //                                                                            ========
@@ -64,7 +68,9 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
     @Override
     protected void xprepareTestCaseContainer() {
         super.xprepareTestCaseContainer();
+        final long before = xbeginLifecyclePhase();
         xdoPrepareWebMockContext();
+        xendLifecyclePhase(LifecycleProfiler.PHASE_REGISTER_WEB_MOCK, before);
     }
 
     @Override
@@ -74,13 +80,21 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
 
     protected boolean xwebMockCanAcceptContainerRecycle() {
         // no mark or no change
-        return _xcachedSuppressWebMock == null || _xcachedSuppressWebMock.equals(isSuppressWebMock());
+        final Boolean cachedSuppressWebMock = _xcontainerSlot.getSuppressWebMock();
+        return cachedSuppressWebMock == null || cachedSuppressWebMock.equals(isSuppressWebMock());
     }
 
     @Override
     protected void xsaveCachedInstance() {
         super.xsaveCachedInstance();
-        _xcachedSuppressWebMock = isSuppressWebMock();
+        _xcontainerSlot.setSuppressWebMock(isSuppressWebMock());
+    }
+
+    @Override
+    protected List<Object> xcreateContainerCacheKey() {
+        final List<Object> keyList = super.xcreateContainerCacheKey();
+        keyList.add(isSuppressWebMock());
+        return keyList;
     }
 
     /**
@@ -91,6 +105,15 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
         return false;
     }
 
+    /**
+     * Does it use the pool of mock request and response? (recycled in place instead of new-created) <br />
+     * They are given back at tear-down so you should not keep them over the test case execution.
+     * @return The determination, true or false.
+     */
+    protected boolean isUseMockletPool() {
+        return false;
+    }
+
     protected void xdoPrepareWebMockContext() {
         if (isSuppressWebMock()) {
             return;
@@ -102,6 +125,10 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
 
     @Override
     public void tearDown() throws Exception {
+        if (isUseMockletPool()) {
+            _xmockletPool.giveBack(_xmockResponse); // null allowed
+            _xmockletPool.giveBack(_xmockRequest);
+        }
         _xmockRequest = null;
         _xmockResponse = null;
         super.tearDown();
@@ -139,10 +166,16 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
     }
 
     protected MockletHttpServletRequest createMockletHttpServletRequest(ServletContext servletContext) {
+        if (isUseMockletPool()) {
+            return _xmockletPool.borrowRequest(servletContext, prepareServletPath());
+        }
         return new MockletHttpServletRequestImpl(servletContext, prepareServletPath());
     }
 
     protected MockletHttpServletResponse createMockletHttpServletResponse(HttpServletRequest request) {
+        if (isUseMockletPool()) {
+            return _xmockletPool.borrowResponse(request);
+        }
         return new MockletHttpServletResponseImpl(request);
     }
 
@@ -220,6 +253,85 @@ public abstract class WebContainerTestCase extends ContainerTestCase {
         return response != null ? response.getResponseString() : null;
     }
 
+    /**
+     * Prepare the streaming assertion of mock response body, evaluated as the body is written. <br />
+     * Call it before the action, and verify it after that. (fails fast at the first violation)
+     * <pre>
+     * MockletResponseAssertion assertion = prepareMockResponseAssertion();
+     * assertion.shouldContain("sea").shouldHaveLineCountAtMost(10000);
+     * ((MockletCapturingHttpServletResponse) getMockResponse()).setResponseRetained(false); <span style="color: #3F7E5E">// if large</span>
+     * ... <span style="color: #3F7E5E">// action</span>
+     * assertion.verify();
+     * </pre>
+     * @return The new-created assertion listening the body. (NotNull)
+     * @throws IllegalStateException When the mock response is not prepared or not capturing response.
+     */
+    protected MockletResponseAssertion prepareMockResponseAssertion() {
+        final MockletHttpServletResponse response = getMockResponse();
+        if (response == null) {
+            String msg = "Not found the mock response, web mock is not prepared in the test case: " + getClass();
+            throw new IllegalStateException(msg);
+        }
+        if (!(response instanceof MockletCapturingHttpServletResponse)) {
+            String msg = "The mock response should be capturing response for assertion: " + response.getClass();
+            throw new IllegalStateException(msg);
+        }
+        return ((MockletCapturingHttpServletResponse) response).prepareResponseAssertion();
+    }
+
+    // -----------------------------------------------------
+    //                                               Recycle
+    //                                               -------
+    /**
+     * Recycle the mock request and response in place, clearing their state (also session) for next action. <br />
+     * They are still registered as they are, so you can loop an action many times without new-created mocks.
+     * <pre>
+     * for (int i = 0; i < 10000; i++) {
+     *     recycleWebMock();
+     *     addMockRequestParameter("memberId", String.valueOf(i));
+     *     ... <span style="color: #3F7E5E">// action</span>
+     * }
+     * </pre>
+     * @throws IllegalStateException When the mocks are not default implementations, e.g. MockletHttpServletRequestImpl.
+     */
+    protected void recycleWebMock() {
+        if (_xmockRequest == null) {
+            return;
+        }
+        if (!(_xmockRequest instanceof MockletHttpServletRequestImpl)
+                || (_xmockResponse != null && !(_xmockResponse instanceof MockletHttpServletResponseImpl))) {
+            String msg = "The mock request and response should be default implementations for recycle: ";
+            msg = msg + _xmockRequest.getClass() + ", " + (_xmockResponse != null ? _xmockResponse.getClass() : null);
+            throw new IllegalStateException(msg);
+        }
+        ((MockletHttpServletRequestImpl) _xmockRequest).recycle();
+        if (_xmockResponse != null) {
+            ((MockletHttpServletResponseImpl) _xmockResponse).recycle(_xmockRequest);
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                                Replay
+    //                                                ------
+    /**
+     * Create the engine of in-process request replay, e.g. captured access logs, for the web mock context. <br />
+     * Each replaying thread uses its own mock request, response and session (not the ones of this test case).
+     * <pre>
+     * List&lt;MockletReplayEntry&gt; entryList = ... <span style="color: #3F7E5E">// e.g. MockletReplayEntry.parseLine()</span>
+     * MockletReplayResult result = createMockRequestReplayEngine().threadCount(4).replay(entryList, handler);
+     * log(result); <span style="color: #3F7E5E">// status, size, latency</span>
+     * </pre>
+     * @return The new-created engine. (NotNull)
+     */
+    protected MockletReplayEngine createMockRequestReplayEngine() {
+        final MockletHttpServletRequest request = getMockRequest();
+        if (request == null) {
+            String msg = "Not found the mock request, web mock is not prepared in the test case: " + getClass();
+            throw new IllegalStateException(msg);
+        }
+        return new MockletReplayEngine(request.getSession(true).getServletContext());
+    }
+
     // -----------------------------------------------------
     //                                               Session
     //                                               -------
@@ -18,6 +18,7 @@ package org.seasar.dbflute.unit.guice.web;
 import java.io.File;
 import java.io.IOException;
 
+import org.seasar.dbflute.unit.core.fixture.H2TemplateDatabase;
 import org.seasar.dbflute.util.DfReflectionUtil;
 import org.seasar.dbflute.util.DfResourceUtil;
 
@@ -33,12 +34,15 @@ public class EmbeddedH2UrlFactoryBean {
     //                                                                           =========
     protected String _urlSuffix;
     protected String _referenceClassName;
+    protected String _cloneName; // null means the embedded database itself
+    protected String _user = "sa";
+    protected String _password = "";
 
     // ===================================================================================
     //                                                                                Main
     //                                                                                ====
     public Object getObject() throws Exception {
-        return buildUrl();
+        return resolveUrl();
     }
 
     public Class<?> getObjectType() {
@@ -49,6 +53,15 @@ public class EmbeddedH2UrlFactoryBean {
         return true;
     }
 
+    protected String resolveUrl() {
+        final String url = buildUrl();
+        if (_cloneName == null) {
+            return url;
+        }
+        // the embedded database is the template, the clone has its own data
+        return H2TemplateDatabase.of(url, _user, _password).cloneDatabase(_cloneName);
+    }
+
     protected String buildUrl() {
         try {
             final File buildDir = getBuildDir();
@@ -74,4 +87,16 @@ public class EmbeddedH2UrlFactoryBean {
     public void setUrlSuffix(String urlSuffix) {
         _urlSuffix = urlSuffix;
     }
+
+    public void setCloneName(String cloneName) {
+        _cloneName = cloneName;
+    }
+
+    public void setUser(String user) {
+        _user = user;
+    }
+
+    public void setPassword(String password) {
+        _password = password;
+    }
 }
@@ -25,6 +25,12 @@ import javax.transaction.TransactionManager;
 import org.seasar.dbflute.unit.core.InjectionTestCase;
 import org.seasar.dbflute.unit.core.binding.BindingAnnotationRule;
 import org.seasar.dbflute.unit.core.binding.ComponentBinder;
+import org.seasar.dbflute.unit.core.container.ContainerCache;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+import org.seasar.dbflute.unit.core.container.ContainerSlot;
+import org.seasar.dbflute.unit.core.container.ContainerSlotManager;
+import org.seasar.dbflute.unit.core.profile.LifecycleProfiler;
+import org.seasar.dbflute.unit.core.profile.TestTimingRecord;
 import org.seasar.dbflute.unit.core.transaction.TransactionFailureException;
 import org.seasar.dbflute.unit.core.transaction.TransactionResource;
 
@@ -44,8 +50,12 @@ public abstract class GuiceTestCase extends InjectionTestCase {
     // -----------------------------------------------------
     //                                          Static Cache
     //                                          ------------
-    /** The cached injector for DI container. (NullAllowed: null means beginning or test execution) */
-    protected static Injector _xcachedInjector;
+    /** The manager of container slots, each slot has cached injector. (NotNull) */
+    protected static final ContainerSlotManager<ContainerSlot<Injector>> _xcontainerSlotManager = new ContainerSlotManager<ContainerSlot<Injector>>() {
+        protected ContainerSlot<Injector> createSlot(int slotNumber) {
+            return new ContainerSlot<Injector>(slotNumber);
+        }
+    };
 
     // -----------------------------------------------------
     //                                          Guice Object
@@ -56,6 +66,9 @@ public abstract class GuiceTestCase extends InjectionTestCase {
     /** The transaction manager for platform. (NotNull: after injection) */
     protected TransactionManager _xtransactionManager;
 
+    /** The container slot held by the test case. (NullAllowed: before set-up or after tear-down) */
+    protected ContainerSlot<Injector> _xcontainerSlot;
+
     // ===================================================================================
     //                                                                            Settings
     //                                                                            ========
@@ -64,39 +77,101 @@ public abstract class GuiceTestCase extends InjectionTestCase {
     //                                     -----------------
     @Override
     protected void xprepareTestCaseContainer() {
+        xacquireContainerSlot();
         xdoPrepareTestCaseContainer();
         xsaveCachedInstance();
     }
 
+    protected void xacquireContainerSlot() {
+        if (_xcontainerSlot != null) { // already acquired
+            return;
+        }
+        _xcontainerSlotManager.setSlotCount(prepareContainerSlotCount());
+        _xcontainerSlot = _xcontainerSlotManager.acquire(xcreateContainerCacheKey());
+    }
+
+    @Override
+    protected void xreleaseContainerSlot() {
+        if (_xcontainerSlot == null) { // not acquired or already released
+            return;
+        }
+        _xcontainerSlotManager.release(_xcontainerSlot);
+        _xcontainerSlot = null;
+    }
+
+    protected ContainerCache<Injector> xgetContainerCache() {
+        return _xcontainerSlot.getContainerCache();
+    }
+
     protected void xdoPrepareTestCaseContainer() {
         if (isUseOneTimeContainer()) {
             xdestroyContainer();
         }
+        xgetContainerCache().setMaxSize(prepareContainerCacheSize());
+        final Injector parkedInjector;
         if (xisInitializedContainer()) {
             if (xcanRecycleContainer()) {
                 log("...Recycling guice");
                 xrecycleContainerInstance();
+                xgetContainerCache().recordRecycle();
+                xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_RECYCLE);
                 return;
             } else {
-                xdestroyContainer();
+                // taken before parking the current one, not to be evicted by the parking
+                parkedInjector = xtakeParkedContainer();
+                if (xgetContainerCache().getMaxSize() > 1) {
+                    xparkContainer(); // to switch back later without initialization
+                } else {
+                    xdestroyContainer();
+                }
             }
+        } else {
+            parkedInjector = xtakeParkedContainer();
         }
+        if (parkedInjector != null) {
+            xrestoreParkedContainer(parkedInjector);
+            return;
+        }
+        final long before = xbeginLifecyclePhase();
         final List<Module> moduleList = prepareModuleList();
         xinitializeContainer(moduleList);
+        xendLifecyclePhase(LifecycleProfiler.PHASE_INITIALIZE_CONTAINER, before);
+        xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_BOOT);
     }
 
     protected boolean xcanRecycleContainer() {
-        // fixedly true, change unsupported for now
-        // (keep same structure as other DI containers)
-        return true;
+        // modules are identified by the class that prepares them
+        // because module instances are new-created per calling
+        return xcreateContainerCacheKey().equals(_xcontainerSlot.getContainerKey());
     }
 
     protected void xrecycleContainerInstance() {
-        _xcurrentActiveInjector = _xcachedInjector;
+        _xcurrentActiveInjector = _xcontainerSlot.getContainer();
     }
 
     protected void xsaveCachedInstance() {
-        // no cache for now
+        _xcontainerSlot.setContainerKey(xcreateContainerCacheKey());
+    }
+
+    /**
+     * Create the key of container cache, which identifies the module configuration.
+     * @return The list of key elements, you can add elements in sub-class. (NotNull)
+     */
+    protected List<Object> xcreateContainerCacheKey() {
+        final List<Object> keyList = newArrayList();
+        keyList.add(xfindModulePreparingClass());
+        return keyList;
+    }
+
+    protected Class<?> xfindModulePreparingClass() { // the class overriding prepareModuleList()
+        for (Class<?> clazz = getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                clazz.getDeclaredMethod("prepareModuleList", (Class<?>[]) null);
+                return clazz;
+            } catch (NoSuchMethodException continued) {
+            }
+        }
+        return GuiceTestCase.class; // no way
     }
 
     /**
@@ -110,7 +185,7 @@ public abstract class GuiceTestCase extends InjectionTestCase {
 
     @Override
     protected void xclearCachedContainer() {
-        _xcachedInjector = null;
+        _xcontainerSlot.setContainer(null);
     }
 
     // ===================================================================================
@@ -160,13 +235,48 @@ public abstract class GuiceTestCase extends InjectionTestCase {
     //                                            Initialize
     //                                            ----------
     protected boolean xisInitializedContainer() {
-        return _xcachedInjector != null;
+        return _xcontainerSlot.getContainer() != null;
     }
 
     protected void xinitializeContainer(List<Module> moduleList) {
         log("...Initializing guice: " + moduleList);
         _xcurrentActiveInjector = Guice.createInjector(moduleList.toArray(new Module[] {}));
-        _xcachedInjector = _xcurrentActiveInjector;
+        _xcontainerSlot.setContainer(_xcurrentActiveInjector);
+        if (prepareContainerCacheSize() > 1 || prepareContainerSlotCount() > 1) {
+            log(" " + _xcontainerSlot + " " + xgetContainerCache());
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                          Park/Restore
+    //                                          ------------
+    protected void xparkContainer() {
+        final Injector parkedInjector = _xcontainerSlot.getContainer();
+        final List<Object> parkedKey = _xcontainerSlot.getContainerKey();
+        _xcontainerSlot.setContainer(null);
+        _xcurrentActiveInjector = null;
+        if (parkedKey == null) { // basically no way
+            return; // injector has no destroy process
+        }
+        xgetContainerCache().park(parkedKey, parkedInjector, new ContainerDestroyer<Injector>() {
+            public void destroy(Injector container) {
+                // injector has no destroy process, released by GC
+            }
+        });
+    }
+
+    protected Injector xtakeParkedContainer() {
+        if (isUseOneTimeContainer()) { // needs new-created container
+            return null;
+        }
+        return xgetContainerCache().restore(xcreateContainerCacheKey()); // null allowed
+    }
+
+    protected void xrestoreParkedContainer(Injector parkedInjector) {
+        log("...Restoring parked guice: " + xcreateContainerCacheKey() + " " + xgetContainerCache());
+        xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_RESTORE);
+        _xcurrentActiveInjector = parkedInjector;
+        _xcontainerSlot.setContainer(parkedInjector);
     }
 
     // -----------------------------------------------------
@@ -174,7 +284,7 @@ public abstract class GuiceTestCase extends InjectionTestCase {
     //                                               -------
     @Override
     protected void xdestroyContainer() {
-        _xcachedInjector = null;
+        _xcontainerSlot.setContainer(null);
         _xcurrentActiveInjector = null;
     }
 
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.guice.container;
+
+import java.util.List;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+import org.seasar.dbflute.unit.core.container.ContainerSlot;
+import org.seasar.dbflute.unit.guice.ContainerTestCase;
+import org.seasar.dbflute.unit.guice.bean.FooService;
+
+import com.google.inject.Binder;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+/**
+ * The test of container wiring by test cases of two module configurations, which are run in this test.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerWiringTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                            Settings
+    //                                                                            ========
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // destroy containers of previous tests (one-time destroys the active one at tear-down)
+        final ModuleCase resetCase = new FirstModuleCase(1).asOneTime();
+        resetCase.setUp();
+        try {
+            resetCase.destroyParkedContainer();
+        } finally {
+            resetCase.tearDown();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Recycle
+    //                                                                             =======
+    public void test_sameConfig_recycled() throws Exception {
+        // ## Arrange ##
+        final Injector firstInjector = runCase(new FirstModuleCase(1));
+
+        // ## Act ##
+        final Injector nextInjector = runCase(new FirstModuleCase(1));
+
+        // ## Assert ##
+        assertSame(firstInjector, nextInjector);
+        assertSame(firstInjector.getInstance(FooService.class), nextInjector.getInstance(FooService.class));
+    }
+
+    // ===================================================================================
+    //                                                                        Park/Restore
+    //                                                                        ============
+    public void test_switchConfig_parkedAndRestored() throws Exception {
+        // ## Arrange ##
+        final Injector firstInjector = runCase(new FirstModuleCase(2));
+        final FooService firstService = firstInjector.getInstance(FooService.class);
+
+        // ## Act ##
+        final Injector secondInjector = runCase(new SecondModuleCase(2));
+        final Injector restoredInjector = runCase(new FirstModuleCase(2));
+
+        // ## Assert ##
+        assertNotSame(firstInjector, secondInjector);
+        assertNotSame(firstService, secondInjector.getInstance(FooService.class));
+        assertSame(firstInjector, restoredInjector);
+        assertSame(firstService, restoredInjector.getInstance(FooService.class));
+    }
+
+    public void test_switchConfig_noParking_rebuilt() throws Exception {
+        // ## Arrange ##
+        final Injector firstInjector = runCase(new FirstModuleCase(1));
+        final FooService firstService = firstInjector.getInstance(FooService.class);
+
+        // ## Act ##
+        final Injector secondInjector = runCase(new SecondModuleCase(1));
+        final Injector rebuiltInjector = runCase(new FirstModuleCase(1));
+
+        // ## Assert ##
+        assertNotSame(firstInjector, secondInjector);
+        assertNotSame(firstInjector, rebuiltInjector);
+        assertNotSame(firstService, rebuiltInjector.getInstance(FooService.class));
+    }
+
+    // ===================================================================================
+    //                                                                            One-time
+    //                                                                            ========
+    public void test_oneTimeContainer_rebuiltPerCase() throws Exception {
+        // ## Arrange ##
+        final ModuleCase firstCase = new FirstModuleCase(2).asOneTime();
+        final Injector firstInjector = runCase(firstCase);
+
+        // ## Act ##
+        final Injector nextInjector = runCase(new FirstModuleCase(2).asOneTime());
+
+        // ## Assert ##
+        assertNotSame(firstInjector, nextInjector);
+        assertNull(firstCase.getActiveInjector()); // destroyed at tear-down
+    }
+
+    // ===================================================================================
+    //                                                                      Container Slot
+    //                                                                      ==============
+    public void test_slot_acquiredAndReleased() throws Exception {
+        // ## Arrange ##
+        final ModuleCase firstCase = new FirstModuleCase(1);
+        final ContainerSlot<Injector> slot;
+
+        // ## Act ##
+        firstCase.setUp();
+        try {
+            slot = firstCase.getSlot();
+
+            // ## Assert ##
+            assertNotNull(slot);
+            assertSame(firstCase.getActiveInjector(), slot.getContainer());
+        } finally {
+            firstCase.tearDown();
+        }
+        assertNull(firstCase.getSlot()); // released
+        final ModuleCase nextCase = new FirstModuleCase(1);
+        nextCase.setUp();
+        try {
+            assertSame(slot, nextCase.getSlot()); // same key preferred
+            assertSame(slot.getContainer(), nextCase.getActiveInjector());
+        } finally {
+            nextCase.tearDown();
+        }
+    }
+
+    public void test_slot_releasedWhenSetUpFailure() throws Exception {
+        // ## Arrange ##
+        final ModuleCase brokenCase = new BrokenModuleCase(1);
+
+        // ## Act ##
+        try {
+            brokenCase.setUp();
+
+            // ## Assert ##
+            fail();
+        } catch (RuntimeException e) {
+            log(e.getMessage());
+        }
+        assertNull(brokenCase.getSlot()); // released without tear-down
+        assertNotNull(runCase(new FirstModuleCase(1))); // can acquire the slot again
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected Injector runCase(ModuleCase testCase) throws Exception {
+        testCase.setUp();
+        try {
+            final Injector injector = testCase.getActiveInjector();
+            assertNotNull(injector);
+            return injector;
+        } finally {
+            testCase.tearDown();
+        }
+    }
+
+    protected abstract static class ModuleCase extends ContainerTestCase {
+
+        protected final int _cacheSize;
+        protected boolean _oneTime;
+
+        public ModuleCase(int cacheSize) {
+            _cacheSize = cacheSize;
+        }
+
+        public ModuleCase asOneTime() {
+            _oneTime = true;
+            return this;
+        }
+
+        protected List<Module> prepareServiceModuleList() {
+            final List<Module> moduleList = super.prepareModuleList();
+            moduleList.add(new Module() {
+                public void configure(Binder binder) {
+                    binder.bind(FooService.class).toInstance(new FooService());
+                }
+            });
+            return moduleList;
+        }
+
+        @Override
+        protected int prepareContainerCacheSize() {
+            return _cacheSize;
+        }
+
+        @Override
+        protected boolean isUseOneTimeContainer() {
+            return _oneTime;
+        }
+
+        @Override
+        protected boolean isSuppressTestCaseTransaction() {
+            return true; // container only
+        }
+
+        public Injector getActiveInjector() {
+            return _xcurrentActiveInjector;
+        }
+
+        public ContainerSlot<Injector> getSlot() {
+            return _xcontainerSlot;
+        }
+
+        public void destroyParkedContainer() {
+            xgetContainerCache().destroyAll(new ContainerDestroyer<Injector>() {
+                public void destroy(Injector container) {
+                    // injector has no destroy process, released by GC
+                }
+            });
+        }
+    }
+
+    // the container key is the class overriding prepareModuleList()
+    protected static class FirstModuleCase extends ModuleCase {
+
+        public FirstModuleCase(int cacheSize) {
+            super(cacheSize);
+        }
+
+        @Override
+        protected List<Module> prepareModuleList() {
+            return prepareServiceModuleList();
+        }
+    }
+
+    protected static class SecondModuleCase extends ModuleCase {
+
+        public SecondModuleCase(int cacheSize) {
+            super(cacheSize);
+        }
+
+        @Override
+        protected List<Module> prepareModuleList() {
+            return prepareServiceModuleList();
+        }
+    }
+
+    protected static class BrokenModuleCase extends ModuleCase {
+
+        public BrokenModuleCase(int cacheSize) {
+            super(cacheSize);
+        }
+
+        @Override
+        protected List<Module> prepareModuleList() {
+            final List<Module> moduleList = super.prepareModuleList();
+            moduleList.add(new Module() {
+                public void configure(Binder binder) {
+                    binder.addError("Broken module for test.");
+                }
+            });
+            return moduleList;
+        }
+    }
+}
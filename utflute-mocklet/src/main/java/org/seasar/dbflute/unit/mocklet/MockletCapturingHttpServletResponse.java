@@ -0,0 +1,72 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The mock response that captures the body in one growable buffer (or spilled file) without copy. <br />
+ * It is separated from MockletHttpServletResponse not to break other implementations of the interface.
+ * @author jflute
+ * @since 0.4.8
+ */
+public interface MockletCapturingHttpServletResponse extends MockletHttpServletResponse {
+
+    /**
+     * @return The new-opened stream of the captured body without copy. (NotNull)
+     */
+    InputStream getResponseInputStream();
+
+    /**
+     * @return The read-only buffer of the captured body. (NotNull)
+     */
+    ByteBuffer getResponseByteBuffer();
+
+    long getResponseSize();
+
+    /**
+     * @return The size of written body including not-retained bytes.
+     */
+    long getResponseWrittenSize();
+
+    /**
+     * @param spillThreshold The size as bytes to spill the captured body to temporary file. (minus means no spill)
+     */
+    void setResponseSpillThreshold(long spillThreshold);
+
+    /**
+     * @param retained Does it keep the written body? (false: only counted and asserted, for bounded memory)
+     */
+    void setResponseRetained(boolean retained);
+
+    /**
+     * Release the captured body, deleting the spilled file if exists.
+     */
+    void releaseResponse();
+
+    /**
+     * @return The encoding to decode the captured body, e.g. encoding of writer. (NotNull)
+     */
+    String getResponseEncoding();
+
+    /**
+     * Prepare the streaming assertion evaluated as the body is written, should be called before writing. <br />
+     * The writer is flushed at every write while the assertion is prepared, so it also fails fast.
+     * @return The new-created assertion listening the body. (NotNull)
+     */
+    MockletResponseAssertion prepareResponseAssertion();
+}
@@ -17,6 +17,7 @@ package org.seasar.dbflute.unit.mocklet;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
 import java.util.ArrayList;
@@ -51,6 +52,7 @@ public class MockletHttpServletRequestImpl implements MockletHttpServletRequest
     protected String pathTranslated;
     protected String queryString;
     protected MockletHttpSessionImpl session;
+    protected MockletHttpSessionImpl recycledSession; // reused when session is created after recycle
     protected String scheme = "http";
     protected int serverPort = 80;
     protected String protocol = "HTTP/1.1";
@@ -59,6 +61,9 @@ public class MockletHttpServletRequestImpl implements MockletHttpServletRequest
     protected String characterEncoding = "ISO-8859-1";
     protected int contentLength;
     protected String contentType;
+    protected MockletRequestBody requestBody;
+    protected MockletServletInputStream bodyInputStream; // opened once
+    protected BufferedReader bodyReader; // exclusive with input stream
     protected final Map<String, String[]> parameters = new HashMap<String, String[]>();
     protected String remoteAddr;
     protected String remoteHost;
@@ -255,7 +260,12 @@ public class MockletHttpServletRequestImpl implements MockletHttpServletRequest
             return session;
         }
         if (create) {
-            session = createMockletHttpSessionImpl(servletContext);
+            if (recycledSession != null) {
+                session = recycledSession;
+                recycledSession = null;
+            } else {
+                session = createMockletHttpSessionImpl(servletContext);
+            }
         }
         if (session != null) {
             session.access();
@@ -271,6 +281,45 @@ public class MockletHttpServletRequestImpl implements MockletHttpServletRequest
         return getSession(true);
     }
 
+    /**
+     * Recycle the request in place for next request, clearing all state except servlet context and path. <br />
+     * The session is also recycled and reused when it is created again.
+     * (only in this implementation, not in the interface not to break other implementations)
+     */
+    public void recycle() {
+        authType = null;
+        cookieList.clear();
+        headers.clear();
+        method = "POST";
+        pathInfo = null;
+        pathTranslated = null;
+        queryString = null;
+        if (session != null) {
+            session.recycle();
+            recycledSession = session;
+            session = null;
+        }
+        scheme = "http";
+        serverPort = 80;
+        protocol = "HTTP/1.1";
+        serverName = "localhost";
+        attributes.clear();
+        characterEncoding = "ISO-8859-1";
+        contentLength = 0;
+        contentType = null;
+        requestBody = null;
+        bodyInputStream = null;
+        bodyReader = null;
+        parameters.clear();
+        remoteAddr = null;
+        remoteHost = null;
+        remotePort = 0;
+        localAddr = null;
+        localName = null;
+        localPort = 0;
+        locales.clear();
+    }
+
     public boolean isRequestedSessionIdValid() {
         if (session != null) {
             return session.isValid();
@@ -332,7 +381,34 @@ public class MockletHttpServletRequestImpl implements MockletHttpServletRequest
     }
 
     public ServletInputStream getInputStream() throws IOException {
-        throw new UnsupportedOperationException();
+        if (bodyReader != null) {
+            throw new IllegalStateException("getReader() has already been called for this request.");
+        }
+        return prepareBodyInputStream();
+    }
+
+    protected MockletServletInputStream prepareBodyInputStream() throws IOException {
+        if (bodyInputStream == null) {
+            final MockletRequestBody body = requestBody != null ? requestBody : MockletRequestBody.ofBytes(new byte[0]);
+            bodyInputStream = new MockletServletInputStreamImpl(body.openStream());
+        }
+        return bodyInputStream;
+    }
+
+    public MockletRequestBody getRequestBody() {
+        return requestBody;
+    }
+
+    /**
+     * Set the body of request, streamed by getInputStream() or getReader(). <br />
+     * (only in this implementation, not in the interface not to break other implementations)
+     * @param requestBody The body of request, also setting content length. (NullAllowed: empty body)
+     */
+    public void setRequestBody(MockletRequestBody requestBody) {
+        this.requestBody = requestBody;
+        this.contentLength = requestBody != null ? requestBody.getContentLength() : 0;
+        this.bodyInputStream = null;
+        this.bodyReader = null;
     }
 
     public String getParameter(String name) {
@@ -424,7 +500,14 @@ public class MockletHttpServletRequestImpl implements MockletHttpServletRequest
     }
 
     public BufferedReader getReader() throws IOException {
-        throw new UnsupportedOperationException();
+        if (bodyReader == null) {
+            if (bodyInputStream != null) {
+                throw new IllegalStateException("getInputStream() has already been called for this request.");
+            }
+            final String encoding = characterEncoding != null ? characterEncoding : "ISO-8859-1";
+            bodyReader = new BufferedReader(new InputStreamReader(prepareBodyInputStream(), encoding));
+        }
+        return bodyReader;
     }
 
     public String getRemoteAddr() {
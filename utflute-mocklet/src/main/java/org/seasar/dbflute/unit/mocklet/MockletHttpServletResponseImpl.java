@@ -15,9 +15,12 @@
  */
 package org.seasar.dbflute.unit.mocklet;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -33,25 +36,28 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.seasar.dbflute.unit.mocklet.helper.MockletEmptyEnumeration;
 import org.seasar.dbflute.unit.mocklet.helper.MockletEnumerationAdapter;
-import org.seasar.dbflute.unit.mocklet.helper.MockletSPrintWriter;
 
 /**
  * @author modified by jflute (originated in Seasar)
  * @since 0.4.0 (2014/03/16 Sunday)
  */
-public class MockletHttpServletResponseImpl implements MockletHttpServletResponse {
+public class MockletHttpServletResponseImpl implements MockletCapturingHttpServletResponse {
 
     protected final List<Cookie> cookieList;
     protected final Map<String, List<String>> headers = new HashMap<String, List<String>>();
     protected boolean committed = false;
     protected int status;
     protected String message;
-    protected byte[] buffer = new byte[1024];
+    protected int bufferSize = 1024;
     protected Locale locale;
     protected String characterEncoding;
-    protected final PrintWriter writer = new MockletSPrintWriter();
-    protected final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-    protected final ServletOutputStream outputStream = new MockletServletOutputStreamImpl(byteArrayOutputStream);
+    protected boolean characterEncodingSpecified; // true if set to this response
+    protected final MockletResponseCapture responseCapture = new MockletResponseCapture(); // shared by both paths
+    protected final ServletOutputStream outputStream = new MockletServletOutputStreamImpl(responseCapture);
+    protected PrintWriter writer; // lazy-loaded
+    protected String writerEncoding; // fixed when writer is created
+    protected String decodedString; // cache of lazy decoding
+    protected long decodedSize = -1L; // captured size when decoded
     protected boolean getWriterCalled;
     protected boolean getOutputStreamCalled;
 
@@ -61,6 +67,31 @@ public class MockletHttpServletResponseImpl implements MockletHttpServletRespons
         characterEncoding = request.getCharacterEncoding();
     }
 
+    /**
+     * Recycle the response in place as new-created for the request, views of previous body become invalid. <br />
+     * (only in this implementation, not in the interface not to break other implementations)
+     * @param request The request of the recycled response. (NotNull)
+     */
+    public void recycle(HttpServletRequest request) {
+        cookieList.clear();
+        cookieList.addAll(Arrays.asList(request.getCookies()));
+        locale = request.getLocale();
+        characterEncoding = request.getCharacterEncoding();
+        characterEncodingSpecified = false;
+        headers.clear();
+        committed = false;
+        status = 0;
+        message = null;
+        bufferSize = 1024;
+        responseCapture.recycle();
+        writer = null;
+        writerEncoding = null;
+        decodedString = null;
+        decodedSize = -1L;
+        getWriterCalled = false;
+        getOutputStreamCalled = false;
+    }
+
     public Cookie[] getCookies() {
         return cookieList.toArray(new Cookie[cookieList.size()]);
     }
@@ -287,7 +318,8 @@ public class MockletHttpServletResponseImpl implements MockletHttpServletRespons
     }
 
     public void setCharacterEncoding(String characterEncoding) {
-        this.characterEncoding = characterEncoding;
+        this.characterEncoding = characterEncoding; // no effect to encoding of created writer
+        this.characterEncodingSpecified = true;
     }
 
     public ServletOutputStream getOutputStream() throws IOException {
@@ -300,6 +332,15 @@ public class MockletHttpServletResponseImpl implements MockletHttpServletRespons
         return outputStream;
     }
 
+    /**
+     * Get the writer that encodes characters into the captured body (shared with output stream). <br />
+     * The encoding is the character encoding set to this response, or UTF-8 if not set
+     * (the inherited encoding of request might lose characters), fixed when the writer is created.
+     * It does not change the character encoding of response, so decode the bytes by getResponseEncoding(). <br />
+     * (until 0.4.7, written characters were kept as string and not contained in response bytes)
+     * @return The writer of response body. (NotNull)
+     * @throws IOException When it fails to create the writer by the encoding.
+     */
     public PrintWriter getWriter() throws IOException {
         if (getOutputStreamCalled) {
             throw new IllegalStateException();
@@ -307,6 +348,11 @@ public class MockletHttpServletResponseImpl implements MockletHttpServletRespons
         if (!getWriterCalled) {
             getWriterCalled = true;
         }
+        if (writer == null) {
+            writerEncoding = characterEncodingSpecified && characterEncoding != null ? characterEncoding : "UTF-8";
+            final OutputStreamWriter encodingWriter = new OutputStreamWriter(responseCapture, writerEncoding);
+            writer = new PrintWriter(new ListenedFlushingWriter(encodingWriter));
+        }
         return writer;
     }
 
@@ -328,17 +374,18 @@ public class MockletHttpServletResponseImpl implements MockletHttpServletRespons
 
     public void setBufferSize(int size) {
         assertNotCommitted();
-        if (size <= buffer.length) {
+        if (size <= bufferSize) {
             return;
         }
-        buffer = new byte[size];
+        bufferSize = size; // capture grows by itself so only the size is kept
     }
 
     public int getBufferSize() {
-        return buffer.length;
+        return bufferSize;
     }
 
     public void flushBuffer() throws IOException {
+        flushWriter();
     }
 
     public void resetBuffer() {
@@ -362,10 +409,140 @@ public class MockletHttpServletResponseImpl implements MockletHttpServletRespons
     }
 
     public byte[] getResponseBytes() {
-        return byteArrayOutputStream.toByteArray();
+        flushWriter();
+        try {
+            return responseCapture.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the response capture: " + responseCapture.size(), e);
+        }
     }
 
     public String getResponseString() {
-        return writer.toString();
+        flushWriter();
+        final long size = responseCapture.size();
+        if (decodedString != null && decodedSize == size) { // not written after decoding
+            return decodedString;
+        }
+        final String encoding = deriveDecodingEncoding();
+        try {
+            decodedString = responseCapture.toString(encoding);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode the response capture: " + encoding, e);
+        }
+        decodedSize = size;
+        return decodedString;
+    }
+
+    public String getResponseEncoding() {
+        return deriveDecodingEncoding();
+    }
+
+    protected String deriveDecodingEncoding() {
+        if (writerEncoding != null) {
+            return writerEncoding;
+        }
+        return characterEncoding != null ? characterEncoding : "ISO-8859-1"; // servlet default
+    }
+
+    public InputStream getResponseInputStream() {
+        flushWriter();
+        try {
+            return responseCapture.openInputStream();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open the response capture: " + responseCapture.size(), e);
+        }
+    }
+
+    public ByteBuffer getResponseByteBuffer() {
+        flushWriter();
+        try {
+            return responseCapture.asReadOnlyByteBuffer();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to map the response capture: " + responseCapture.size(), e);
+        }
+    }
+
+    public long getResponseSize() {
+        flushWriter();
+        return responseCapture.size();
+    }
+
+    public void setResponseRetained(boolean retained) {
+        responseCapture.setRetained(retained);
+    }
+
+    public MockletResponseAssertion prepareResponseAssertion() {
+        final MockletResponseAssertion assertion = new MockletResponseAssertion(this);
+        responseCapture.addListener(assertion);
+        return assertion;
+    }
+
+    public long getResponseWrittenSize() {
+        flushWriter();
+        return responseCapture.getWrittenSize();
+    }
+
+    public void setResponseSpillThreshold(long spillThreshold) {
+        responseCapture.setSpillThreshold(spillThreshold);
+    }
+
+    public void releaseResponse() {
+        flushWriter();
+        responseCapture.clear();
+        decodedString = null;
+        decodedSize = -1L;
+    }
+
+    protected void flushWriter() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * The writer flushing the encoded bytes at every write while the capture is listened, e.g. by assertion,
+     * because the encoding writer buffers them (then the assertion could fail only at flush or close).
+     */
+    protected class ListenedFlushingWriter extends Writer {
+
+        protected final Writer encodingWriter;
+
+        public ListenedFlushingWriter(Writer encodingWriter) {
+            this.encodingWriter = encodingWriter;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            encodingWriter.write(c);
+            flushIfListened();
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            encodingWriter.write(cbuf, off, len);
+            flushIfListened();
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            encodingWriter.write(str, off, len);
+            flushIfListened();
+        }
+
+        protected void flushIfListened() throws IOException {
+            if (responseCapture.hasListener()) {
+                encodingWriter.flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            encodingWriter.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            encodingWriter.close();
+        }
     }
 }
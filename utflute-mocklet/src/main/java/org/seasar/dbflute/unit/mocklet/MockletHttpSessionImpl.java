@@ -34,7 +34,7 @@ public class MockletHttpSessionImpl implements MockletHttpSession, Serializable
 
     protected final ServletContext servletContext;
     protected String id; // might be regenerate so not final
-    protected final long creationTime = System.currentTimeMillis();
+    protected long creationTime = System.currentTimeMillis(); // not final for recycle
     protected long lastAccessedTime = creationTime;
     protected boolean new_ = true;
     protected boolean valid = true;
@@ -129,6 +129,20 @@ public class MockletHttpSessionImpl implements MockletHttpSession, Serializable
         id = prepareSessionId(); // regenerate
     }
 
+    /**
+     * Recycle the session in place as new-created session, with new ID. <br />
+     * (only in this implementation, not in the interface not to break other implementations)
+     */
+    public void recycle() {
+        attributes.clear();
+        id = prepareSessionId();
+        creationTime = System.currentTimeMillis();
+        lastAccessedTime = creationTime;
+        new_ = true;
+        valid = true;
+        maxInactiveInterval = -1;
+    }
+
     public boolean isNew() {
         return new_;
     }
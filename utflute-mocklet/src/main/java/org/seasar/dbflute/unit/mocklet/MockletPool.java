@@ -0,0 +1,170 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The pool of recyclable mocklets, to avoid allocation churn when many requests are executed. <br />
+ * Given-back mocklets are recycled in place and lent again, so their views (e.g. response body) become invalid.
+ * <pre>
+ * MockletHttpServletRequestImpl request = pool.borrowRequest(servletContext, "/utflute");
+ * MockletHttpServletResponseImpl response = pool.borrowResponse(request);
+ * ...
+ * pool.giveBack(response);
+ * pool.giveBack(request); <span style="color: #3F7E5E">// with its session</span>
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletPool {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final int DEFAULT_MAX_FREE_SIZE = 16;
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final List<MockletHttpServletRequestImpl> freeRequestList;
+    protected final List<MockletHttpServletResponseImpl> freeResponseList;
+    protected int maxFreeSize = DEFAULT_MAX_FREE_SIZE; // per type
+    protected long createdCount;
+    protected long reusedCount;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public MockletPool() {
+        freeRequestList = new ArrayList<MockletHttpServletRequestImpl>();
+        freeResponseList = new ArrayList<MockletHttpServletResponseImpl>();
+    }
+
+    // ===================================================================================
+    //                                                                              Borrow
+    //                                                                              ======
+    /**
+     * @param servletContext The servlet context of the request. (NotNull)
+     * @param servletPath The servlet path of the request. (NotNull)
+     * @return The recycled or new-created request for the context and path. (NotNull)
+     */
+    public synchronized MockletHttpServletRequestImpl borrowRequest(ServletContext servletContext, String servletPath) {
+        assertObjectNotNull("servletContext", servletContext);
+        assertObjectNotNull("servletPath", servletPath);
+        final String normalizedPath = servletPath.startsWith("/") ? servletPath : "/" + servletPath;
+        for (int i = freeRequestList.size() - 1; i >= 0; i--) { // latest first
+            final MockletHttpServletRequestImpl request = freeRequestList.get(i);
+            if (request.servletContext == servletContext && normalizedPath.equals(request.getServletPath())) {
+                freeRequestList.remove(i);
+                ++reusedCount;
+                return request;
+            }
+        }
+        ++createdCount;
+        return newRequest(servletContext, servletPath);
+    }
+
+    protected MockletHttpServletRequestImpl newRequest(ServletContext servletContext, String servletPath) {
+        return new MockletHttpServletRequestImpl(servletContext, servletPath);
+    }
+
+    /**
+     * @param request The request of the response. (NotNull)
+     * @return The recycled or new-created response for the request. (NotNull)
+     */
+    public synchronized MockletHttpServletResponseImpl borrowResponse(HttpServletRequest request) {
+        assertObjectNotNull("request", request);
+        if (!freeResponseList.isEmpty()) {
+            final MockletHttpServletResponseImpl response = freeResponseList.remove(freeResponseList.size() - 1);
+            response.recycle(request); // needs the request so recycled here
+            ++reusedCount;
+            return response;
+        }
+        ++createdCount;
+        return newResponse(request);
+    }
+
+    protected MockletHttpServletResponseImpl newResponse(HttpServletRequest request) {
+        return new MockletHttpServletResponseImpl(request);
+    }
+
+    // ===================================================================================
+    //                                                                           Give Back
+    //                                                                           =========
+    /**
+     * Give back the mocklet to the pool, which is recycled and cannot be used by the giver. <br />
+     * It is ignored if it is not poolable type or the pool is full.
+     * @param mocklet The mocklet borrowed from the pool or new-created. (NullAllowed: ignored)
+     */
+    public synchronized void giveBack(Mocklet mocklet) {
+        if (mocklet instanceof MockletHttpServletRequestImpl) {
+            final MockletHttpServletRequestImpl request = (MockletHttpServletRequestImpl) mocklet;
+            if (freeRequestList.size() < maxFreeSize && !freeRequestList.contains(request)) {
+                request.recycle();
+                freeRequestList.add(request);
+            }
+        } else if (mocklet instanceof MockletHttpServletResponseImpl) {
+            final MockletHttpServletResponseImpl response = (MockletHttpServletResponseImpl) mocklet;
+            if (freeResponseList.size() < maxFreeSize && !freeResponseList.contains(response)) {
+                response.releaseResponse(); // release large body early, recycled when borrowed
+                freeResponseList.add(response);
+            }
+        }
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public synchronized String toString() {
+        return "mockletPool:{free=" + freeRequestList.size() + "/" + freeResponseList.size() + ", created="
+                + createdCount + ", reused=" + reusedCount + "}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public synchronized void setMaxFreeSize(int maxFreeSize) {
+        if (maxFreeSize < 0) {
+            String msg = "The argument 'maxFreeSize' should not be minus: " + maxFreeSize;
+            throw new IllegalArgumentException(msg);
+        }
+        this.maxFreeSize = maxFreeSize;
+    }
+
+    public synchronized long getCreatedCount() {
+        return createdCount;
+    }
+
+    public synchronized long getReusedCount() {
+        return reusedCount;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+
+/**
+ * The engine of in-process request replay, building mock requests from entries (e.g. captured access logs)
+ * and dispatching them to the handler, collecting status, size and latency per request. <br />
+ * Each thread has its own mocklets (request, response, session) recycled per request, so no network.
+ * <pre>
+ * MockletReplayEngine engine = new MockletReplayEngine(servletContext).threadCount(4);
+ * MockletReplayResult result = engine.replay(entryList, new ReplayHandler() {
+ *     public void handle(MockletHttpServletRequest request, MockletHttpServletResponse response) throws Exception {
+ *         myServlet.service(request, response); <span style="color: #3F7E5E">// or calling action</span>
+ *     }
+ * });
+ * log(result); <span style="color: #3F7E5E">// requests, errors, status, size, latency percentiles</span>
+ * </pre>
+ * The response body is not retained as default (only counted) for bounded memory.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletReplayEngine {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final String DEFAULT_PARAMETER_ENCODING = "UTF-8";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final ServletContext servletContext;
+    protected int threadCount = 1; // one means in caller thread
+    protected boolean retainBody;
+    protected String parameterEncoding = DEFAULT_PARAMETER_ENCODING;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param servletContext The servlet context of replayed requests, e.g. registered for web mock. (NotNull)
+     */
+    public MockletReplayEngine(ServletContext servletContext) {
+        if (servletContext == null) {
+            throw new IllegalArgumentException("The argument 'servletContext' should be not null.");
+        }
+        this.servletContext = servletContext;
+    }
+
+    // ===================================================================================
+    //                                                                              Option
+    //                                                                              ======
+    /**
+     * @param threadCount The count of replaying threads, one means in caller thread. (NotMinus, NotZero)
+     * @return this. (NotNull)
+     */
+    public MockletReplayEngine threadCount(int threadCount) {
+        if (threadCount < 1) {
+            String msg = "The argument 'threadCount' should be positive: " + threadCount;
+            throw new IllegalArgumentException(msg);
+        }
+        this.threadCount = threadCount;
+        return this;
+    }
+
+    /**
+     * Retain response body so that the handler can read it, e.g. getResponseString().
+     * @return this. (NotNull)
+     */
+    public MockletReplayEngine retainBody() {
+        retainBody = true;
+        return this;
+    }
+
+    /**
+     * @param parameterEncoding The encoding to decode query string and form body. (NotNull)
+     * @return this. (NotNull)
+     */
+    public MockletReplayEngine parameterEncoding(String parameterEncoding) {
+        if (parameterEncoding == null) {
+            throw new IllegalArgumentException("The argument 'parameterEncoding' should be not null.");
+        }
+        this.parameterEncoding = parameterEncoding;
+        return this;
+    }
+
+    // ===================================================================================
+    //                                                                              Replay
+    //                                                                              ======
+    /**
+     * Replay the entries, distributed to threads in order of the list.
+     * @param entryList The list of replay entries. (NotNull)
+     * @param handler The handler dispatching a request to actions. (NotNull)
+     * @return The result of replay. (NotNull)
+     */
+    public MockletReplayResult replay(final List<MockletReplayEntry> entryList, final ReplayHandler handler) {
+        if (entryList == null) {
+            throw new IllegalArgumentException("The argument 'entryList' should be not null.");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("The argument 'handler' should be not null.");
+        }
+        final MockletReplayResult result = new MockletReplayResult();
+        final int actualThreadCount = Math.max(Math.min(threadCount, entryList.size()), 1);
+        result.setThreadCount(actualThreadCount);
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final long before = System.currentTimeMillis();
+        if (actualThreadCount == 1) { // in caller thread, e.g. keeping transaction of test case
+            replayWorker(entryList, nextIndex, handler, result);
+        } else {
+            final ExecutorService service = Executors.newFixedThreadPool(actualThreadCount, createThreadFactory());
+            try {
+                final List<Future<?>> futureList = new ArrayList<Future<?>>(actualThreadCount);
+                for (int i = 0; i < actualThreadCount; i++) {
+                    futureList.add(service.submit(new Runnable() {
+                        public void run() {
+                            replayWorker(entryList, nextIndex, handler, result);
+                        }
+                    }));
+                }
+                for (Future<?> future : futureList) {
+                    waitForWorker(future);
+                }
+            } finally {
+                service.shutdownNow();
+            }
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - before);
+        return result;
+    }
+
+    protected ThreadFactory createThreadFactory() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "replay-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    protected void waitForWorker(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for replay workers.", e);
+        } catch (ExecutionException e) { // basically no way because recorded per request
+            throw new IllegalStateException("Failed to replay the requests.", e.getCause());
+        }
+    }
+
+    protected void replayWorker(List<MockletReplayEntry> entryList, AtomicInteger nextIndex, ReplayHandler handler,
+            MockletReplayResult result) {
+        final MockletPool pool = new MockletPool(); // per thread so no contention
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < entryList.size()) {
+            result.addRecord(replayEntry(pool, entryList.get(index), handler));
+        }
+    }
+
+    protected MockletReplayResult.ReplayRecord replayEntry(MockletPool pool, MockletReplayEntry entry,
+            ReplayHandler handler) {
+        final MockletHttpServletRequestImpl request = pool.borrowRequest(servletContext, entry.getPath());
+        MockletHttpServletResponseImpl response = null;
+        Throwable cause = null;
+        long latencyNanos = 0L;
+        try {
+            applyEntry(request, entry);
+            response = pool.borrowResponse(request);
+            response.setResponseRetained(retainBody);
+            bindRequest(request, response);
+            final long before = System.nanoTime();
+            try {
+                handler.handle(request, response);
+            } finally {
+                latencyNanos = System.nanoTime() - before;
+                unbindRequest(request, response);
+            }
+        } catch (Throwable e) { // also assertion error, recorded as error of the request
+            cause = e;
+        }
+        int status = 0;
+        long size = 0L;
+        if (response != null) {
+            status = response.getStatus();
+            if (status == 0 && cause == null) {
+                status = 200; // servlet default when not set
+            }
+            size = response.getResponseWrittenSize();
+            pool.giveBack(response);
+        }
+        pool.giveBack(request);
+        return new MockletReplayResult.ReplayRecord(entry, status, size, latencyNanos, cause, Thread.currentThread()
+                .getName());
+    }
+
+    // ===================================================================================
+    //                                                                         Apply Entry
+    //                                                                         ===========
+    protected void applyEntry(MockletHttpServletRequestImpl request, MockletReplayEntry entry)
+            throws UnsupportedEncodingException {
+        request.setMethod(entry.getMethod());
+        final String queryString = entry.getQueryString();
+        if (queryString != null) {
+            request.setQueryString(queryString);
+            addParameters(request, queryString);
+        }
+        for (Map.Entry<String, List<String>> headerEntry : entry.getHeaderMap().entrySet()) {
+            final String name = headerEntry.getKey();
+            for (String value : headerEntry.getValue()) {
+                request.addHeader(name, value);
+                if ("cookie".equalsIgnoreCase(name)) {
+                    addCookies(request, value);
+                }
+            }
+        }
+        final String contentType = entry.findHeader("Content-Type");
+        if (contentType != null) {
+            request.setContentType(contentType);
+        }
+        final byte[] body = entry.getBody();
+        if (body != null) {
+            request.setRequestBody(MockletRequestBody.ofBytes(body));
+            if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                addParameters(request, new String(body, "ISO-8859-1")); // percent-encoded so ASCII
+            }
+        }
+    }
+
+    protected void addParameters(MockletHttpServletRequestImpl request, String encoded)
+            throws UnsupportedEncodingException {
+        for (String pair : encoded.split("&")) {
+            if (pair.length() == 0) {
+                continue;
+            }
+            final int equalIndex = pair.indexOf('=');
+            final String name = equalIndex >= 0 ? pair.substring(0, equalIndex) : pair;
+            final String value = equalIndex >= 0 ? pair.substring(equalIndex + 1) : "";
+            final String decodedName = URLDecoder.decode(name, parameterEncoding);
+            request.addParameter(decodedName, URLDecoder.decode(value, parameterEncoding));
+        }
+    }
+
+    protected void addCookies(MockletHttpServletRequestImpl request, String cookieHeader) {
+        for (String pair : cookieHeader.split(";")) {
+            final int equalIndex = pair.indexOf('=');
+            if (equalIndex > 0) {
+                final String name = pair.substring(0, equalIndex).trim();
+                request.addCookie(new Cookie(name, pair.substring(equalIndex + 1).trim()));
+            }
+        }
+    }
+
+    // ===================================================================================
+    //                                                                        Binding Hook
+    //                                                                        ============
+    /**
+     * Bind the request and response to the thread before dispatching, e.g. external context of DI container.
+     * @param request The replayed request. (NotNull)
+     * @param response The response of the request. (NotNull)
+     */
+    protected void bindRequest(MockletHttpServletRequest request, MockletHttpServletResponse response) {
+        // customize point
+    }
+
+    /**
+     * Unbind the request and response after dispatching, called even if failure.
+     * @param request The replayed request. (NotNull)
+     * @param response The response of the request. (NotNull)
+     */
+    protected void unbindRequest(MockletHttpServletRequest request, MockletHttpServletResponse response) {
+        // customize point
+    }
+
+    // ===================================================================================
+    //                                                                             Handler
+    //                                                                             =======
+    /**
+     * The handler dispatching a replayed request to actions, called in replaying thread.
+     */
+    public static interface ReplayHandler {
+
+        /**
+         * @param request The replayed request built from the entry. (NotNull)
+         * @param response The response of the request, recycled after the call. (NotNull)
+         * @throws Exception When it fails, recorded as error of the request.
+         */
+        void handle(MockletHttpServletRequest request, MockletHttpServletResponse response) throws Exception;
+    }
+}
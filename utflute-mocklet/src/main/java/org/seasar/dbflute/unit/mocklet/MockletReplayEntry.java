@@ -0,0 +1,217 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The entry of request replay, e.g. captured access log (method, path, query, headers, body). <br />
+ * The path is treated as servlet path of mock request. (not containing context path)
+ * <pre>
+ * new MockletReplayEntry("GET", "/member/list?page=2").addHeader("Accept-Language", "ja");
+ * MockletReplayEntry.parseLine(line); <span style="color: #3F7E5E">// from tab-separated log line</span>
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletReplayEntry {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final String method;
+    protected final String path;
+    protected final String queryString; // null allowed
+    protected final Map<String, List<String>> headerMap = new LinkedHashMap<String, List<String>>();
+    protected byte[] body; // null allowed
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    /**
+     * @param method The HTTP method of the request, e.g. GET, POST (NotNull)
+     * @param uri The URI as servlet path with query string, e.g. /member/list?page=2 (NotNull)
+     */
+    public MockletReplayEntry(String method, String uri) {
+        assertObjectNotNull("method", method);
+        assertObjectNotNull("uri", uri);
+        this.method = method.toUpperCase();
+        final int queryIndex = uri.indexOf('?');
+        if (queryIndex >= 0) {
+            this.path = uri.substring(0, queryIndex);
+            this.queryString = uri.substring(queryIndex + 1);
+        } else {
+            this.path = uri;
+            this.queryString = null;
+        }
+        if (this.path.length() == 0) {
+            String msg = "The path of the URI should not be empty: " + uri;
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                          Parse Line
+    //                                                                          ==========
+    /**
+     * Parse the tab-separated line of captured log as replay entry.
+     * <pre>
+     * METHOD \t URI[?QUERY] [\t HEADERS [\t BODY]]
+     *  HEADERS: "Name: value" separated by line separator (escaped)
+     *  escape : \t (tab), \n (line separator), \r, \\ (back-slash) in headers and body
+     *  e.g. POST	/member/update?id=3	Content-Type: application/x-www-form-urlencoded\nCookie: a=b	name=sea
+     * </pre>
+     * @param line The line of log, not empty. (NotNull)
+     * @param bodyEncoding The encoding to convert the body to bytes. (NotNull)
+     * @return The new-created entry. (NotNull)
+     */
+    public static MockletReplayEntry parseLine(String line, String bodyEncoding) {
+        assertObjectNotNull("line", line);
+        assertObjectNotNull("bodyEncoding", bodyEncoding);
+        final String[] fields = line.split("\t", 4);
+        if (fields.length < 2) {
+            String msg = "The replay line should have method and URI separated by tab: " + line;
+            throw new IllegalArgumentException(msg);
+        }
+        final MockletReplayEntry entry = new MockletReplayEntry(fields[0].trim(), fields[1].trim());
+        if (fields.length >= 3 && fields[2].length() > 0) {
+            for (String header : unescape(fields[2]).split("\n")) {
+                final int colonIndex = header.indexOf(':');
+                if (colonIndex > 0) {
+                    entry.addHeader(header.substring(0, colonIndex).trim(), header.substring(colonIndex + 1).trim());
+                }
+            }
+        }
+        if (fields.length >= 4 && fields[3].length() > 0) {
+            try {
+                entry.setBody(unescape(fields[3]).getBytes(bodyEncoding));
+            } catch (UnsupportedEncodingException e) {
+                String msg = "Unknown encoding for the body: " + bodyEncoding;
+                throw new IllegalArgumentException(msg, e);
+            }
+        }
+        return entry;
+    }
+
+    protected static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char ch = value.charAt(i);
+            if (ch != '\\' || i == length - 1) {
+                sb.append(ch);
+                continue;
+            }
+            final char next = value.charAt(++i);
+            switch (next) {
+            case 't':
+                sb.append('\t');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            default: // back-slash or unknown
+                sb.append(next);
+            }
+        }
+        return sb.toString();
+    }
+
+    // ===================================================================================
+    //                                                                              Header
+    //                                                                              ======
+    public MockletReplayEntry addHeader(String name, String value) {
+        assertObjectNotNull("name", name);
+        assertObjectNotNull("value", value);
+        List<String> valueList = headerMap.get(name);
+        if (valueList == null) {
+            valueList = new ArrayList<String>(1);
+            headerMap.put(name, valueList);
+        }
+        valueList.add(value);
+        return this;
+    }
+
+    /**
+     * @param name The name of header, case insensitive. (NotNull)
+     * @return The first value of the header. (NullAllowed: when not found)
+     */
+    public String findHeader(String name) {
+        for (Map.Entry<String, List<String>> entry : headerMap.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected static void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return method + " " + path + (queryString != null ? "?" + queryString : "");
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public Map<String, List<String>> getHeaderMap() {
+        return Collections.unmodifiableMap(headerMap);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public MockletReplayEntry setBody(byte[] body) {
+        this.body = body;
+        return this;
+    }
+}
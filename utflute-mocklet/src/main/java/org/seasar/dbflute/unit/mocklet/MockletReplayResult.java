@@ -0,0 +1,201 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The result of request replay, records per request (status, size, latency) and their summary.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletReplayResult {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final List<ReplayRecord> recordList = new ArrayList<ReplayRecord>();
+    protected int threadCount;
+    protected long elapsedMillis;
+
+    // ===================================================================================
+    //                                                                              Record
+    //                                                                              ======
+    public synchronized void addRecord(ReplayRecord record) {
+        recordList.add(record);
+    }
+
+    /**
+     * The record of one replayed request.
+     */
+    public static class ReplayRecord {
+
+        protected final MockletReplayEntry entry;
+        protected final int status;
+        protected final long size;
+        protected final long latencyNanos;
+        protected final Throwable cause; // null if success
+        protected final String threadName;
+
+        public ReplayRecord(MockletReplayEntry entry, int status, long size, long latencyNanos, Throwable cause,
+                String threadName) {
+            this.entry = entry;
+            this.status = status;
+            this.size = size;
+            this.latencyNanos = latencyNanos;
+            this.cause = cause;
+            this.threadName = threadName;
+        }
+
+        public boolean isError() {
+            return cause != null;
+        }
+
+        @Override
+        public String toString() {
+            return "{" + entry + ", status=" + status + ", size=" + size + ", latency=" + (latencyNanos / 1000L)
+                    + "us" + (cause != null ? ", cause=" + cause : "") + ", " + threadName + "}";
+        }
+
+        public MockletReplayEntry getEntry() {
+            return entry;
+        }
+
+        /**
+         * @return The status of response. (200 if not set, but 0 if not set by failed request)
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        public Throwable getCause() {
+            return cause;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Summary
+    //                                                                             =======
+    public synchronized int getRequestCount() {
+        return recordList.size();
+    }
+
+    public synchronized int getErrorCount() {
+        int count = 0;
+        for (ReplayRecord record : recordList) {
+            if (record.isError()) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The read-only map of status and its count, ordered by status. (NotNull)
+     */
+    public synchronized Map<Integer, Integer> getStatusCountMap() {
+        final Map<Integer, Integer> countMap = new TreeMap<Integer, Integer>();
+        for (ReplayRecord record : recordList) {
+            final Integer count = countMap.get(record.getStatus());
+            countMap.put(record.getStatus(), count != null ? count + 1 : 1);
+        }
+        return Collections.unmodifiableMap(countMap);
+    }
+
+    public synchronized long getTotalSize() {
+        long total = 0;
+        for (ReplayRecord record : recordList) {
+            total += record.getSize();
+        }
+        return total;
+    }
+
+    /**
+     * @param percent The percentile of latency, e.g. 50.0, 99.0, 100.0 (max) (0.0 to 100.0)
+     * @return The latency as nanoseconds at the percentile. (zero if no record)
+     */
+    public synchronized long getLatencyNanosAt(double percent) {
+        if (percent < 0.0 || percent > 100.0) {
+            String msg = "The argument 'percent' should be between 0.0 and 100.0: " + percent;
+            throw new IllegalArgumentException(msg);
+        }
+        if (recordList.isEmpty()) {
+            return 0L;
+        }
+        final long[] latencies = new long[recordList.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = recordList.get(i).getLatencyNanos();
+        }
+        Arrays.sort(latencies);
+        final int index = (int) Math.ceil(percent / 100.0 * latencies.length) - 1; // nearest-rank
+        return latencies[Math.max(index, 0)];
+    }
+
+    /**
+     * @return The read-only list of records in completion order. (NotNull)
+     */
+    public synchronized List<ReplayRecord> getRecordList() {
+        return Collections.unmodifiableList(new ArrayList<ReplayRecord>(recordList));
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "replayResult:{requests=" + getRequestCount() + ", errors=" + getErrorCount() + ", status="
+                + getStatusCountMap() + ", size=" + getTotalSize() + ", latency(us)={p50="
+                + getLatencyNanosAt(50.0) / 1000L + ", p90=" + getLatencyNanosAt(90.0) / 1000L + ", p99="
+                + getLatencyNanosAt(99.0) / 1000L + ", max=" + getLatencyNanosAt(100.0) / 1000L + "}, threads="
+                + threadCount + ", elapsed=" + elapsedMillis + "ms}";
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public synchronized int getThreadCount() {
+        return threadCount;
+    }
+
+    public synchronized void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public synchronized long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public synchronized void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+}
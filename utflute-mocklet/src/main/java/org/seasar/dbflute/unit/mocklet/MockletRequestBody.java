@@ -0,0 +1,233 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The body of mock request, which provides a new stream without copying the content into heap. <br />
+ * It is set to the default request implementation.
+ * <pre>
+ * MockletHttpServletRequestImpl request = ...
+ * request.setRequestBody(MockletRequestBody.ofString("{\"sea\": \"land\"}", "UTF-8"));
+ * request.setRequestBody(MockletRequestBody.ofFile(new File("upload.zip"))); <span style="color: #3F7E5E">// streaming from file</span>
+ * request.setRequestBody(MockletRequestBody.ofMappedFile(new File("huge.bin"))); <span style="color: #3F7E5E">// memory-mapped</span>
+ * request.setRequestBody(MockletRequestBody.ofProvider(length, new BodyStreamProvider() { <span style="color: #3F7E5E">// lazily generated</span>
+ *     public InputStream provide() { ... }
+ * }));
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public abstract class MockletRequestBody {
+
+    /** The length when it is unknown. */
+    public static final long UNKNOWN_LENGTH = -1L;
+
+    // ===================================================================================
+    //                                                                             Factory
+    //                                                                             =======
+    /**
+     * @param bytes The bytes of the body, not copied. (NotNull)
+     * @return The new-created body. (NotNull)
+     */
+    public static MockletRequestBody ofBytes(final byte[] bytes) {
+        assertObjectNotNull("bytes", bytes);
+        return new MockletRequestBody() {
+            public long getLength() {
+                return bytes.length;
+            }
+
+            public InputStream openStream() {
+                return new ByteArrayInputStream(bytes);
+            }
+        };
+    }
+
+    /**
+     * @param text The text of the body. (NotNull)
+     * @param encoding The encoding to convert the text to bytes, e.g. UTF-8. (NotNull)
+     * @return The new-created body. (NotNull)
+     * @throws IllegalArgumentException When the encoding is unsupported.
+     */
+    public static MockletRequestBody ofString(String text, String encoding) {
+        assertObjectNotNull("text", text);
+        assertObjectNotNull("encoding", encoding);
+        try {
+            return ofBytes(text.getBytes(encoding));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unknown encoding: " + encoding, e);
+        }
+    }
+
+    /**
+     * @param file The file of the body, read as stream when the request reads. (NotNull)
+     * @return The new-created body. (NotNull)
+     */
+    public static MockletRequestBody ofFile(final File file) {
+        assertObjectNotNull("file", file);
+        return new MockletRequestBody() {
+            public long getLength() {
+                return file.length();
+            }
+
+            public InputStream openStream() throws IOException {
+                return new FileInputStream(file);
+            }
+        };
+    }
+
+    /**
+     * The file is mapped to memory (out of heap) when the request reads. <br />
+     * The file that is over the limit of mapping (2GB) is read as normal stream.
+     * @param file The file of the body. (NotNull)
+     * @return The new-created body. (NotNull)
+     */
+    public static MockletRequestBody ofMappedFile(final File file) {
+        assertObjectNotNull("file", file);
+        return new MockletRequestBody() {
+            public long getLength() {
+                return file.length();
+            }
+
+            public InputStream openStream() throws IOException {
+                if (file.length() > Integer.MAX_VALUE) {
+                    return new FileInputStream(file);
+                }
+                final RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    final FileChannel channel = raf.getChannel();
+                    final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    return new ByteBufferInputStream(buffer); // mapping is valid after closing channel
+                } finally {
+                    raf.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param length The length of the body. (UNKNOWN_LENGTH allowed)
+     * @param provider The provider of new stream, called when the request reads. (NotNull)
+     * @return The new-created body. (NotNull)
+     */
+    public static MockletRequestBody ofProvider(final long length, final BodyStreamProvider provider) {
+        assertObjectNotNull("provider", provider);
+        return new MockletRequestBody() {
+            public long getLength() {
+                return length;
+            }
+
+            public InputStream openStream() throws IOException {
+                return provider.provide();
+            }
+        };
+    }
+
+    /**
+     * The provider of body stream, e.g. lazily generated content.
+     */
+    public static interface BodyStreamProvider {
+
+        /**
+         * Provide the new stream of the body.
+         * @return The new-opened stream, which is closed by the request. (NotNull)
+         * @throws IOException When it fails to open.
+         */
+        InputStream provide() throws IOException;
+    }
+
+    // ===================================================================================
+    //                                                                            Abstract
+    //                                                                            ========
+    /**
+     * @return The length of the body as bytes. (UNKNOWN_LENGTH if unknown)
+     */
+    public abstract long getLength();
+
+    /**
+     * @return The new-opened stream of the body. (NotNull)
+     * @throws IOException When it fails to open.
+     */
+    public abstract InputStream openStream() throws IOException;
+
+    /**
+     * Get the length as content length of request.
+     * @return The length as integer. (-1 if unknown or too large)
+     */
+    public int getContentLength() {
+        final long length = getLength();
+        return length >= 0 && length <= Integer.MAX_VALUE ? (int) length : -1;
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected static void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    protected static class ByteBufferInputStream extends InputStream {
+
+        protected final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int readSize = Math.min(len, buffer.remaining());
+            buffer.get(b, off, readSize);
+            return readSize;
+        }
+
+        @Override
+        public long skip(long n) {
+            final int skipSize = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipSize);
+            return skipSize;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,643 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.seasar.dbflute.unit.mocklet.MockletResponseCapture.CaptureListener;
+
+/**
+ * The streaming assertion of mock response body, evaluated as bytes are written. <br />
+ * It keeps only small state (current line, matching position), so large body can be asserted in bounded memory
+ * (with not-retained response), and it fails fast (thrown from the write) at the first violation.
+ * <pre>
+ * MockletResponseAssertion assertion = response.prepareResponseAssertion();
+ * assertion.shouldContain("sea").shouldMatchEachLine(Pattern.compile("^\\d+,.*$")).shouldHaveLineCount(3);
+ * assertion.shouldHaveJsonValue("$.members[*].status", "FML"); <span style="color: #3F7E5E">// for JSON body</span>
+ * ... <span style="color: #3F7E5E">// writing response</span>
+ * assertion.verify(); <span style="color: #3F7E5E">// end-of-body checks, e.g. not found keyword</span>
+ * </pre>
+ * The JSON path supports only member (.name), index ([0]) and wildcard index ([*]) from root ($).
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletResponseAssertion implements CaptureListener {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final MockletCapturingHttpServletResponse response; // to derive encoding at first write
+    protected final List<StreamingCheck> checkList = new ArrayList<StreamingCheck>();
+    protected JsonStreamingTokenizer jsonTokenizer; // lazy-loaded, shared by JSON checks
+    protected CharsetDecoder decoder; // lazy-loaded at first write
+    protected ByteBuffer pendingBytes; // incomplete multi-byte sequence, null if none
+    protected final CharBuffer charBuffer = CharBuffer.allocate(4096);
+    protected MockletResponseAssertionError firstError; // kept even if the error is swallowed by application
+    protected boolean verified;
+
+    public MockletResponseAssertion(MockletCapturingHttpServletResponse response) {
+        if (response == null) {
+            throw new IllegalArgumentException("The argument 'response' should be not null.");
+        }
+        this.response = response;
+    }
+
+    // ===================================================================================
+    //                                                                         Fluent Rule
+    //                                                                         ===========
+    public MockletResponseAssertion shouldContain(String keyword) {
+        assertStringNotEmpty("keyword", keyword);
+        checkList.add(new ContainsCheck(keyword, true));
+        return this;
+    }
+
+    public MockletResponseAssertion shouldNotContain(String keyword) {
+        assertStringNotEmpty("keyword", keyword);
+        checkList.add(new ContainsCheck(keyword, false));
+        return this;
+    }
+
+    /**
+     * @param expected The expected count of lines, the last line without line separator is also counted.
+     * @return this. (NotNull)
+     */
+    public MockletResponseAssertion shouldHaveLineCount(long expected) {
+        checkList.add(new LineCountCheck(expected, expected));
+        return this;
+    }
+
+    public MockletResponseAssertion shouldHaveLineCountAtMost(long max) {
+        checkList.add(new LineCountCheck(-1L, max));
+        return this;
+    }
+
+    /**
+     * @param pattern The pattern that every line should match. (NotNull: line separator is not contained)
+     * @return this. (NotNull)
+     */
+    public MockletResponseAssertion shouldMatchEachLine(Pattern pattern) {
+        assertObjectNotNull("pattern", pattern);
+        checkList.add(new LineRegexCheck(pattern, true));
+        return this;
+    }
+
+    public MockletResponseAssertion shouldMatchAnyLine(Pattern pattern) {
+        assertObjectNotNull("pattern", pattern);
+        checkList.add(new LineRegexCheck(pattern, false));
+        return this;
+    }
+
+    /**
+     * @param jsonPath The simple path of the value, e.g. $.member.name, $.list[0].id, $.list[*].status (NotNull)
+     * @param expected The expected scalar value, string without quotes or literal e.g. 3, true, null. (NotNull)
+     * @return this. (NotNull)
+     */
+    public MockletResponseAssertion shouldHaveJsonValue(String jsonPath, String expected) {
+        assertStringNotEmpty("jsonPath", jsonPath);
+        assertObjectNotNull("expected", expected);
+        if (!jsonPath.startsWith("$")) {
+            String msg = "The JSON path should start with '$': " + jsonPath;
+            throw new IllegalArgumentException(msg);
+        }
+        if (jsonTokenizer == null) {
+            jsonTokenizer = new JsonStreamingTokenizer();
+            checkList.add(jsonTokenizer);
+        }
+        jsonTokenizer.addCheck(new JsonValueCheck(jsonPath, expected));
+        return this;
+    }
+
+    // ===================================================================================
+    //                                                                           Streaming
+    //                                                                           =========
+    public void written(byte[] bytes, int offset, int length) {
+        if (firstError != null) { // already failed
+            return;
+        }
+        if (decoder == null) {
+            decoder = Charset.forName(response.getResponseEncoding()).newDecoder();
+            decoder.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        final ByteBuffer input;
+        if (pendingBytes != null) {
+            input = ByteBuffer.allocate(pendingBytes.remaining() + length);
+            input.put(pendingBytes).put(bytes, offset, length).flip();
+            pendingBytes = null;
+        } else {
+            input = ByteBuffer.wrap(bytes, offset, length);
+        }
+        decodeAndConsume(input, false);
+        if (input.hasRemaining()) { // copied because the array may be reused
+            pendingBytes = ByteBuffer.allocate(input.remaining());
+            pendingBytes.put(input).flip();
+        }
+    }
+
+    protected void decodeAndConsume(ByteBuffer input, boolean endOfInput) {
+        while (true) {
+            charBuffer.clear();
+            final boolean overflow = decoder.decode(input, charBuffer, endOfInput).isOverflow();
+            charBuffer.flip();
+            consumeChars(charBuffer);
+            if (!overflow) {
+                break;
+            }
+        }
+    }
+
+    protected void consumeChars(CharBuffer chars) {
+        final int checkCount = checkList.size();
+        while (chars.hasRemaining()) {
+            final char ch = chars.get();
+            for (int i = 0; i < checkCount; i++) {
+                final String violation = checkList.get(i).consume(ch);
+                if (violation != null) {
+                    firstError = new MockletResponseAssertionError(violation);
+                    throw firstError; // fail fast
+                }
+            }
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Verify
+    //                                                                              ======
+    /**
+     * Verify the end-of-body checks, and the fail-fast violation even if it was swallowed by application.
+     * @throws MockletResponseAssertionError When the body breaks the rules.
+     */
+    public void verify() {
+        if (firstError != null) {
+            throw firstError;
+        }
+        flushResponse();
+        if (!verified) {
+            verified = true;
+            if (decoder != null) {
+                final ByteBuffer rest = pendingBytes != null ? pendingBytes : ByteBuffer.allocate(0);
+                pendingBytes = null;
+                decodeAndConsume(rest, true);
+                charBuffer.clear();
+                decoder.flush(charBuffer);
+                charBuffer.flip();
+                consumeChars(charBuffer);
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (StreamingCheck check : checkList) {
+            final String violation = check.finish();
+            if (violation != null) {
+                sb.append(sb.length() > 0 ? "\n" : "").append(violation);
+            }
+        }
+        if (sb.length() > 0) {
+            throw new MockletResponseAssertionError(sb.toString());
+        }
+    }
+
+    protected void flushResponse() { // for bytes still in writer
+        try {
+            response.flushBuffer();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to flush the response: " + response, e);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                               Check
+    //                                                                               =====
+    protected static interface StreamingCheck {
+
+        /**
+         * @param ch The decoded character of body.
+         * @return The message of fail-fast violation. (NullAllowed: if no violation yet)
+         */
+        String consume(char ch);
+
+        /**
+         * @return The message of end-of-body violation. (NullAllowed: if no violation)
+         */
+        String finish();
+    }
+
+    protected static class ContainsCheck implements StreamingCheck {
+
+        protected final String keyword;
+        protected final boolean expectedFound;
+        protected final int[] failureTable; // of KMP, matching across write boundaries
+        protected int matchedLength;
+        protected boolean found;
+
+        public ContainsCheck(String keyword, boolean expectedFound) {
+            this.keyword = keyword;
+            this.expectedFound = expectedFound;
+            this.failureTable = buildFailureTable(keyword);
+        }
+
+        protected static int[] buildFailureTable(String keyword) {
+            final int[] table = new int[keyword.length()];
+            int length = 0;
+            for (int i = 1; i < keyword.length(); i++) {
+                while (length > 0 && keyword.charAt(i) != keyword.charAt(length)) {
+                    length = table[length - 1];
+                }
+                if (keyword.charAt(i) == keyword.charAt(length)) {
+                    ++length;
+                }
+                table[i] = length;
+            }
+            return table;
+        }
+
+        public String consume(char ch) {
+            if (found) {
+                return null;
+            }
+            while (matchedLength > 0 && ch != keyword.charAt(matchedLength)) {
+                matchedLength = failureTable[matchedLength - 1];
+            }
+            if (ch == keyword.charAt(matchedLength)) {
+                ++matchedLength;
+            }
+            if (matchedLength == keyword.length()) {
+                found = true;
+                if (!expectedFound) {
+                    return "The response body should not contain the keyword: " + keyword;
+                }
+            }
+            return null;
+        }
+
+        public String finish() {
+            if (expectedFound && !found) {
+                return "Not found the keyword in the response body: " + keyword;
+            }
+            return null;
+        }
+    }
+
+    protected static class LineCountCheck implements StreamingCheck {
+
+        protected final long expected; // minus means no check at finish
+        protected final long max;
+        protected long separatorCount;
+        protected boolean lastLineContinued; // characters after last separator
+
+        public LineCountCheck(long expected, long max) {
+            this.expected = expected;
+            this.max = max;
+        }
+
+        public String consume(char ch) {
+            if (ch == '\n') {
+                ++separatorCount;
+                lastLineContinued = false;
+            } else {
+                lastLineContinued = true;
+            }
+            final long current = currentCount();
+            if (current > max) {
+                return "The response body has too many lines: max=" + max + ", current=" + current;
+            }
+            return null;
+        }
+
+        protected long currentCount() {
+            return separatorCount + (lastLineContinued ? 1 : 0);
+        }
+
+        public String finish() {
+            final long actual = currentCount();
+            if (expected >= 0 && actual != expected) {
+                return "The line count of the response body is unexpected: expected=" + expected + ", actual=" + actual;
+            }
+            return null;
+        }
+    }
+
+    protected static class LineRegexCheck implements StreamingCheck {
+
+        protected final Pattern pattern;
+        protected final boolean each; // false: any
+        protected final StringBuilder lineBuilder = new StringBuilder(); // only current line
+        protected long lineNumber = 1;
+        protected boolean matched; // for any
+
+        public LineRegexCheck(Pattern pattern, boolean each) {
+            this.pattern = pattern;
+            this.each = each;
+        }
+
+        public String consume(char ch) {
+            if (!each && matched) {
+                return null;
+            }
+            if (ch != '\n') {
+                lineBuilder.append(ch);
+                return null;
+            }
+            final String violation = judgeLine();
+            ++lineNumber;
+            return violation;
+        }
+
+        protected String judgeLine() {
+            final int length = lineBuilder.length();
+            if (length > 0 && lineBuilder.charAt(length - 1) == '\r') {
+                lineBuilder.setLength(length - 1);
+            }
+            final String line = lineBuilder.toString();
+            lineBuilder.setLength(0);
+            final boolean lineMatched = pattern.matcher(line).matches();
+            if (lineMatched) {
+                matched = true;
+            }
+            if (each && !lineMatched) {
+                return "The line " + lineNumber + " of the response body does not match " + pattern + ": " + line;
+            }
+            return null;
+        }
+
+        public String finish() {
+            if (lineBuilder.length() > 0) { // last line without separator
+                final String violation = judgeLine();
+                if (violation != null) {
+                    return violation;
+                }
+            }
+            if (!each && !matched) {
+                return "Not found the line matching " + pattern + " in the response body.";
+            }
+            return null;
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                                  JSON
+    //                                                  ----
+    protected static class JsonValueCheck {
+
+        protected final String jsonPath;
+        protected final Pattern pathPattern;
+        protected final String expected;
+        protected boolean matched;
+
+        public JsonValueCheck(String jsonPath, String expected) {
+            this.jsonPath = jsonPath;
+            this.pathPattern = Pattern.compile(Pattern.quote(jsonPath).replace("[*]", "\\E\\[\\d+\\]\\Q"));
+            this.expected = expected;
+        }
+
+        public String judge(String path, String value) {
+            if (!pathPattern.matcher(path).matches()) {
+                return null;
+            }
+            matched = true;
+            if (!expected.equals(value)) {
+                return "The JSON value is unexpected at " + path + ": expected=" + expected + ", actual=" + value;
+            }
+            return null;
+        }
+
+        public String finish() {
+            return matched ? null : "Not found the JSON path in the response body: " + jsonPath;
+        }
+    }
+
+    /**
+     * The tokenizer of JSON that keeps only the stack of current path.
+     */
+    protected static class JsonStreamingTokenizer implements StreamingCheck {
+
+        protected final List<JsonValueCheck> jsonCheckList = new ArrayList<JsonValueCheck>();
+        protected final List<JsonFrame> frameList = new ArrayList<JsonFrame>(); // stack of containers
+        protected final StringBuilder tokenBuilder = new StringBuilder(); // string or literal
+        protected boolean inString;
+        protected boolean inLiteral;
+        protected boolean escaped;
+        protected int unicodeRemaining; // hex digits of \\uXXXX
+        protected int unicodeValue;
+
+        public void addCheck(JsonValueCheck check) {
+            jsonCheckList.add(check);
+        }
+
+        public String consume(char ch) {
+            if (inString) {
+                return consumeString(ch);
+            }
+            if (inLiteral) {
+                if (isLiteralChar(ch)) {
+                    tokenBuilder.append(ch);
+                    return null;
+                }
+                inLiteral = false;
+                final String violation = emitValue(tokenBuilder.toString());
+                if (violation != null) {
+                    return violation;
+                }
+            }
+            switch (ch) {
+            case '{':
+                frameList.add(new JsonFrame(false));
+                break;
+            case '[':
+                frameList.add(new JsonFrame(true));
+                break;
+            case '}':
+            case ']':
+                if (!frameList.isEmpty()) {
+                    frameList.remove(frameList.size() - 1);
+                }
+                break;
+            case ',':
+                final JsonFrame current = currentFrame();
+                if (current != null) {
+                    if (current.array) {
+                        ++current.index;
+                    } else {
+                        current.expectingKey = true;
+                    }
+                }
+                break;
+            case ':':
+                final JsonFrame object = currentFrame();
+                if (object != null) {
+                    object.expectingKey = false;
+                }
+                break;
+            case '"':
+                inString = true;
+                tokenBuilder.setLength(0);
+                break;
+            default:
+                if (isLiteralChar(ch)) {
+                    inLiteral = true;
+                    tokenBuilder.setLength(0);
+                    tokenBuilder.append(ch);
+                }
+            }
+            return null;
+        }
+
+        protected String consumeString(char ch) {
+            if (unicodeRemaining > 0) {
+                unicodeValue = unicodeValue * 16 + Character.digit(ch, 16);
+                if (--unicodeRemaining == 0) {
+                    tokenBuilder.append((char) unicodeValue);
+                }
+                return null;
+            }
+            if (escaped) {
+                escaped = false;
+                switch (ch) {
+                case 'n':
+                    tokenBuilder.append('\n');
+                    break;
+                case 't':
+                    tokenBuilder.append('\t');
+                    break;
+                case 'r':
+                    tokenBuilder.append('\r');
+                    break;
+                case 'b':
+                    tokenBuilder.append('\b');
+                    break;
+                case 'f':
+                    tokenBuilder.append('\f');
+                    break;
+                case 'u':
+                    unicodeRemaining = 4;
+                    unicodeValue = 0;
+                    break;
+                default: // quote, back-slash, slash
+                    tokenBuilder.append(ch);
+                }
+                return null;
+            }
+            if (ch == '\\') {
+                escaped = true;
+                return null;
+            }
+            if (ch != '"') {
+                tokenBuilder.append(ch);
+                return null;
+            }
+            inString = false;
+            final JsonFrame current = currentFrame();
+            if (current != null && !current.array && current.expectingKey) {
+                current.key = tokenBuilder.toString();
+                return null;
+            }
+            return emitValue(tokenBuilder.toString());
+        }
+
+        protected boolean isLiteralChar(char ch) {
+            return Character.isLetterOrDigit(ch) || ch == '-' || ch == '+' || ch == '.';
+        }
+
+        protected JsonFrame currentFrame() {
+            return frameList.isEmpty() ? null : frameList.get(frameList.size() - 1);
+        }
+
+        protected String emitValue(String value) {
+            final String path = buildCurrentPath();
+            for (JsonValueCheck check : jsonCheckList) {
+                final String violation = check.judge(path, value);
+                if (violation != null) {
+                    return violation;
+                }
+            }
+            return null;
+        }
+
+        protected String buildCurrentPath() {
+            final StringBuilder sb = new StringBuilder("$");
+            for (JsonFrame frame : frameList) {
+                if (frame.array) {
+                    sb.append("[").append(frame.index).append("]");
+                } else {
+                    sb.append(".").append(frame.key);
+                }
+            }
+            return sb.toString();
+        }
+
+        public String finish() {
+            if (inLiteral) { // root literal
+                inLiteral = false;
+                final String violation = emitValue(tokenBuilder.toString());
+                if (violation != null) {
+                    return violation;
+                }
+            }
+            final StringBuilder sb = new StringBuilder();
+            for (JsonValueCheck check : jsonCheckList) {
+                final String violation = check.finish();
+                if (violation != null) {
+                    sb.append(sb.length() > 0 ? "\n" : "").append(violation);
+                }
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+    }
+
+    protected static class JsonFrame {
+
+        protected final boolean array;
+        protected int index; // for array
+        protected String key; // for object
+        protected boolean expectingKey = true; // for object
+
+        public JsonFrame(boolean array) {
+            this.array = array;
+        }
+    }
+
+    // ===================================================================================
+    //                                                                       Assist Helper
+    //                                                                       =============
+    protected void assertObjectNotNull(String variableName, Object value) {
+        if (value == null) {
+            String msg = "The argument '" + variableName + "' should be not null.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    protected void assertStringNotEmpty(String variableName, String value) {
+        assertObjectNotNull(variableName, value);
+        if (value.length() == 0) {
+            String msg = "The argument '" + variableName + "' should be not empty.";
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // ===================================================================================
+    //                                                                      Basic Override
+    //                                                                      ==============
+    @Override
+    public String toString() {
+        return "responseAssertion:{checks=" + checkList.size() + ", failed=" + (firstError != null) + "}";
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The capture of response body, shared by output stream and writer of mock response. <br />
+ * The bytes are kept in growable chunks (no copy when growing), and views are provided without copy.
+ * <pre>
+ * chunk: 1KB first, doubled up to 1MB
+ * spill: moved to temporary file when over the threshold (if specified), e.g. large CSV download
+ * view : openInputStream() (no copy), asReadOnlyByteBuffer() (chunks are compacted once, or mapped file)
+ * watch: listeners are notified of every write, e.g. streaming assertion (can be without retaining)
+ * </pre>
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletResponseCapture extends OutputStream {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final int FIRST_CHUNK_SIZE = 1024;
+    public static final int MAX_CHUNK_SIZE = 1024 * 1024;
+    public static final long NO_SPILL = -1L;
+    public static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8; // some VMs reserve header words
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final List<byte[]> chunkList = new ArrayList<byte[]>();
+    protected int lastChunkUsed; // used size of the last chunk
+    protected long size; // retained size
+    protected long writtenSize; // including not-retained bytes
+    protected boolean retained = true;
+    protected List<CaptureListener> listenerList; // lazy-loaded
+    protected long spillThreshold = NO_SPILL;
+    protected File spillFile; // null if not spilled
+    protected OutputStream spillOutputStream; // null if not spilled
+
+    // ===================================================================================
+    //                                                                               Write
+    //                                                                               =====
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        writtenSize += len;
+        if (listenerList != null) {
+            for (CaptureListener listener : listenerList) {
+                listener.written(b, off, len);
+            }
+        }
+        if (!retained) {
+            return;
+        }
+        if (spillOutputStream == null && spillThreshold >= 0 && size + len > spillThreshold) {
+            spill();
+        }
+        if (spillOutputStream != null) {
+            spillOutputStream.write(b, off, len);
+            size += len;
+            return;
+        }
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            byte[] lastChunk = chunkList.isEmpty() ? null : chunkList.get(chunkList.size() - 1);
+            if (lastChunk == null || lastChunkUsed == lastChunk.length) {
+                lastChunk = new byte[nextChunkSize()];
+                chunkList.add(lastChunk);
+                lastChunkUsed = 0;
+            }
+            final int copySize = Math.min(remaining, lastChunk.length - lastChunkUsed);
+            System.arraycopy(b, offset, lastChunk, lastChunkUsed, copySize);
+            lastChunkUsed += copySize;
+            offset += copySize;
+            remaining -= copySize;
+        }
+        size += len;
+    }
+
+    protected int nextChunkSize() {
+        if (size < FIRST_CHUNK_SIZE) {
+            return FIRST_CHUNK_SIZE;
+        }
+        return size < MAX_CHUNK_SIZE ? (int) size : MAX_CHUNK_SIZE; // doubles the total, cast within int
+    }
+
+    protected void spill() throws IOException {
+        spillFile = File.createTempFile("mocklet-response", ".tmp");
+        spillFile.deleteOnExit(); // just in case
+        spillOutputStream = new BufferedOutputStream(new FileOutputStream(spillFile), 8192);
+        final int chunkCount = chunkList.size();
+        for (int i = 0; i < chunkCount; i++) {
+            spillOutputStream.write(chunkList.get(i), 0, usedSizeOf(i));
+        }
+        chunkList.clear();
+        lastChunkUsed = 0;
+    }
+
+    protected int usedSizeOf(int chunkIndex) {
+        return chunkIndex == chunkList.size() - 1 ? lastChunkUsed : chunkList.get(chunkIndex).length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (spillOutputStream != null) {
+            spillOutputStream.flush();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                                View
+    //                                                                                ====
+    /**
+     * Open the input stream of the captured bytes without copy.
+     * @return The new-opened stream from the beginning. (NotNull)
+     * @throws IOException When it fails to open the spilled file.
+     */
+    public InputStream openInputStream() throws IOException {
+        if (spillFile != null) {
+            flush();
+            return new FileInputStream(spillFile);
+        }
+        final int chunkCount = chunkList.size();
+        if (chunkCount == 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        if (chunkCount == 1) {
+            return new ByteArrayInputStream(chunkList.get(0), 0, lastChunkUsed);
+        }
+        final List<InputStream> streamList = new ArrayList<InputStream>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            streamList.add(new ByteArrayInputStream(chunkList.get(i), 0, usedSizeOf(i)));
+        }
+        return new SequenceInputStream(Collections.enumeration(streamList));
+    }
+
+    /**
+     * Get the read-only byte buffer of the captured bytes. <br />
+     * Chunks are compacted into one array at the first call (then no copy), and spilled file is mapped.
+     * @return The read-only buffer positioned at zero. (NotNull)
+     * @throws IOException When it fails to map the spilled file.
+     * @throws IllegalStateException When the size is over the max of array (or buffer), use openInputStream().
+     */
+    public ByteBuffer asReadOnlyByteBuffer() throws IOException {
+        assertArraySize("asReadOnlyByteBuffer()");
+        if (spillFile != null) {
+            flush();
+            final RandomAccessFile raf = new RandomAccessFile(spillFile, "r");
+            try {
+                return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+            } finally {
+                raf.close(); // mapping is valid after closing
+            }
+        }
+        if (chunkList.size() > 1) {
+            compact();
+        }
+        if (chunkList.isEmpty()) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(chunkList.get(0), 0, lastChunkUsed).asReadOnlyBuffer();
+    }
+
+    protected void compact() {
+        final byte[] compacted = new byte[(int) size];
+        int offset = 0;
+        final int chunkCount = chunkList.size();
+        for (int i = 0; i < chunkCount; i++) {
+            final int used = usedSizeOf(i);
+            System.arraycopy(chunkList.get(i), 0, compacted, offset, used);
+            offset += used;
+        }
+        chunkList.clear();
+        chunkList.add(compacted);
+        lastChunkUsed = compacted.length; // full so next write adds new chunk
+    }
+
+    protected void assertArraySize(String viewName) {
+        if (size > MAX_ARRAY_SIZE) { // not to overflow int
+            String msg = "The captured size is over the max of array for " + viewName;
+            msg = msg + ", use openInputStream() instead: size=" + size;
+            throw new IllegalStateException(msg);
+        }
+    }
+
+    /**
+     * Copy the captured bytes to new array.
+     * @return The new-created array of the bytes. (NotNull)
+     * @throws IOException When it fails to read the spilled file.
+     * @throws IllegalStateException When the size is over the max of array, use openInputStream().
+     */
+    public byte[] toByteArray() throws IOException {
+        assertArraySize("toByteArray()");
+        final byte[] bytes = new byte[(int) size];
+        final InputStream ins = openInputStream();
+        try {
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = ins.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += read;
+            }
+        } finally {
+            ins.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Decode the captured bytes as string.
+     * @param encoding The encoding of the bytes. (NotNull)
+     * @return The decoded string. (NotNull)
+     * @throws IOException When it fails to read or the encoding is unsupported.
+     * @throws IllegalStateException When the size is over the max of array, use openInputStream().
+     */
+    public String toString(String encoding) throws IOException {
+        if (spillFile == null && chunkList.size() == 1) { // no copy before decoding
+            return new String(chunkList.get(0), 0, lastChunkUsed, encoding);
+        }
+        return new String(toByteArray(), encoding);
+    }
+
+    // ===================================================================================
+    //                                                                             Release
+    //                                                                             =======
+    /**
+     * Clear the captured bytes, and delete the spilled file if exists.
+     */
+    public void clear() {
+        chunkList.clear();
+        lastChunkUsed = 0;
+        size = 0;
+        writtenSize = 0;
+        if (spillOutputStream != null) {
+            try {
+                spillOutputStream.close();
+            } catch (IOException ignored) {
+            }
+            spillOutputStream = null;
+        }
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Recycle the capture as new-created, keeping the first chunk for reuse. <br />
+     * The views of previous bytes become invalid because the chunk is overwritten.
+     */
+    public void recycle() {
+        final byte[] firstChunk = !chunkList.isEmpty() ? chunkList.get(0) : null;
+        clear();
+        if (firstChunk != null && firstChunk.length <= MAX_CHUNK_SIZE) { // not compacted large one
+            chunkList.add(firstChunk);
+            lastChunkUsed = 0;
+        }
+        listenerList = null;
+        retained = true;
+        spillThreshold = NO_SPILL;
+    }
+
+    // ===================================================================================
+    //                                                                            Listener
+    //                                                                            ========
+    /**
+     * @param listener The listener notified of every write. (NotNull)
+     */
+    public void addListener(CaptureListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The argument 'listener' should be not null.");
+        }
+        if (listenerList == null) {
+            listenerList = new ArrayList<CaptureListener>(2);
+        }
+        listenerList.add(listener);
+    }
+
+    public boolean hasListener() {
+        return listenerList != null;
+    }
+
+    /**
+     * The listener of written bytes, called before retaining.
+     */
+    public static interface CaptureListener {
+
+        /**
+         * @param bytes The array of written bytes, should not be kept because it may be reused. (NotNull)
+         * @param offset The offset of written bytes in the array.
+         * @param length The length of written bytes. (NotZero)
+         */
+        void written(byte[] bytes, int offset, int length);
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public long size() {
+        return size;
+    }
+
+    public long getWrittenSize() {
+        return writtenSize;
+    }
+
+    public boolean isRetained() {
+        return retained;
+    }
+
+    /**
+     * @param retained Does it keep written bytes? (false: only counted and notified, for bounded memory)
+     */
+    public void setRetained(boolean retained) {
+        this.retained = retained;
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * @param spillThreshold The size as bytes to spill to temporary file. (NO_SPILL means no spill)
+     */
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+}
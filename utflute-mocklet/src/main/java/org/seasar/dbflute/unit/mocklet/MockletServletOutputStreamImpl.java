@@ -33,4 +33,9 @@ public class MockletServletOutputStreamImpl extends MockletServletOutputStream {
     public void write(int b) throws IOException {
         outputStream.write(b);
     }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        outputStream.write(b, off, len); // bulk write without byte-by-byte loop
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpSession;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletPoolTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                             Request
+    //                                                                             =======
+    public void test_request_recycled_samePath() throws Exception {
+        // ## Arrange ##
+        final MockletPool pool = new MockletPool();
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletRequestImpl first = pool.borrowRequest(context, "/land");
+        first.setMethod("GET");
+        first.setQueryString("piari=bonvo");
+        first.setAttribute("sea", "mystic");
+        first.addParameter("land", "oneman");
+        first.setRequestBody(MockletRequestBody.ofString("dstore", "UTF-8"));
+        pool.giveBack(first);
+
+        // ## Act ##
+        final MockletHttpServletRequestImpl second = pool.borrowRequest(context, "land"); // normalized
+
+        // ## Assert ##
+        assertSame(first, second);
+        assertEquals("POST", second.getMethod());
+        assertNull(second.getQueryString());
+        assertNull(second.getAttribute("sea"));
+        assertNull(second.getParameter("land"));
+        assertNull(second.getRequestBody());
+        assertEquals(0, second.getContentLength());
+        assertEquals(1L, pool.getCreatedCount());
+        assertEquals(1L, pool.getReusedCount());
+    }
+
+    public void test_request_notRecycled_otherPathOrContext() throws Exception {
+        // ## Arrange ##
+        final MockletPool pool = new MockletPool();
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletRequestImpl first = pool.borrowRequest(context, "/land");
+        pool.giveBack(first);
+
+        // ## Act ##
+        final MockletHttpServletRequestImpl otherPath = pool.borrowRequest(context, "/piari");
+        final MockletHttpServletRequestImpl otherContext = pool.borrowRequest(new MockletServletContextImpl("/sea"),
+                "/land");
+
+        // ## Assert ##
+        assertNotSame(first, otherPath);
+        assertNotSame(first, otherContext);
+        assertEquals(3L, pool.getCreatedCount());
+        assertEquals(0L, pool.getReusedCount());
+    }
+
+    public void test_request_sessionRecycled() throws Exception {
+        // ## Arrange ##
+        final MockletPool pool = new MockletPool();
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletRequestImpl first = pool.borrowRequest(context, "/land");
+        final HttpSession firstSession = first.getSession(true);
+        firstSession.setAttribute("sea", "mystic");
+        firstSession.invalidate();
+        pool.giveBack(first);
+        final MockletHttpServletRequestImpl second = pool.borrowRequest(context, "/land");
+        assertNull(second.getSession(false));
+
+        // ## Act ##
+        final HttpSession secondSession = second.getSession(true);
+
+        // ## Assert ##
+        assertSame(firstSession, secondSession);
+        assertNull(secondSession.getAttribute("sea"));
+        assertTrue(((MockletHttpSessionImpl) secondSession).isValid());
+    }
+
+    // ===================================================================================
+    //                                                                            Response
+    //                                                                            ========
+    public void test_response_recycled_forNewRequest() throws Exception {
+        // ## Arrange ##
+        final MockletPool pool = new MockletPool();
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletRequestImpl firstRequest = pool.borrowRequest(context, "/land");
+        final MockletHttpServletResponseImpl first = pool.borrowResponse(firstRequest);
+        first.setStatus(404);
+        first.setHeader("X-Sea", "mystic");
+        first.getWriter().print("not found");
+        pool.giveBack(first);
+        assertEquals(0L, first.getResponseSize()); // released early
+        final MockletHttpServletRequestImpl secondRequest = pool.borrowRequest(context, "/land");
+        secondRequest.addCookie(new Cookie("piari", "bonvo"));
+
+        // ## Act ##
+        final MockletHttpServletResponseImpl second = pool.borrowResponse(secondRequest);
+
+        // ## Assert ##
+        assertSame(first, second);
+        assertEquals(0, second.getStatus());
+        assertNull(second.getHeader("X-Sea"));
+        assertEquals(1, second.getCookies().length);
+        assertEquals("piari", second.getCookies()[0].getName());
+        second.getOutputStream().write("sea".getBytes("UTF-8")); // writer was reset
+        assertEquals(3L, second.getResponseSize());
+    }
+
+    // ===================================================================================
+    //                                                                           Give Back
+    //                                                                           =========
+    public void test_giveBack_maxFreeSize_duplicate_null() throws Exception {
+        // ## Arrange ##
+        final MockletPool pool = new MockletPool();
+        pool.setMaxFreeSize(1);
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletRequestImpl first = pool.borrowRequest(context, "/land");
+        final MockletHttpServletRequestImpl second = pool.borrowRequest(context, "/land");
+
+        // ## Act ##
+        pool.giveBack(first);
+        pool.giveBack(first); // duplicate
+        pool.giveBack(second); // full
+        pool.giveBack(null);
+
+        // ## Assert ##
+        assertSame(first, pool.borrowRequest(context, "/land"));
+        assertNotSame(second, pool.borrowRequest(context, "/land"));
+        assertEquals(3L, pool.getCreatedCount());
+        assertEquals(1L, pool.getReusedCount());
+    }
+
+    public void test_setMaxFreeSize_minus() throws Exception {
+        try {
+            new MockletPool().setMaxFreeSize(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.servlet.http.Cookie;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.mocklet.MockletReplayEngine.ReplayHandler;
+import org.seasar.dbflute.unit.mocklet.MockletReplayResult.ReplayRecord;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletReplayEngineTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                               Entry
+    //                                                                               =====
+    public void test_parseLine_headers_escapedBody() throws Exception {
+        // ## Arrange ##
+        final String line = "post\t/member/update?id=3\tContent-Type: application/x-www-form-urlencoded"
+                + "\\nCookie: a=b\\nX-Sea: mys\\\\tic\tname=sea\\tland";
+
+        // ## Act ##
+        final MockletReplayEntry entry = MockletReplayEntry.parseLine(line, "UTF-8");
+
+        // ## Assert ##
+        assertEquals("POST", entry.getMethod());
+        assertEquals("/member/update", entry.getPath());
+        assertEquals("id=3", entry.getQueryString());
+        assertEquals("application/x-www-form-urlencoded", entry.findHeader("content-type"));
+        assertEquals("a=b", entry.findHeader("Cookie"));
+        assertEquals("mys\\tic", entry.findHeader("X-Sea"));
+        assertEquals("name=sea\tland", new String(entry.getBody(), "UTF-8"));
+    }
+
+    public void test_parseLine_methodOnly() throws Exception {
+        try {
+            MockletReplayEntry.parseLine("GET", "UTF-8");
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                         Apply Entry
+    //                                                                         ===========
+    public void test_replay_query_form_cookie() throws Exception {
+        // ## Arrange ##
+        final List<MockletReplayEntry> entryList = new ArrayList<MockletReplayEntry>();
+        entryList.add(new MockletReplayEntry("GET", "/member/list?name=%E6%B5%B7+%E9%99%B8&tag=a&tag=b&empty=&&flag")
+                .addHeader("Cookie", "JSESSIONID=abc; theme = dark ;broken"));
+        entryList.add(new MockletReplayEntry("POST", "/member/update").addHeader("Content-Type",
+                "application/x-www-form-urlencoded; charset=UTF-8").setBody("memo=a%26b%3Dc&id=3".getBytes("UTF-8")));
+        final List<String> capturedList = new ArrayList<String>();
+
+        // ## Act ##
+        final MockletReplayResult result = createEngine().replay(entryList, new ReplayHandler() {
+            public void handle(MockletHttpServletRequest request, MockletHttpServletResponse response) {
+                final StringBuilder sb = new StringBuilder();
+                sb.append(request.getMethod()).append(" ").append(request.getServletPath());
+                @SuppressWarnings("unchecked")
+                final Map<String, String[]> parameterMap = request.getParameterMap();
+                for (String name : new TreeSet<String>(parameterMap.keySet())) {
+                    sb.append(" ").append(name).append("=").append(Arrays.asList(parameterMap.get(name)));
+                }
+                for (Cookie cookie : request.getCookies()) {
+                    sb.append(" cookie:").append(cookie.getName()).append("=").append(cookie.getValue());
+                }
+                capturedList.add(sb.toString());
+            }
+        });
+
+        // ## Assert ##
+        log(capturedList);
+        assertEquals(2, result.getRequestCount());
+        assertEquals(0, result.getErrorCount());
+        assertEquals("GET /member/list empty=[] flag=[] name=[海 陸] tag=[a, b]"
+                + " cookie:JSESSIONID=abc cookie:theme=dark", capturedList.get(0));
+        assertEquals("POST /member/update id=[3] memo=[a&b=c]", capturedList.get(1));
+    }
+
+    // ===================================================================================
+    //                                                                              Replay
+    //                                                                              ======
+    public void test_replay_status_size_error_inCallerThread() throws Exception {
+        // ## Arrange ##
+        final List<MockletReplayEntry> entryList = new ArrayList<MockletReplayEntry>();
+        entryList.add(new MockletReplayEntry("GET", "/sea"));
+        entryList.add(new MockletReplayEntry("GET", "/land"));
+        entryList.add(new MockletReplayEntry("GET", "/piari"));
+        final List<String> bindingList = new ArrayList<String>();
+        final Thread callerThread = Thread.currentThread();
+        final MockletReplayEngine engine = new MockletReplayEngine(new MockletServletContextImpl("/utflute")) {
+            @Override
+            protected void bindRequest(MockletHttpServletRequest request, MockletHttpServletResponse response) {
+                bindingList.add("bind " + request.getServletPath() + ":" + (Thread.currentThread() == callerThread));
+            }
+
+            @Override
+            protected void unbindRequest(MockletHttpServletRequest request, MockletHttpServletResponse response) {
+                bindingList.add("unbind " + request.getServletPath());
+            }
+        };
+
+        // ## Act ##
+        final MockletReplayResult result = engine.replay(entryList, new ReplayHandler() {
+            public void handle(MockletHttpServletRequest request, MockletHttpServletResponse response)
+                    throws Exception {
+                if ("/land".equals(request.getServletPath())) {
+                    response.setStatus(404);
+                    response.getWriter().print("not found");
+                } else if ("/piari".equals(request.getServletPath())) {
+                    throw new IllegalStateException("bonvo");
+                } else {
+                    response.getOutputStream().write(new byte[] { 1, 2, 3 });
+                    final MockletCapturingHttpServletResponse capturing = (MockletCapturingHttpServletResponse) response;
+                    assertEquals(0L, capturing.getResponseSize()); // not retained as default
+                }
+            }
+        });
+
+        // ## Assert ##
+        log(result);
+        assertEquals(1, result.getThreadCount());
+        assertEquals(1, result.getErrorCount());
+        final List<ReplayRecord> recordList = result.getRecordList();
+        assertEquals(200, recordList.get(0).getStatus());
+        assertEquals(3L, recordList.get(0).getSize());
+        assertEquals(404, recordList.get(1).getStatus());
+        assertEquals(9L, recordList.get(1).getSize());
+        assertEquals(0, recordList.get(2).getStatus());
+        assertTrue(recordList.get(2).isError());
+        assertEquals("bonvo", recordList.get(2).getCause().getMessage());
+        assertEquals(12L, result.getTotalSize());
+        assertEquals(callerThread.getName(), recordList.get(0).getThreadName());
+        assertEquals(Arrays.asList("bind /sea:true", "unbind /sea", "bind /land:true", "unbind /land",
+                "bind /piari:true", "unbind /piari"), bindingList);
+    }
+
+    public void test_replay_multipleThreads_retainBody() throws Exception {
+        // ## Arrange ##
+        final List<MockletReplayEntry> entryList = new ArrayList<MockletReplayEntry>();
+        for (int i = 0; i < 40; i++) {
+            entryList.add(new MockletReplayEntry("GET", "/member/" + i + "?no=" + i));
+        }
+        final MockletReplayEngine engine = createEngine().threadCount(4).retainBody();
+
+        // ## Act ##
+        final MockletReplayResult result = engine.replay(entryList, new ReplayHandler() {
+            public void handle(MockletHttpServletRequest request, MockletHttpServletResponse response)
+                    throws Exception {
+                response.getWriter().print(request.getParameter("no"));
+                final String body = response.getResponseString(); // retained
+                if (!body.equals(request.getParameter("no"))) {
+                    throw new IllegalStateException("Unexpected body: " + body);
+                }
+            }
+        });
+
+        // ## Assert ##
+        log(result);
+        assertEquals(4, result.getThreadCount());
+        assertEquals(40, result.getRequestCount());
+        assertEquals(0, result.getErrorCount());
+        assertEquals(Integer.valueOf(40), result.getStatusCountMap().get(200));
+        final Set<String> threadNameSet = new HashSet<String>();
+        for (ReplayRecord record : result.getRecordList()) {
+            threadNameSet.add(record.getThreadName());
+        }
+        for (String threadName : threadNameSet) {
+            assertTrue(threadName, threadName.startsWith("replay-"));
+        }
+    }
+
+    public void test_threadCount_zero() throws Exception {
+        try {
+            createEngine().threadCount(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                          Percentile
+    //                                                                          ==========
+    public void test_getLatencyNanosAt_nearestRank() throws Exception {
+        // ## Arrange ##
+        final MockletReplayResult result = new MockletReplayResult();
+        assertEquals(0L, result.getLatencyNanosAt(50.0));
+        final MockletReplayEntry entry = new MockletReplayEntry("GET", "/sea");
+        for (long latency = 10; latency >= 1; latency--) { // unsorted
+            result.addRecord(new ReplayRecord(entry, 200, 0L, latency, null, "main"));
+        }
+
+        // ## Act & Assert ##
+        assertEquals(1L, result.getLatencyNanosAt(0.0));
+        assertEquals(1L, result.getLatencyNanosAt(10.0));
+        assertEquals(2L, result.getLatencyNanosAt(10.1));
+        assertEquals(5L, result.getLatencyNanosAt(50.0));
+        assertEquals(9L, result.getLatencyNanosAt(90.0));
+        assertEquals(10L, result.getLatencyNanosAt(99.0));
+        assertEquals(10L, result.getLatencyNanosAt(100.0));
+        try {
+            result.getLatencyNanosAt(100.1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected MockletReplayEngine createEngine() {
+        return new MockletReplayEngine(new MockletServletContextImpl("/utflute"));
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletRequestBodyTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                              Source
+    //                                                                              ======
+    public void test_ofBytes_reopen() throws Exception {
+        // ## Arrange ##
+        final byte[] bytes = "sea".getBytes("UTF-8");
+
+        // ## Act ##
+        final MockletRequestBody body = MockletRequestBody.ofBytes(bytes);
+
+        // ## Assert ##
+        assertEquals(3L, body.getLength());
+        assertEquals(3, body.getContentLength());
+        assertEquals("sea", readString(body.openStream(), "UTF-8"));
+        assertEquals("sea", readString(body.openStream(), "UTF-8")); // new stream each time
+    }
+
+    public void test_ofString_multibyte() throws Exception {
+        // ## Act ##
+        final MockletRequestBody body = MockletRequestBody.ofString("海と陸", "UTF-8");
+
+        // ## Assert ##
+        assertEquals(9L, body.getLength());
+        assertEquals("海と陸", readString(body.openStream(), "UTF-8"));
+    }
+
+    public void test_ofString_unknownEncoding() throws Exception {
+        try {
+            MockletRequestBody.ofString("sea", "no-such-encoding");
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    public void test_ofFile_and_ofMappedFile() throws Exception {
+        // ## Arrange ##
+        final File file = File.createTempFile("utflute-body", ".txt");
+        try {
+            writeFile(file, "land\npiari".getBytes("UTF-8"));
+
+            // ## Act ##
+            final MockletRequestBody streamBody = MockletRequestBody.ofFile(file);
+            final MockletRequestBody mappedBody = MockletRequestBody.ofMappedFile(file);
+
+            // ## Assert ##
+            assertEquals(10L, streamBody.getLength());
+            assertEquals(10L, mappedBody.getLength());
+            assertEquals("land\npiari", readString(streamBody.openStream(), "UTF-8"));
+            final InputStream mappedIns = mappedBody.openStream();
+            assertEquals(10, mappedIns.available());
+            assertEquals(5L, mappedIns.skip(5L)); // skips "land\n"
+            assertEquals("piari", readString(mappedIns, "UTF-8"));
+            assertEquals(-1, mappedIns.read());
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void test_ofProvider_lazy_unknownLength() throws Exception {
+        // ## Arrange ##
+        final int[] providedCount = new int[1];
+
+        // ## Act ##
+        final MockletRequestBody body = MockletRequestBody.ofProvider(MockletRequestBody.UNKNOWN_LENGTH,
+                new MockletRequestBody.BodyStreamProvider() {
+                    public InputStream provide() throws IOException {
+                        ++providedCount[0];
+                        return new ByteArrayInputStream("bonvo".getBytes("UTF-8"));
+                    }
+                });
+
+        // ## Assert ##
+        assertEquals(0, providedCount[0]);
+        assertEquals(-1, body.getContentLength());
+        assertEquals("bonvo", readString(body.openStream(), "UTF-8"));
+        assertEquals(1, providedCount[0]);
+    }
+
+    public void test_getContentLength_tooLarge() throws Exception {
+        // ## Act ##
+        final MockletRequestBody body = MockletRequestBody.ofProvider(Integer.MAX_VALUE + 1L,
+                new MockletRequestBody.BodyStreamProvider() {
+                    public InputStream provide() {
+                        return new ByteArrayInputStream(new byte[0]);
+                    }
+                });
+
+        // ## Assert ##
+        assertEquals(Integer.MAX_VALUE + 1L, body.getLength());
+        assertEquals(-1, body.getContentLength());
+    }
+
+    // ===================================================================================
+    //                                                                             Request
+    //                                                                             =======
+    public void test_request_getReader_characterEncoding() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletRequestImpl request = createRequest();
+        request.setCharacterEncoding("UTF-8");
+        request.setRequestBody(MockletRequestBody.ofString("海\n陸", "UTF-8"));
+
+        // ## Act ##
+        final BufferedReader reader = request.getReader();
+
+        // ## Assert ##
+        assertEquals(7, request.getContentLength());
+        assertEquals("海", reader.readLine());
+        assertEquals("陸", reader.readLine());
+        assertNull(reader.readLine());
+        assertSame(reader, request.getReader());
+    }
+
+    public void test_request_streamAndReader_exclusive() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletRequestImpl request = createRequest();
+        request.setRequestBody(MockletRequestBody.ofString("sea", "UTF-8"));
+        request.getInputStream();
+
+        // ## Act ##
+        try {
+            request.getReader();
+            // ## Assert ##
+            fail();
+        } catch (IllegalStateException e) {
+            log(e.getMessage());
+        }
+    }
+
+    public void test_request_noBody_emptyStream() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletRequestImpl request = createRequest();
+
+        // ## Act ##
+        final InputStream ins = request.getInputStream();
+
+        // ## Assert ##
+        assertEquals(-1, ins.read());
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected MockletHttpServletRequestImpl createRequest() {
+        return new MockletHttpServletRequestImpl(new MockletServletContextImpl("/sea"), "/land");
+    }
+
+    protected String readString(InputStream ins, String encoding) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4];
+            int read;
+            while ((read = ins.read(buf, 0, buf.length)) >= 0) {
+                out.write(buf, 0, read);
+            }
+            return out.toString(encoding);
+        } finally {
+            ins.close();
+        }
+    }
+
+    protected void writeFile(File file, byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletResponseAssertionTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                            Contains
+    //                                                                            ========
+    public void test_shouldContain_partialOverlap_byteByByte() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldContain("aab"); // needs failure table at "aa" + "a"
+
+        // ## Act ##
+        writeInChunk(response, "xaaab", 1);
+
+        // ## Assert ##
+        assertion.verify();
+    }
+
+    public void test_shouldContain_multibyteOnBoundary() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldContain("と陸").shouldNotContain("陸と");
+
+        // ## Act ##
+        writeInChunk(response, "海と陸", 1); // each character is split into 3 writes
+
+        // ## Assert ##
+        assertion.verify();
+    }
+
+    public void test_shouldContain_notFound() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldContain("piari");
+
+        // ## Act ##
+        writeInChunk(response, "sea and land", 4);
+
+        // ## Assert ##
+        try {
+            assertion.verify();
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            log(e.getMessage());
+            assertTrue(e.getMessage().contains("piari"));
+        }
+    }
+
+    public void test_shouldNotContain_failFast_evenIfSwallowed() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldNotContain("error");
+
+        // ## Act ##
+        try {
+            writeInChunk(response, "sea error land", 3);
+            fail();
+        } catch (MockletResponseAssertionError e) { // swallowed e.g. by application
+            log(e.getMessage());
+        }
+
+        // ## Assert ##
+        assertEquals(9L, response.getResponseWrittenSize()); // stopped at the write of "ror"
+        try {
+            assertion.verify();
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            assertTrue(e.getMessage().contains("error"));
+        }
+    }
+
+    // ===================================================================================
+    //                                                                                Line
+    //                                                                                ====
+    public void test_line_eachRegex_count_crlf_noLastSeparator() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldMatchEachLine(Pattern.compile("^\\d+,\\w+$")).shouldHaveLineCount(3);
+        assertion.shouldMatchAnyLine(Pattern.compile("^2,.*$"));
+
+        // ## Act ##
+        writeInChunk(response, "1,sea\r\n2,land\r\n3,piari", 5);
+
+        // ## Assert ##
+        assertion.verify();
+    }
+
+    public void test_line_eachRegex_failFast() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldMatchEachLine(Pattern.compile("^\\d+,\\w+$"));
+
+        // ## Act ##
+        try {
+            writeInChunk(response, "1,sea\nbonvo\n3,land\n", 2);
+            // ## Assert ##
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            log(e.getMessage());
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+    }
+
+    public void test_line_anyNotFound() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldMatchAnyLine(Pattern.compile("^dstore$"));
+        writeInChunk(response, "sea\nland\n", 3);
+
+        // ## Act ##
+        try {
+            assertion.verify();
+            // ## Assert ##
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            log(e.getMessage());
+            assertTrue(e.getMessage().contains("dstore"));
+        }
+    }
+
+    public void test_line_countAtMost_failFast() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldHaveLineCountAtMost(2);
+        writeInChunk(response, "sea\nland\n", 3);
+
+        // ## Act ##
+        try {
+            writeInChunk(response, "x", 1); // third line
+            // ## Assert ##
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            log(e.getMessage());
+            assertTrue(e.getMessage().contains("max=2"));
+        }
+    }
+
+    // ===================================================================================
+    //                                                                                JSON
+    //                                                                                ====
+    public void test_json_path_wildcard_escape_literal() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldHaveJsonValue("$.members[*].status", "FML");
+        assertion.shouldHaveJsonValue("$.members[1].name", "海\"陸");
+        assertion.shouldHaveJsonValue("$.count", "2");
+        assertion.shouldHaveJsonValue("$.paging.last", "true");
+        final String json = "{\"members\": [{\"status\": \"FML\", \"name\": \"sea\"}"
+                + ", {\"status\": \"FML\", \"name\": \"\\u6d77\\\"陸\"}], \"count\": 2, \"paging\": {\"last\": true}}";
+
+        // ## Act ##
+        writeInChunk(response, json, 3);
+
+        // ## Assert ##
+        assertion.verify();
+    }
+
+    public void test_json_unexpectedValue() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldHaveJsonValue("$.members[*].status", "FML");
+
+        // ## Act ##
+        try {
+            writeInChunk(response, "{\"members\": [{\"status\": \"FML\"}, {\"status\": \"PRV\"}]}", 7);
+            // ## Assert ##
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            log(e.getMessage());
+            assertTrue(e.getMessage().contains("$.members[1].status"));
+        }
+    }
+
+    public void test_json_pathNotFound() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldHaveJsonValue("$.member.name", "sea");
+        writeInChunk(response, "{\"members\": []}", 4);
+
+        // ## Act ##
+        try {
+            assertion.verify();
+            // ## Assert ##
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            log(e.getMessage());
+        }
+    }
+
+    public void test_json_illegalPath() throws Exception {
+        try {
+            createResponse().prepareResponseAssertion().shouldHaveJsonValue("member.name", "sea");
+            fail();
+        } catch (IllegalArgumentException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                              Writer
+    //                                                                              ======
+    public void test_writer_failFast() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldNotContain("陸");
+        response.getWriter().print("海と");
+
+        // ## Act ##
+        try {
+            response.getWriter().print("陸"); // thrown at the write, not at flush
+            // ## Assert ##
+            fail();
+        } catch (MockletResponseAssertionError e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                           Retaining
+    //                                                                           =========
+    public void test_notRetained_writer() throws Exception {
+        // ## Arrange ##
+        final MockletHttpServletResponseImpl response = createResponse();
+        response.setResponseRetained(false);
+        final MockletResponseAssertion assertion = response.prepareResponseAssertion();
+        assertion.shouldContain("陸").shouldHaveLineCount(1000);
+
+        // ## Act ##
+        for (int i = 0; i < 1000; i++) {
+            response.getWriter().print("海と陸\n"); // UTF-8 as writer encoding
+        }
+
+        // ## Assert ##
+        assertion.verify();
+        assertEquals(0L, response.getResponseSize());
+        assertEquals(10000L, response.getResponseWrittenSize());
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected MockletHttpServletResponseImpl createResponse() {
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(
+                new MockletHttpServletRequestImpl(context, "/land"));
+        response.setCharacterEncoding("UTF-8");
+        return response;
+    }
+
+    protected void writeInChunk(MockletHttpServletResponseImpl response, String text, int chunkSize)
+            throws IOException {
+        final byte[] bytes = text.getBytes("UTF-8");
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            response.getOutputStream().write(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+        }
+    }
+}
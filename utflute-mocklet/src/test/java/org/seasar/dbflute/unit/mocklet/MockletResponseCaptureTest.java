@@ -0,0 +1,283 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.mocklet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+
+/**
+ * @author jflute
+ * @since 0.4.8
+ */
+public class MockletResponseCaptureTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                               Chunk
+    //                                                                               =====
+    public void test_write_chunkGrowth_views() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+        final byte[] bytes = createBytes(5000);
+
+        // ## Act ##
+        capture.write(bytes, 0, 700);
+        capture.write(bytes, 700, 4300); // over first chunk
+
+        // ## Assert ##
+        assertEquals(5000L, capture.size());
+        assertTrue(capture.chunkList.size() > 1);
+        assertEquals(MockletResponseCapture.FIRST_CHUNK_SIZE, capture.chunkList.get(0).length);
+        assertBytes(bytes, readBytes(capture.openInputStream()));
+        assertBytes(bytes, capture.toByteArray());
+        final ByteBuffer buffer = capture.asReadOnlyByteBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(5000, buffer.remaining());
+        assertEquals(bytes[4999], buffer.get(4999));
+        assertEquals(1, capture.chunkList.size()); // compacted
+        capture.write(bytes, 0, 10); // writable after compacted
+        assertEquals(5010L, capture.size());
+        assertEquals(bytes[9], capture.toByteArray()[5009]);
+    }
+
+    public void test_toString_multibyteOnChunkBoundary() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < MockletResponseCapture.FIRST_CHUNK_SIZE - 1; i++) {
+            sb.append('s');
+        }
+        sb.append("海"); // 3 bytes split by the first chunk
+        final String expected = sb.toString();
+
+        // ## Act ##
+        capture.write(expected.getBytes("UTF-8"));
+
+        // ## Assert ##
+        assertEquals(2, capture.chunkList.size());
+        assertEquals(expected, capture.toString("UTF-8"));
+    }
+
+    public void test_view_empty() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+
+        // ## Act & Assert ##
+        assertEquals(-1, capture.openInputStream().read());
+        assertEquals(0, capture.toByteArray().length);
+        assertEquals(0, capture.asReadOnlyByteBuffer().remaining());
+        assertEquals("", capture.toString("UTF-8"));
+    }
+
+    public void test_view_overArraySize() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+        capture.size = MockletResponseCapture.MAX_ARRAY_SIZE + 1L; // not to write 2GB
+
+        // ## Act ##
+        try {
+            capture.toByteArray();
+            // ## Assert ##
+            fail();
+        } catch (IllegalStateException e) {
+            log(e.getMessage());
+        }
+        try {
+            capture.asReadOnlyByteBuffer();
+            fail();
+        } catch (IllegalStateException e) {
+            log(e.getMessage());
+        }
+    }
+
+    // ===================================================================================
+    //                                                                               Spill
+    //                                                                               =====
+    public void test_spill_overThreshold() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+        capture.setSpillThreshold(3000L);
+        final byte[] bytes = createBytes(5000);
+
+        // ## Act ##
+        capture.write(bytes, 0, 2000);
+        final boolean spilledBefore = capture.isSpilled();
+        capture.write(bytes, 2000, 3000);
+
+        // ## Assert ##
+        assertFalse(spilledBefore);
+        assertTrue(capture.isSpilled());
+        assertTrue(capture.chunkList.isEmpty());
+        assertEquals(5000L, capture.size());
+        assertBytes(bytes, readBytes(capture.openInputStream()));
+        assertBytes(bytes, capture.toByteArray());
+        final ByteBuffer buffer = capture.asReadOnlyByteBuffer(); // mapped
+        assertEquals(5000, buffer.remaining());
+        assertEquals(bytes[4321], buffer.get(4321));
+
+        final File spillFile = capture.spillFile;
+        assertTrue(spillFile.exists());
+        capture.clear();
+        assertFalse(spillFile.exists());
+        assertFalse(capture.isSpilled());
+        assertEquals(0L, capture.size());
+    }
+
+    // ===================================================================================
+    //                                                                             Recycle
+    //                                                                             =======
+    public void test_recycle_keepFirstChunk() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+        capture.write(createBytes(3000));
+        final byte[] firstChunk = capture.chunkList.get(0);
+        capture.setRetained(false);
+        capture.setSpillThreshold(10L);
+
+        // ## Act ##
+        capture.recycle();
+        capture.write("sea".getBytes("UTF-8"));
+
+        // ## Assert ##
+        assertSame(firstChunk, capture.chunkList.get(0)); // reused
+        assertEquals(1, capture.chunkList.size());
+        assertEquals(3L, capture.size());
+        assertEquals(3L, capture.getWrittenSize());
+        assertEquals("sea", capture.toString("UTF-8"));
+        assertEquals(MockletResponseCapture.NO_SPILL, capture.getSpillThreshold());
+        assertTrue(capture.isRetained());
+        assertFalse(capture.isSpilled());
+    }
+
+    public void test_recycle_spilled() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+        capture.setSpillThreshold(10L);
+        capture.write(createBytes(100));
+        final File spillFile = capture.spillFile;
+
+        // ## Act ##
+        capture.recycle();
+        capture.write(createBytes(100));
+
+        // ## Assert ##
+        assertFalse(spillFile.exists());
+        assertFalse(capture.isSpilled());
+        assertEquals(100L, capture.size());
+    }
+
+    // ===================================================================================
+    //                                                                            Listener
+    //                                                                            ========
+    public void test_listener_notRetained() throws Exception {
+        // ## Arrange ##
+        final MockletResponseCapture capture = new MockletResponseCapture();
+        capture.setRetained(false);
+        final ByteArrayOutputStream watched = new ByteArrayOutputStream();
+        capture.addListener(new MockletResponseCapture.CaptureListener() {
+            public void written(byte[] bytes, int offset, int length) {
+                watched.write(bytes, offset, length);
+            }
+        });
+
+        // ## Act ##
+        capture.write("land".getBytes("UTF-8"));
+        capture.write('!');
+
+        // ## Assert ##
+        assertEquals("land!", watched.toString("UTF-8"));
+        assertEquals(5L, capture.getWrittenSize());
+        assertEquals(0L, capture.size());
+        assertTrue(capture.chunkList.isEmpty());
+    }
+
+    // ===================================================================================
+    //                                                                            Response
+    //                                                                            ========
+    public void test_response_writerEncoding_default() throws Exception {
+        // ## Arrange ##
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletResponseImpl response = createResponse(context);
+        assertEquals("ISO-8859-1", response.getCharacterEncoding()); // inherited from request
+
+        // ## Act ##
+        final PrintWriter writer = response.getWriter();
+        writer.print("海");
+        response.setCharacterEncoding("Shift_JIS"); // no effect to the writer
+
+        // ## Assert ##
+        assertEquals("Shift_JIS", response.getCharacterEncoding()); // not overridden by writer
+        assertEquals("UTF-8", response.getResponseEncoding());
+        assertEquals("海", new String(response.getResponseBytes(), response.getResponseEncoding()));
+        assertEquals("海", response.getResponseString());
+    }
+
+    public void test_response_writerEncoding_specified() throws Exception {
+        // ## Arrange ##
+        final MockletServletContextImpl context = new MockletServletContextImpl("/sea");
+        final MockletHttpServletResponseImpl response = createResponse(context);
+        response.setCharacterEncoding("Shift_JIS");
+
+        // ## Act ##
+        response.getWriter().print("海");
+
+        // ## Assert ##
+        assertEquals("Shift_JIS", response.getCharacterEncoding());
+        assertEquals(2, response.getResponseBytes().length);
+        assertEquals("海", new String(response.getResponseBytes(), "Shift_JIS"));
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected MockletHttpServletResponseImpl createResponse(MockletServletContextImpl context) {
+        return new MockletHttpServletResponseImpl(new MockletHttpServletRequestImpl(context, "/land"));
+    }
+
+    protected byte[] createBytes(int size) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        return bytes;
+    }
+
+    protected byte[] readBytes(InputStream ins) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[512];
+            int read;
+            while ((read = ins.read(buf)) >= 0) {
+                out.write(buf, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            ins.close();
+        }
+    }
+
+    protected void assertBytes(byte[] expected, byte[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("index=" + i, expected[i], actual[i]);
+        }
+    }
+}
@@ -16,6 +16,8 @@
 package org.seasar.dbflute.unit.seasar;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Resource;
@@ -34,17 +36,28 @@ import org.seasar.dbflute.unit.core.InjectionTestCase;
 import org.seasar.dbflute.unit.core.binding.BindingAnnotationRule;
 import org.seasar.dbflute.unit.core.binding.ComponentBinder;
 import org.seasar.dbflute.unit.core.binding.NonBindingDeterminer;
+import org.seasar.dbflute.unit.core.container.ContainerCache;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+import org.seasar.dbflute.unit.core.container.ContainerSlot;
+import org.seasar.dbflute.unit.core.container.ContainerSlotManager;
+import org.seasar.dbflute.unit.core.profile.LifecycleProfiler;
+import org.seasar.dbflute.unit.core.profile.TestTimingRecord;
 import org.seasar.dbflute.unit.core.transaction.TransactionFailureException;
 import org.seasar.dbflute.unit.core.transaction.TransactionResource;
+import org.seasar.dbflute.unit.mocklet.MockletCapturingHttpServletResponse;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletRequest;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletRequestImpl;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletResponse;
 import org.seasar.dbflute.unit.mocklet.MockletHttpServletResponseImpl;
 import org.seasar.dbflute.unit.mocklet.MockletHttpSession;
+import org.seasar.dbflute.unit.mocklet.MockletPool;
+import org.seasar.dbflute.unit.mocklet.MockletReplayEngine;
+import org.seasar.dbflute.unit.mocklet.MockletResponseAssertion;
 import org.seasar.dbflute.unit.mocklet.MockletServletConfig;
 import org.seasar.dbflute.unit.mocklet.MockletServletConfigImpl;
 import org.seasar.dbflute.unit.mocklet.MockletServletContext;
 import org.seasar.dbflute.unit.mocklet.MockletServletContextImpl;
+import org.seasar.dbflute.util.DfReflectionUtil;
 import org.seasar.dbflute.util.Srl;
 import org.seasar.framework.container.ComponentNotFoundRuntimeException;
 import org.seasar.framework.container.ExternalContext;
@@ -79,6 +92,25 @@ public abstract class SeasarTestCase extends InjectionTestCase {
     /** The cached configuration of servlet. (NullAllowed: when no web mock or beginning or ending) */
     protected static MockletServletConfig _xcachedServletConfig;
 
+    /** The cache key of the singleton container. (NullAllowed: null means beginning or ending) */
+    protected static List<Object> _xcachedContainerKey;
+
+    /** The cache of parked containers for configuration changes. (NotNull) */
+    protected static final ContainerCache<ParkedSeasarContainer> _xcontainerCache = new ContainerCache<ParkedSeasarContainer>();
+
+    /** The manager of the only one slot, Seasar's singleton container is shared in JVM. (NotNull) */
+    protected static final ContainerSlotManager<ContainerSlot<S2Container>> _xcontainerSlotManager = new ContainerSlotManager<ContainerSlot<S2Container>>() {
+        protected ContainerSlot<S2Container> createSlot(int slotNumber) {
+            return new ContainerSlot<S2Container>(slotNumber);
+        }
+    };
+
+    // -----------------------------------------------------
+    //                                        Container Slot
+    //                                        --------------
+    /** The container slot held by the test case, used as lock. (NullAllowed: before set-up or after tear-down) */
+    protected ContainerSlot<S2Container> _xcontainerSlot;
+
     // -----------------------------------------------------
     //                                              Web Mock
     //                                              --------
@@ -88,6 +120,9 @@ public abstract class SeasarTestCase extends InjectionTestCase {
     /** The mock response of the test case execution. (NullAllowed: when no web mock or beginning or ending) */
     protected MockletHttpServletResponse _xmockResponse;
 
+    /** The shared pool of mock request and response, used if pool is enabled. (NotNull) */
+    protected static final MockletPool _xmockletPool = new MockletPool();
+
     // ===================================================================================
     //                                                                            Settings
     //                                                                            ========
@@ -105,9 +140,32 @@ public abstract class SeasarTestCase extends InjectionTestCase {
     //                                     -----------------
     @Override
     protected void xprepareTestCaseContainer() {
+        xacquireContainerSlot();
         final String configFile = xdoPrepareTestCaseContainer();
         xsaveCachedInstance(configFile);
+        final long before = xbeginLifecyclePhase();
         xdoPrepareWebMockContext();
+        xendLifecyclePhase(LifecycleProfiler.PHASE_REGISTER_WEB_MOCK, before);
+    }
+
+    protected void xacquireContainerSlot() {
+        if (_xcontainerSlot != null) { // already acquired
+            return;
+        }
+        if (prepareContainerSlotCount() > 1) {
+            log("*Seasar's singleton container cannot be isolated so the test cases run exclusively.");
+        }
+        // fixedly one slot, test cases in parallel threads wait for it
+        _xcontainerSlot = _xcontainerSlotManager.acquire(null);
+    }
+
+    @Override
+    protected void xreleaseContainerSlot() {
+        if (_xcontainerSlot == null) { // not acquired or already released
+            return;
+        }
+        _xcontainerSlotManager.release(_xcontainerSlot);
+        _xcontainerSlot = null;
     }
 
     protected String xdoPrepareTestCaseContainer() {
@@ -115,16 +173,35 @@ public abstract class SeasarTestCase extends InjectionTestCase {
             xdestroyContainer();
         }
         final String configFile = prepareConfigFile();
+        _xcontainerCache.setMaxSize(prepareContainerCacheSize());
+        final ParkedSeasarContainer parked;
         if (xisInitializedContainer()) {
             if (xcanRecycleContainer(configFile)) {
                 log("...Recycling seasar: " + configFile);
                 xrecycleContainerInstance(configFile);
+                _xcontainerCache.recordRecycle();
+                xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_RECYCLE);
                 return configFile; // no need to initialize
             } else { // changed
-                xdestroyContainer(); // to re-initialize
+                // taken before parking the current one, not to be evicted by the parking
+                parked = xtakeParkedContainer(configFile);
+                if (_xcontainerCache.getMaxSize() > 1) {
+                    xparkContainer(); // to switch back later without initialization
+                } else {
+                    xdestroyContainer(); // to re-initialize
+                }
             }
+        } else {
+            parked = xtakeParkedContainer(configFile);
+        }
+        if (parked != null) {
+            xrestoreParkedContainer(configFile, parked);
+            return configFile; // no need to initialize
         }
+        final long before = xbeginLifecyclePhase();
         xinitializeContainer(configFile);
+        xendLifecyclePhase(LifecycleProfiler.PHASE_INITIALIZE_CONTAINER, before);
+        xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_BOOT);
         return configFile;
     }
 
@@ -148,6 +225,19 @@ public abstract class SeasarTestCase extends InjectionTestCase {
     protected void xsaveCachedInstance(String configFile) {
         _xcachedConfigFile = configFile;
         _xcachedSuppressWebMock = isSuppressWebMock();
+        _xcachedContainerKey = xcreateContainerCacheKey(configFile);
+    }
+
+    /**
+     * Create the key of container cache, which identifies the configuration.
+     * @param configFile The pure file name of root dicon. (NotNull)
+     * @return The list of key elements, you can add elements in sub-class. (NotNull)
+     */
+    protected List<Object> xcreateContainerCacheKey(String configFile) {
+        final List<Object> keyList = newArrayList();
+        keyList.add(configFile);
+        keyList.add(isSuppressWebMock());
+        return keyList;
     }
 
     /**
@@ -158,6 +248,15 @@ public abstract class SeasarTestCase extends InjectionTestCase {
         return false;
     }
 
+    /**
+     * Does it use the pool of mock request and response? (recycled in place instead of new-created) <br />
+     * They are given back at tear-down so you should not keep them over the test case execution.
+     * @return The determination, true or false.
+     */
+    protected boolean isUseMockletPool() {
+        return false;
+    }
+
     protected void xdoPrepareWebMockContext() {
         if (_xcachedServletConfig != null) {
             // the servletConfig has been already created when container initialization
@@ -187,6 +286,10 @@ public abstract class SeasarTestCase extends InjectionTestCase {
 
     @Override
     public void tearDown() throws Exception {
+        if (isUseMockletPool()) {
+            _xmockletPool.giveBack(_xmockResponse); // null allowed
+            _xmockletPool.giveBack(_xmockRequest);
+        }
         _xmockRequest = null;
         _xmockResponse = null;
         super.tearDown();
@@ -271,14 +374,20 @@ public abstract class SeasarTestCase extends InjectionTestCase {
     protected Map<Class<? extends Annotation>, BindingAnnotationRule> xprovideBindingAnnotationRuleMap() {
         final Map<Class<? extends Annotation>, BindingAnnotationRule> ruleMap = newHashMap();
         ruleMap.put(Resource.class, new BindingAnnotationRule());
-        ruleMap.put(Binding.class, new BindingAnnotationRule().determineNonBinding(new NonBindingDeterminer() {
-            public boolean isNonBinding(Annotation bindingAnno) {
-                return BindingType.NONE.equals(((Binding) bindingAnno).bindingType());
-            }
-        }));
+        ruleMap.put(Binding.class, new BindingAnnotationRule().determineNonBinding(_xbindingNoneDeterminer));
         return ruleMap;
     }
 
+    /** The determiner of binding-type none, stateless and shared not to refer to test case instance from plan cache. */
+    protected static final NonBindingDeterminer _xbindingNoneDeterminer = new BindingNoneDeterminer();
+
+    protected static class BindingNoneDeterminer implements NonBindingDeterminer {
+
+        public boolean isNonBinding(Annotation bindingAnno) {
+            return BindingType.NONE.equals(((Binding) bindingAnno).bindingType());
+        }
+    }
+
     @Override
     protected String xfilterByBindingNamingRule(String propertyName, Class<?> propertyType) {
         if (propertyType.getSimpleName().contains("_")) { // e.g. (org.dbflute.maihama.) Foo_BarLogic
@@ -340,6 +449,9 @@ public abstract class SeasarTestCase extends InjectionTestCase {
             log("...Initializing seasar as web: " + configFile);
             xdoInitializeContainerAsWeb(configFile);
         }
+        if (prepareContainerCacheSize() > 1) {
+            log(" " + _xcontainerCache);
+        }
     }
 
     protected void xdoInitializeContainerAsLibrary(String configFile) {
@@ -391,10 +503,16 @@ public abstract class SeasarTestCase extends InjectionTestCase {
     }
 
     protected MockletHttpServletRequest createMockletHttpServletRequest(ServletContext servletContext) {
+        if (isUseMockletPool()) {
+            return _xmockletPool.borrowRequest(servletContext, prepareServletPath());
+        }
         return new MockletHttpServletRequestImpl(servletContext, prepareServletPath());
     }
 
     protected MockletHttpServletResponse createMockletHttpServletResponse(HttpServletRequest request) {
+        if (isUseMockletPool()) {
+            return _xmockletPool.borrowResponse(request);
+        }
         return new MockletHttpServletResponseImpl(request);
     }
 
@@ -407,6 +525,83 @@ public abstract class SeasarTestCase extends InjectionTestCase {
         _xmockResponse = response;
     }
 
+    // -----------------------------------------------------
+    //                                          Park/Restore
+    //                                          ------------
+    protected void xparkContainer() {
+        final ParkedSeasarContainer parked = new ParkedSeasarContainer(SingletonS2ContainerFactory.getContainer(),
+                _xcachedServletConfig);
+        final List<Object> parkedKey = _xcachedContainerKey;
+        xdetachSingletonContainer(); // detach only, not destroy
+        _xcachedServletConfig = null;
+        final ContainerDestroyer<ParkedSeasarContainer> destroyer = new ContainerDestroyer<ParkedSeasarContainer>() {
+            public void destroy(ParkedSeasarContainer container) {
+                xdestroyParkedContainer(container);
+            }
+        };
+        if (parkedKey == null) { // basically no way
+            destroyer.destroy(parked);
+            return;
+        }
+        _xcontainerCache.park(parkedKey, parked, destroyer);
+    }
+
+    protected void xdetachSingletonContainer() {
+        SingletonS2ContainerFactory.setContainer(null);
+        SingletonS2ContainerFactory.setExternalContext(null); // same as destroying
+        // the factory may have initialized flag set by setContainer() so reset it for next init()
+        final Field initializedField = DfReflectionUtil.getWholeField(SingletonS2ContainerFactory.class, "initialized");
+        if (initializedField != null && initializedField.getType() == boolean.class) {
+            try {
+                initializedField.setAccessible(true);
+                initializedField.setBoolean(null, false);
+            } catch (IllegalAccessException e) {
+                String msg = "Failed to reset the initialized flag: " + initializedField;
+                throw new IllegalStateException(msg, e);
+            }
+        }
+    }
+
+    protected ParkedSeasarContainer xtakeParkedContainer(String configFile) {
+        if (isUseOneTimeContainer()) { // needs new-created container
+            return null;
+        }
+        return _xcontainerCache.restore(xcreateContainerCacheKey(configFile)); // null allowed
+    }
+
+    protected void xrestoreParkedContainer(String configFile, ParkedSeasarContainer parked) {
+        log("...Restoring parked seasar: " + xcreateContainerCacheKey(configFile) + " " + _xcontainerCache);
+        xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_RESTORE);
+        SingletonS2ContainerFactory.setContainer(parked.getContainer());
+        _xcachedServletConfig = parked.getServletConfig();
+    }
+
+    protected void xdestroyParkedContainer(ParkedSeasarContainer parked) {
+        parked.getContainer().destroy(); // global disposable resources are kept for active container
+    }
+
+    /**
+     * The container parked in container cache, with its servlet configuration for web mock.
+     */
+    protected static class ParkedSeasarContainer {
+
+        protected final S2Container _container;
+        protected final MockletServletConfig _servletConfig; // null allowed
+
+        public ParkedSeasarContainer(S2Container container, MockletServletConfig servletConfig) {
+            _container = container;
+            _servletConfig = servletConfig;
+        }
+
+        public S2Container getContainer() {
+            return _container;
+        }
+
+        public MockletServletConfig getServletConfig() {
+            return _servletConfig;
+        }
+    }
+
     // -----------------------------------------------------
     //                                               Destroy
     //                                               -------
@@ -525,6 +720,104 @@ public abstract class SeasarTestCase extends InjectionTestCase {
         return response != null ? response.getResponseString() : null;
     }
 
+    /**
+     * Prepare the streaming assertion of mock response body, evaluated as the body is written. <br />
+     * Call it before the action, and verify it after that. (fails fast at the first violation)
+     * <pre>
+     * MockletResponseAssertion assertion = prepareMockResponseAssertion();
+     * assertion.shouldContain("sea").shouldHaveLineCountAtMost(10000);
+     * ((MockletCapturingHttpServletResponse) getMockResponse()).setResponseRetained(false); <span style="color: #3F7E5E">// if large</span>
+     * ... <span style="color: #3F7E5E">// action</span>
+     * assertion.verify();
+     * </pre>
+     * @return The new-created assertion listening the body. (NotNull)
+     * @throws IllegalStateException When the mock response is not prepared or not capturing response.
+     */
+    protected MockletResponseAssertion prepareMockResponseAssertion() {
+        final MockletHttpServletResponse response = getMockResponse();
+        if (response == null) {
+            String msg = "Not found the mock response, web mock is not prepared in the test case: " + getClass();
+            throw new IllegalStateException(msg);
+        }
+        if (!(response instanceof MockletCapturingHttpServletResponse)) {
+            String msg = "The mock response should be capturing response for assertion: " + response.getClass();
+            throw new IllegalStateException(msg);
+        }
+        return ((MockletCapturingHttpServletResponse) response).prepareResponseAssertion();
+    }
+
+    // -----------------------------------------------------
+    //                                               Recycle
+    //                                               -------
+    /**
+     * Recycle the mock request and response in place, clearing their state (also session) for next action. <br />
+     * They are still registered as they are, so you can loop an action many times without new-created mocks.
+     * <pre>
+     * for (int i = 0; i < 10000; i++) {
+     *     recycleWebMock();
+     *     addMockRequestParameter("memberId", String.valueOf(i));
+     *     ... <span style="color: #3F7E5E">// action</span>
+     * }
+     * </pre>
+     * @throws IllegalStateException When the mocks are not default implementations, e.g. MockletHttpServletRequestImpl.
+     */
+    protected void recycleWebMock() {
+        if (_xmockRequest == null) {
+            return;
+        }
+        if (!(_xmockRequest instanceof MockletHttpServletRequestImpl)
+                || (_xmockResponse != null && !(_xmockResponse instanceof MockletHttpServletResponseImpl))) {
+            String msg = "The mock request and response should be default implementations for recycle: ";
+            msg = msg + _xmockRequest.getClass() + ", " + (_xmockResponse != null ? _xmockResponse.getClass() : null);
+            throw new IllegalStateException(msg);
+        }
+        ((MockletHttpServletRequestImpl) _xmockRequest).recycle();
+        if (_xmockResponse != null) {
+            ((MockletHttpServletResponseImpl) _xmockResponse).recycle(_xmockRequest);
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                                Replay
+    //                                                ------
+    /**
+     * Create the engine of in-process request replay, e.g. captured access logs, for the web mock context. <br />
+     * Each replaying thread uses its own mock request, response and session (not the ones of this test case).
+     * <pre>
+     * List&lt;MockletReplayEntry&gt; entryList = ... <span style="color: #3F7E5E">// e.g. MockletReplayEntry.parseLine()</span>
+     * MockletReplayResult result = createMockRequestReplayEngine().threadCount(4).replay(entryList, handler);
+     * log(result); <span style="color: #3F7E5E">// status, size, latency</span>
+     * </pre>
+     * @return The new-created engine. (NotNull)
+     */
+    protected MockletReplayEngine createMockRequestReplayEngine() {
+        if (_xcachedServletConfig == null || isSuppressWebMock()) {
+            String msg = "Not found the mock servlet context, web mock is not prepared in the test case: " + getClass();
+            throw new IllegalStateException(msg);
+        }
+        return new MockletReplayEngine(_xcachedServletConfig.getServletContext()) {
+            // previous request and response bound to the thread, null in worker threads
+            protected final ThreadLocal<Object[]> _previousBound = new ThreadLocal<Object[]>();
+
+            @Override
+            protected void bindRequest(MockletHttpServletRequest request, MockletHttpServletResponse response) {
+                final ExternalContext externalContext = SingletonS2ContainerFactory.getContainer().getExternalContext();
+                _previousBound.set(new Object[] { externalContext.getRequest(), externalContext.getResponse() });
+                externalContext.setRequest(request); // thread-local in Seasar
+                externalContext.setResponse(response);
+            }
+
+            @Override
+            protected void unbindRequest(MockletHttpServletRequest request, MockletHttpServletResponse response) {
+                final ExternalContext externalContext = SingletonS2ContainerFactory.getContainer().getExternalContext();
+                final Object[] previous = _previousBound.get();
+                _previousBound.remove();
+                externalContext.setRequest(previous != null ? previous[0] : null); // restore as before binding
+                externalContext.setResponse(previous != null ? previous[1] : null);
+            }
+        };
+    }
+
     // -----------------------------------------------------
     //                                               Session
     //                                               -------
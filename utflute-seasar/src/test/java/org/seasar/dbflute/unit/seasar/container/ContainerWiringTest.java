@@ -0,0 +1,230 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.seasar.container;
+
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+import org.seasar.dbflute.unit.core.container.ContainerSlot;
+import org.seasar.dbflute.unit.seasar.ContainerTestCase;
+import org.seasar.framework.container.S2Container;
+import org.seasar.framework.container.factory.SingletonS2ContainerFactory;
+
+/**
+ * The test of container wiring by test cases of two configurations, which are run in this test.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerWiringTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String FIRST_CONFIG = "app.dicon";
+    protected static final String SECOND_CONFIG = "unitbean.dicon";
+
+    // ===================================================================================
+    //                                                                            Settings
+    //                                                                            ========
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // destroy containers of previous tests (one-time destroys the active one at tear-down)
+        final ConfigCase resetCase = new ConfigCase(FIRST_CONFIG, 1).asOneTime();
+        resetCase.setUp();
+        try {
+            resetCase.destroyParkedContainer();
+        } finally {
+            resetCase.tearDown();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Recycle
+    //                                                                             =======
+    public void test_sameConfig_recycled() throws Exception {
+        // ## Arrange ##
+        final S2Container firstContainer = runCase(new ConfigCase(FIRST_CONFIG, 1));
+
+        // ## Act ##
+        final S2Container nextContainer = runCase(new ConfigCase(FIRST_CONFIG, 1));
+
+        // ## Assert ##
+        assertSame(firstContainer, nextContainer);
+        assertSame(firstContainer.getComponent("fooBhv"), nextContainer.getComponent("fooBhv"));
+    }
+
+    // ===================================================================================
+    //                                                                        Park/Restore
+    //                                                                        ============
+    public void test_switchConfig_parkedAndRestored() throws Exception {
+        // ## Arrange ##
+        final S2Container firstContainer = runCase(new ConfigCase(FIRST_CONFIG, 2));
+        final Object firstBhv = firstContainer.getComponent("fooBhv");
+
+        // ## Act ##
+        final S2Container secondContainer = runCase(new ConfigCase(SECOND_CONFIG, 2));
+        final S2Container restoredContainer = runCase(new ConfigCase(FIRST_CONFIG, 2));
+
+        // ## Assert ##
+        assertNotSame(firstContainer, secondContainer);
+        assertNotSame(firstBhv, secondContainer.getComponent("fooBhv"));
+        assertSame(firstContainer, restoredContainer);
+        assertSame(firstBhv, restoredContainer.getComponent("fooBhv"));
+    }
+
+    public void test_switchConfig_noParking_rebuilt() throws Exception {
+        // ## Arrange ##
+        final S2Container firstContainer = runCase(new ConfigCase(FIRST_CONFIG, 1));
+        final Object firstBhv = firstContainer.getComponent("fooBhv");
+
+        // ## Act ##
+        final S2Container secondContainer = runCase(new ConfigCase(SECOND_CONFIG, 1));
+        final S2Container rebuiltContainer = runCase(new ConfigCase(FIRST_CONFIG, 1));
+
+        // ## Assert ##
+        assertNotSame(firstContainer, secondContainer);
+        assertNotSame(firstContainer, rebuiltContainer);
+        assertNotSame(firstBhv, rebuiltContainer.getComponent("fooBhv"));
+    }
+
+    // ===================================================================================
+    //                                                                            One-time
+    //                                                                            ========
+    public void test_oneTimeContainer_rebuiltPerCase() throws Exception {
+        // ## Arrange ##
+        final S2Container firstContainer = runCase(new ConfigCase(FIRST_CONFIG, 2).asOneTime());
+        assertFalse(SingletonS2ContainerFactory.hasContainer()); // destroyed at tear-down
+
+        // ## Act ##
+        final S2Container nextContainer = runCase(new ConfigCase(FIRST_CONFIG, 2).asOneTime());
+
+        // ## Assert ##
+        assertNotSame(firstContainer, nextContainer);
+    }
+
+    // ===================================================================================
+    //                                                                      Container Slot
+    //                                                                      ==============
+    public void test_slot_acquiredAndReleased() throws Exception {
+        // ## Arrange ##
+        final ConfigCase firstCase = new ConfigCase(FIRST_CONFIG, 1);
+        final ContainerSlot<S2Container> slot;
+
+        // ## Act ##
+        firstCase.setUp();
+        try {
+            slot = firstCase.getSlot();
+
+            // ## Assert ##
+            assertNotNull(slot);
+            assertEquals(1, slot.getSlotNumber()); // fixedly one slot
+        } finally {
+            firstCase.tearDown();
+        }
+        assertNull(firstCase.getSlot()); // released
+        final ConfigCase nextCase = new ConfigCase(SECOND_CONFIG, 1);
+        nextCase.setUp();
+        try {
+            assertSame(slot, nextCase.getSlot()); // also for other configuration
+        } finally {
+            nextCase.tearDown();
+        }
+    }
+
+    public void test_slot_releasedWhenSetUpFailure() throws Exception {
+        // ## Arrange ##
+        final ConfigCase brokenCase = new ConfigCase("notExist.dicon", 1);
+
+        // ## Act ##
+        try {
+            brokenCase.setUp();
+
+            // ## Assert ##
+            fail();
+        } catch (RuntimeException e) {
+            log(e.getMessage());
+        }
+        assertNull(brokenCase.getSlot()); // released without tear-down
+        assertNotNull(runCase(new ConfigCase(FIRST_CONFIG, 1))); // can acquire the slot again
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected S2Container runCase(ConfigCase testCase) throws Exception {
+        testCase.setUp();
+        try {
+            assertTrue(SingletonS2ContainerFactory.hasContainer());
+            return SingletonS2ContainerFactory.getContainer();
+        } finally {
+            testCase.tearDown();
+        }
+    }
+
+    protected static class ConfigCase extends ContainerTestCase {
+
+        protected final String _configFile;
+        protected final int _cacheSize;
+        protected boolean _oneTime;
+
+        public ConfigCase(String configFile, int cacheSize) {
+            _configFile = configFile;
+            _cacheSize = cacheSize;
+        }
+
+        public ConfigCase asOneTime() {
+            _oneTime = true;
+            return this;
+        }
+
+        @Override
+        protected String prepareConfigFile() {
+            return _configFile;
+        }
+
+        @Override
+        protected int prepareContainerCacheSize() {
+            return _cacheSize;
+        }
+
+        @Override
+        protected boolean isUseOneTimeContainer() {
+            return _oneTime;
+        }
+
+        @Override
+        protected boolean isSuppressWebMock() {
+            return true; // container only
+        }
+
+        @Override
+        protected boolean isSuppressTestCaseTransaction() {
+            return true; // container only
+        }
+
+        public ContainerSlot<S2Container> getSlot() {
+            return _xcontainerSlot;
+        }
+
+        public void destroyParkedContainer() {
+            _xcontainerCache.destroyAll(new ContainerDestroyer<ParkedSeasarContainer>() {
+                public void destroy(ParkedSeasarContainer container) {
+                    xdestroyParkedContainer(container);
+                }
+            });
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.seasar.dbflute.unit.spring.web;
 import java.io.File;
 import java.io.IOException;
 
+import org.seasar.dbflute.unit.core.fixture.H2TemplateDatabase;
 import org.seasar.dbflute.util.DfReflectionUtil;
 import org.seasar.dbflute.util.DfResourceUtil;
 import org.springframework.beans.factory.FactoryBean;
@@ -35,12 +36,15 @@ public class EmbeddedH2UrlFactoryBean implements FactoryBean<Object> {
     //                                                                           =========
     protected String _urlSuffix;
     protected String _referenceClassName;
+    protected String _cloneName; // null means the embedded database itself
+    protected String _user = "sa";
+    protected String _password = "";
 
     // ===================================================================================
     //                                                                                Main
     //                                                                                ====
     public Object getObject() throws Exception {
-        return getUrl();
+        return resolveUrl();
     }
 
     public Class<?> getObjectType() {
@@ -51,6 +55,15 @@ public class EmbeddedH2UrlFactoryBean implements FactoryBean<Object> {
         return true;
     }
 
+    protected String resolveUrl() {
+        final String url = getUrl();
+        if (_cloneName == null) {
+            return url;
+        }
+        // the embedded database is the template, the clone has its own data
+        return H2TemplateDatabase.of(url, _user, _password).cloneDatabase(_cloneName);
+    }
+
     protected String getUrl() {
         try {
             final File buildDir = getBuildDir();
@@ -76,4 +89,16 @@ public class EmbeddedH2UrlFactoryBean implements FactoryBean<Object> {
     public void setUrlSuffix(String urlSuffix) {
         _urlSuffix = urlSuffix;
     }
+
+    public void setCloneName(String cloneName) {
+        _cloneName = cloneName;
+    }
+
+    public void setUser(String user) {
+        _user = user;
+    }
+
+    public void setPassword(String password) {
+        _password = password;
+    }
 }
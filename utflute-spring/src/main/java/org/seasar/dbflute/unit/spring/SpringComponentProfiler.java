@@ -0,0 +1,88 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.spring;
+
+import java.beans.PropertyDescriptor;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.seasar.dbflute.unit.core.profile.LifecycleProfiler;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+
+/**
+ * The post processor of Spring beans to record their creation time to the lifecycle profiler. <br />
+ * The time is from before instantiation to after initialization, so it contains dependencies created in it.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class SpringComponentProfiler implements InstantiationAwareBeanPostProcessor {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    public static final String CONTAINER_NAME = "spring";
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    protected final LifecycleProfiler _profiler;
+
+    /** The map of beginning nano time keyed by bean name, per thread for prototype beans. (NotNull) */
+    protected final ThreadLocal<Map<String, Long>> _beginTimeMapLocal = new ThreadLocal<Map<String, Long>>() {
+        @Override
+        protected Map<String, Long> initialValue() {
+            return new HashMap<String, Long>();
+        }
+    };
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public SpringComponentProfiler(LifecycleProfiler profiler) {
+        _profiler = profiler;
+    }
+
+    // ===================================================================================
+    //                                                                      Post Processor
+    //                                                                      ==============
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+        _beginTimeMapLocal.get().put(beanName, System.nanoTime());
+        return null; // means default instantiation
+    }
+
+    public boolean postProcessAfterInstantiation(Object bean, String beanName) throws BeansException {
+        return true; // means default property population
+    }
+
+    public PropertyValues postProcessPropertyValues(PropertyValues pvs, PropertyDescriptor[] pds, Object bean,
+            String beanName) throws BeansException {
+        return pvs;
+    }
+
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        final Long before = _beginTimeMapLocal.get().remove(beanName);
+        if (before != null) { // null if e.g. inner bean without instantiation callback
+            _profiler.recordComponent(CONTAINER_NAME, beanName, System.nanoTime() - before);
+        }
+        return bean;
+    }
+}
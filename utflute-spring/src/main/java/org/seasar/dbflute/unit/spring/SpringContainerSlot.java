@@ -0,0 +1,63 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.spring;
+
+import org.seasar.dbflute.unit.core.container.ContainerSlot;
+import org.springframework.beans.factory.access.BeanFactoryReference;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * The slot of application context, which has also the configuration files of the active one.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class SpringContainerSlot extends ContainerSlot<ApplicationContext> {
+
+    // ===================================================================================
+    //                                                                           Attribute
+    //                                                                           =========
+    /** The configuration files of the active context. (NullAllowed: not initialized yet) */
+    protected String[] _configFiles;
+
+    /** The reference to default context by the locator owned by the slot. (NullAllowed: not used) */
+    protected BeanFactoryReference _locatorContextReference;
+
+    // ===================================================================================
+    //                                                                         Constructor
+    //                                                                         ===========
+    public SpringContainerSlot(int slotNumber) {
+        super(slotNumber);
+    }
+
+    // ===================================================================================
+    //                                                                            Accessor
+    //                                                                            ========
+    public String[] getConfigFiles() {
+        return _configFiles;
+    }
+
+    public void setConfigFiles(String[] configFiles) {
+        _configFiles = configFiles;
+    }
+
+    public BeanFactoryReference getLocatorContextReference() {
+        return _locatorContextReference;
+    }
+
+    public void setLocatorContextReference(BeanFactoryReference locatorContextReference) {
+        _locatorContextReference = locatorContextReference;
+    }
+}
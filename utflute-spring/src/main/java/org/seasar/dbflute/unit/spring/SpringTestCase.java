@@ -17,19 +17,30 @@ package org.seasar.dbflute.unit.spring;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Resource;
 
 import org.seasar.dbflute.unit.core.InjectionTestCase;
 import org.seasar.dbflute.unit.core.binding.BindingAnnotationRule;
+import org.seasar.dbflute.unit.core.container.ContainerCache;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+import org.seasar.dbflute.unit.core.container.ContainerPrewarmer;
+import org.seasar.dbflute.unit.core.container.ContainerPrewarmer.ContainerBuilder;
+import org.seasar.dbflute.unit.core.container.ContainerSlotManager;
+import org.seasar.dbflute.unit.core.profile.LifecycleProfiler;
+import org.seasar.dbflute.unit.core.profile.TestTimingRecord;
 import org.seasar.dbflute.unit.core.transaction.TransactionResource;
 import org.seasar.dbflute.util.DfReflectionUtil;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.access.BeanFactoryLocator;
 import org.springframework.beans.factory.access.BeanFactoryReference;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.access.ContextSingletonBeanFactoryLocator;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
@@ -50,11 +61,15 @@ public abstract class SpringTestCase extends InjectionTestCase {
     // -----------------------------------------------------
     //                                          Static Cache
     //                                          ------------
-    /** The cached configuration files of DI container. (NullAllowed: null means beginning or ending) */
-    protected static String[] _xcachedConfigFiles;
+    /** The manager of container slots, each slot has cached application context. (NotNull) */
+    protected static final ContainerSlotManager<SpringContainerSlot> _xcontainerSlotManager = new ContainerSlotManager<SpringContainerSlot>() {
+        protected SpringContainerSlot createSlot(int slotNumber) {
+            return new SpringContainerSlot(slotNumber);
+        }
+    };
 
-    /** The cached application context for DI container. (NullAllowed: null means beginning or ending) */
-    protected static ApplicationContext _xcachedContext;
+    /** The pre-warmer of application context for next configuration. (NotNull) */
+    protected static final ContainerPrewarmer<ApplicationContext> _xcontainerPrewarmer = new ContainerPrewarmer<ApplicationContext>();
 
     // -----------------------------------------------------
     //                                         Spring Object
@@ -62,6 +77,9 @@ public abstract class SpringTestCase extends InjectionTestCase {
     /** The current active context of application. {Spring Object} */
     protected ApplicationContext _xcurrentActiveContext;
 
+    /** The container slot held by the test case. (NullAllowed: before set-up or after tear-down) */
+    protected SpringContainerSlot _xcontainerSlot;
+
     // ===================================================================================
     //                                                                            Settings
     //                                                                            ========
@@ -70,25 +88,68 @@ public abstract class SpringTestCase extends InjectionTestCase {
     //                                     -----------------
     @Override
     protected void xprepareTestCaseContainer() {
+        xacquireContainerSlot();
         final String[] configFiles = xdoPrepareTestCaseContainer();
         xsaveCachedInstance(configFiles);
     }
 
+    protected void xacquireContainerSlot() {
+        if (_xcontainerSlot != null) { // already acquired
+            return;
+        }
+        _xcontainerSlotManager.setSlotCount(prepareContainerSlotCount());
+        _xcontainerSlot = _xcontainerSlotManager.acquire(xcreateContainerCacheKey(prepareConfigFiles()));
+    }
+
+    @Override
+    protected void xreleaseContainerSlot() {
+        if (_xcontainerSlot == null) { // not acquired or already released
+            return;
+        }
+        _xcontainerSlotManager.release(_xcontainerSlot);
+        _xcontainerSlot = null;
+    }
+
+    protected ContainerCache<ApplicationContext> xgetContainerCache() {
+        return _xcontainerSlot.getContainerCache();
+    }
+
     protected String[] xdoPrepareTestCaseContainer() {
         if (isUseOneTimeContainer()) {
             xdestroyContainer();
         }
         final String[] configFiles = prepareConfigFiles();
+        xgetContainerCache().setMaxSize(prepareContainerCacheSize());
+        final ApplicationContext parkedContext;
         if (xisInitializedContainer()) { // already exists
             if (xcanRecycleContainer(configFiles)) { // no change
                 log("...Recycling spring: " + Arrays.asList(configFiles));
                 xrecycleContainerInstance(configFiles);
+                xgetContainerCache().recordRecycle();
+                xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_RECYCLE);
                 return configFiles; // no need to initialize
             } else { // changed
-                xdestroyContainer();
+                // taken before parking the current one, not to be evicted by the parking
+                parkedContext = xtakeParkedContainer(configFiles);
+                if (xgetContainerCache().getMaxSize() > 1) {
+                    xparkContainer(); // to switch back later without initialization
+                } else {
+                    xdestroyContainer();
+                }
             }
+        } else {
+            parkedContext = xtakeParkedContainer(configFiles);
+        }
+        if (parkedContext != null) {
+            xrestoreParkedContainer(configFiles, parkedContext);
+            xprewarmNextContainer(configFiles); // once per switching, not for recycle
+            return configFiles; // no need to initialize
         }
+        final long before = xbeginLifecyclePhase();
         xinitializeContainer(configFiles);
+        xendLifecyclePhase(LifecycleProfiler.PHASE_INITIALIZE_CONTAINER, before);
+        xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_BOOT);
+        xprewarmNextContainer(configFiles); // once per switching, not for recycle
         return configFiles;
     }
 
@@ -97,15 +158,29 @@ public abstract class SpringTestCase extends InjectionTestCase {
     }
 
     protected boolean xconfigCanAcceptContainerRecycle(String[] configFiles) {
-        return configFiles != null && Arrays.asList(configFiles).equals(Arrays.asList(_xcachedConfigFiles));
+        final String[] cachedConfigFiles = _xcontainerSlot.getConfigFiles();
+        return configFiles != null && cachedConfigFiles != null
+                && Arrays.asList(configFiles).equals(Arrays.asList(cachedConfigFiles));
     }
 
     protected void xrecycleContainerInstance(String[] configFiles) {
-        _xcurrentActiveContext = _xcachedContext;
+        _xcurrentActiveContext = _xcontainerSlot.getContainer();
     }
 
     protected void xsaveCachedInstance(String[] configFiles) {
-        _xcachedConfigFiles = configFiles;
+        _xcontainerSlot.setConfigFiles(configFiles);
+        _xcontainerSlot.setContainerKey(xcreateContainerCacheKey(configFiles));
+    }
+
+    /**
+     * Create the key of container cache, which identifies the configuration.
+     * @param configFiles The array of configuration file names. (NotNull)
+     * @return The list of key elements, you can add elements in sub-class. (NotNull)
+     */
+    protected List<Object> xcreateContainerCacheKey(String[] configFiles) {
+        final List<Object> keyList = newArrayList();
+        keyList.add(configFiles != null ? Arrays.asList(configFiles) : null);
+        return keyList;
     }
 
     /**
@@ -122,12 +197,22 @@ public abstract class SpringTestCase extends InjectionTestCase {
      * @return The new-created instance of application context. (NotNull)
      */
     protected ApplicationContext createApplicationContext(String[] confs) {
-        return new ClassPathXmlApplicationContext(confs);
+        if (!isUseLifecycleProfile()) {
+            return new ClassPathXmlApplicationContext(confs);
+        }
+        final ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(confs, false);
+        context.addBeanFactoryPostProcessor(new BeanFactoryPostProcessor() {
+            public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+                beanFactory.addBeanPostProcessor(new SpringComponentProfiler(_xlifecycleProfiler));
+            }
+        });
+        context.refresh();
+        return context;
     }
 
     @Override
     protected void xclearCachedContainer() {
-        _xcachedContext = null;
+        _xcontainerSlot.setContainer(null);
     }
 
     // ===================================================================================
@@ -152,6 +237,26 @@ public abstract class SpringTestCase extends InjectionTestCase {
         return resource; // for thread-fire's transaction or manual transaction
     }
 
+    /**
+     * {@inheritDoc} <br />
+     * The transaction manager's nested propagation, e.g. savepoint of DataSourceTransactionManager.
+     */
+    @Override
+    protected TransactionResource beginSavepointTransaction() { // user method
+        final String managerKey = "transactionManager";
+        if (!xcanUseSavepointTransaction() || !hasComponent(managerKey)) {
+            return beginNewTransaction();
+        }
+        final PlatformTransactionManager manager = getComponent(managerKey);
+        final DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+        def.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        final TransactionStatus status = manager.getTransaction(def);
+        final SpringTransactionResource resource = new SpringTransactionResource();
+        resource.setTransactionManager(manager);
+        resource.setTransactionStatus(status);
+        return resource; // roll-back to the savepoint, commit releases it
+    }
+
     // ===================================================================================
     //                                                                   Component Binding
     //                                                                   =================
@@ -170,44 +275,166 @@ public abstract class SpringTestCase extends InjectionTestCase {
     //                                            Initialize
     //                                            ----------
     protected boolean xisInitializedContainer() {
-        return _xcachedContext != null;
+        return _xcontainerSlot.getContainer() != null;
     }
 
     protected void xinitializeContainer(String[] configFiles) {
-        if (configFiles != null && configFiles.length > 0) {
+        final ApplicationContext prewarmedContext = xtakePrewarmedContainer(configFiles);
+        if (prewarmedContext != null) {
+            log("...Picking up pre-warmed spring: " + Arrays.asList(configFiles));
+            _xcurrentActiveContext = prewarmedContext;
+        } else if (configFiles != null && configFiles.length > 0) {
             log("...Initializing spring by configuration files: " + Arrays.asList(configFiles));
             _xcurrentActiveContext = createApplicationContext(configFiles);
         } else {
             log("...Initializing spring by provided default context.");
             _xcurrentActiveContext = provideDefaultApplicationContext();
         }
-        _xcachedContext = _xcurrentActiveContext;
+        _xcontainerSlot.setContainer(_xcurrentActiveContext);
+        if (prepareContainerCacheSize() > 1 || prepareContainerSlotCount() > 1) {
+            log(" " + _xcontainerSlot + " " + xgetContainerCache());
+        }
     }
 
     protected ApplicationContext provideDefaultApplicationContext() {
+        if (_xcontainerSlotManager.getSlotCount() > 1) { // static locator cannot be shared by slots
+            return xprovideSlotLocatorContext();
+        }
         final BeanFactoryLocator locator = ContextSingletonBeanFactoryLocator.getInstance();
         final BeanFactoryReference ref = locator.useBeanFactory("context");
         return (ApplicationContext) ref.getFactory();
     }
 
+    /**
+     * Provide the default context by the locator owned by the current slot, not registered as static instance.
+     * @return The default context of the slot. (NotNull)
+     */
+    protected ApplicationContext xprovideSlotLocatorContext() {
+        final String resourceLocation = "classpath*:beanRefContext.xml"; // same as default of the locator
+        final BeanFactoryLocator locator = new ContextSingletonBeanFactoryLocator(resourceLocation) {
+        };
+        final BeanFactoryReference ref = locator.useBeanFactory("context");
+        _xcontainerSlot.setLocatorContextReference(ref);
+        return (ApplicationContext) ref.getFactory();
+    }
+
+    // -----------------------------------------------------
+    //                                          Park/Restore
+    //                                          ------------
+    protected void xparkContainer() {
+        final ApplicationContext parkedContext = _xcontainerSlot.getContainer();
+        final List<Object> parkedKey = _xcontainerSlot.getContainerKey();
+        _xcontainerSlot.setContainer(null);
+        _xcurrentActiveContext = null;
+        if (parkedKey == null) { // basically no way
+            xdestroyParkedContainer(parkedContext);
+            return;
+        }
+        xgetContainerCache().park(parkedKey, parkedContext, new ContainerDestroyer<ApplicationContext>() {
+            public void destroy(ApplicationContext container) {
+                xdestroyParkedContainer(container);
+            }
+        });
+    }
+
+    protected ApplicationContext xtakeParkedContainer(String[] configFiles) {
+        if (isUseOneTimeContainer()) { // needs new-created container
+            return null;
+        }
+        return xgetContainerCache().restore(xcreateContainerCacheKey(configFiles)); // null allowed
+    }
+
+    protected void xrestoreParkedContainer(String[] configFiles, ApplicationContext parkedContext) {
+        log("...Restoring parked spring: " + Arrays.asList(configFiles) + " " + xgetContainerCache());
+        xmarkTestTimingContainerEvent(TestTimingRecord.CONTAINER_EVENT_RESTORE);
+        _xcurrentActiveContext = parkedContext;
+        _xcontainerSlot.setContainer(parkedContext);
+    }
+
+    protected void xdestroyParkedContainer(ApplicationContext parkedContext) {
+        if (parkedContext instanceof ClassPathXmlApplicationContext) {
+            xreleaseClassPathContext(parkedContext);
+        } else { // provided default context
+            xreleaseDefaultContext(parkedContext);
+        }
+    }
+
+    // -----------------------------------------------------
+    //                                               Prewarm
+    //                                               -------
+    protected void xprewarmNextContainer(String[] configFiles) {
+        if (isSuppressContainerPrewarm()) {
+            return;
+        }
+        final List<String> currentConfigSet = configFiles != null ? Arrays.asList(configFiles) : new ArrayList<String>();
+        final List<String> nextConfigSet = _xcontainerPrewarmHint.peekNext(currentConfigSet);
+        if (nextConfigSet == null || nextConfigSet.isEmpty()) { // default context is shared by locator
+            return;
+        }
+        final String[] nextConfigFiles = nextConfigSet.toArray(new String[nextConfigSet.size()]);
+        final List<Object> nextKey = xcreateContainerCacheKey(nextConfigFiles);
+        if (xgetContainerCache().isParked(nextKey)) { // can be restored without initialization
+            return;
+        }
+        log("...Pre-warming spring in background: " + nextConfigSet);
+        _xcontainerPrewarmer.prewarm(nextKey, new ContainerBuilder<ApplicationContext>() {
+            public ApplicationContext build() {
+                return createApplicationContext(nextConfigFiles);
+            }
+        }, new ContainerDestroyer<ApplicationContext>() {
+            public void destroy(ApplicationContext container) {
+                xdestroyParkedContainer(container);
+            }
+        });
+    }
+
+    protected ApplicationContext xtakePrewarmedContainer(String[] configFiles) {
+        if (configFiles == null || configFiles.length == 0) { // default context is not pre-warmed
+            return null;
+        }
+        return _xcontainerPrewarmer.take(xcreateContainerCacheKey(configFiles));
+    }
+
     // -----------------------------------------------------
     //                                               Destroy
     //                                               -------
     protected void xdestroyContainer() {
         xreleaseClassPathContext();
-        xreleaseLocatorContextCache();
-        _xcachedContext = null;
+        xreleaseDefaultContext(_xcontainerSlot.getContainer());
+        _xcontainerSlot.setContainer(null);
         _xcurrentActiveContext = null;
     }
 
     protected void xreleaseClassPathContext() {
-        final ApplicationContext cachedContext = _xcachedContext;
+        xreleaseClassPathContext(_xcontainerSlot.getContainer());
+    }
+
+    protected void xreleaseClassPathContext(ApplicationContext cachedContext) {
         if (cachedContext != null && cachedContext instanceof ClassPathXmlApplicationContext) {
             ((ClassPathXmlApplicationContext) cachedContext).destroy();
         }
     }
 
+    protected void xreleaseDefaultContext(ApplicationContext cachedContext) {
+        if (!xreleaseSlotLocatorContext(cachedContext)) { // not by slot's locator
+            xreleaseLocatorContextCache();
+        }
+    }
+
+    protected boolean xreleaseSlotLocatorContext(ApplicationContext cachedContext) {
+        final BeanFactoryReference ref = _xcontainerSlot.getLocatorContextReference();
+        if (ref == null || cachedContext == null || ref.getFactory() != cachedContext) {
+            return false;
+        }
+        _xcontainerSlot.setLocatorContextReference(null);
+        ref.release(); // closes the context
+        return true;
+    }
+
     protected void xreleaseLocatorContextCache() {
+        if (_xcontainerSlotManager.getSlotCount() > 1) { // static locator is not used by slots
+            return;
+        }
         final Class<ContextSingletonBeanFactoryLocator> locatorType = ContextSingletonBeanFactoryLocator.class;
         final String cacheMapName = "instances";
         final Field cacheMapField = DfReflectionUtil.getWholeField(locatorType, cacheMapName);
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2004-2014 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.seasar.dbflute.unit.spring.container;
+
+import java.util.Arrays;
+
+import org.seasar.dbflute.unit.core.InjectionTestCase;
+import org.seasar.dbflute.unit.core.PlainTestCase;
+import org.seasar.dbflute.unit.core.container.ContainerCache.ContainerDestroyer;
+import org.seasar.dbflute.unit.core.container.ContainerPrewarmer;
+import org.seasar.dbflute.unit.spring.ContainerTestCase;
+import org.seasar.dbflute.unit.spring.SpringContainerSlot;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * The test of container wiring by test cases of two configurations, which are run in this test.
+ * @author jflute
+ * @since 0.4.8
+ */
+public class ContainerWiringTest extends PlainTestCase {
+
+    // ===================================================================================
+    //                                                                          Definition
+    //                                                                          ==========
+    protected static final String[] FIRST_CONFIG = new String[] { "unitBeans.xml", "jdbcBeans.xml" };
+    protected static final String[] SECOND_CONFIG = new String[] { "jdbcBeans.xml", "unitBeans.xml" };
+
+    // ===================================================================================
+    //                                                                            Settings
+    //                                                                            ========
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // destroy containers of previous tests (one-time destroys the active one at tear-down)
+        final ConfigCase resetCase = new ConfigCase(FIRST_CONFIG, 1).asOneTime();
+        resetCase.setUp();
+        try {
+            resetCase.destroyParkedContainer();
+        } finally {
+            resetCase.tearDown();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                             Recycle
+    //                                                                             =======
+    public void test_sameConfig_recycled() throws Exception {
+        // ## Arrange ##
+        final ApplicationContext firstContext = runCase(new ConfigCase(FIRST_CONFIG, 1));
+
+        // ## Act ##
+        final ApplicationContext nextContext = runCase(new ConfigCase(FIRST_CONFIG, 1));
+
+        // ## Assert ##
+        assertSame(firstContext, nextContext);
+        assertSame(firstContext.getBean("fooLogic"), nextContext.getBean("fooLogic"));
+    }
+
+    // ===================================================================================
+    //                                                                        Park/Restore
+    //                                                                        ============
+    public void test_switchConfig_parkedAndRestored() throws Exception {
+        // ## Arrange ##
+        final ApplicationContext firstContext = runCase(new ConfigCase(FIRST_CONFIG, 2));
+        final Object firstLogic = firstContext.getBean("fooLogic");
+
+        // ## Act ##
+        final ApplicationContext secondContext = runCase(new ConfigCase(SECOND_CONFIG, 2));
+        final ApplicationContext restoredContext = runCase(new ConfigCase(FIRST_CONFIG, 2));
+
+        // ## Assert ##
+        assertNotSame(firstContext, secondContext);
+        assertNotSame(firstLogic, secondContext.getBean("fooLogic"));
+        assertSame(firstContext, restoredContext);
+        assertSame(firstLogic, restoredContext.getBean("fooLogic"));
+        assertTrue(((ConfigurableApplicationContext) secondContext).isActive()); // parked
+    }
+
+    public void test_switchConfig_noParking_rebuilt() throws Exception {
+        // ## Arrange ##
+        final ApplicationContext firstContext = runCase(new ConfigCase(FIRST_CONFIG, 1));
+        final Object firstLogic = firstContext.getBean("fooLogic");
+
+        // ## Act ##
+        final ApplicationContext secondContext = runCase(new ConfigCase(SECOND_CONFIG, 1));
+        final ApplicationContext rebuiltContext = runCase(new ConfigCase(FIRST_CONFIG, 1));
+
+        // ## Assert ##
+        assertNotSame(firstContext, secondContext);
+        assertNotSame(firstContext, rebuiltContext);
+        assertNotSame(firstLogic, rebuiltContext.getBean("fooLogic"));
+        assertFalse(((ConfigurableApplicationContext) firstContext).isActive()); // destroyed
+        assertFalse(((ConfigurableApplicationContext) secondContext).isActive());
+    }
+
+    // ===================================================================================
+    //                                                                            One-time
+    //                                                                            ========
+    public void test_oneTimeContainer_rebuiltPerCase() throws Exception {
+        // ## Arrange ##
+        final ConfigCase firstCase = new ConfigCase(FIRST_CONFIG, 2).asOneTime();
+        final ApplicationContext firstContext = runCase(firstCase);
+
+        // ## Act ##
+        final ApplicationContext nextContext = runCase(new ConfigCase(FIRST_CONFIG, 2).asOneTime());
+
+        // ## Assert ##
+        assertNotSame(firstContext, nextContext);
+        assertFalse(((ConfigurableApplicationContext) firstContext).isActive()); // destroyed at tear-down
+        assertNull(firstCase.getActiveContext());
+    }
+
+    // ===================================================================================
+    //                                                                      Container Slot
+    //                                                                      ==============
+    public void test_slot_acquiredAndReleased() throws Exception {
+        // ## Arrange ##
+        final ConfigCase firstCase = new ConfigCase(FIRST_CONFIG, 1);
+        final SpringContainerSlot slot;
+
+        // ## Act ##
+        firstCase.setUp();
+        try {
+            slot = firstCase.getSlot();
+
+            // ## Assert ##
+            assertNotNull(slot);
+            assertSame(firstCase.getActiveContext(), slot.getContainer());
+            assertEquals(Arrays.asList(FIRST_CONFIG), Arrays.asList(slot.getConfigFiles()));
+        } finally {
+            firstCase.tearDown();
+        }
+        assertNull(firstCase.getSlot()); // released
+        final ConfigCase nextCase = new ConfigCase(FIRST_CONFIG, 1);
+        nextCase.setUp();
+        try {
+            assertSame(slot, nextCase.getSlot()); // same key preferred
+            assertSame(slot.getContainer(), nextCase.getActiveContext());
+        } finally {
+            nextCase.tearDown();
+        }
+    }
+
+    public void test_slot_releasedWhenSetUpFailure() throws Exception {
+        // ## Arrange ##
+        final ConfigCase brokenCase = new ConfigCase(new String[] { "notExistBeans.xml" }, 1);
+
+        // ## Act ##
+        try {
+            brokenCase.setUp();
+
+            // ## Assert ##
+            fail();
+        } catch (RuntimeException e) {
+            log(e.getMessage());
+        }
+        assertNull(brokenCase.getSlot()); // released without tear-down
+        assertNotNull(runCase(new ConfigCase(FIRST_CONFIG, 1))); // can acquire the slot again
+    }
+
+    // ===================================================================================
+    //                                                                             Prewarm
+    //                                                                             =======
+    public void test_prewarm_pickedUp() throws Exception {
+        // ## Arrange ##
+        InjectionTestCase.hintUpcomingContainer(FIRST_CONFIG);
+        InjectionTestCase.hintUpcomingContainer(SECOND_CONFIG);
+        try {
+            final ConfigCase firstCase = new ConfigCase(FIRST_CONFIG, 1);
+            final ApplicationContext firstContext = runCase(firstCase); // initialized with pre-warming
+            assertTrue(firstCase.isPrewarmPending(SECOND_CONFIG));
+            final long takenCount = ConfigCase.getPrewarmer().getTakenCount();
+
+            // ## Act ##
+            final ConfigCase secondCase = new ConfigCase(SECOND_CONFIG, 1);
+            final ApplicationContext secondContext = runCase(secondCase);
+
+            // ## Assert ##
+            assertNotSame(firstContext, secondContext);
+            assertNotNull(secondContext.getBean("fooLogic"));
+            assertEquals(takenCount + 1, ConfigCase.getPrewarmer().getTakenCount());
+            assertFalse(secondCase.isPrewarmPending(SECOND_CONFIG));
+        } finally {
+            ConfigCase.clearPrewarm();
+        }
+    }
+
+    // ===================================================================================
+    //                                                                         Test Helper
+    //                                                                         ===========
+    protected ApplicationContext runCase(ConfigCase testCase) throws Exception {
+        testCase.setUp();
+        try {
+            final ApplicationContext context = testCase.getActiveContext();
+            assertNotNull(context);
+            return context;
+        } finally {
+            testCase.tearDown();
+        }
+    }
+
+    protected static class ConfigCase extends ContainerTestCase {
+
+        protected final String[] _configFiles;
+        protected final int _cacheSize;
+        protected boolean _oneTime;
+
+        public ConfigCase(String[] configFiles, int cacheSize) {
+            _configFiles = configFiles;
+            _cacheSize = cacheSize;
+        }
+
+        public ConfigCase asOneTime() {
+            _oneTime = true;
+            return this;
+        }
+
+        @Override
+        protected String[] prepareConfigFiles() {
+            return _configFiles;
+        }
+
+        @Override
+        protected int prepareContainerCacheSize() {
+            return _cacheSize;
+        }
+
+        @Override
+        protected boolean isUseOneTimeContainer() {
+            return _oneTime;
+        }
+
+        @Override
+        protected boolean isSuppressTestCaseTransaction() {
+            return true; // container only
+        }
+
+        public ApplicationContext getActiveContext() {
+            return _xcurrentActiveContext;
+        }
+
+        public SpringContainerSlot getSlot() {
+            return _xcontainerSlot;
+        }
+
+        public boolean isPrewarmPending(String[] configFiles) {
+            return _xcontainerPrewarmer.isPending(xcreateContainerCacheKey(configFiles));
+        }
+
+        public static ContainerPrewarmer<ApplicationContext> getPrewarmer() {
+            return _xcontainerPrewarmer;
+        }
+
+        public static void clearPrewarm() {
+            _xcontainerPrewarmHint.clear();
+            _xcontainerPrewarmer.discardAll();
+        }
+
+        public void destroyParkedContainer() {
+            xgetContainerCache().destroyAll(new ContainerDestroyer<ApplicationContext>() {
+                public void destroy(ApplicationContext container) {
+                    xdestroyParkedContainer(container);
+                }
+            });
+        }
+    }
+}